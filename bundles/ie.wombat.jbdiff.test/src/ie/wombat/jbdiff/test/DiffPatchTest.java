@@ -18,6 +18,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -51,6 +52,42 @@ public class DiffPatchTest extends TestCase {
 		bench("eclipse-3.2.exe", "eclipse-3.3.exe");
 	}
 
+	public void testWindowedPdeCoreJar() throws Exception {
+		byte[] oldData = getTestData("org.eclipse.pde.core_3.2.jar");
+		byte[] newData = getTestData("org.eclipse.pde.core_3.3.jar");
+
+		ByteArrayOutputStream diff = new ByteArrayOutputStream();
+		JBDiff.bsdiff(oldData, oldData.length, newData, newData.length, diff,
+				oldData.length / 4, 2);
+		byte[] patch = JBPatch.bspatch(oldData, oldData.length, diff
+				.toByteArray());
+
+		assertTrue(Arrays.equals(newData, patch));
+	}
+
+	public void testParallelScan() throws Exception {
+		// large enough to be scanned in several chunks
+		byte[] oldData = new byte[9 * 1024 * 1024];
+		Random random = new Random(4711);
+		for (int i = 0; i < oldData.length; i++) {
+			oldData[i] = (byte) random.nextInt(16);
+		}
+		byte[] newData = new byte[oldData.length + 1000];
+		System.arraycopy(oldData, 0, newData, 1000, oldData.length);
+		for (int i = 0; i < 1000; i++) {
+			newData[random.nextInt(newData.length)] ^= 0x55;
+		}
+
+		ByteArrayOutputStream diff = new ByteArrayOutputStream();
+		JBDiff.bsdiff(oldData, oldData.length, newData, newData.length, diff,
+				JBDiff.DEFAULT_WINDOW_SIZE, 4);
+		byte[] patch = JBPatch.bspatch(oldData, oldData.length, diff
+				.toByteArray());
+
+		assertTrue(Arrays.equals(newData, patch));
+		assertTrue(diff.size() < newData.length / 10);
+	}
+
 	private void bench(String resource1, String resource2) throws Exception {
 
 		byte[] oldData = getTestData(resource1);
@@ -1,7 +1,7 @@
 /*
  * Copyright (c) 2005, Joe Desbonnet, (jdesbonnet@gmail.com)
  * All rights reserved.
- *
+ * 
  * Redistribution and use in source and binary forms, with or without
  * modification, are permitted provided that the following conditions are met:
  *     * Redistributions of source code must retain the above copyright
@@ -12,7 +12,7 @@
  *     * Neither the name of the <organization> nor the
  *       names of its contributors may be used to endorse or promote products
  *       derived from this software without specific prior written permission.
- *
+ * 
  * THIS SOFTWARE IS PROVIDED BY <copyright holder> ``AS IS'' AND ANY
  * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
  * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
@@ -27,23 +27,24 @@
 package ie.wombat.jbdiff;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Java Binary Diff utility. Based on bsdiff (v4.2) by Colin Percival (see
  * http://www.daemonology.net/bsdiff/ ) and distributed under BSD license.
  * 
  * <p>
- * Running this on large files will probably require an increase of the default
- * maximum heap size (use java -Xmx200m)
+ * The old file is sorted in windows of at most {@link #DEFAULT_WINDOW_SIZE}
+ * bytes, so that very large inputs do not need a suffix array of their full
+ * size. Large new files are scanned in chunks on several threads.
  * </p>
  * 
  * @author Joe Desbonnet, joe@galway.net
@@ -59,189 +60,20 @@ public class JBDiff {
 
 //	private static final String VERSION = "jbdiff-0.1.0.1";
 
-	// This is jbdiff40.
-	private static final byte[] MAGIC_BYTES = new byte[] { 0x6a, 0x62, 0x64,
-			0x69, 0x66, 0x66, 0x34, 0x30 };
-
-	private final static void split(int[] I, int[] V, int start, int len, int h) {
-
-		int i, j, k, x, tmp, jj, kk;
-
-		if (len < 16) {
-			for (k = start; k < start + len; k += j) {
-				j = 1;
-				x = V[I[k] + h];
-				for (i = 1; k + i < start + len; i++) {
-					if (V[I[k + i] + h] < x) {
-						x = V[I[k + i] + h];
-						j = 0;
-					}
-
-					if (V[I[k + i] + h] == x) {
-						tmp = I[k + j];
-						I[k + j] = I[k + i];
-						I[k + i] = tmp;
-						j++;
-					}
-
-				}
-
-				for (i = 0; i < j; i++) {
-					V[I[k + i]] = k + j - 1;
-				}
-				if (j == 1) {
-					I[k] = -1;
-				}
-			}
-
-			return;
-		}
-
-		x = V[I[start + len / 2] + h];
-		jj = 0;
-		kk = 0;
-		for (i = start; i < start + len; i++) {
-			if (V[I[i] + h] < x) {
-				jj++;
-			}
-			if (V[I[i] + h] == x) {
-				kk++;
-			}
-		}
-
-		jj += start;
-		kk += jj;
-
-		i = start;
-		j = 0;
-		k = 0;
-		while (i < jj) {
-			if (V[I[i] + h] < x) {
-				i++;
-			} else if (V[I[i] + h] == x) {
-				tmp = I[i];
-				I[i] = I[jj + j];
-				I[jj + j] = tmp;
-				j++;
-			} else {
-				tmp = I[i];
-				I[i] = I[kk + k];
-				I[kk + k] = tmp;
-				k++;
-			}
-
-		}
-
-		while (jj + j < kk) {
-			if (V[I[jj + j] + h] == x) {
-				j++;
-			} else {
-				tmp = I[jj + j];
-				I[jj + j] = I[kk + k];
-				I[kk + k] = tmp;
-				k++;
-			}
-
-		}
-
-		if (jj > start) {
-			split(I, V, start, jj - start, h);
-		}
-
-		for (i = 0; i < kk - jj; i++) {
-			V[I[jj + i]] = kk - 1;
-		}
-
-		if (jj == kk - 1) {
-			I[jj] = -1;
-		}
-
-		if (start + len > kk) {
-			split(I, V, kk, start + len - kk, h);
-		}
-
-	}
-
 	/**
-	 * Fast suffix sporting. Larsson and Sadakane's qsufsort algorithm. See
-	 * http://www.cs.lth.se/Research/Algorithms/Papers/jesper5.ps
-	 * 
-	 * @param I
-	 * @param V
-	 * @param oldBuf
-	 * @param oldsize
+	 * The default number of bytes of the old file that are sorted at once.
+	 * Larger old files are diffed window by window, each window also covering
+	 * a quarter of this size of its neighbours.
 	 */
-	private static void qsufsort(int[] I, int[] V, byte[] oldBuf, int oldsize) {
-
-		// int oldsize = oldBuf.length;
-		int[] buckets = new int[256];
-
-		// No need to do that in Java.
-		// for ( int i = 0; i < 256; i++ ) {
-		// buckets[i] = 0;
-		// }
-
-		for (int i = 0; i < oldsize; i++) {
-			buckets[oldBuf[i] & 0xff]++;
-		}
-
-		for (int i = 1; i < 256; i++) {
-			buckets[i] += buckets[i - 1];
-		}
-
-		for (int i = 255; i > 0; i--) {
-			buckets[i] = buckets[i - 1];
-		}
-
-		buckets[0] = 0;
-
-		for (int i = 0; i < oldsize; i++) {
-			I[++buckets[oldBuf[i] & 0xff]] = i;
-		}
-
-		I[0] = oldsize;
-		for (int i = 0; i < oldsize; i++) {
-			V[i] = buckets[oldBuf[i] & 0xff];
-		}
-		V[oldsize] = 0;
-
-		for (int i = 1; i < 256; i++) {
-			if (buckets[i] == buckets[i - 1] + 1) {
-				I[buckets[i]] = -1;
-			}
-		}
-
-		I[0] = -1;
-
-		for (int h = 1; I[0] != -(oldsize + 1); h += h) {
-			int len = 0;
-			int i;
-			for (i = 0; i < oldsize + 1;) {
-				if (I[i] < 0) {
-					len -= I[i];
-					i -= I[i];
-				} else {
-					// if(len) I[i-len]=-len;
-					if (len != 0) {
-						I[i - len] = -len;
-					}
-					len = V[I[i]] + 1 - i;
-					split(I, V, i, len, h);
-					i += len;
-					len = 0;
-				}
+	public static final int DEFAULT_WINDOW_SIZE = 32 * 1024 * 1024;
 
-			}
-
-			if (len != 0) {
-				I[i - len] = -len;
-			}
-		}
+	/**
+	 * The number of bytes of the new file that are scanned as one task when
+	 * scanning on several threads.
+	 */
+	private static final int CHUNK_SIZE = 4 * 1024 * 1024;
 
-		for (int i = 0; i < oldsize + 1; i++) {
-			I[V[i]] = i;
-		}
-	}
+	private static final int SCRATCH_SIZE = 64 * 1024;
 
 	/**
 	 * Count the number of bytes that match in oldBuf (starting at offset
@@ -249,15 +81,15 @@ public class JBDiff {
 	 * 
 	 * @param oldBuf
 	 * @param oldOffset
+	 * @param oldEnd
 	 * @param newBuf
 	 * @param newOffset
+	 * @param newEnd
 	 * @return
 	 */
-	private final static int matchlen(byte[] oldBuf, int oldSize,
-			int oldOffset, byte[] newBuf, int newSize, int newOffset) {
-		// int end = Math
-		// .min(oldBuf.length - oldOffset, newBuf.length - newOffset);
-		int end = Math.min(oldSize - oldOffset, newSize - newOffset);
+	private final static int matchlen(byte[] oldBuf, int oldOffset,
+			int oldEnd, byte[] newBuf, int newOffset, int newEnd) {
+		int end = Math.min(oldEnd - oldOffset, newEnd - newOffset);
 		for (int i = 0; i < end; i++) {
 			if (oldBuf[oldOffset + i] != newBuf[newOffset + i]) {
 				return i;
@@ -266,34 +98,54 @@ public class JBDiff {
 		return end;
 	}
 
-	private final static int search(int[] I, byte[] oldBuf, int oldSize,
-			byte[] newBuf, int newSize, int newBufOffset, int start, int end,
-			IntByRef pos) {
+	/**
+	 * Equiv of C library memcmp() over the shorter of the two ranges, as
+	 * {@link Util#memcmp(byte[], int, int, byte[], int, int)}.
+	 */
+	private final static int memcmp(byte[] oldBuf, int oldOffset, int oldEnd,
+			byte[] newBuf, int newOffset, int newEnd) {
+		int n = Math.min(oldEnd - oldOffset, newEnd - newOffset);
+		for (int i = 0; i < n; i++) {
+			if (oldBuf[oldOffset + i] != newBuf[newOffset + i]) {
+				return oldBuf[oldOffset + i] < newBuf[newOffset + i] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
 
-		if (end - start < 2) {
-			int x = matchlen(oldBuf, oldSize, I[start], newBuf, newSize,
-					newBufOffset);
-			int y = matchlen(oldBuf, oldSize, I[end], newBuf, newSize,
-					newBufOffset);
+	/**
+	 * Finds the longest match of the new file at newOffset among the sorted
+	 * suffixes of the old window.
+	 */
+	private final static int search(int[] I, byte[] oldBuf, int oldBase,
+			int oldLength, byte[] newBuf, int newOffset, int newEnd,
+			IntByRef pos) {
 
-			if (x > y) {
-				pos.value = I[start];
-				return x;
+		int oldEnd = oldBase + oldLength;
+		int start = 0;
+		int end = oldLength;
+		while (end - start >= 2) {
+			int x = start + (end - start) / 2;
+			if (memcmp(oldBuf, oldBase + I[x], oldEnd, newBuf, newOffset,
+					newEnd) < 0) {
+				start = x;
 			} else {
-				pos.value = I[end];
-				return y;
+				end = x;
 			}
 		}
 
-		int x = start + (end - start) / 2;
-		if (Util.memcmp(oldBuf, oldSize, I[x], newBuf, newSize, newBufOffset) < 0) {
-			return search(I, oldBuf, oldSize, newBuf, newSize, newBufOffset, x,
-					end, pos);
+		int x = matchlen(oldBuf, oldBase + I[start], oldEnd, newBuf,
+				newOffset, newEnd);
+		int y = matchlen(oldBuf, oldBase + I[end], oldEnd, newBuf, newOffset,
+				newEnd);
+
+		if (x > y) {
+			pos.value = I[start];
+			return x;
 		} else {
-			return search(I, oldBuf, oldSize, newBuf, newSize, newBufOffset,
-					start, x, pos);
+			pos.value = I[end];
+			return y;
 		}
-
 	}
 
 	/**
@@ -306,15 +158,25 @@ public class JBDiff {
 			throws IOException {
 		InputStream oldInputStream = new BufferedInputStream(
 				new FileInputStream(oldFile));
+		int oldsize = (int) oldFile.length();
+		byte[] oldBuf = new byte[oldsize];
+		Util.readFromStream(oldInputStream, oldBuf, 0, oldsize);
+		oldInputStream.close();
+
 		InputStream newInputStream = new BufferedInputStream(
 				new FileInputStream(newFile));
-		OutputStream diffOutputStream = new FileOutputStream(diffFile);
-
-		byte[] diffBytes = bsdiff(oldInputStream, (int) oldFile.length(),
-				newInputStream, (int) newFile.length());
+		int newsize = (int) newFile.length();
+		byte[] newBuf = new byte[newsize];
+		Util.readFromStream(newInputStream, newBuf, 0, newsize);
+		newInputStream.close();
 
-		diffOutputStream.write(diffBytes);
-		diffOutputStream.close();
+		OutputStream diffOutputStream = new BufferedOutputStream(
+				new FileOutputStream(diffFile));
+		try {
+			bsdiff(oldBuf, oldsize, newBuf, newsize, diffOutputStream);
+		} finally {
+			diffOutputStream.close();
+		}
 	}
 
 	/**
@@ -350,263 +212,445 @@ public class JBDiff {
 	 */
 	public static byte[] bsdiff(byte[] oldBuf, int oldsize, byte[] newBuf,
 			int newsize) throws IOException {
+		ByteArrayOutputStream diffOut = new ByteArrayOutputStream();
+		bsdiff(oldBuf, oldsize, newBuf, newsize, diffOut);
+		return diffOut.toByteArray();
+	}
 
-		int[] I = new int[oldsize + 1];
-		qsufsort(I, new int[oldsize + 1], oldBuf, oldsize);
-
-		// diff block
-		int dblen = 0;
-		byte[] db = new byte[newsize];
-
-		// extra block
-		int eblen = 0;
-		byte[] eb = new byte[newsize];
-
-		/*
-		 * Diff file is composed as follows:
-		 * 
-		 * Header (32 bytes) Data (from offset 32 to end of file)
-		 * 
-		 * Header: Offset 0, length 8 bytes: file magic "jbdiff40" Offset 8,
-		 * length 8 bytes: length of compressed ctrl block Offset 16, length 8
-		 * bytes: length of compressed diff block Offset 24, length 8 bytes:
-		 * length of new file
-		 * 
-		 * Data: 32 (length ctrlBlockLen): ctrlBlock (bzip2) 32+ctrlBlockLen
-		 * (length diffBlockLen): diffBlock (bzip2) 32+ctrlBlockLen+diffBlockLen
-		 * (to end of file): extraBlock (bzip2)
-		 * 
-		 * ctrlBlock comprises a set of records, each record 12 bytes. A record
-		 * comprises 3 x 32 bit integers. The ctrlBlock is not compressed.
-		 */
+	/**
+	 * Writes the diff to the given stream, which is not closed. The old file
+	 * is sorted in windows of {@link #DEFAULT_WINDOW_SIZE} bytes, and the new
+	 * file is scanned on as many threads as there are processors.
+	 * 
+	 * @param oldBuf
+	 * @param oldsize
+	 * @param newBuf
+	 * @param newsize
+	 * @param diffOut
+	 * @throws IOException
+	 */
+	public static void bsdiff(byte[] oldBuf, int oldsize, byte[] newBuf,
+			int newsize, OutputStream diffOut) throws IOException {
+		bsdiff(oldBuf, oldsize, newBuf, newsize, diffOut,
+				DEFAULT_WINDOW_SIZE, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Writes the diff to the given stream, which is not closed.
+	 * 
+	 * <p>
+	 * The suffix array, four bytes per byte, is built for one window of the
+	 * old file at a time. The new file is split among the windows in
+	 * proportion, so windowing suits files that changed in place; old files
+	 * that fit a single window give the best diffs. Each scanning thread holds
+	 * the uncompressed records of up to two chunks of the new file.
+	 * </p>
+	 * 
+	 * @param oldBuf
+	 * @param oldsize
+	 * @param newBuf
+	 * @param newsize
+	 * @param diffOut
+	 * @param windowSize
+	 *            the number of bytes of the old file sorted at once
+	 * @param threads
+	 *            the number of threads scanning the new file
+	 * @throws IOException
+	 */
+	public static void bsdiff(byte[] oldBuf, int oldsize, byte[] newBuf,
+			int newsize, OutputStream diffOut, int windowSize, int threads)
+			throws IOException {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("windowSize: " + windowSize);
+		}
+
+		PatchWriter writer = new PatchWriter(newsize);
+		int windows = oldsize <= windowSize ? 1
+				: (int) (((long) oldsize + windowSize - 1) / windowSize);
+		int overlap = windows == 1 ? 0 : windowSize / 4;
+		for (int w = 0; w < windows; w++) {
+			int newStart = (int) ((long) newsize * w / windows);
+			int newEnd = (int) ((long) newsize * (w + 1) / windows);
+			if (newStart == newEnd) {
+				continue;
+			}
+			int oldStart = Math.max(0, (int) ((long) oldsize * w / windows)
+					- overlap);
+			int oldEnd = Math.min(oldsize,
+					(int) ((long) oldsize * (w + 1) / windows) + overlap);
+
+			int[] I = SuffixArray.sort(oldBuf, oldStart, oldEnd - oldStart);
+			Window window = new Window(I, oldBuf, oldStart, oldEnd - oldStart,
+					newBuf, newStart, newEnd);
+			if (threads <= 1 || newEnd - newStart <= CHUNK_SIZE) {
+				writer.seekTo(oldStart);
+				window.scan(newStart, newEnd, 0, writer);
+			} else {
+				new ParallelScan(window, threads).run(writer);
+			}
+		}
+		writer.writeTo(diffOut);
+	}
+
+	/**
+	 * Run JBDiff from the command line. Params: oldfile newfile difffile. diff
+	 * file will be created.
+	 * 
+	 * @param arg
+	 * @throws IOException
+	 */
+	public static void main(String[] arg) throws IOException {
 
-		ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-		DataOutputStream diffOut = new DataOutputStream(byteOut);
+		if (arg.length != 3) {
+			System.err
+					.println("usage example: java -Xmx200m ie.wombat.jbdiff.JBDiff oldfile newfile patchfile\n");
+			return;
+		}
 
-		/*
-		 * Write as much of header as we have now. Size of ctrlBlock and
-		 * diffBlock must be filled in later.
+		File oldFile = new File(arg[0]);
+		File newFile = new File(arg[1]);
+		File diffFile = new File(arg[2]);
+
+		bsdiff(oldFile, newFile, diffFile);
+
+	}
+
+	private static class IntByRef {
+		private int value;
+	}
+
+	/**
+	 * A window of the old file with its sorted suffixes, and the part of the
+	 * new file that is diffed against it.
+	 */
+	private static final class Window {
+		final int[] I;
+		final byte[] oldBuf;
+		final int oldBase;
+		final int oldLength;
+		final byte[] newBuf;
+		final int newStart;
+		final int newEnd;
+
+		Window(int[] I, byte[] oldBuf, int oldBase, int oldLength,
+				byte[] newBuf, int newStart, int newEnd) {
+			this.I = I;
+			this.oldBuf = oldBuf;
+			this.oldBase = oldBase;
+			this.oldLength = oldLength;
+			this.newBuf = newBuf;
+			this.newStart = newStart;
+			this.newEnd = newEnd;
+		}
+
+		/**
+		 * Returns the position in the window of the old file to start from
+		 * when scanning the new file from the given position.
 		 */
-		diffOut.write(MAGIC_BYTES);
-		diffOut.writeLong(-1); // place holder for ctrlBlockLen
-		diffOut.writeLong(-1); // place holder for diffBlockLen
-		diffOut.writeLong(newsize);
-		diffOut.flush();
+		int startPos(int scan) {
+			return (int) ((long) (scan - newStart) * oldLength / (newEnd - newStart));
+		}
 
-		GZIPOutputStream bzip2Out = new GZIPOutputStream(diffOut);
-		DataOutputStream dataOut = new DataOutputStream(bzip2Out);
+		/**
+		 * Adds the records covering the new file from start to end to the
+		 * sink. The first record starts at startPos in the window of the old
+		 * file.
+		 */
+		void scan(int start, int end, int startPos, PatchSink sink)
+				throws IOException {
+			byte[] scratch = new byte[SCRATCH_SIZE];
 
-		int oldscore, scsc;
+			int oldscore, scsc;
 
-		int overlap, Ss, lens;
-		int i;
-		int scan = 0;
-		int len = 0;
-		int lastscan = 0;
-		int lastpos = 0;
-		int lastoffset = 0;
+			int overlap, Ss, lens;
+			int i;
+			int scan = start;
+			int len = 0;
+			int lastscan = start;
+			int lastpos = startPos;
+			int lastoffset = startPos - start;
 
-		IntByRef pos = new IntByRef();
-		// int ctrlBlockLen = 0;
+			IntByRef pos = new IntByRef();
 
-		while (scan < newsize) {
-			oldscore = 0;
+			while (scan < end) {
+				oldscore = 0;
 
-			for (scsc = scan += len; scan < newsize; scan++) {
+				for (scsc = scan += len; scan < end; scan++) {
 
-				len = search(I, oldBuf, oldsize, newBuf, newsize, scan, 0,
-						oldsize, pos);
+					len = search(I, oldBuf, oldBase, oldLength, newBuf, scan,
+							end, pos);
 
-				for (; scsc < scan + len; scsc++) {
-					if ((scsc + lastoffset < oldsize)
-							&& (oldBuf[scsc + lastoffset] == newBuf[scsc])) {
-						oldscore++;
+					for (; scsc < scan + len; scsc++) {
+						if ((scsc + lastoffset < oldLength)
+								&& (oldBuf[oldBase + scsc + lastoffset] == newBuf[scsc])) {
+							oldscore++;
+						}
 					}
-				}
-
-				if (((len == oldscore) && (len != 0)) || (len > oldscore + 8)) {
-					break;
-				}
 
-				if ((scan + lastoffset < oldsize)
-						&& (oldBuf[scan + lastoffset] == newBuf[scan])) {
-					oldscore--;
-				}
-			}
+					if (((len == oldscore) && (len != 0))
+							|| (len > oldscore + 8)) {
+						break;
+					}
 
-			if ((len != oldscore) || (scan == newsize)) {
-				int s = 0;
-				int Sf = 0;
-				int lenf = 0;
-				for (i = 0; (lastscan + i < scan) && (lastpos + i < oldsize);) {
-					if (oldBuf[lastpos + i] == newBuf[lastscan + i])
-						s++;
-					i++;
-					if (s * 2 - i > Sf * 2 - lenf) {
-						Sf = s;
-						lenf = i;
+					if ((scan + lastoffset < oldLength)
+							&& (oldBuf[oldBase + scan + lastoffset] == newBuf[scan])) {
+						oldscore--;
 					}
 				}
 
-				int lenb = 0;
-				if (scan < newsize) {
-					s = 0;
-					int Sb = 0;
-					for (i = 1; (scan >= lastscan + i) && (pos.value >= i); i++) {
-						if (oldBuf[pos.value - i] == newBuf[scan - i])
+				if ((len != oldscore) || (scan == end)) {
+					int s = 0;
+					int Sf = 0;
+					int lenf = 0;
+					for (i = 0; (lastscan + i < scan)
+							&& (lastpos + i < oldLength);) {
+						if (oldBuf[oldBase + lastpos + i] == newBuf[lastscan + i])
 							s++;
-						if (s * 2 - i > Sb * 2 - lenb) {
-							Sb = s;
-							lenb = i;
+						i++;
+						if (s * 2 - i > Sf * 2 - lenf) {
+							Sf = s;
+							lenf = i;
 						}
 					}
-				}
 
-				if (lastscan + lenf > scan - lenb) {
-					overlap = (lastscan + lenf) - (scan - lenb);
-					s = 0;
-					Ss = 0;
-					lens = 0;
-					for (i = 0; i < overlap; i++) {
-						if (newBuf[lastscan + lenf - overlap + i] == oldBuf[lastpos
-								+ lenf - overlap + i]) {
-							s++;
-						}
-						if (newBuf[scan - lenb + i] == oldBuf[pos.value - lenb
-								+ i]) {
-							s--;
-						}
-						if (s > Ss) {
-							Ss = s;
-							lens = i + 1;
+					int lenb = 0;
+					if (scan < end) {
+						s = 0;
+						int Sb = 0;
+						for (i = 1; (scan >= lastscan + i) && (pos.value >= i); i++) {
+							if (oldBuf[oldBase + pos.value - i] == newBuf[scan - i])
+								s++;
+							if (s * 2 - i > Sb * 2 - lenb) {
+								Sb = s;
+								lenb = i;
+							}
 						}
 					}
 
-					lenf += lens - overlap;
-					lenb -= lens;
-				}
+					if (lastscan + lenf > scan - lenb) {
+						overlap = (lastscan + lenf) - (scan - lenb);
+						s = 0;
+						Ss = 0;
+						lens = 0;
+						for (i = 0; i < overlap; i++) {
+							if (newBuf[lastscan + lenf - overlap + i] == oldBuf[oldBase
+									+ lastpos + lenf - overlap + i]) {
+								s++;
+							}
+							if (newBuf[scan - lenb + i] == oldBuf[oldBase
+									+ pos.value - lenb + i]) {
+								s--;
+							}
+							if (s > Ss) {
+								Ss = s;
+								lens = i + 1;
+							}
+						}
 
-				// ? byte casting introduced here -- might affect things
-				for (i = 0; i < lenf; i++) {
-					db[dblen + i] = (byte) (newBuf[lastscan + i] - oldBuf[lastpos
-							+ i]);
-				}
+						lenf += lens - overlap;
+						lenb -= lens;
+					}
 
-				for (i = 0; i < (scan - lenb) - (lastscan + lenf); i++) {
-					eb[eblen + i] = newBuf[lastscan + lenf + i];
-				}
+					// ? byte casting introduced here -- might affect things
+					for (int done = 0; done < lenf;) {
+						int count = Math.min(lenf - done, scratch.length);
+						for (i = 0; i < count; i++) {
+							scratch[i] = (byte) (newBuf[lastscan + done + i] - oldBuf[oldBase
+									+ lastpos + done + i]);
+						}
+						sink.addDiff(scratch, 0, count);
+						done += count;
+					}
 
-				dblen += lenf;
-				eblen += (scan - lenb) - (lastscan + lenf);
-
-				/*
-				 * Write control block entry (3 x int)
-				 */
-				// diffOut.writeInt( lenf );
-				// diffOut.writeInt( ( scan - lenb ) - ( lastscan + lenf ) );
-				// diffOut.writeInt( ( pos[0] - lenb ) - ( lastpos + lenf ) );
-				// ctrlBlockLen += 12;
-				dataOut.writeInt(lenf);
-				dataOut.writeInt((scan - lenb) - (lastscan + lenf));
-				dataOut.writeInt((pos.value - lenb) - (lastpos + lenf));
-
-				lastscan = scan - lenb;
-				lastpos = pos.value - lenb;
-				lastoffset = pos.value - scan;
-			} // end if
-		} // end while loop
-
-		dataOut.flush();
-		bzip2Out.finish();
-
-		// now compressed ctrlBlockLen
-		int ctrlBlockLen = diffOut.size() - Util.HEADER_SIZE;
-		// System.err.println( "Diff: ctrlBlockLen=" + ctrlBlockLen );
-
-		// GZIPOutputStream gzOut;
-
-		/*
-		 * Write diff block
-		 */
-		// gzOut = new GZIPOutputStream( diffOut );
-		bzip2Out = new GZIPOutputStream(diffOut);
-		bzip2Out.write(db, 0, dblen);
-		bzip2Out.finish();
-		bzip2Out.flush();
-		int diffBlockLen = diffOut.size() - ctrlBlockLen - Util.HEADER_SIZE;
-		// System.err.println( "Diff: diffBlockLen=" + diffBlockLen );
-
-		/*
-		 * Write extra block
-		 */
-		// gzOut = new GZIPOutputStream( diffOut );
-		bzip2Out = new GZIPOutputStream(diffOut);
-		bzip2Out.write(eb, 0, eblen);
-		bzip2Out.finish();
-		bzip2Out.flush();
-		// long extraBlockLen = diffOut.size() - diffBlockLen - ctrlBlockLen -
-		// HEADER_SIZE;
-		// System.err.println( "Diff: extraBlockLen=" + extraBlockLen );
-
-		diffOut.close();
-
-		/*
-		 * Write missing header info.
-		 */
-		ByteArrayOutputStream byteHeaderOut = new ByteArrayOutputStream(
-				Util.HEADER_SIZE);
-		DataOutputStream headerOut = new DataOutputStream(byteHeaderOut);
-		headerOut.write(MAGIC_BYTES);
-		headerOut.writeLong(ctrlBlockLen); // place holder for ctrlBlockLen
-		headerOut.writeLong(diffBlockLen); // place holder for diffBlockLen
-		headerOut.writeLong(newsize);
-		headerOut.close();
-
-		// Copy header information into the diff
-		byte[] diffBytes = byteOut.toByteArray();
-		byte[] headerBytes = byteHeaderOut.toByteArray();
-
-		System.arraycopy(headerBytes, 0, diffBytes, 0, headerBytes.length);
-
-		return diffBytes;
-		// /*
-		// * Write missing header info. Need to reopen the file with
-		// RandomAccessFile
-		// * for this.
-		// */
-		// RandomAccessFile diff = new RandomAccessFile( diffFile, "rw" );
-		// diff.seek( 8 );
-		// diff.writeLong( ctrlBlockLen ); // ctrlBlockLen (compressed) @offset
-		// 8
-		// diff.writeLong( diffBlockLen ); // diffBlockLen (compressed) @offset
-		// 16
-		// diff.close();
+					int extra = (scan - lenb) - (lastscan + lenf);
+					if (extra > 0) {
+						sink.addExtra(newBuf, lastscan + lenf, extra);
+					}
+
+					/*
+					 * Write control block entry (3 x int)
+					 */
+					sink.addControl(lenf, extra, (pos.value - lenb)
+							- (lastpos + lenf));
+
+					lastscan = scan - lenb;
+					lastpos = pos.value - lenb;
+					lastoffset = pos.value - scan;
+				} // end if
+			} // end while loop
+		}
 	}
 
 	/**
-	 * Run JBDiff from the command line. Params: oldfile newfile difffile. diff
-	 * file will be created.
-	 * 
-	 * @param arg
-	 * @throws IOException
+	 * The records of a chunk of the new file, held until the chunks before
+	 * it are written.
 	 */
-	public static void main(String[] arg) throws IOException {
+	private static final class Chunk extends PatchSink {
+		final int startPos;
+		private int[] ctrl = new int[3 * 256];
+		private int ctrlLength;
+		private byte[] diff = new byte[SCRATCH_SIZE];
+		private int diffLength;
+		private byte[] extra = new byte[SCRATCH_SIZE];
+		private int extraLength;
+
+		Chunk(int startPos) {
+			this.startPos = startPos;
+		}
 
-		if (arg.length != 3) {
-			System.err
-					.println("usage example: java -Xmx200m ie.wombat.jbdiff.JBDiff oldfile newfile patchfile\n");
-			return;
+		void addControl(int diffLength, int extraLength, int seek) {
+			if (ctrlLength + 3 > ctrl.length) {
+				int[] grown = new int[ctrl.length * 2];
+				System.arraycopy(ctrl, 0, grown, 0, ctrlLength);
+				ctrl = grown;
+			}
+			ctrl[ctrlLength++] = diffLength;
+			ctrl[ctrlLength++] = extraLength;
+			ctrl[ctrlLength++] = seek;
 		}
 
-		File oldFile = new File(arg[0]);
-		File newFile = new File(arg[1]);
-		File diffFile = new File(arg[2]);
+		void addDiff(byte[] buf, int offset, int length) {
+			diff = ensureCapacity(diff, diffLength + length);
+			System.arraycopy(buf, offset, diff, diffLength, length);
+			diffLength += length;
+		}
 
-		bsdiff(oldFile, newFile, diffFile);
+		void addExtra(byte[] buf, int offset, int length) {
+			extra = ensureCapacity(extra, extraLength + length);
+			System.arraycopy(buf, offset, extra, extraLength, length);
+			extraLength += length;
+		}
+
+		private static byte[] ensureCapacity(byte[] buf, int length) {
+			if (length <= buf.length) {
+				return buf;
+			}
+			byte[] grown = new byte[Math.max(length, buf.length * 2)];
+			System.arraycopy(buf, 0, grown, 0, buf.length);
+			return grown;
+		}
 
+		void writeTo(PatchWriter writer) throws IOException {
+			for (int i = 0; i < ctrlLength; i += 3) {
+				writer.addControl(ctrl[i], ctrl[i + 1], ctrl[i + 2]);
+			}
+			writer.addDiff(diff, 0, diffLength);
+			writer.addExtra(extra, 0, extraLength);
+		}
 	}
 
-	private static class IntByRef {
-		private int value;
+	/**
+	 * Scans the chunks of a window on several threads while the calling
+	 * thread writes them in order. Scanning stays at most two chunks per
+	 * thread ahead of writing, which bounds the memory held by the chunks.
+	 */
+	private static final class ParallelScan implements Runnable {
+		private final Window window;
+		private final int threads;
+		private final int chunks;
+		private final Chunk[] results;
+		private int next;
+		private int written;
+		private Throwable failure;
+		private boolean done;
+
+		ParallelScan(Window window, int threads) {
+			this.window = window;
+			this.chunks = (int) (((long) window.newEnd - window.newStart
+					+ CHUNK_SIZE - 1) / CHUNK_SIZE);
+			this.threads = Math.min(threads, chunks);
+			this.results = new Chunk[chunks];
+		}
+
+		void run(PatchWriter writer) throws IOException {
+			for (int i = 0; i < threads; i++) {
+				Thread thread = new Thread(this, "JBDiff scanner " + i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+			try {
+				for (int c = 0; c < chunks; c++) {
+					Chunk chunk;
+					synchronized (this) {
+						while (results[c] == null && failure == null) {
+							try {
+								wait();
+							} catch (InterruptedException e) {
+								throw new InterruptedIOException();
+							}
+						}
+						if (failure != null) {
+							rethrow(failure);
+						}
+						chunk = results[c];
+						results[c] = null;
+						written++;
+						notifyAll();
+					}
+					writer.seekTo(window.oldBase + chunk.startPos);
+					chunk.writeTo(writer);
+				}
+			} finally {
+				synchronized (this) {
+					done = true;
+					notifyAll();
+				}
+			}
+		}
+
+		public void run() {
+			while (true) {
+				int c;
+				synchronized (this) {
+					while (!done && failure == null && next < chunks
+							&& next - written >= 2 * threads) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							failure = e;
+							notifyAll();
+							return;
+						}
+					}
+					if (done || failure != null || next >= chunks) {
+						return;
+					}
+					c = next++;
+				}
+				try {
+					int start = window.newStart + c * CHUNK_SIZE;
+					int end = Math.min(window.newEnd, start + CHUNK_SIZE);
+					Chunk chunk = new Chunk(window.startPos(start));
+					window.scan(start, end, chunk.startPos, chunk);
+					synchronized (this) {
+						results[c] = chunk;
+						notifyAll();
+					}
+				} catch (Throwable t) {
+					synchronized (this) {
+						if (failure == null) {
+							failure = t;
+						}
+						notifyAll();
+					}
+					return;
+				}
+			}
+		}
+
+		private static void rethrow(Throwable failure) throws IOException {
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			}
+			IOException e = new InterruptedIOException();
+			e.initCause(failure);
+			throw e;
+		}
 	}
 }
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package ie.wombat.jbdiff;
+
+import java.io.IOException;
+
+/**
+ * Receives the records of a patch as they are computed.
+ */
+abstract class PatchSink {
+
+	/**
+	 * Adds a control record: copy <code>diffLength</code> bytes from the
+	 * diff block added to the old file, then <code>extraLength</code> bytes
+	 * from the extra block, then move <code>seek</code> bytes in the old file.
+	 */
+	abstract void addControl(int diffLength, int extraLength, int seek)
+			throws IOException;
+
+	abstract void addDiff(byte[] buf, int offset, int length)
+			throws IOException;
+
+	abstract void addExtra(byte[] buf, int offset, int length)
+			throws IOException;
+}
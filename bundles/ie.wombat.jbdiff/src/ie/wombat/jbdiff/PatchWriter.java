@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package ie.wombat.jbdiff;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a patch in the format read by {@link JBPatch}.
+ *
+ * <p>
+ * The control, diff and extra blocks are compressed as the records are added,
+ * so only their compressed form is held until the patch is written, instead of
+ * two buffers the size of the new file.
+ * </p>
+ *
+ * <pre>
+ * Header (32 bytes):
+ *   offset 0,  length 8: magic "jbdiff40"
+ *   offset 8,  length 8: length of the compressed control block
+ *   offset 16, length 8: length of the compressed diff block
+ *   offset 24, length 8: length of the new file
+ * Data:
+ *   control block (gzip): records of 3 x 32 bit integers
+ *   diff block (gzip)
+ *   extra block (gzip)
+ * </pre>
+ */
+class PatchWriter extends PatchSink {
+
+	// This is "jbdiff40".
+	private static final byte[] MAGIC_BYTES = new byte[] { 0x6a, 0x62, 0x64,
+			0x69, 0x66, 0x66, 0x34, 0x30 };
+
+	private final int newsize;
+
+	private final ByteArrayOutputStream ctrlBytes = new ByteArrayOutputStream();
+	private final GZIPOutputStream ctrlZip;
+	private final DataOutputStream ctrlOut;
+
+	private final ByteArrayOutputStream diffBytes = new ByteArrayOutputStream();
+	private final GZIPOutputStream diffOut;
+
+	private final ByteArrayOutputStream extraBytes = new ByteArrayOutputStream();
+	private final GZIPOutputStream extraOut;
+
+	/**
+	 * The position in the old file the patch has moved to.
+	 */
+	private long oldpos;
+
+	PatchWriter(int newsize) throws IOException {
+		this.newsize = newsize;
+		ctrlZip = new GZIPOutputStream(ctrlBytes);
+		ctrlOut = new DataOutputStream(ctrlZip);
+		diffOut = new GZIPOutputStream(diffBytes);
+		extraOut = new GZIPOutputStream(extraBytes);
+	}
+
+	void addControl(int diffLength, int extraLength, int seek)
+			throws IOException {
+		ctrlOut.writeInt(diffLength);
+		ctrlOut.writeInt(extraLength);
+		ctrlOut.writeInt(seek);
+		oldpos += diffLength + seek;
+	}
+
+	void addDiff(byte[] buf, int offset, int length) throws IOException {
+		diffOut.write(buf, offset, length);
+	}
+
+	void addExtra(byte[] buf, int offset, int length) throws IOException {
+		extraOut.write(buf, offset, length);
+	}
+
+	/**
+	 * Moves the position in the old file to the given one with a record that
+	 * adds no data, so that records computed independently of the previous
+	 * ones can follow.
+	 */
+	void seekTo(long pos) throws IOException {
+		if (pos != oldpos)
+			addControl(0, 0, (int) (pos - oldpos));
+	}
+
+	/**
+	 * Writes the patch to the given stream, which is not closed.
+	 */
+	void writeTo(OutputStream out) throws IOException {
+		ctrlOut.flush();
+		ctrlZip.finish();
+		diffOut.finish();
+		extraOut.finish();
+
+		DataOutputStream headerOut = new DataOutputStream(out);
+		headerOut.write(MAGIC_BYTES);
+		headerOut.writeLong(ctrlBytes.size());
+		headerOut.writeLong(diffBytes.size());
+		headerOut.writeLong(newsize);
+		headerOut.flush();
+
+		ctrlBytes.writeTo(out);
+		diffBytes.writeTo(out);
+		extraBytes.writeTo(out);
+		out.flush();
+	}
+}
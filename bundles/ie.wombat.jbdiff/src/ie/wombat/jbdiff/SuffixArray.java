@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package ie.wombat.jbdiff;
+
+/**
+ * Suffix array construction by induced sorting (SA-IS, Nong, Zhang and Chan,
+ * "Linear Suffix Array Construction by Almost Pure Induced-Sorting").
+ *
+ * <p>
+ * It replaces the qsufsort of bsdiff: the result is the same, but it is
+ * computed in linear time and needs a single <code>int</code> per byte instead
+ * of two.
+ * </p>
+ */
+final class SuffixArray {
+
+	/**
+	 * The characters of a text, ending with a unique sentinel that is smaller
+	 * than all other characters.
+	 */
+	private static abstract class Text {
+		abstract int get(int i);
+	}
+
+	/**
+	 * A range of bytes followed by a virtual sentinel. The bytes are compared
+	 * unsigned, and shifted by one to make room for the sentinel.
+	 */
+	private static final class ByteText extends Text {
+		private final byte[] buf;
+		private final int offset;
+		private final int length;
+
+		ByteText(byte[] buf, int offset, int length) {
+			this.buf = buf;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		int get(int i) {
+			return i == length ? 0 : (buf[offset + i] & 0xff) + 1;
+		}
+	}
+
+	/**
+	 * The reduced text of a recursion level, stored at the end of the suffix
+	 * array of the level above.
+	 */
+	private static final class IntText extends Text {
+		private final int[] buf;
+		private final int offset;
+
+		IntText(int[] buf, int offset) {
+			this.buf = buf;
+			this.offset = offset;
+		}
+
+		int get(int i) {
+			return buf[offset + i];
+		}
+	}
+
+	private SuffixArray() {
+		// static helpers only
+	}
+
+	/**
+	 * Sorts the suffixes of the given range of bytes.
+	 *
+	 * @return an array of <code>length + 1</code> suffix offsets relative to
+	 *         <code>offset</code>, starting with the empty suffix
+	 *         <code>length</code>
+	 */
+	static int[] sort(byte[] buf, int offset, int length) {
+		int[] sa = new int[length + 1];
+		sais(new ByteText(buf, offset, length), sa, length + 1, 257);
+		return sa;
+	}
+
+	private static void sais(Text s, int[] sa, int n, int k) {
+		if (n == 1) {
+			sa[0] = 0;
+			return;
+		}
+
+		// classify the suffixes: a set bit is an S-type suffix, a cleared one
+		// an L-type suffix
+		int[] types = new int[(n + 31) >>> 5];
+		setType(types, n - 1);
+		for (int i = n - 3; i >= 0; i--) {
+			int c = s.get(i);
+			int next = s.get(i + 1);
+			if (c < next || (c == next && isType(types, i + 1)))
+				setType(types, i);
+		}
+
+		// sort the LMS substrings
+		int[] buckets = new int[k];
+		getBuckets(s, buckets, n, k, true);
+		for (int i = 0; i < n; i++)
+			sa[i] = -1;
+		for (int i = 1; i < n; i++) {
+			if (isLMS(types, i))
+				sa[--buckets[s.get(i)]] = i;
+		}
+		induceL(s, types, sa, buckets, n, k);
+		induceS(s, types, sa, buckets, n, k);
+
+		// move the sorted LMS substrings to the front
+		int n1 = 0;
+		for (int i = 0; i < n; i++) {
+			if (isLMS(types, sa[i]))
+				sa[n1++] = sa[i];
+		}
+
+		// name the LMS substrings, LMS positions are at least two apart so
+		// half of them is a unique slot
+		for (int i = n1; i < n; i++)
+			sa[i] = -1;
+		int name = 0;
+		int prev = -1;
+		for (int i = 0; i < n1; i++) {
+			int pos = sa[i];
+			boolean diff = false;
+			for (int d = 0; d < n; d++) {
+				if (prev == -1 || s.get(pos + d) != s.get(prev + d) || isType(types, pos + d) != isType(types, prev + d)) {
+					diff = true;
+					break;
+				} else if (d > 0 && (isLMS(types, pos + d) || isLMS(types, prev + d))) {
+					break;
+				}
+			}
+			if (diff) {
+				name++;
+				prev = pos;
+			}
+			sa[n1 + (pos >>> 1)] = name - 1;
+		}
+		for (int i = n - 1, j = n - 1; i >= n1; i--) {
+			if (sa[i] >= 0)
+				sa[j--] = sa[i];
+		}
+
+		// sort the LMS suffixes, recursing while their names are not unique
+		Text s1 = new IntText(sa, n - n1);
+		if (name < n1) {
+			sais(s1, sa, n1, name);
+		} else {
+			for (int i = 0; i < n1; i++)
+				sa[s1.get(i)] = i;
+		}
+
+		// induce the order of all suffixes from the sorted LMS suffixes
+		for (int i = 1, j = n - n1; i < n; i++) {
+			if (isLMS(types, i))
+				sa[j++] = i;
+		}
+		for (int i = 0; i < n1; i++)
+			sa[i] = sa[n - n1 + sa[i]];
+		for (int i = n1; i < n; i++)
+			sa[i] = -1;
+		getBuckets(s, buckets, n, k, true);
+		for (int i = n1 - 1; i >= 0; i--) {
+			int j = sa[i];
+			sa[i] = -1;
+			sa[--buckets[s.get(j)]] = j;
+		}
+		induceL(s, types, sa, buckets, n, k);
+		induceS(s, types, sa, buckets, n, k);
+	}
+
+	private static void induceL(Text s, int[] types, int[] sa, int[] buckets, int n, int k) {
+		getBuckets(s, buckets, n, k, false);
+		for (int i = 0; i < n; i++) {
+			int j = sa[i] - 1;
+			if (j >= 0 && !isType(types, j))
+				sa[buckets[s.get(j)]++] = j;
+		}
+	}
+
+	private static void induceS(Text s, int[] types, int[] sa, int[] buckets, int n, int k) {
+		getBuckets(s, buckets, n, k, true);
+		for (int i = n - 1; i >= 0; i--) {
+			int j = sa[i] - 1;
+			if (j >= 0 && isType(types, j))
+				sa[--buckets[s.get(j)]] = j;
+		}
+	}
+
+	/**
+	 * Computes the start or the end (exclusive) of the bucket of each
+	 * character.
+	 */
+	private static void getBuckets(Text s, int[] buckets, int n, int k, boolean end) {
+		for (int i = 0; i < k; i++)
+			buckets[i] = 0;
+		for (int i = 0; i < n; i++)
+			buckets[s.get(i)]++;
+		int sum = 0;
+		for (int i = 0; i < k; i++) {
+			sum += buckets[i];
+			buckets[i] = end ? sum : sum - buckets[i];
+		}
+	}
+
+	private static boolean isType(int[] types, int i) {
+		return (types[i >>> 5] & (1 << (i & 31))) != 0;
+	}
+
+	private static void setType(int[] types, int i) {
+		types[i >>> 5] |= 1 << (i & 31);
+	}
+
+	private static boolean isLMS(int[] types, int i) {
+		return i > 0 && isType(types, i) && !isType(types, i - 1);
+	}
+}
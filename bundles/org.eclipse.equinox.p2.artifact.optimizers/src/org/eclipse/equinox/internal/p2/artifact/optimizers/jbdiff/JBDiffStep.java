@@ -14,7 +14,6 @@ package org.eclipse.equinox.internal.p2.artifact.optimizers.jbdiff;
 import ie.wombat.jbdiff.JBDiff;
 import java.io.*;
 import org.eclipse.equinox.internal.p2.artifact.optimizers.AbstractDeltaStep;
-import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.internal.p2.sar.DirectByteArrayOutputStream;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
@@ -41,14 +40,9 @@ public class JBDiffStep extends AbstractDeltaStep {
 	protected void performProcessing() throws IOException {
 		DirectByteArrayOutputStream predecessor = fetchPredecessorBytes(new ArtifactDescriptor(key));
 		DirectByteArrayOutputStream current = (DirectByteArrayOutputStream) incomingStream;
-		byte[] diff = JBDiff.bsdiff(predecessor.getBuffer(), predecessor.getBufferLength(), current.getBuffer(), current.getBufferLength());
-		// free up the memory as soon as possible.
-		predecessor = null;
-		current = null;
 		incomingStream = null;
-
-		// copy the result of the optimization to the destination.
-		FileUtils.copyStream(new ByteArrayInputStream(diff), true, getDestination(), false);
+		// write the result of the optimization to the destination.
+		JBDiff.bsdiff(predecessor.getBuffer(), predecessor.getBufferLength(), current.getBuffer(), current.getBufferLength(), getDestination());
 	}
 
 	private DirectByteArrayOutputStream fetchPredecessorBytes(ArtifactDescriptor artifactDescriptor) throws IOException {
@@ -12,9 +12,7 @@
 package org.eclipse.equinox.internal.p2.artifact.optimizers.jbdiff;
 
 import ie.wombat.jbdiff.JBDiff;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.internal.p2.sar.DirectByteArrayOutputStream;
 import org.eclipse.equinox.internal.p2.sar.SarUtil;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
@@ -37,14 +35,8 @@ public class JBDiffZipStep extends JBDiffStep {
 		SarUtil.zipToSar(((DirectByteArrayOutputStream) incomingStream).getInputStream(), sarredCurrent);
 		incomingStream = null;
 		DirectByteArrayOutputStream predecessor = fetchPredecessorBytes(new ArtifactDescriptor(key));
-		byte[] diff = JBDiff.bsdiff(predecessor.getBuffer(), predecessor.getBufferLength(), sarredCurrent.getBuffer(), sarredCurrent.getBufferLength());
-		// free up the memory as soon as possible.
-		predecessor = null;
-		incomingStream = null;
-		sarredCurrent = null;
-
-		// copy the result of the optimization to the destination.
-		FileUtils.copyStream(new ByteArrayInputStream(diff), true, getDestination(), false);
+		// write the result of the optimization to the destination.
+		JBDiff.bsdiff(predecessor.getBuffer(), predecessor.getBufferLength(), sarredCurrent.getBuffer(), sarredCurrent.getBufferLength(), getDestination());
 	}
 
 	private DirectByteArrayOutputStream fetchPredecessorBytes(ArtifactDescriptor artifactDescriptor) throws IOException {
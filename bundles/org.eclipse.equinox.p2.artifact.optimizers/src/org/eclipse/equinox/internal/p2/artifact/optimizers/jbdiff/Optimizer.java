@@ -33,8 +33,8 @@ public class Optimizer {
 	private int depth;
 	private boolean nosar;
 
-	private static final String JBPATCH_STEP_ID = "org.eclipse.equinox.p2.repository.JBPatchStep"; //$NON-NLS-1$
-	private static final String JBPATCH_STEP_ZIP_ID = "org.eclipse.equinox.p2.repository.JBPatchZipStep"; //$NON-NLS-1$
+	private static final String JBPATCH_STEP_ID = "org.eclipse.equinox.p2.processing.JBPatchStep"; //$NON-NLS-1$
+	private static final String JBPATCH_STEP_ZIP_ID = "org.eclipse.equinox.p2.processing.JBPatchZipStep"; //$NON-NLS-1$
 
 	private static final Comparator<IArtifactDescriptor> ARTIFACT_DESCRIPTOR_VERSION_COMPARATOR = new ArtifactDescriptorVersionComparator();
 	private static final Comparator<IArtifactKey> ARTIFACT_KEY_VERSION_COMPARATOR = new ArtifactKeyVersionComparator();
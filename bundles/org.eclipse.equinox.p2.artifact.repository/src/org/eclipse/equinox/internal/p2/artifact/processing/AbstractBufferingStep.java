@@ -19,6 +19,12 @@ import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStep;
 import org.eclipse.osgi.util.NLS;
 
+/**
+ * A step that needs all of its input before it can process it. The input is held in
+ * the stream returned by {@link #createIncomingStream()} until the step is closed.
+ * Subclasses that can read their input back from memory may return a
+ * {@link SpoolOutputStream}, which keeps it off the disk unless it is large.
+ */
 public abstract class AbstractBufferingStep extends ProcessingStep {
 	private static final String WORK_DIR_PREFIX = "work"; //$NON-NLS-1$
 	private static final String WORK_DIR_SUFFIX = ""; //$NON-NLS-1$
@@ -40,6 +46,11 @@ public abstract class AbstractBufferingStep extends ProcessingStep {
 		stream.write(b);
 	}
 
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		getOutputStream().write(b, off, len);
+	}
+
 	protected OutputStream getOutputStream() throws IOException {
 		if (incomingStream != null)
 			return incomingStream;
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.processing;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A pool of the fixed size buffers the processing steps use to hold and pass on
+ * artifact content, so that processing many artifacts does not allocate a new
+ * buffer for each of them.
+ */
+public final class BufferPool {
+	public static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED = 32;
+
+	private static final Deque<byte[]> pool = new ArrayDeque<>();
+
+	private BufferPool() {
+		// static helpers only
+	}
+
+	/**
+	 * Returns a buffer of {@link #BUFFER_SIZE} bytes. The content of the buffer is undefined.
+	 */
+	public static byte[] acquire() {
+		synchronized (pool) {
+			byte[] buffer = pool.poll();
+			if (buffer != null)
+				return buffer;
+		}
+		return new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Gives back a buffer obtained from {@link #acquire()}. The buffer must not be used anymore.
+	 */
+	public static void release(byte[] buffer) {
+		if (buffer == null || buffer.length != BUFFER_SIZE)
+			return;
+		synchronized (pool) {
+			if (pool.size() < MAX_POOLED)
+				pool.push(buffer);
+		}
+	}
+
+	/**
+	 * Copies the content of the input stream to the output stream using a pooled buffer.
+	 * Neither stream is closed.
+	 * @return the number of bytes copied
+	 */
+	public static long copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = acquire();
+		try {
+			long total = 0;
+			int length;
+			while ((length = in.read(buffer)) != -1) {
+				out.write(buffer, 0, length);
+				total += length;
+			}
+			return total;
+		} finally {
+			release(buffer);
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.processing;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Holds the data written to it in pooled buffers, and moves it to a temporary file only
+ * once it grows beyond a memory limit. Buffering steps use it instead of writing every
+ * artifact to disk before processing it.
+ */
+public class SpoolOutputStream extends OutputStream {
+	/**
+	 * The default amount of data held in memory before spilling to disk.
+	 */
+	public static final long MEMORY_LIMIT = 16 * 1024 * 1024;
+
+	private final String prefix;
+	private final String suffix;
+	private final long memoryLimit;
+	private final List<byte[]> buffers = new ArrayList<>();
+	private int position = BufferPool.BUFFER_SIZE;
+	private long size;
+	private File file;
+	private OutputStream fileStream;
+	private boolean closed;
+
+	/**
+	 * Creates a spool that holds up to {@link #MEMORY_LIMIT} bytes in memory.
+	 * @param prefix the prefix of the temporary file, if one is needed
+	 * @param suffix the suffix of the temporary file, if one is needed
+	 */
+	public SpoolOutputStream(String prefix, String suffix) {
+		this(prefix, suffix, MEMORY_LIMIT);
+	}
+
+	public SpoolOutputStream(String prefix, String suffix, long memoryLimit) {
+		this.prefix = prefix;
+		this.suffix = suffix;
+		this.memoryLimit = memoryLimit;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		if (fileStream == null && size < memoryLimit) {
+			if (position == BufferPool.BUFFER_SIZE)
+				nextBuffer();
+			buffers.get(buffers.size() - 1)[position++] = (byte) b;
+			size++;
+			return;
+		}
+		getFileStream().write(b);
+		size++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed)
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		while (len > 0 && fileStream == null && size < memoryLimit) {
+			if (position == BufferPool.BUFFER_SIZE)
+				nextBuffer();
+			int count = (int) Math.min(Math.min(len, BufferPool.BUFFER_SIZE - position), memoryLimit - size);
+			System.arraycopy(b, off, buffers.get(buffers.size() - 1), position, count);
+			position += count;
+			size += count;
+			off += count;
+			len -= count;
+		}
+		if (len > 0) {
+			getFileStream().write(b, off, len);
+			size += len;
+		}
+	}
+
+	private void nextBuffer() {
+		buffers.add(BufferPool.acquire());
+		position = 0;
+	}
+
+	// moves the buffered data to a temporary file, the rest of the data goes there as well
+	private OutputStream getFileStream() throws IOException {
+		if (fileStream != null)
+			return fileStream;
+		file = File.createTempFile(prefix, suffix);
+		fileStream = new BufferedOutputStream(new FileOutputStream(file), BufferPool.BUFFER_SIZE);
+		writeBuffers(fileStream);
+		releaseBuffers();
+		return fileStream;
+	}
+
+	private void writeBuffers(OutputStream out) throws IOException {
+		for (int i = 0; i < buffers.size(); i++)
+			out.write(buffers.get(i), 0, i == buffers.size() - 1 ? position : BufferPool.BUFFER_SIZE);
+	}
+
+	private void releaseBuffers() {
+		for (byte[] buffer : buffers)
+			BufferPool.release(buffer);
+		buffers.clear();
+		position = BufferPool.BUFFER_SIZE;
+	}
+
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (fileStream != null)
+			fileStream.close();
+	}
+
+	/**
+	 * Returns the number of bytes written to this stream.
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns a stream over the data written to this stream, which must be closed.
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (!closed)
+			throw new IOException("Stream not closed"); //$NON-NLS-1$
+		if (file != null)
+			return new BufferedInputStream(new FileInputStream(file), BufferPool.BUFFER_SIZE);
+		List<InputStream> streams = new ArrayList<>(buffers.size());
+		for (int i = 0; i < buffers.size(); i++)
+			streams.add(new ByteArrayInputStream(buffers.get(i), 0, i == buffers.size() - 1 ? position : BufferPool.BUFFER_SIZE));
+		return new SequenceInputStream(Collections.enumeration(streams));
+	}
+
+	/**
+	 * Writes the data written to this stream, which must be closed, to the given stream.
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		if (file == null && closed) {
+			writeBuffers(out);
+			return;
+		}
+		try (InputStream in = getInputStream()) {
+			BufferPool.copy(in, out);
+		}
+	}
+
+	/**
+	 * Returns a file holding the data written to this stream, which must be closed. The data
+	 * is moved to a temporary file if it was still held in memory. The file is deleted by
+	 * {@link #dispose()}.
+	 */
+	public File toFile() throws IOException {
+		if (!closed)
+			throw new IOException("Stream not closed"); //$NON-NLS-1$
+		if (file == null)
+			getFileStream().close();
+		return file;
+	}
+
+	/**
+	 * Releases the buffers and deletes the temporary file, if any.
+	 */
+	public void dispose() {
+		closed = true;
+		releaseBuffers();
+		if (fileStream != null) {
+			try {
+				fileStream.close();
+			} catch (IOException e) {
+				// nothing to do, the file is deleted
+			}
+		}
+		if (file != null)
+			file.delete();
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.processors.checksum;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumProducer;
+import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStep;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IProcessingStepDescriptor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Verifies the content passing through it against any number of checksums, all of them
+ * computed in the same pass. The checksums are keyed by the lower case name of their
+ * {@link MessageDigest} algorithm, so any algorithm a security provider offers can be used.
+ * Algorithms that are not available are reported and skipped. When none is available the
+ * content passes through unverified, as it would without this step.
+ */
+public class ChecksumVerifier extends ProcessingStep {
+
+	private final Map<String, String> expected = new LinkedHashMap<>();
+	private final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+
+	public ChecksumVerifier() {
+		super();
+	}
+
+	public ChecksumVerifier(Map<String, String> expected) {
+		super();
+		this.expected.putAll(expected);
+		basicInitialize();
+	}
+
+	//This handle the case where the verification is initiated by a processing step
+	@Override
+	public void initialize(IProvisioningAgent agent, IProcessingStepDescriptor descriptor, IArtifactDescriptor context) {
+		super.initialize(agent, descriptor, context);
+		String data = descriptor.getData();
+		if (IArtifactDescriptor.DOWNLOAD_CHECKSUM.equals(data))
+			expected.putAll(ChecksumProducer.getChecksums(context, IArtifactDescriptor.DOWNLOAD_CHECKSUM));
+		else if (IArtifactDescriptor.ARTIFACT_CHECKSUM.equals(data))
+			expected.putAll(ChecksumProducer.getChecksums(context, IArtifactDescriptor.ARTIFACT_CHECKSUM));
+		basicInitialize();
+	}
+
+	private void basicInitialize() {
+		for (String algorithm : expected.keySet()) {
+			MessageDigest digest = ChecksumProducer.getMessageDigest(algorithm);
+			if (digest != null)
+				digests.put(algorithm, digest);
+			else
+				setStatus(new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.Error_algorithm_unavailable, algorithm)));
+		}
+		if (digests.isEmpty())
+			setStatus(new Status(IStatus.INFO, Activator.ID, Messages.Error_no_checksum));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		for (MessageDigest digest : digests.values())
+			digest.update((byte) b);
+		getDestination().write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		for (MessageDigest digest : digests.values())
+			digest.update(b, off, len);
+		getDestination().write(b, off, len);
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Entry<String, MessageDigest> entry : digests.entrySet()) {
+			String algorithm = entry.getKey();
+			String actual = ChecksumProducer.toHexString(entry.getValue().digest());
+			String expectedValue = expected.get(algorithm);
+			// if the hashes don't line up set the status to error.
+			if (!actual.equalsIgnoreCase(expectedValue)) {
+				setStatus(new Status(IStatus.ERROR, Activator.ID, ProvisionException.ARTIFACT_MD5_NOT_MATCH, NLS.bind(Messages.Error_unexpected_checksum, new Object[] {algorithm, expectedValue, actual}), null));
+				break;
+			}
+		}
+		super.close();
+	}
+}
@@ -70,6 +70,12 @@ public class MD5Verifier extends ProcessingStep {
 		getDestination().write(b);
 	}
 
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		md5.update(b, off, len);
+		getDestination().write(b, off, len);
+	}
+
 	@Override
 	public void close() throws IOException {
 		byte[] digest = md5.digest();
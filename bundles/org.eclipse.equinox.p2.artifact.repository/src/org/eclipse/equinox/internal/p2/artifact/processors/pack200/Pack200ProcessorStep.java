@@ -12,9 +12,13 @@
 package org.eclipse.equinox.internal.p2.artifact.processors.pack200;
 
 import java.io.*;
+import java.util.jar.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.artifact.processing.AbstractBufferingStep;
+import org.eclipse.equinox.internal.p2.artifact.processing.SpoolOutputStream;
 import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
 import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.internal.p2.jarprocessor.UnpackStep;
@@ -26,24 +30,43 @@ import org.eclipse.internal.provisional.equinox.p2.jarprocessor.JarProcessorExec
 import org.eclipse.internal.provisional.equinox.p2.jarprocessor.JarProcessorExecutor.Options;
 
 /**
- * The Pack200Unpacker expects an input containing ".jar.pack.gz" data.   
+ * The Pack200Unpacker expects an input containing ".jar.pack.gz" data.
+ * <p>
+ * The packed data is held in memory, and is unpacked in process straight to the
+ * destination when the jar does not nest other packed jars. Otherwise the unpack200
+ * executable processes the jar and its nested jars through temporary files.
  */
 public class Pack200ProcessorStep extends AbstractBufferingStep {
 	public static final String PACKED_SUFFIX = ".pack.gz"; //$NON-NLS-1$
 	private static boolean detailedResult = false;
+	private static Boolean canUnpackInProcess;
 
+	private SpoolOutputStream spool;
 	private File incoming;
 
 	@Override
 	protected OutputStream createIncomingStream() throws IOException {
-		incoming = File.createTempFile(INCOMING_ROOT, JAR_SUFFIX + PACKED_SUFFIX);
-		return new BufferedOutputStream(new FileOutputStream(incoming));
+		spool = new SpoolOutputStream(INCOMING_ROOT, JAR_SUFFIX + PACKED_SUFFIX);
+		return spool;
+	}
+
+	private static synchronized boolean canUnpackInProcess() {
+		if (canUnpackInProcess == null) {
+			try {
+				Pack200.newUnpacker();
+				canUnpackInProcess = Boolean.TRUE;
+			} catch (LinkageError e) {
+				// the Pack200 API is not available in this VM
+				canUnpackInProcess = Boolean.FALSE;
+			}
+		}
+		return canUnpackInProcess.booleanValue();
 	}
 
 	@Override
 	public void initialize(IProvisioningAgent agent, IProcessingStepDescriptor descriptor, IArtifactDescriptor context) {
 		super.initialize(agent, descriptor, context);
-		if (!UnpackStep.canUnpack()) {
+		if (!canUnpackInProcess() && !UnpackStep.canUnpack()) {
 			IStatus status = null;
 			if (detailedResult) {
 				status = new Status(IStatus.ERROR, Activator.ID, "Unpack facility not configured."); //$NON-NLS-1$
@@ -63,12 +86,17 @@ public class Pack200ProcessorStep extends AbstractBufferingStep {
 	@Override
 	protected void cleanupTempFiles() {
 		super.cleanupTempFiles();
+		if (spool != null)
+			spool.dispose();
 		if (incoming != null)
 			incoming.delete();
 	}
 
 	@Override
 	protected void performProcessing() throws IOException {
+		if (canUnpackInProcess() && unpackInProcess())
+			return;
+		incoming = spool.toFile();
 		File resultFile = null;
 		try {
 			resultFile = process();
@@ -85,6 +113,40 @@ public class Pack200ProcessorStep extends AbstractBufferingStep {
 		}
 	}
 
+	/**
+	 * Unpacks the incoming data to the destination without going through the disk.
+	 * @return <code>false</code> if the jar nests packed jars and the jar processor has to be used
+	 */
+	private boolean unpackInProcess() throws IOException {
+		SpoolOutputStream unpacked = new SpoolOutputStream(RESULT_ROOT, JAR_SUFFIX);
+		try {
+			final boolean[] nested = new boolean[1];
+			try (JarOutputStream jar = new JarOutputStream(unpacked) {
+				@Override
+				public void putNextEntry(ZipEntry entry) throws IOException {
+					if (entry.getName().endsWith(PACKED_SUFFIX))
+						nested[0] = true;
+					super.putNextEntry(entry);
+				}
+			}) {
+				// the unpacker closes its input
+				Pack200.newUnpacker().unpack(new GZIPInputStream(spool.getInputStream()), jar);
+			} catch (IOException e) {
+				setStatus(new Status(IStatus.ERROR, Activator.ID, "Unpacking fails because the packed content cannot be read", e)); //$NON-NLS-1$
+				return true;
+			}
+			if (nested[0])
+				return false;
+			if (unpacked.size() > 0)
+				unpacked.writeTo(getDestination());
+			else
+				setStatus(new Status(IStatus.ERROR, Activator.ID, "Unpacking fails because the unpacked content is empty")); //$NON-NLS-1$
+			return true;
+		} finally {
+			unpacked.dispose();
+		}
+	}
+
 	protected File process() throws IOException {
 		Options options = new Options();
 		options.unpack = true;
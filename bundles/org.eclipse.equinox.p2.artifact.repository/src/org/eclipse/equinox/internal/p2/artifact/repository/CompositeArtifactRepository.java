@@ -21,6 +21,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryIO;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryState;
+import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
@@ -92,6 +93,10 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 		SubMonitor sub = SubMonitor.convert(monitor, 100 * state.getChildren().length);
 		List<URI> repositoriesToBeRemovedOnFailure = new ArrayList<>();
 		boolean failOnChildFailure = shouldFailOnChildFailure(state);
+		if (manager instanceof AbstractRepositoryManager) {
+			addChildren(state.getChildren(), sub, failOnChildFailure);
+			return;
+		}
 		for (URI child : state.getChildren())
 			addChild(child, false, sub.newChild(100), failOnChildFailure, repositoriesToBeRemovedOnFailure);
 	}
@@ -186,6 +191,26 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 		}
 	}
 
+	/*
+	 * Adds the children of a repository that is being loaded. The children are loaded in parallel by the
+	 * manager, otherwise this behaves like adding each child in turn.
+	 */
+	private void addChildren(URI[] children, IProgressMonitor monitor, boolean propagateException) throws ProvisionException {
+		List<URI> toLoad = new ArrayList<>(children.length);
+		for (URI childURI : children) {
+			URI absolute = URIUtil.makeAbsolute(childURI, getLocation());
+			if (childrenURIs.contains(childURI) || childrenURIs.contains(absolute))
+				continue;
+			childrenURIs.add(childURI);
+			toLoad.add(absolute);
+		}
+		MultiStatus failures = new MultiStatus(Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.io_failedRead, getLocation()), null);
+		@SuppressWarnings("unchecked")
+		AbstractRepositoryManager<IArtifactKey> repositoryManager = (AbstractRepositoryManager<IArtifactKey>) getManager();
+		for (IRepository<IArtifactKey> child : repositoryManager.loadChildren(toLoad.toArray(new URI[toLoad.size()]), failures, propagateException, monitor))
+			loadedRepos.add(new ChildInfo((IArtifactRepository) child));
+	}
+
 	//	public boolean addChild(URI childURI, String comparatorID) {
 	//		try {
 	//			IArtifactRepository repo = load(childURI);
@@ -17,19 +17,19 @@ package org.eclipse.equinox.internal.p2.artifact.repository;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactDescriptor;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStepHandler;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
-import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
-import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.osgi.util.NLS;
 
@@ -62,6 +62,16 @@ public class MirrorRequest extends ArtifactRequest {
 	 * for reporting download statistics for that artifact.
 	 */
 	private static final String PROP_DOWNLOAD_STATS = "download.stats"; //$NON-NLS-1$
+
+	/**
+	 * The processing steps that rebuild an artifact from a delta against a predecessor
+	 * artifact. The data of the step is the key of the predecessor, which the step looks
+	 * up in the local artifact repositories.
+	 */
+	private static final Set<String> DELTA_STEPS = new HashSet<>(Arrays.asList(//
+			"org.eclipse.equinox.p2.processing.JarDeltaPatchStep", //$NON-NLS-1$
+			"org.eclipse.equinox.p2.processing.JBPatchStep", //$NON-NLS-1$
+			"org.eclipse.equinox.p2.processing.JBPatchZipStep")); //$NON-NLS-1$
 	/**
 	 * The additional parameters for downloading statistics 
 	 */
@@ -125,18 +135,39 @@ public class MirrorRequest extends ArtifactRequest {
 		if (descriptor == null) {
 			IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(getArtifactKey());
 			if (descriptors.length > 0) {
+				// deltas are only of use against a predecessor that is available locally
+				IArtifactDescriptor delta = null;
+				IArtifactKey deltaPredecessor = null;
+				List<IArtifactRepository> localRepositories = null;
 				for (int i = 0; i < descriptors.length; i++) {
 					if (descriptors[i].getProperty(IArtifactDescriptor.FORMAT) == null)
 						canonical = descriptors[i];
-					else if (ProcessingStepHandler.canProcess(descriptors[i]))
-						optimized = descriptors[i];
+					else if (ProcessingStepHandler.canProcess(descriptors[i])) {
+						IArtifactKey predecessor = getDeltaPredecessor(descriptors[i]);
+						if (predecessor == null)
+							optimized = descriptors[i];
+						else if (deltaPredecessor == null || predecessor.getVersion().compareTo(deltaPredecessor.getVersion()) > 0) {
+							if (localRepositories == null)
+								localRepositories = getLocalRepositories();
+							if (containsArtifact(localRepositories, predecessor)) {
+								// the closest predecessor gives the smallest delta
+								delta = descriptors[i];
+								deltaPredecessor = predecessor;
+							}
+						}
+					}
 				}
 				boolean chooseCanonical = source.getLocation().getScheme().equals("file"); //$NON-NLS-1$
+				// A delta against a local predecessor transfers the least from a remote repository.
+				if (delta != null && !chooseCanonical)
+					optimized = delta;
 				// If the source repo is local then look for a canonical descriptor so we don't waste processing time.
 				descriptor = chooseCanonical ? canonical : optimized;
 				// if the descriptor is still null then we could not find our first choice of format so switch the logic.
 				if (descriptor == null)
 					descriptor = !chooseCanonical ? canonical : optimized;
+				if (descriptor == null)
+					descriptor = delta;
 			}
 		}
 
@@ -182,6 +213,53 @@ public class MirrorRequest extends ArtifactRequest {
 			setResult(new MultiStatus(Activator.ID, canonicalStatus.getCode() != 0 ? canonicalStatus.getCode() : status.getCode(), new IStatus[] {status, canonicalStatus}, Messages.MirrorRequest_multipleDownloadProblems, null));
 	}
 
+	/**
+	 * Returns the key of the artifact the given descriptor is a delta against, or
+	 * <code>null</code> if the descriptor is not a delta.
+	 */
+	private static IArtifactKey getDeltaPredecessor(IArtifactDescriptor descriptor) {
+		IProcessingStepDescriptor[] steps = descriptor.getProcessingSteps();
+		for (int i = 0; i < steps.length; i++) {
+			if (!DELTA_STEPS.contains(steps[i].getProcessorId()))
+				continue;
+			try {
+				return ArtifactKey.parse(steps[i].getData());
+			} catch (IllegalArgumentException e) {
+				// the step fails as well, so treat the descriptor as any other
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the local artifact repositories the delta processing steps search for
+	 * the predecessor artifact.
+	 */
+	private List<IArtifactRepository> getLocalRepositories() {
+		IArtifactRepositoryManager manager = (IArtifactRepositoryManager) source.getProvisioningAgent().getService(IArtifactRepositoryManager.SERVICE_NAME);
+		if (manager == null)
+			return Collections.emptyList();
+		List<IArtifactRepository> result = new ArrayList<>();
+		URI[] locations = manager.getKnownRepositories(IRepositoryManager.REPOSITORIES_LOCAL);
+		for (int i = 0; i < locations.length; i++) {
+			try {
+				result.add(manager.loadRepository(locations[i], null));
+			} catch (ProvisionException e) {
+				//just skip unreadable repositories
+			}
+		}
+		return result;
+	}
+
+	private static boolean containsArtifact(List<IArtifactRepository> repositories, IArtifactKey key) {
+		for (IArtifactRepository repository : repositories) {
+			if (repository.contains(key))
+				return true;
+		}
+		return false;
+	}
+
 	private IArtifactDescriptor getDestinationDescriptor(IArtifactDescriptor sourceDescriptor) {
 		// Get the descriptor to use to store the artifact
 		// Since we are mirroring, ensure we clear out data from the original descriptor that may
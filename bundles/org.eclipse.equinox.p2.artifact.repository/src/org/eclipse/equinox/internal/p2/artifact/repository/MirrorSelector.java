@@ -39,11 +39,33 @@ import org.xml.sax.InputSource;
  * containing a list of <mirror> elements. The mirrors are assumed to be already 
  * sorted geographically with closer mirrors first.
  * <br><br>
+ * Concurrent requests are spread over the best few mirrors according to the
+ * throughput each of them can still offer, and the latency and throughput of
+ * every mirror are updated from the results of its downloads.
+ * <br><br>
  * Always use {@link MirrorSelector.MirrorInfoComparator} for comparison.
  *
  */
 public class MirrorSelector {
-	private static final double LOG2 = Math.log(2);
+	/**
+	 * The key for an integer property that sets over how many of the best mirrors
+	 * concurrent downloads are spread.
+	 */
+	public static final String PROP_MIRROR_SPREAD = "eclipse.p2.mirrors.spread"; //$NON-NLS-1$
+
+	private static final int DEFAULT_MIRROR_SPREAD = 3;
+
+	/**
+	 * A download is considered slow once it took this many times longer than expected.
+	 */
+	private static final int HEDGE_FACTOR = 3;
+
+	private static final long MIN_HEDGE_DELAY = 2000;
+
+	/**
+	 * A request that was never reported is not counted as in flight after this time.
+	 */
+	private static final long PENDING_EXPIRY = 10 * 60 * 1000;
 
 	/**
 	 * Encapsulates information about a single mirror
@@ -55,6 +77,7 @@ public class MirrorSelector {
 		private static final Timer resetFailure = new Timer(true);
 
 		long bytesPerSecond;
+		long latency;
 		int failureCount;
 		int fileNotFoundCount;
 		int totalFailureCount;
@@ -69,11 +92,12 @@ public class MirrorSelector {
 			failureCount = 0;
 			totalFailureCount = 0;
 			bytesPerSecond = DownloadStatus.UNKNOWN_RATE;
+			latency = -1;
 		}
 
 		@Override
 		public synchronized String toString() {
-			return "Mirror(" + locationString + ',' + failureCount + ',' + bytesPerSecond + ')'; //$NON-NLS-1$
+			return "Mirror(" + locationString + ',' + failureCount + ',' + bytesPerSecond + ',' + latency + ')'; //$NON-NLS-1$
 		}
 
 		public synchronized void decrementFailureCount() {
@@ -109,6 +133,23 @@ public class MirrorSelector {
 			return bytesPerSecond;
 		}
 
+		/**
+		 * Adds a measured latency, in milliseconds, to the running average of this mirror.
+		 */
+		public synchronized void addLatency(long newValue) {
+			if (newValue < 0)
+				return;
+			latency = latency < 0 ? newValue : (3 * latency + newValue) / 4;
+		}
+
+		/**
+		 * Returns the average time, in milliseconds, that a request to this mirror
+		 * takes on top of transferring its bytes, or -1 if it is not known yet.
+		 */
+		public synchronized long getLatency() {
+			return latency;
+		}
+
 		public synchronized void incrementFileNotFoundCount() {
 			if (++fileNotFoundCount > ACCEPTABLE_FILE_NOT_FOUND_COUNT) {
 				incrementFailureCount();
@@ -124,9 +165,14 @@ public class MirrorSelector {
 
 	MirrorInfo[] mirrors;
 
-	private final IRepository<?> repository;
+	/**
+	 * The requests handed out by {@link #getMirrorLocation(URI, IProgressMonitor)} that
+	 * were not reported yet, oldest first. The same location may be requested more than
+	 * once at a time, each request is kept on its own.
+	 */
+	private final List<PendingRequest> pending = new LinkedList<>();
 
-	private final Random random = new Random();
+	private final IRepository<?> repository;
 
 	private final Transport transport;
 
@@ -152,6 +198,18 @@ public class MirrorSelector {
 		}
 	}
 
+	private static class PendingRequest {
+		final String location;
+		final MirrorInfo mirror;
+		final long started;
+
+		PendingRequest(String location, MirrorInfo mirror, long started) {
+			this.location = location;
+			this.mirror = mirror;
+			this.started = started;
+		}
+	}
+
 	/**
 	 * This {@link Comparator} uses a vector space classification algorithm
 	 * and implements some kind of Rocchio Classification.
@@ -305,23 +363,61 @@ public class MirrorSelector {
 	 */
 	public synchronized URI getMirrorLocation(URI inputLocation, IProgressMonitor monitor) {
 		Assert.isNotNull(inputLocation);
+		URI location = getMirrorLocation(inputLocation, null, getSpread(), monitor);
+		return location != null ? location : inputLocation;
+	}
+
+	/**
+	 * Returns an equivalent location for the given artifact location in the base
+	 * repository on another mirror than the one of the given mirror location, to
+	 * download an artifact from a second mirror while the first one is slow.
+	 * Returns <code>null</code> if there is no other good mirror.
+	 */
+	public synchronized URI getAlternativeLocation(URI inputLocation, URI mirrorLocation, IProgressMonitor monitor) {
+		Assert.isNotNull(inputLocation);
+		initMirrors(monitor);
+		MirrorInfo excluded = findMirror(mirrorLocation.toString());
+		if (excluded == null)
+			return null;
+		return getMirrorLocation(inputLocation, excluded, Integer.MAX_VALUE, monitor);
+	}
+
+	private URI getMirrorLocation(URI inputLocation, MirrorInfo excluded, int spread, IProgressMonitor monitor) {
 		if (baseURI == null)
-			return inputLocation;
+			return null;
 		URI relativeLocation = baseURI.relativize(inputLocation);
 		//if we failed to relativize the location, we can't select a mirror
 		if (relativeLocation == null || relativeLocation.isAbsolute())
-			return inputLocation;
-		MirrorInfo selectedMirror = selectMirror(monitor);
+			return null;
+		MirrorInfo selectedMirror = selectMirror(excluded, spread, monitor);
 		if (selectedMirror == null)
-			return inputLocation;
+			return null;
 		if (Tracing.DEBUG_MIRRORS)
 			Tracing.debug("Selected mirror for artifact " + inputLocation + ": " + selectedMirror); //$NON-NLS-1$ //$NON-NLS-2$
 		try {
-			return new URI(selectedMirror.locationString + relativeLocation.getPath());
+			URI location = new URI(selectedMirror.locationString + relativeLocation.getPath());
+			pending.add(new PendingRequest(location.toString(), selectedMirror, System.currentTimeMillis()));
+			return location;
 		} catch (URISyntaxException e) {
 			log("Unable to make location " + inputLocation + " relative to mirror " + selectedMirror.locationString, e); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		return inputLocation;
+		return null;
+	}
+
+	/**
+	 * Returns the time, in milliseconds, after which a download of the given size
+	 * from the given mirror location is considered slow, or -1 if that cannot be
+	 * told yet because the mirror has not been measured.
+	 */
+	public synchronized long getHedgeDelay(URI mirrorLocation, long size) {
+		MirrorInfo mirror = findMirror(mirrorLocation.toString());
+		if (mirror == null || size <= 0)
+			return -1;
+		long rate = mirror.getBytesPerSecond();
+		long latency = mirror.getLatency();
+		if (rate <= 0 || latency < 0)
+			return -1;
+		return max(MIN_HEDGE_DELAY, HEDGE_FACTOR * (latency + size * 1000 / rate));
 	}
 
 	/**
@@ -348,6 +444,52 @@ public class MirrorSelector {
 		return new MirrorInfoComparator(maxBytesPerSecond, 0, 1);
 	}
 
+	private int getSpread() {
+		try {
+			String spread = Activator.getContext().getProperty(PROP_MIRROR_SPREAD);
+			if (spread != null)
+				return max(1, Integer.parseInt(spread));
+		} catch (NumberFormatException e) {
+			// use the default
+		}
+		return DEFAULT_MIRROR_SPREAD;
+	}
+
+	private MirrorInfo findMirror(String location) {
+		if (mirrors == null)
+			return null;
+		for (MirrorInfo mirror : mirrors) {
+			if (location.startsWith(mirror.locationString))
+				return mirror;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of downloads from the mirror of the given location that are
+	 * still in flight.
+	 */
+	public synchronized int getLoad(URI mirrorLocation) {
+		MirrorInfo mirror = findMirror(mirrorLocation.toString());
+		return mirror != null ? getLoad(mirror) : 0;
+	}
+
+	/**
+	 * Returns the number of requests to the given mirror that are still in flight.
+	 */
+	private int getLoad(MirrorInfo mirror) {
+		long expired = System.currentTimeMillis() - PENDING_EXPIRY;
+		int load = 0;
+		for (Iterator<PendingRequest> iterator = pending.iterator(); iterator.hasNext();) {
+			PendingRequest request = iterator.next();
+			if (request.started < expired)
+				iterator.remove();
+			else if (request.mirror == mirror)
+				load++;
+		}
+		return load;
+	}
+
 	private void log(String message, Throwable exception) {
 		LogHelper.log(new Status(IStatus.ERROR, Activator.ID, message, exception));
 	}
@@ -358,6 +500,7 @@ public class MirrorSelector {
 	public synchronized void reportResult(String toDownload, IStatus result) {
 		if (mirrors == null)
 			return;
+		PendingRequest request = removePending(toDownload);
 		for (int i = 0; i < mirrors.length; i++) {
 			MirrorInfo mirror = mirrors[i];
 			if (toDownload.startsWith(mirror.locationString)) {
@@ -378,6 +521,8 @@ public class MirrorSelector {
 					if (oldRate > 0)
 						newRate = (oldRate + newRate) / 2;
 					mirror.setBytesPerSecond(newRate);
+					if (request != null && result.isOK())
+						mirror.addLatency(getLatency((DownloadStatus) result, System.currentTimeMillis() - request.started));
 				}
 				if (Tracing.DEBUG_MIRRORS)
 					Tracing.debug("Updated mirror " + mirror); //$NON-NLS-1$
@@ -386,6 +531,33 @@ public class MirrorSelector {
 		}
 	}
 
+	/**
+	 * Removes and returns the oldest pending request for the given location, or <code>null</code>
+	 * if there is none. Results are matched with requests for the same location in order.
+	 */
+	private PendingRequest removePending(String location) {
+		for (Iterator<PendingRequest> iterator = pending.iterator(); iterator.hasNext();) {
+			PendingRequest request = iterator.next();
+			if (request.location.equals(location)) {
+				iterator.remove();
+				return request;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the part of the given duration of a download that was not spent
+	 * transferring its bytes.
+	 */
+	private static long getLatency(DownloadStatus result, long duration) {
+		long size = result.getFileSize();
+		long rate = result.getTransferRate();
+		if (size <= 0 || rate <= 0)
+			return duration;
+		return max(0, duration - size * 1000 / rate);
+	}
+
 	/** 
 	 * Return whether or not all the mirrors for this selector have proven to be invalid
 	 * @return whether or not there is a valid mirror in this selector.
@@ -401,43 +573,38 @@ public class MirrorSelector {
 	/**
 	 * Selects a mirror from the given list of mirrors. Returns null if a mirror
 	 * could not be found.
+	 * <p>
+	 * Only the given number of best mirrors, and only the best half of all mirrors,
+	 * are considered. Among those, the mirror that can offer the highest throughput
+	 * to one more request, sharing its measured throughput with the requests already
+	 * in flight, is selected. Mirrors that were not measured yet are assumed to be
+	 * as fast as the best one so they get their share of the requests.
 	 */
-	private MirrorInfo selectMirror(IProgressMonitor monitor) {
+	private MirrorInfo selectMirror(MirrorInfo excluded, int spread, IProgressMonitor monitor) {
 		initMirrors(monitor);
-		final int mirrorCount;
-		if (mirrors == null || (mirrorCount = mirrors.length) == 0)
+		if (mirrors == null || mirrors.length == 0)
 			return null;
-
-		MirrorInfo selected;
-		if (mirrorCount == 1)
-			selected = mirrors[0];
-		else {
-			Arrays.sort(mirrors, getComparator());
-			for (;;) {
-				//this is a function that randomly selects a mirror based on a logarithmic
-				//distribution. Mirror 0 has a 1/2 chance of being selected, mirror 1 has a 1/4 chance, 
-				// mirror 2 has a 1/8 chance, etc. This introduces some variation in the mirror 
-				//selection, while still heavily favoring better mirrors
-				//the algorithm computes the most significant digit in a binary number by computing the base 2 logarithm
-				//if the first digit is most significant, mirror 0 is selected, if the second is most significant, mirror 1 is selected, etc
-				int highestMirror = min(15, mirrorCount);
-				int result = (int) (Math.log(random.nextInt(1 << highestMirror) + 1) / LOG2);
-				if (result >= highestMirror || result < 0)
-					result = highestMirror - 1;
-
-				int mirrorIndex = highestMirror - 1 - result;
-				selected = mirrors[mirrorIndex];
-
-				// Only choose a mirror from the best 50% of the top 15 of all mirrors
-				if (mirrorIndex <= (mirrorCount * 0.5d))
-					// This is good enough
-					break;
+		Arrays.sort(mirrors, getComparator());
+		int candidates = min(spread, mirrors.length / 2 + 1);
+		long bestRate = 1;
+		for (int i = 0; i < candidates; i++)
+			bestRate = max(bestRate, mirrors[i].getBytesPerSecond());
+
+		MirrorInfo selected = null;
+		double selectedShare = 0;
+		for (int i = 0; i < candidates; i++) {
+			MirrorInfo mirror = mirrors[i];
+			//for now, don't tolerate mirrors with multiple failures
+			if (mirror == excluded || mirror.failureCount > 1)
+				continue;
+			long rate = mirror.getBytesPerSecond();
+			double share = (double) (rate > 0 ? rate : bestRate) / (getLoad(mirror) + 1);
+			// on equal shares the better ranked mirror wins
+			if (share > selectedShare) {
+				selected = mirror;
+				selectedShare = share;
 			}
 		}
-
-		//for now, don't tolerate mirrors with multiple failures
-		if (selected.failureCount > 1)
-			return null;
 		return selected;
 	}
 
@@ -13,8 +13,9 @@
 package org.eclipse.equinox.internal.p2.artifact.repository;
 
 import java.io.OutputStream;
+import java.util.Map;
 import org.eclipse.core.runtime.*;
-import org.eclipse.equinox.internal.p2.artifact.processors.md5.MD5Verifier;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumVerifier;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStep;
@@ -81,8 +82,9 @@ public class RawMirrorRequest extends MirrorRequest {
 	@Override
 	protected IStatus getArtifact(IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
 		ProcessingStepHandler handler = new ProcessingStepHandler();
-		if (SimpleArtifactRepository.DOWNLOAD_MD5_CHECKSUM_ENABLED && descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5) != null)
-			destination = handler.link(new ProcessingStep[] {new MD5Verifier(descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5))}, destination, monitor);
+		Map<String, String> checksums = SimpleArtifactRepository.getExpectedChecksums(descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM);
+		if (!checksums.isEmpty())
+			destination = handler.link(new ProcessingStep[] {new ChecksumVerifier(checksums)}, destination, monitor);
 		return getSourceRepository().getRawArtifact(descriptor, destination, monitor);
 	}
 }
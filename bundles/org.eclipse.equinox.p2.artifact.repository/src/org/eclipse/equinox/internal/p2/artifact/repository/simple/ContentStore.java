@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.repository.simple;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.URIUtil;
+
+/**
+ * Stores artifacts under the SHA-256 hash of their bytes. Identical bytes are kept
+ * once, no matter how many descriptors or repositories sharing the store refer to
+ * them, and storing bytes that are already present leaves the store untouched.
+ * <p>
+ * Blobs are laid out as <code>&lt;store&gt;/&lt;first two hex digits&gt;/&lt;hash&gt;</code>.
+ * New content is written to a temporary file in the store and moved into place
+ * once its hash is known, so a blob is never visible half written.
+ */
+public class ContentStore {
+	public static final String ALGORITHM = "SHA-256"; //$NON-NLS-1$
+	private static final String TEMP_FOLDER = ".tmp"; //$NON-NLS-1$
+	private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	protected URI store;
+	protected boolean fileBased;
+
+	public ContentStore(URI store) {
+		Assert.isNotNull(store);
+		this.store = store;
+		fileBased = "file".equalsIgnoreCase(store.getScheme()); //$NON-NLS-1$
+	}
+
+	public URI getLocation() {
+		return store;
+	}
+
+	public URI fileFor(String hash) {
+		return URIUtil.append(store, hash.substring(0, 2) + '/' + hash);
+	}
+
+	public boolean contains(String hash) {
+		return fileBased && URIUtil.toFile(fileFor(hash)).isFile();
+	}
+
+	/**
+	 * Deletes the blob with the given hash. Callers are responsible for making sure
+	 * that nothing refers to it anymore.
+	 */
+	public void delete(String hash) {
+		if (fileBased)
+			URIUtil.toFile(fileFor(hash)).delete();
+	}
+
+	/**
+	 * Returns a stream for new content. The content is only added to the store
+	 * when {@link ContentOutputStream#commit()} is called after the stream was closed.
+	 */
+	public ContentOutputStream getOutputStream() throws IOException {
+		if (!fileBased)
+			throw new IOException("Not a local store: " + store); //$NON-NLS-1$
+		File tempFolder = new File(URIUtil.toFile(store), TEMP_FOLDER);
+		tempFolder.mkdirs();
+		return new ContentOutputStream(File.createTempFile("artifact", null, tempFolder)); //$NON-NLS-1$
+	}
+
+	static String toHexString(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	public class ContentOutputStream extends OutputStream {
+		private final File temp;
+		private final OutputStream out;
+		private final MessageDigest digest;
+		private String hash;
+
+		ContentOutputStream(File temp) throws IOException {
+			this.temp = temp;
+			try {
+				digest = MessageDigest.getInstance(ALGORITHM);
+			} catch (NoSuchAlgorithmException e) {
+				// every Java platform is required to support SHA-256
+				throw new IOException(e);
+			}
+			out = new FileOutputStream(temp);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			digest.update((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			digest.update(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+		/**
+		 * Moves the written content into the store, unless the store already holds
+		 * the same bytes, and returns its hash.
+		 */
+		public String commit() throws IOException {
+			if (hash != null)
+				return hash;
+			hash = toHexString(digest.digest());
+			File target = URIUtil.toFile(fileFor(hash));
+			if (target.isFile()) {
+				temp.delete();
+				return hash;
+			}
+			target.getParentFile().mkdirs();
+			try {
+				Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (FileAlreadyExistsException e) {
+				// written concurrently by someone else, the bytes are the same
+				temp.delete();
+			} catch (AtomicMoveNotSupportedException e) {
+				try {
+					Files.move(temp.toPath(), target.toPath());
+				} catch (FileAlreadyExistsException e1) {
+					temp.delete();
+				}
+			}
+			return hash;
+		}
+
+		/**
+		 * Drops the written content.
+		 */
+		public void discard() {
+			temp.delete();
+		}
+	}
+}
@@ -20,21 +20,27 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
-import org.eclipse.equinox.internal.p2.artifact.processors.md5.MD5Verifier;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumVerifier;
 import org.eclipse.equinox.internal.p2.artifact.repository.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.Messages;
 import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.expression.CompoundIterator;
 import org.eclipse.equinox.internal.p2.metadata.index.IndexProvider;
 import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
+import org.eclipse.equinox.internal.p2.repository.SegmentedDownload;
 import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumProducer;
 import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.*;
 import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
+import org.eclipse.equinox.p2.core.IAgentLocation;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
@@ -81,6 +87,31 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	 */
 	public static final String PROP_FORCE_THREADING = "eclipse.p2.force.threading"; //$NON-NLS-1$
 
+	/**
+	 * The key for a long property that sets the download size, in bytes, from which
+	 * artifacts of a remote repository are downloaded as several byte ranges over
+	 * concurrent connections, and resumed rather than restarted after a failure.
+	 * Segmented downloads are disabled unless this property is set.
+	 * @see SegmentedDownload
+	 */
+	public static final String PROP_SEGMENT_THRESHOLD = "eclipse.p2.download.segmentThreshold"; //$NON-NLS-1$
+
+	/**
+	 * The key for an integer property that sets the number of concurrent connections
+	 * of a segmented download.
+	 * @see #PROP_SEGMENT_THRESHOLD
+	 */
+	public static final String PROP_SEGMENTS = "eclipse.p2.download.segments"; //$NON-NLS-1$
+
+	/**
+	 * A boolean property controlling whether a download from a mirror that runs well
+	 * behind the mirror's measured latency and throughput is raced by a second download
+	 * of the same artifact from another mirror. The first one to complete is used.
+	 * Hedged downloads are buffered in temporary files and are disabled by default.
+	 * @see MirrorSelector#getHedgeDelay(URI, long)
+	 */
+	public static final String PROP_MIRROR_HEDGING = "eclipse.p2.mirrors.hedge"; //$NON-NLS-1$
+
 	/**
 	 * Location of the repository lock
 	 */
@@ -91,17 +122,31 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	 */
 	public static final String PROP_BLOBSTORE_NAME = "p2.blobstore.name"; //$NON-NLS-1$
 
+	/**
+	 * A boolean repository property that makes the repository store new artifacts in
+	 * its {@link ContentStore}, keyed by the SHA-256 hash of their bytes, rather than by
+	 * id and version. Identical bytes are then stored once.
+	 */
+	public static final String PROP_CONTENT_ADDRESSED = "p2.contentAddressed"; //$NON-NLS-1$
+
+	/**
+	 * The location of the content store, either an absolute URI or a path relative to the
+	 * repository. A store outside of the repository may be shared by several repositories,
+	 * its content is then never deleted when artifacts are removed from one of them.
+	 */
+	public static final String PROP_CONTENT_STORE_LOCATION = "p2.contentStore.location"; //$NON-NLS-1$
+
 	/**
 	 * Does this instance of the repository currently hold a lock
 	 */
-	private boolean holdsLock = false;
+	private volatile boolean holdsLock = false;
 	/**
 	 * Does this instance of the repository can be locked.
 	 * It will be initialized when initializing the location for repository
 	 */
-	private Boolean canLock = null;
+	private volatile Boolean canLock = null;
 
-	private long cacheTimestamp = 0l;
+	private volatile long cacheTimestamp = 0l;
 
 	public class ArtifactOutputStream extends OutputStream implements IStateful {
 		private boolean closed;
@@ -111,6 +156,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		private File file;
 		private IStatus status = Status.OK_STATUS;
 		private OutputStream firstLink;
+		private ContentStore.ContentOutputStream content;
 
 		public ArtifactOutputStream(OutputStream os, IArtifactDescriptor descriptor) {
 			this(os, descriptor, null);
@@ -146,10 +192,40 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			OutputStream testStream = firstLink == null ? this : firstLink;
 			if (ProcessingStepHandler.checkStatus(testStream).isOK() && count > 0) {
 				((ArtifactDescriptor) descriptor).setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, Long.toString(count));
-				addDescriptor(descriptor);
+				if (content != null)
+					commitContent();
+				else
+					addDescriptor(descriptor);
 			} else if (file != null)
 				// cleanup if possible
 				delete(file);
+			else if (content != null)
+				content.discard();
+		}
+
+		/*
+		 * Moves the content into the store and adds the descriptor referring to it while holding
+		 * the repository lock, so that removing another descriptor with the same content cannot
+		 * delete it in between.
+		 */
+		private void commitContent() throws IOException {
+			synchronized (SimpleArtifactRepository.this) {
+				boolean lockAcquired = false;
+				try {
+					if (canLock()) {
+						lockAcquired = lockAndLoad(false, new NullProgressMonitor());
+						if (!lockAcquired) {
+							content.discard();
+							return;
+						}
+					}
+					((SimpleArtifactDescriptor) descriptor).setRepositoryProperty(ARTIFACT_CONTENT_HASH, content.commit());
+					addDescriptor(descriptor);
+				} finally {
+					if (lockAcquired)
+						unlock();
+				}
+			}
 		}
 
 		@Override
@@ -241,7 +317,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	private static final String ARTIFACT_FOLDER = "artifact.folder"; //$NON-NLS-1$
 	private static final String ARTIFACT_UUID = "artifact.uuid"; //$NON-NLS-1$
+	private static final String ARTIFACT_CONTENT_HASH = "artifact.sha256"; //$NON-NLS-1$
 	static final private String BLOBSTORE = ".blobstore/"; //$NON-NLS-1$
+	static final private String CONTENTSTORE = ".contentstore/"; //$NON-NLS-1$
 	static final private String[][] PACKED_MAPPING_RULES = {{"(& (classifier=osgi.bundle) (format=packed))", "${repoUrl}/plugins/${id}_${version}.jar.pack.gz"}, //$NON-NLS-1$//$NON-NLS-2$
 			{"(& (classifier=osgi.bundle))", "${repoUrl}/plugins/${id}_${version}.jar"}, //$NON-NLS-1$//$NON-NLS-2$
 			{"(& (classifier=binary))", "${repoUrl}/binary/${id}_${version}"}, //$NON-NLS-1$ //$NON-NLS-2$
@@ -256,23 +334,38 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	static final private Integer REPOSITORY_VERSION = 1;
 	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
-	protected Set<SimpleArtifactDescriptor> artifactDescriptors = new HashSet<>();
+	/*
+	 * The descriptor tables are read without holding the repository monitor so that
+	 * concurrent downloads and queries do not serialize. Changes are made while holding
+	 * the monitor, and the descriptor lists in artifactMap are replaced rather than
+	 * modified so that readers always see a consistent list.
+	 */
+	protected volatile Set<SimpleArtifactDescriptor> artifactDescriptors = ConcurrentHashMap.newKeySet();
 	/**
 	 * Map<IArtifactKey,List<IArtifactDescriptor>> containing the index of artifacts in the repository.
 	 */
-	private Map<IArtifactKey, List<IArtifactDescriptor>> artifactMap = new HashMap<>();
-	private transient BlobStore blobStore;
-	transient private Mapper mapper = new Mapper();
-	private KeyIndex keyIndex;
-	private boolean snapshotNeeded = false;
+	private volatile Map<IArtifactKey, List<IArtifactDescriptor>> artifactMap = new ConcurrentHashMap<>();
+	private transient volatile BlobStore blobStore;
+	private transient volatile ContentStore contentStore;
+	private transient boolean sharedContentStore;
+	/**
+	 * Hashes of content whose descriptors were removed, to be deleted once nothing refers to them.
+	 */
+	private transient Set<String> unreferencedContent = new HashSet<>();
+	transient private volatile Mapper mapper = new Mapper();
+	private volatile KeyIndex keyIndex;
 
 	static final private String PUBLISH_PACK_FILES_AS_SIBLINGS = "publishPackFilesAsSiblings"; //$NON-NLS-1$
 
 	private static final int DEFAULT_MAX_THREADS = 4;
 
-	protected String[][] mappingRules = DEFAULT_MAPPING_RULES;
+	private static final int DEFAULT_SEGMENTS = 4;
 
-	private MirrorSelector mirrors;
+	private static final String PARTIAL_DOWNLOADS = "partial"; //$NON-NLS-1$
+
+	protected volatile String[][] mappingRules = DEFAULT_MAPPING_RULES;
+
+	private volatile MirrorSelector mirrors;
 
 	private boolean disableSave = false;
 
@@ -313,16 +406,16 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	private synchronized void mapDescriptor(IArtifactDescriptor descriptor) {
 		IArtifactKey key = descriptor.getArtifactKey();
-		if (snapshotNeeded) {
-			cloneAritfactMap();
-			snapshotNeeded = false;
-		}
 		List<IArtifactDescriptor> descriptors = artifactMap.get(key);
+		List<IArtifactDescriptor> updated;
 		if (descriptors == null) {
-			descriptors = new ArrayList<>();
-			artifactMap.put(key, descriptors);
+			updated = Collections.singletonList(descriptor);
+		} else {
+			updated = new ArrayList<>(descriptors.size() + 1);
+			updated.addAll(descriptors);
+			updated.add(descriptor);
 		}
-		descriptors.add(descriptor);
+		artifactMap.put(key, updated);
 		keyIndex = null;
 	}
 
@@ -332,24 +425,16 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		if (descriptors == null)
 			return;
 
-		if (snapshotNeeded) {
-			cloneAritfactMap();
-			snapshotNeeded = false;
-			descriptors = artifactMap.get(key);
-		}
-		descriptors.remove(descriptor);
-		if (descriptors.isEmpty())
+		List<IArtifactDescriptor> updated = new ArrayList<>(descriptors);
+		if (!updated.remove(descriptor))
+			return;
+		if (updated.isEmpty())
 			artifactMap.remove(key);
+		else
+			artifactMap.put(key, updated);
 		keyIndex = null;
 	}
 
-	private void cloneAritfactMap() {
-		HashMap<IArtifactKey, List<IArtifactDescriptor>> clone = new HashMap<>(artifactMap.size());
-		for (Entry<IArtifactKey, List<IArtifactDescriptor>> entry : artifactMap.entrySet())
-			clone.put(entry.getKey(), new ArrayList<>(entry.getValue()));
-		artifactMap = clone;
-	}
-
 	public SimpleArtifactRepository(IProvisioningAgent agent, String repositoryName, URI location, Map<String, String> properties) {
 		super(agent, repositoryName, REPOSITORY_TYPE, REPOSITORY_VERSION.toString(), location, null, null, properties);
 
@@ -428,6 +513,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			for (Map.Entry<String, String> entry : repoProperties.entrySet()) {
 				internal.setRepositoryProperty(entry.getKey(), entry.getValue());
 			}
+			// the content hash refers to the content store of the repository the descriptor comes from
+			if (((SimpleArtifactDescriptor) descriptor).getRepository() != this)
+				internal.setRepositoryProperty(ARTIFACT_CONTENT_HASH, null);
 		}
 		return internal;
 	}
@@ -456,11 +544,26 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		}
 	}
 
-	private synchronized OutputStream addPostSteps(ProcessingStepHandler handler, IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
+	/**
+	 * Returns the checksums the given descriptor is to be verified against. The MD5 checksum is left out
+	 * when its verification is turned off.
+	 * @param descriptor the artifact descriptor
+	 * @param prefix {@link IArtifactDescriptor#DOWNLOAD_CHECKSUM} or {@link IArtifactDescriptor#ARTIFACT_CHECKSUM}
+	 * @return the checksums by algorithm
+	 */
+	public static Map<String, String> getExpectedChecksums(IArtifactDescriptor descriptor, String prefix) {
+		Map<String, String> checksums = ChecksumProducer.getChecksums(descriptor, prefix);
+		if (!(IArtifactDescriptor.DOWNLOAD_CHECKSUM.equals(prefix) ? DOWNLOAD_MD5_CHECKSUM_ENABLED : ARTIFACT_MD5_CHECKSUM_ENABLED))
+			checksums.remove(ChecksumProducer.MD5);
+		return checksums;
+	}
+
+	private OutputStream addPostSteps(ProcessingStepHandler handler, IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
 		ArrayList<ProcessingStep> steps = new ArrayList<>();
 		steps.add(new SignatureVerifier());
-		if (ARTIFACT_MD5_CHECKSUM_ENABLED && descriptor.getProperty(IArtifactDescriptor.ARTIFACT_MD5) != null)
-			steps.add(new MD5Verifier(descriptor.getProperty(IArtifactDescriptor.ARTIFACT_MD5)));
+		Map<String, String> checksums = getExpectedChecksums(descriptor, IArtifactDescriptor.ARTIFACT_CHECKSUM);
+		if (!checksums.isEmpty())
+			steps.add(new ChecksumVerifier(checksums));
 		if (steps.isEmpty())
 			return destination;
 		ProcessingStep[] stepArray = steps.toArray(new ProcessingStep[steps.size()]);
@@ -472,8 +575,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		ArrayList<ProcessingStep> steps = new ArrayList<>();
 		if (IArtifactDescriptor.TYPE_ZIP.equals(descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_CONTENTTYPE)))
 			steps.add(new ZipVerifierStep());
-		if (DOWNLOAD_MD5_CHECKSUM_ENABLED && descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5) != null)
-			steps.add(new MD5Verifier(descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5)));
+		Map<String, String> checksums = getExpectedChecksums(descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM);
+		if (!checksums.isEmpty())
+			steps.add(new ChecksumVerifier(checksums));
 		// Add steps here if needed
 		if (steps.isEmpty())
 			return destination;
@@ -507,7 +611,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized boolean contains(IArtifactDescriptor descriptor) {
+	public boolean contains(IArtifactDescriptor descriptor) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
@@ -516,11 +620,11 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized boolean contains(IArtifactKey key) {
+	public boolean contains(IArtifactKey key) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
-		return artifactMap.containsKey(key);
+		return key != null && artifactMap.containsKey(key);
 	}
 
 	public synchronized URI createLocation(ArtifactDescriptor descriptor) {
@@ -558,6 +662,16 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			simple = (SimpleArtifactDescriptor) descriptor;
 		else
 			simple = createInternalDescriptor(descriptor);
+		String contentHash = getContentHash(descriptor);
+		if (contentHash != null) {
+			// the content may be shared with other descriptors, see deleteUnreferencedContent()
+			boolean result = artifactDescriptors.remove(descriptor);
+			if (result) {
+				unmapDescriptor(descriptor);
+				unreferencedContent.add(contentHash);
+			}
+			return result;
+		}
 		if (simple.getRepositoryProperty(SimpleArtifactDescriptor.ARTIFACT_REFERENCE) == null) {
 			File file = getArtifactFile(descriptor);
 			if (file != null) {
@@ -575,6 +689,45 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return result;
 	}
 
+	/**
+	 * Returns the hash under which the content of the given descriptor is kept in the
+	 * content store, or <code>null</code> if it is not in the content store.
+	 */
+	private String getContentHash(IArtifactDescriptor descriptor) {
+		if (descriptor instanceof SimpleArtifactDescriptor && ((SimpleArtifactDescriptor) descriptor).getRepository() == this)
+			return ((SimpleArtifactDescriptor) descriptor).getRepositoryProperty(ARTIFACT_CONTENT_HASH);
+		List<IArtifactDescriptor> descriptors = artifactMap.get(descriptor.getArtifactKey());
+		if (descriptors != null)
+			for (IArtifactDescriptor stored : descriptors)
+				if (stored.equals(descriptor) && stored instanceof SimpleArtifactDescriptor)
+					return ((SimpleArtifactDescriptor) stored).getRepositoryProperty(ARTIFACT_CONTENT_HASH);
+		return null;
+	}
+
+	/**
+	 * Deletes the content of removed descriptors that no remaining descriptor refers to.
+	 * Content in a shared store is left alone since other repositories may refer to it.
+	 * It runs only after the removal was saved, so a failed save keeps the content.
+	 */
+	private synchronized void deleteUnreferencedContent() {
+		if (unreferencedContent.isEmpty())
+			return;
+		if (!sharedContentStore) {
+			for (SimpleArtifactDescriptor descriptor : artifactDescriptors) {
+				String hash = descriptor.getRepositoryProperty(ARTIFACT_CONTENT_HASH);
+				if (hash != null)
+					unreferencedContent.remove(hash);
+			}
+			for (String hash : unreferencedContent)
+				contentStore.delete(hash);
+		}
+		unreferencedContent.clear();
+	}
+
+	private boolean isContentAddressed(IArtifactDescriptor descriptor) {
+		return Boolean.parseBoolean(getProperty(PROP_CONTENT_ADDRESSED)) && !isFolderBased(descriptor);
+	}
+
 	protected IStatus downloadArtifact(IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
 		if (isFolderBased(descriptor)) {
 			File artifactFolder = getArtifactFile(descriptor);
@@ -613,15 +766,15 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		URI baseLocation = getLocation(descriptor);
 		if (baseLocation == null)
 			return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.no_location, descriptor));
-		URI mirrorLocation = getMirror(baseLocation, monitor);
-		IStatus status = downloadArtifact(descriptor, mirrorLocation, destination, monitor);
+		URI[] servedBy = {getMirror(baseLocation, monitor)};
+		IStatus status = downloadArtifact(descriptor, baseLocation, servedBy, destination, monitor);
 		IStatus result = reportStatus(descriptor, destination, status);
 		// if the original download went reasonably but the reportStatus found some issues
 		// (e..g, in the processing steps/validators) then mark the mirror as bad and return
 		// a retry code (assuming we have more mirrors)
 		if ((status.isOK() || status.matches(IStatus.INFO | IStatus.WARNING)) && result.getSeverity() == IStatus.ERROR && !artifactError(result)) {
 			if (mirrors != null) {
-				mirrors.reportResult(mirrorLocation.toString(), result);
+				mirrors.reportResult(servedBy[0].toString(), result);
 				if (mirrors.hasValidMirror())
 					return new MultiStatus(Activator.ID, CODE_RETRY, new IStatus[] {result}, "Retry another mirror", null); //$NON-NLS-1$
 			}
@@ -686,13 +839,20 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	private IStatus downloadArtifact(IArtifactDescriptor descriptor, URI mirrorLocation, OutputStream destination, IProgressMonitor monitor) {
 		//Bug 340352: transport has performance overhead of 100ms and more, bypass it for local copies
-		IStatus result = Status.OK_STATUS;
-		if (mirrorLocation.getScheme().equals(SimpleArtifactRepositoryFactory.PROTOCOL_FILE))
-			result = copyFileToStream(new File(mirrorLocation), destination, monitor);
-		else
-			result = getTransport().download(mirrorLocation, destination, monitor);
-		if (mirrors != null)
-			mirrors.reportResult(mirrorLocation.toString(), result);
+		IStatus result = null;
+		SegmentedDownload segmented;
+		try {
+			if (mirrorLocation.getScheme().equals(SimpleArtifactRepositoryFactory.PROTOCOL_FILE))
+				result = copyFileToStream(new File(mirrorLocation), destination, monitor);
+			else if ((segmented = createSegmentedDownload(descriptor, mirrorLocation)) != null)
+				result = segmented.download(destination, monitor);
+			else
+				result = getTransport().download(mirrorLocation, destination, monitor);
+		} finally {
+			// a download that was canceled or threw is no longer pending on its mirror either
+			if (mirrors != null)
+				mirrors.reportResult(mirrorLocation.toString(), result != null ? result : Status.CANCEL_STATUS);
+		}
 		if (result.isOK() || result.getSeverity() == IStatus.CANCEL)
 			return result;
 		if (monitor.isCanceled())
@@ -706,17 +866,213 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return result;
 	}
 
+	/**
+	 * Downloads the artifact from the given mirror location. When hedging is enabled and
+	 * the download is slow, the artifact is also downloaded from another mirror, and the
+	 * download that completes first is copied to the destination.
+	 * @param servedBy holds the mirror location to download from, and is set to the location
+	 * of the download that was copied to the destination
+	 * @see #PROP_MIRROR_HEDGING
+	 */
+	private IStatus downloadArtifact(IArtifactDescriptor descriptor, URI baseLocation, URI[] servedBy, OutputStream destination, IProgressMonitor monitor) {
+		URI mirrorLocation = servedBy[0];
+		MirrorSelector selector = mirrors;
+		long delay = -1;
+		if (selector != null && !mirrorLocation.equals(baseLocation) && Boolean.parseBoolean(Activator.getContext().getProperty(PROP_MIRROR_HEDGING))) {
+			try {
+				String sizeString = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_SIZE);
+				if (sizeString != null)
+					delay = selector.getHedgeDelay(mirrorLocation, Long.parseLong(sizeString));
+			} catch (NumberFormatException e) {
+				// not hedged
+			}
+		}
+		if (delay < 0)
+			return downloadArtifact(descriptor, mirrorLocation, destination, monitor);
+
+		SubMonitor sub = SubMonitor.convert(monitor, NLS.bind(Messages.downloading, descriptor.getArtifactKey().getId()), 2);
+		final AtomicBoolean canceled = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+			Thread thread = new Thread(runnable, "p2 hedged download"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		HedgedAttempt primary = null;
+		HedgedAttempt hedge = null;
+		try {
+			primary = new HedgedAttempt(descriptor, mirrorLocation, canceled);
+			executor.execute(primary);
+			HedgedAttempt winner = null;
+			long hedgeTime = System.currentTimeMillis() + delay;
+			while (winner == null) {
+				if (sub.isCanceled())
+					return Status.CANCEL_STATUS;
+				if (hedge == null && System.currentTimeMillis() >= hedgeTime) {
+					URI alternative = selector.getAlternativeLocation(baseLocation, mirrorLocation, sub);
+					if (alternative != null) {
+						if (Tracing.DEBUG_MIRRORS)
+							Tracing.debug("Hedging slow download of " + mirrorLocation + " with " + alternative); //$NON-NLS-1$ //$NON-NLS-2$
+						hedge = new HedgedAttempt(descriptor, alternative, canceled);
+						executor.execute(hedge);
+					}
+					hedgeTime = Long.MAX_VALUE;
+				}
+				IStatus primaryResult = primary.getResult();
+				IStatus hedgeResult = hedge != null ? hedge.getResult() : null;
+				if (primaryResult != null && primaryResult.isOK())
+					winner = primary;
+				else if (hedgeResult != null && hedgeResult.isOK())
+					winner = hedge;
+				else if (primaryResult != null && (hedge == null || hedgeResult != null))
+					// nothing left to wait for, the primary result tells whether to retry another mirror
+					return primaryResult;
+				else
+					(primaryResult == null ? primary : hedge).await(100);
+			}
+			sub.worked(1);
+			servedBy[0] = winner.location;
+			return winner.copyTo(destination);
+		} finally {
+			canceled.set(true);
+			if (primary != null)
+				primary.discard();
+			if (hedge != null)
+				hedge.discard();
+			executor.shutdown();
+			sub.done();
+		}
+	}
+
+	/**
+	 * One of the downloads of a hedged download, buffered in a temporary file.
+	 */
+	private class HedgedAttempt implements Runnable {
+		private final IArtifactDescriptor descriptor;
+		private final URI location;
+		private final AtomicBoolean canceled;
+		private File file;
+		private IStatus result;
+		private boolean discarded;
+
+		HedgedAttempt(IArtifactDescriptor descriptor, URI location, AtomicBoolean canceled) {
+			this.descriptor = descriptor;
+			this.location = location;
+			this.canceled = canceled;
+		}
+
+		@Override
+		public void run() {
+			IStatus status;
+			try {
+				File temp = File.createTempFile("hedged", null); //$NON-NLS-1$
+				synchronized (this) {
+					file = temp;
+				}
+				try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+					status = downloadArtifact(descriptor, location, out, new NullProgressMonitor() {
+						@Override
+						public boolean isCanceled() {
+							return canceled.get();
+						}
+					});
+				}
+			} catch (IOException e) {
+				status = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+			} catch (RuntimeException e) {
+				status = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+			}
+			synchronized (this) {
+				result = status;
+				if (discarded && file != null)
+					file.delete();
+				notifyAll();
+			}
+		}
+
+		synchronized IStatus getResult() {
+			return result;
+		}
+
+		synchronized void await(long timeout) {
+			if (result != null)
+				return;
+			try {
+				wait(timeout);
+			} catch (InterruptedException e) {
+				canceled.set(true);
+			}
+		}
+
+		IStatus copyTo(OutputStream destination) {
+			try (InputStream in = new FileInputStream(file)) {
+				FileUtils.copyStream(in, false, destination, false);
+			} catch (IOException e) {
+				return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.error_copying_local_file, file.getAbsolutePath()), e);
+			}
+			return result;
+		}
+
+		/**
+		 * Deletes the buffered download, now or once it completes.
+		 */
+		synchronized void discard() {
+			discarded = true;
+			if (result != null && file != null)
+				file.delete();
+		}
+	}
+
+	/**
+	 * Returns a segmented download for the given artifact, or <code>null</code> if the
+	 * artifact should be downloaded as a single stream.
+	 * @see #PROP_SEGMENT_THRESHOLD
+	 */
+	private SegmentedDownload createSegmentedDownload(IArtifactDescriptor descriptor, URI location) {
+		long threshold = -1;
+		long size = -1;
+		int segments = DEFAULT_SEGMENTS;
+		try {
+			String thresholdString = Activator.getContext().getProperty(PROP_SEGMENT_THRESHOLD);
+			if (thresholdString != null)
+				threshold = Long.parseLong(thresholdString);
+			String sizeString = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_SIZE);
+			if (sizeString != null)
+				size = Long.parseLong(sizeString);
+			String segmentsString = Activator.getContext().getProperty(PROP_SEGMENTS);
+			if (segmentsString != null)
+				segments = Math.max(1, Integer.parseInt(segmentsString));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (threshold < 0 || size <= 0 || size < threshold)
+			return null;
+		IAgentLocation agentLocation = (IAgentLocation) getProvisioningAgent().getService(IAgentLocation.SERVICE_NAME);
+		URI dataArea = agentLocation != null ? agentLocation.getDataArea(Activator.ID) : null;
+		if (dataArea == null || !URIUtil.isFileURI(dataArea))
+			return null;
+		SegmentedDownload download = new SegmentedDownload(getTransport(), location, size, new File(URIUtil.toFile(dataArea), PARTIAL_DOWNLOADS));
+		download.setSegments(segments);
+		download.setChecksums(getExpectedChecksums(descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM));
+		return download;
+	}
+
 	/**
 	 * Returns an equivalent mirror location for the given artifact location.
 	 * @param baseLocation The location of the artifact in this repository
 	 * @return the Location of the artifact in this repository, or an equivalent mirror
 	 */
-	private synchronized URI getMirror(URI baseLocation, IProgressMonitor monitor) {
+	private URI getMirror(URI baseLocation, IProgressMonitor monitor) {
 		if (!MIRRORS_ENABLED || (!isForceThreading() && isLocal()))
 			return baseLocation;
-		if (mirrors == null)
-			mirrors = new MirrorSelector(this, getTransport());
-		return mirrors.getMirrorLocation(baseLocation, monitor);
+		MirrorSelector selector = mirrors;
+		if (selector == null) {
+			synchronized (this) {
+				if (mirrors == null)
+					mirrors = new MirrorSelector(this, getTransport());
+				selector = mirrors;
+			}
+		}
+		return selector.getMirrorLocation(baseLocation, monitor);
 	}
 
 	@Override
@@ -760,12 +1116,12 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized IArtifactDescriptor[] getArtifactDescriptors(IArtifactKey key) {
+	public IArtifactDescriptor[] getArtifactDescriptors(IArtifactKey key) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
 
-		List<IArtifactDescriptor> result = artifactMap.get(key);
+		List<IArtifactDescriptor> result = key != null ? artifactMap.get(key) : null;
 		if (result == null)
 			return new IArtifactDescriptor[0];
 
@@ -842,11 +1198,11 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			return overallStatus;
 	}
 
-	public synchronized IArtifactDescriptor getCompleteArtifactDescriptor(IArtifactKey key) {
+	public IArtifactDescriptor getCompleteArtifactDescriptor(IArtifactKey key) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
-		List<IArtifactDescriptor> descriptors = artifactMap.get(key);
+		List<IArtifactDescriptor> descriptors = key != null ? artifactMap.get(key) : null;
 		if (descriptors == null)
 			return null;
 
@@ -858,7 +1214,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return null;
 	}
 
-	public synchronized Set<SimpleArtifactDescriptor> getDescriptors() {
+	public Set<SimpleArtifactDescriptor> getDescriptors() {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
@@ -883,7 +1239,12 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return mapper.map(getLocation(), key.getClassifier(), key.getId(), key.getVersion().toString(), descriptor.getProperty(IArtifactDescriptor.FORMAT));
 	}
 
-	public synchronized URI getLocation(IArtifactDescriptor descriptor) {
+	public URI getLocation(IArtifactDescriptor descriptor) {
+		// if the artifact is in the content store then use its hash
+		String contentHash = getContentHash(descriptor);
+		if (contentHash != null)
+			return contentStore.fileFor(contentHash);
+
 		// if the artifact has a uuid then use it
 		String uuid = descriptor.getProperty(ARTIFACT_UUID);
 		if (uuid != null)
@@ -966,6 +1327,18 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.ARTIFACT_EXISTS, msg, null));
 		}
 
+		if (isContentAddressed(newDescriptor)) {
+			// the location is only known once the content has been written
+			try {
+				ContentStore.ContentOutputStream content = contentStore.getOutputStream();
+				ArtifactOutputStream result = new ArtifactOutputStream(new BufferedOutputStream(content), newDescriptor);
+				result.content = content;
+				return result;
+			} catch (IOException e) {
+				throw failedWrite(e);
+			}
+		}
+
 		// Determine writing location
 		URI newLocation = createLocation(newDescriptor);
 		if (newLocation == null)
@@ -1025,7 +1398,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_WRITE, msg, e));
 	}
 
-	public synchronized String[][] getRules() {
+	public String[][] getRules() {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
@@ -1045,6 +1418,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		setLocation(repoLocation);
 		String suffix = getBlobStoreName(BLOBSTORE);
 		blobStore = new BlobStore(getBlobStoreLocation(repoLocation, suffix), 128);
+		initializeContentStore(repoLocation);
 		initializeMapper();
 		for (SimpleArtifactDescriptor desc : artifactDescriptors)
 			desc.setRepository(this);
@@ -1054,6 +1428,24 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			canLock = Boolean.valueOf(canLock());
 	}
 
+	private void initializeContentStore(URI repoLocation) {
+		String value = getProperty(PROP_CONTENT_STORE_LOCATION);
+		URI location = null;
+		if (value != null && value.length() > 0) {
+			try {
+				location = URIUtil.fromString(value);
+			} catch (URISyntaxException e) {
+				// fall back to the default store
+			}
+		}
+		if (location == null)
+			location = URIUtil.append(repoLocation, CONTENTSTORE);
+		else if (!location.isAbsolute())
+			location = URIUtil.append(repoLocation, value);
+		sharedContentStore = !location.toString().startsWith(URIUtil.append(repoLocation, "").toString()); //$NON-NLS-1$
+		contentStore = new ContentStore(location);
+	}
+
 	private String getBlobStoreName(String defaultValue) {
 		String value = getProperty(PROP_BLOBSTORE_NAME);
 		if (value == null || value.length() == 0) {
@@ -1134,8 +1526,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 					return;
 			}
 
-			if (doRemoveArtifact(descriptor))
+			if (doRemoveArtifact(descriptor)) {
 				save();
+			}
 		} finally {
 			if (lockAcquired)
 				unlock();
@@ -1254,12 +1647,14 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		if (disableSave)
 			return;
 		boolean compress = "true".equalsIgnoreCase(getProperty(PROP_COMPRESSED)); //$NON-NLS-1$
-		save(compress);
+		if (save(compress))
+			deleteUnreferencedContent();
 	}
 
-	private void save(boolean compress) {
+	private boolean save(boolean compress) {
 		assertModifiable();
 		OutputStream os = null;
+		boolean saved = false;
 		try {
 			try {
 				URI actualLocation = getActualLocation(getLocation(), false);
@@ -1287,6 +1682,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 				}
 				super.setProperty(IRepository.PROP_TIMESTAMP, Long.toString(System.currentTimeMillis()), new NullProgressMonitor());
 				new SimpleArtifactRepositoryIO(getProvisioningAgent()).write(this, os);
+				saved = true;
 			} catch (IOException e) {
 				// TODO proper exception handling
 				e.printStackTrace();
@@ -1297,7 +1693,9 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
+			saved = false;
 		}
+		return saved;
 	}
 
 	private String doSetProperty(String key, String newValue, IProgressMonitor monitor, boolean save) {
@@ -1314,6 +1712,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 				initializeMapper();
 			}
 		}
+		if (PROP_CONTENT_STORE_LOCATION.equals(key) && getLocation() != null)
+			initializeContentStore(getLocation());
 		if (save)
 			save();
 		return oldValue;
@@ -1347,11 +1747,8 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	@Override
 	public IQueryable<IArtifactDescriptor> descriptorQueryable() {
 		return (query, monitor) -> {
-			synchronized (SimpleArtifactRepository.this) {
-				snapshotNeeded = true;
-				Collection<List<IArtifactDescriptor>> descs = SimpleArtifactRepository.this.artifactMap.values();
-				return query.perform(new CompoundIterator<IArtifactDescriptor>(descs.iterator()));
-			}
+			Collection<List<IArtifactDescriptor>> descs = SimpleArtifactRepository.this.artifactMap.values();
+			return query.perform(new CompoundIterator<IArtifactDescriptor>(descs.iterator()));
 		};
 	}
 
@@ -1361,11 +1758,10 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized Iterator<IArtifactKey> everything() {
+	public Iterator<IArtifactKey> everything() {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
-		snapshotNeeded = true;
 		return artifactMap.keySet().iterator();
 	}
 
@@ -1409,15 +1805,21 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	}
 
 	@Override
-	public synchronized IIndex<IArtifactKey> getIndex(String memberName) {
+	public IIndex<IArtifactKey> getIndex(String memberName) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
 			load(new NullProgressMonitor());
 		}
 		if (ArtifactKey.MEMBER_ID.equals(memberName)) {
-			snapshotNeeded = true;
-			if (keyIndex == null)
-				keyIndex = new KeyIndex(artifactMap.keySet());
-			return keyIndex;
+			KeyIndex index = keyIndex;
+			if (index == null) {
+				// build under the monitor so that a concurrent change cannot be missed
+				synchronized (this) {
+					if (keyIndex == null)
+						keyIndex = new KeyIndex(artifactMap.keySet());
+					index = keyIndex;
+				}
+			}
+			return index;
 		}
 		return null;
 	}
@@ -1578,44 +1980,51 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		IArtifactRepository repositoryOnDisk = null;
 		try {
 			SubMonitor subMonitor = SubMonitor.convert(monitor, 4);
+			long lastModified;
 			try {
 				File localFile = repositoryFactory.getLocalFile(getLocation(), subMonitor.newChild(1));
-				long lastModified = localFile.lastModified();
+				lastModified = localFile.lastModified();
 				if (lastModified <= cacheTimestamp)
 					return;
-				cacheTimestamp = lastModified;
 			} catch (Exception e) {
 				// Dont'r worry if we can't load
 				return;
 			}
-			try {
-				repositoryOnDisk = repositoryFactory.load(getLocation(), IRepositoryManager.REPOSITORY_HINT_MODIFIABLE, subMonitor.newChild(3), false);
-			} catch (Exception e) {
-				// Don't worry if we can't load
-				return;
-			}
-
-			if (repositoryOnDisk != null && repositoryOnDisk instanceof SimpleArtifactRepository) {
-				setName(repositoryOnDisk.getName());
-				setType(repositoryOnDisk.getType());
-				setVersion(repositoryOnDisk.getVersion());
-				setLocation(repositoryOnDisk.getLocation()); // Will this ever change, should it?
-				setDescription(repositoryOnDisk.getDescription());
-				setProvider(repositoryOnDisk.getProvider());
-				this.mappingRules = ((SimpleArtifactRepository) repositoryOnDisk).mappingRules;
-
-				// Clear the existing properties
-				//				this.setProperties(new OrderedProperties());
-				//
-				Map<String, String> prop = repositoryOnDisk.getProperties();
-				Set<Entry<String, String>> entrySet = prop.entrySet();
-				for (Entry<String, String> entry : entrySet) {
-					doSetProperty(entry.getKey(), entry.getValue(), new NullProgressMonitor(), false);
+			// readers only get here when the file changed, the reload itself excludes writers
+			synchronized (this) {
+				if (lastModified <= cacheTimestamp)
+					return;
+				cacheTimestamp = lastModified;
+				try {
+					repositoryOnDisk = repositoryFactory.load(getLocation(), IRepositoryManager.REPOSITORY_HINT_MODIFIABLE, subMonitor.newChild(3), false);
+				} catch (Exception e) {
+					// Don't worry if we can't load
+					return;
 				}
 
-				//
-				this.artifactDescriptors = ((SimpleArtifactRepository) repositoryOnDisk).artifactDescriptors;
-				this.artifactMap = ((SimpleArtifactRepository) repositoryOnDisk).artifactMap;
+				if (repositoryOnDisk != null && repositoryOnDisk instanceof SimpleArtifactRepository) {
+					setName(repositoryOnDisk.getName());
+					setType(repositoryOnDisk.getType());
+					setVersion(repositoryOnDisk.getVersion());
+					setLocation(repositoryOnDisk.getLocation()); // Will this ever change, should it?
+					setDescription(repositoryOnDisk.getDescription());
+					setProvider(repositoryOnDisk.getProvider());
+					this.mappingRules = ((SimpleArtifactRepository) repositoryOnDisk).mappingRules;
+
+					// Clear the existing properties
+					//				this.setProperties(new OrderedProperties());
+					//
+					Map<String, String> prop = repositoryOnDisk.getProperties();
+					Set<Entry<String, String>> entrySet = prop.entrySet();
+					for (Entry<String, String> entry : entrySet) {
+						doSetProperty(entry.getKey(), entry.getValue(), new NullProgressMonitor(), false);
+					}
+
+					//
+					this.artifactDescriptors = ((SimpleArtifactRepository) repositoryOnDisk).artifactDescriptors;
+					this.artifactMap = ((SimpleArtifactRepository) repositoryOnDisk).artifactMap;
+					keyIndex = null;
+				}
 			}
 		} finally {
 			monitor.done();
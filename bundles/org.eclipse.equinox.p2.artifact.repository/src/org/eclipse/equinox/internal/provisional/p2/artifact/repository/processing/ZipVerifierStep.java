@@ -33,6 +33,18 @@ public class ZipVerifierStep extends ProcessingStep {
 		}
 	}
 
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		getDestination().write(b, off, len);
+		// only the header needs looking at, the rest is passed on as a whole
+		for (int i = off; i < off + len && valid >= 0 && valid <= 3; i++) {
+			if ((b[i] & 0xFF) != ZIP_HEADER[valid++]) {
+				valid = -1;
+				setStatus(new Status(IStatus.ERROR, Activator.ID, Messages.ZipVerifierStep_invalid_archive));
+			}
+		}
+	}
+
 	@Override
 	public void close() throws IOException {
 		if (valid > 3) {
@@ -48,6 +48,9 @@ public class ProvisioningAgent implements IProvisioningAgent, ServiceTrackerCust
 			Object service = agentServices.get(serviceName);
 			if (service != null)
 				return service;
+			//without a framework only the explicitly registered services are available
+			if (context == null)
+				return null;
 			//attempt to get factory service from service registry
 			Collection<ServiceReference<IAgentServiceFactory>> refs;
 			try {
@@ -71,7 +71,7 @@ public class OrderedProperties extends Dictionary<String, String> implements Map
 	}
 
 	public void putAll(OrderedProperties properties) {
-		putAll(properties);
+		putAll((Map<String, String>) properties);
 	}
 
 	/**
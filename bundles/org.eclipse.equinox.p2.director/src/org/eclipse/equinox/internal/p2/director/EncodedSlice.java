@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.internal.p2.director.Projector.AbstractVariable;
+import org.eclipse.equinox.p2.metadata.*;
+import org.sat4j.pb.tools.DependencyHelper;
+import org.sat4j.specs.ContradictionException;
+
+/**
+ * The recorded encoding of all the IUs of a slice but the entry point, together with the
+ * state the {@link Projector} accumulated while producing it. It is keyed by the content of
+ * the slice and the parameters that influence the encoding of the IUs.
+ * Instances are immutable and can be replayed in any number of projectors.
+ */
+final class EncodedSlice {
+	abstract static class Constraint {
+		abstract void addTo(DependencyHelper<Object, Explanation> helper) throws ContradictionException;
+	}
+
+	static final class Implication extends Constraint {
+		private final Object[] left;
+		private final Object[] right;
+		private final Explanation explanation;
+
+		Implication(Object[] left, Object[] right, Explanation explanation) {
+			this.left = left;
+			this.right = right;
+			this.explanation = explanation;
+		}
+
+		@Override
+		void addTo(DependencyHelper<Object, Explanation> helper) throws ContradictionException {
+			helper.implication(left).implies(right).named(explanation);
+		}
+	}
+
+	static final class NegationImplication extends Constraint {
+		private final Object left;
+		private final Object right;
+		private final Explanation explanation;
+
+		NegationImplication(Object left, Object right, Explanation explanation) {
+			this.left = left;
+			this.right = right;
+			this.explanation = explanation;
+		}
+
+		@Override
+		void addTo(DependencyHelper<Object, Explanation> helper) throws ContradictionException {
+			helper.implication(new Object[] {left}).impliesNot(right).named(explanation);
+		}
+	}
+
+	static final class False extends Constraint {
+		private final Object thing;
+		private final Explanation explanation;
+
+		False(Object thing, Explanation explanation) {
+			this.thing = thing;
+			this.explanation = explanation;
+		}
+
+		@Override
+		void addTo(DependencyHelper<Object, Explanation> helper) throws ContradictionException {
+			helper.setFalse(thing, explanation);
+		}
+	}
+
+	//Key
+	private final IInstallableUnit[] ius;
+	private final Map<String, String> context;
+	private final Set<IInstallableUnit> nonGreedyIUs;
+	private final boolean considerMetaRequirements;
+
+	//Recorded encoding
+	final List<Constraint> constraints;
+	final Map<String, Map<Version, IInstallableUnit>> slice;
+	final List<AbstractVariable> abstractVariables;
+	final List<AbstractVariable> allOptionalAbstractRequirements;
+	final Map<IInstallableUnit, AbstractVariable> nonGreedyVariables;
+	final Map<AbstractVariable, List<Object>> nonGreedyProvider;
+	final Map<IInstallableUnitFragment, Set<IInstallableUnit>> fragments;
+	final IStatus[] status;
+
+	EncodedSlice(IInstallableUnit[] ius, Map<String, String> context, Set<IInstallableUnit> nonGreedyIUs, boolean considerMetaRequirements, List<Constraint> constraints, Map<String, Map<Version, IInstallableUnit>> slice, List<AbstractVariable> abstractVariables, List<AbstractVariable> allOptionalAbstractRequirements, Map<IInstallableUnit, AbstractVariable> nonGreedyVariables, Map<AbstractVariable, List<Object>> nonGreedyProvider, Map<IInstallableUnitFragment, Set<IInstallableUnit>> fragments, IStatus[] status) {
+		this.ius = ius;
+		this.context = context == null ? Collections.<String, String> emptyMap() : new HashMap<>(context);
+		this.nonGreedyIUs = new HashSet<>(nonGreedyIUs);
+		this.considerMetaRequirements = considerMetaRequirements;
+		this.constraints = Collections.unmodifiableList(new ArrayList<>(constraints));
+		this.slice = new HashMap<>(slice.size());
+		for (Entry<String, Map<Version, IInstallableUnit>> entry : slice.entrySet())
+			this.slice.put(entry.getKey(), new HashMap<>(entry.getValue()));
+		this.abstractVariables = new ArrayList<>(abstractVariables);
+		this.allOptionalAbstractRequirements = new ArrayList<>(allOptionalAbstractRequirements);
+		this.nonGreedyVariables = new HashMap<>(nonGreedyVariables);
+		this.nonGreedyProvider = new HashMap<>(nonGreedyProvider.size());
+		for (Entry<AbstractVariable, List<Object>> entry : nonGreedyProvider.entrySet())
+			this.nonGreedyProvider.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+		this.fragments = new HashMap<>(fragments.size());
+		for (Entry<IInstallableUnitFragment, Set<IInstallableUnit>> entry : fragments.entrySet())
+			this.fragments.put(entry.getKey(), new HashSet<>(entry.getValue()));
+		this.status = status;
+	}
+
+	/**
+	 * Return whether this encoding has been produced for the given slice and parameters.
+	 * The IUs are compared by identity since two equal IUs may carry different requirements. 
+	 */
+	boolean isEncodingOf(IInstallableUnit[] otherIUs, Map<String, String> otherContext, Set<IInstallableUnit> otherNonGreedyIUs, boolean otherConsiderMetaRequirements) {
+		if (considerMetaRequirements != otherConsiderMetaRequirements || ius.length != otherIUs.length)
+			return false;
+		for (int i = 0; i < ius.length; i++) {
+			if (ius[i] != otherIUs[i])
+				return false;
+		}
+		if (!context.equals(otherContext == null ? Collections.<String, String> emptyMap() : otherContext))
+			return false;
+		return nonGreedyIUs.equals(otherNonGreedyIUs);
+	}
+}
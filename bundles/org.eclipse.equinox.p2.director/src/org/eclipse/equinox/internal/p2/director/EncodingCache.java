@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+
+/**
+ * A bounded cache of the encodings produced by the {@link Projector}. Successive
+ * planning operations over the same slice (e.g. what-if queries differing only by
+ * their roots) replay the cached encoding instead of re-expanding every requirement.
+ * The least recently used encoding is discarded first.
+ */
+public class EncodingCache {
+	private final int maxSize;
+	private final LinkedList<EncodedSlice> encodings = new LinkedList<>();
+
+	public EncodingCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	synchronized EncodedSlice get(IInstallableUnit[] ius, Map<String, String> context, Set<IInstallableUnit> nonGreedyIUs, boolean considerMetaRequirements) {
+		for (Iterator<EncodedSlice> iterator = encodings.iterator(); iterator.hasNext();) {
+			EncodedSlice encoding = iterator.next();
+			if (encoding.isEncodingOf(ius, context, nonGreedyIUs, considerMetaRequirements)) {
+				iterator.remove();
+				encodings.addFirst(encoding);
+				return encoding;
+			}
+		}
+		return null;
+	}
+
+	synchronized void put(EncodedSlice encoding) {
+		encodings.addFirst(encoding);
+		while (encodings.size() > maxSize)
+			encodings.removeLast();
+	}
+
+	public synchronized void clear() {
+		encodings.clear();
+	}
+}
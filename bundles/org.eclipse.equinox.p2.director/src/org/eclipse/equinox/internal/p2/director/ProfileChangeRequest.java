@@ -36,6 +36,7 @@ public class ProfileChangeRequest implements Cloneable, IProfileChangeRequest {
 	private HashMap<IInstallableUnit, Map<String, String>> iuPropertiesToAdd = null; // map iu->map of key->value pairs for properties to be added for an iu
 	private HashMap<IInstallableUnit, List<String>> iuPropertiesToRemove = null; // map of iu->list of property keys to be removed for an iu
 	private ArrayList<IRequirement> additionalRequirements;
+	private boolean parallelSlicing = false; // whether the planner expands the requirements in parallel
 
 	public static ProfileChangeRequest createByProfileId(IProvisioningAgent agent, String profileId) {
 		IProfileRegistry profileRegistry = (IProfileRegistry) agent.getService(IProfileRegistry.SERVICE_NAME);
@@ -214,6 +215,7 @@ public class ProfileChangeRequest implements Cloneable, IProfileChangeRequest {
 		result.iuPropertiesToAdd = iuPropertiesToAdd == null ? null : (HashMap<IInstallableUnit, Map<String, String>>) iuPropertiesToAdd.clone();
 		result.iuPropertiesToRemove = iuPropertiesToRemove == null ? null : (HashMap<IInstallableUnit, List<String>>) iuPropertiesToRemove.clone();
 		result.additionalRequirements = additionalRequirements == null ? null : (ArrayList<IRequirement>) additionalRequirements.clone();
+		result.parallelSlicing = parallelSlicing;
 		return result;
 	}
 
@@ -259,4 +261,16 @@ public class ProfileChangeRequest implements Cloneable, IProfileChangeRequest {
 	public void clearExtraRequirements() {
 		additionalRequirements = null;
 	}
+
+	/**
+	 * Set whether the planner slices the available IUs in parallel when resolving this request.
+	 * The resulting plan is the same, only the time needed to compute it is affected.
+	 */
+	public void setParallelSlicing(boolean parallelSlicing) {
+		this.parallelSlicing = parallelSlicing;
+	}
+
+	public boolean isParallelSlicing() {
+		return parallelSlicing;
+	}
 }
@@ -27,6 +27,7 @@ import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
 import org.eclipse.equinox.p2.query.*;
 import org.eclipse.osgi.util.NLS;
+import org.osgi.framework.BundleContext;
 import org.sat4j.minisat.restarts.LubyRestarts;
 import org.sat4j.pb.*;
 import org.sat4j.pb.core.PBSolverResolution;
@@ -82,6 +83,11 @@ public class Projector {
 	private boolean emptyBecauseFiltered;
 	private boolean userDefinedFunction;
 
+	//Incremental encoding
+	private Map<String, String> context;
+	private EncodingCache encodingCache;
+	private List<EncodedSlice.Constraint> recordedConstraints; //Non null while the encoding of the slice is being recorded
+
 	static class AbstractVariable {
 		//		private String name;
 
@@ -170,6 +176,7 @@ public class Projector {
 		assumptions = new ArrayList<>();
 		this.nonGreedyIUs = nonGreedyIUs;
 		this.considerMetaRequirements = considerMetaRequirements;
+		this.context = context;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -202,7 +209,8 @@ public class Projector {
 				// allow the user to specify a longer timeout. 
 				// only set the value if it is a positive integer larger than the default.
 				// see https://bugs.eclipse.org/336967
-				timeoutString = DirectorActivator.context.getProperty(PROP_PROJECTOR_TIMEOUT);
+				BundleContext context = DirectorActivator.context;
+				timeoutString = context != null ? context.getProperty(PROP_PROJECTOR_TIMEOUT) : System.getProperty(PROP_PROJECTOR_TIMEOUT);
 				if (timeoutString != null)
 					timeout = Math.max(timeout, Integer.parseInt(timeoutString));
 			} catch (Exception e) {
@@ -228,14 +236,32 @@ public class Projector {
 			}
 			List<IInstallableUnit> iusToOrder = new ArrayList<>(queryResult.toSet());
 			Collections.sort(iusToOrder);
-			for (Iterator<IInstallableUnit> iusToEncode = iusToOrder.iterator(); iusToEncode.hasNext();) {
-				if (monitor.isCanceled()) {
-					result.merge(Status.CANCEL_STATUS);
-					throw new OperationCanceledException();
+			IInstallableUnit[] sliceContent = null;
+			EncodedSlice encodedSlice = null;
+			if (encodingCache != null) {
+				sliceContent = getSliceContent(iusToOrder, entryPointIU);
+				encodedSlice = encodingCache.get(sliceContent, context, nonGreedyIUs, considerMetaRequirements);
+			}
+			if (encodedSlice != null) {
+				if (DEBUG)
+					Tracing.debug("Reusing the encoding of " + sliceContent.length + " IUs"); //$NON-NLS-1$ //$NON-NLS-2$
+				replay(encodedSlice);
+			} else {
+				if (encodingCache != null)
+					recordedConstraints = new ArrayList<>();
+				for (Iterator<IInstallableUnit> iusToEncode = iusToOrder.iterator(); iusToEncode.hasNext();) {
+					if (monitor.isCanceled()) {
+						result.merge(Status.CANCEL_STATUS);
+						throw new OperationCanceledException();
+					}
+					IInstallableUnit iuToEncode = iusToEncode.next();
+					if (iuToEncode != entryPointIU) {
+						processIU(iuToEncode, false);
+					}
 				}
-				IInstallableUnit iuToEncode = iusToEncode.next();
-				if (iuToEncode != entryPointIU) {
-					processIU(iuToEncode, false);
+				if (encodingCache != null) {
+					encodingCache.put(new EncodedSlice(sliceContent, context, nonGreedyIUs, considerMetaRequirements, recordedConstraints, slice, abstractVariables, allOptionalAbstractRequirements, nonGreedyVariables, nonGreedyProvider, fragments, result.getChildren()));
+					recordedConstraints = null;
 				}
 			}
 			createMustHave(entryPointIU, alreadyExistingRoots);
@@ -259,6 +285,42 @@ public class Projector {
 		}
 	}
 
+	private static IInstallableUnit[] getSliceContent(List<IInstallableUnit> ius, IInstallableUnit entryPointIU) {
+		List<IInstallableUnit> content = new ArrayList<>(ius.size());
+		for (IInstallableUnit iu : ius) {
+			if (iu != entryPointIU)
+				content.add(iu);
+		}
+		return content.toArray(new IInstallableUnit[content.size()]);
+	}
+
+	//Restore the state resulting from the encoding of all the IUs of the slice, and add the recorded constraints to the solver
+	private void replay(EncodedSlice encodedSlice) throws ContradictionException {
+		for (Entry<String, Map<Version, IInstallableUnit>> entry : encodedSlice.slice.entrySet())
+			slice.put(entry.getKey(), new HashMap<>(entry.getValue()));
+		abstractVariables.addAll(encodedSlice.abstractVariables);
+		allOptionalAbstractRequirements.addAll(encodedSlice.allOptionalAbstractRequirements);
+		nonGreedyVariables.putAll(encodedSlice.nonGreedyVariables);
+		for (Entry<AbstractVariable, List<Object>> entry : encodedSlice.nonGreedyProvider.entrySet())
+			nonGreedyProvider.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+		for (Entry<IInstallableUnitFragment, Set<IInstallableUnit>> entry : encodedSlice.fragments.entrySet())
+			fragments.put(entry.getKey(), new HashSet<>(entry.getValue()));
+		for (IStatus status : encodedSlice.status)
+			result.add(status);
+		for (EncodedSlice.Constraint constraint : encodedSlice.constraints)
+			constraint.addTo(dependencyHelper);
+	}
+
+	private void record(EncodedSlice.Constraint constraint) {
+		if (recordedConstraints != null)
+			recordedConstraints.add(constraint);
+	}
+
+	private void setFalse(Object thing, Explanation explanation) throws ContradictionException {
+		dependencyHelper.setFalse(thing, explanation);
+		record(new EncodedSlice.False(thing, explanation));
+	}
+
 	private void createConstraintsForNonGreedy() throws ContradictionException {
 		for (IInstallableUnit iu : nonGreedyIUs) {
 			AbstractVariable var = getNonGreedyVariable(iu);
@@ -323,7 +385,7 @@ public class Projector {
 		if (DEBUG) {
 			Tracing.debug(iu + "=0"); //$NON-NLS-1$
 		}
-		dependencyHelper.setFalse(iu, new Explanation.MissingIU(iu, req, iu == this.entryPoint));
+		setFalse(iu, new Explanation.MissingIU(iu, req, iu == this.entryPoint));
 	}
 
 	// Check whether the requirement is applicable
@@ -383,7 +445,7 @@ public class Projector {
 		if (req.getMin() > 0) {
 			if (matches.isEmpty()) {
 				if (iu == entryPoint && emptyBecauseFiltered) {
-					dependencyHelper.setFalse(iu, new NotInstallableRoot(req));
+					setFalse(iu, new NotInstallableRoot(req));
 				} else {
 					missingRequirement(iu, req);
 				}
@@ -887,22 +949,28 @@ public class Projector {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + left + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		for (Object r : right)
+		for (Object r : right) {
 			dependencyHelper.implication(new Object[] {left}).impliesNot(r).named(name);
+			record(new EncodedSlice.NegationImplication(left, r, name));
+		}
 	}
 
 	private void createImplication(Object left, List<?> right, Explanation name) throws ContradictionException {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + left + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		dependencyHelper.implication(new Object[] {left}).implies(right.toArray()).named(name);
+		Object[] rightArray = right.toArray();
+		dependencyHelper.implication(new Object[] {left}).implies(rightArray).named(name);
+		record(new EncodedSlice.Implication(new Object[] {left}, rightArray, name));
 	}
 
 	private void createImplication(Object[] left, List<?> right, Explanation name) throws ContradictionException {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + Arrays.asList(left) + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		dependencyHelper.implication(left).implies(right.toArray()).named(name);
+		Object[] rightArray = right.toArray();
+		dependencyHelper.implication(left).implies(rightArray).named(name);
+		record(new EncodedSlice.Implication(left, rightArray, name));
 	}
 
 	//Return IUPatches that are applicable for the given iu
@@ -1106,4 +1174,13 @@ public class Projector {
 	public void setUserDefined(boolean containsKey) {
 		userDefinedFunction = containsKey;
 	}
+
+	/**
+	 * Set the cache used to reuse the encoding of a slice previously encoded. When a cache is set,
+	 * the encoding of all the IUs of the slice but the entry point is recorded, and replayed
+	 * when the same slice is encoded again. Only the entry point is then re-expanded.
+	 */
+	public void setEncodingCache(EncodingCache cache) {
+		encodingCache = cache;
+	}
 }
\ No newline at end of file
@@ -15,6 +15,7 @@ package org.eclipse.equinox.internal.p2.director;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
@@ -43,12 +44,24 @@ public class SimplePlanner implements IPlanner {
 	private static final String ID_IU_FOR_ACTIONS = "org.eclipse.equinox.p2.engine.actions.root"; //$NON-NLS-1$
 	private static final String EXPLANATION = "org.eclipse.equinox.p2.director.explain"; //$NON-NLS-1$
 	private static final String CONSIDER_METAREQUIREMENTS = "org.eclipse.equinox.p2.planner.resolveMetaRequirements"; //$NON-NLS-1$
+	/**
+	 * Context property indicating that the encoding of the slice can be reused from a previous
+	 * planning operation over the same slice, and recorded for the following ones.
+	 */
+	public static final String INCREMENTAL = "org.eclipse.equinox.p2.planner.incremental"; //$NON-NLS-1$
+	/**
+	 * Context property indicating that the available IUs are sliced in parallel. This is
+	 * equivalent to {@link ProfileChangeRequest#setParallelSlicing(boolean)} for every request.
+	 */
+	public static final String PARALLEL_SLICING = "org.eclipse.equinox.p2.planner.parallelSlicing"; //$NON-NLS-1$
+	private static final int ENCODING_CACHE_SIZE = 4;
 
 	static final int UNSATISFIABLE = 1; //status code indicating that the problem is not satisfiable
 
 	private final IProvisioningAgent agent;
 	private final IProfileRegistry profileRegistry;
 	private final IEngine engine;
+	private final EncodingCache encodingCache = new EncodingCache(ENCODING_CACHE_SIZE);
 
 	private IProvisioningPlan generateProvisioningPlan(Collection<IInstallableUnit> fromState, Collection<IInstallableUnit> toState, ProfileChangeRequest changeRequest, IProvisioningPlan installerPlan, ProvisioningContext context) {
 		IProvisioningPlan plan = engine.createPlan(changeRequest.getProfile(), context);
@@ -329,6 +342,8 @@ public class SimplePlanner implements IPlanner {
 			IInstallableUnit[] availableIUs = gatherAvailableInstallableUnits(extraIUs.toArray(new IInstallableUnit[extraIUs.size()]), context, sub.newChild(ExpandWork / 4));
 
 			Slicer slicer = new Slicer(new QueryableArray(availableIUs), newSelectionContext, satisfyMetaRequirements(profileChangeRequest.getProfileProperties()));
+			if (profileChangeRequest.isParallelSlicing() || isSet(context, PARALLEL_SLICING))
+				slicer.setParallelism(ForkJoinPool.commonPool());
 			IQueryable<IInstallableUnit> slice = slicer.slice(new IInstallableUnit[] {(IInstallableUnit) updatedPlan[0]}, sub.newChild(ExpandWork / 4));
 			if (slice == null) {
 				IProvisioningPlan plan = engine.createPlan(profile, context);
@@ -340,6 +355,8 @@ public class SimplePlanner implements IPlanner {
 			slice = new CompoundQueryable<>(queryables);
 			Projector projector = new Projector(slice, newSelectionContext, slicer.getNonGreedyIUs(), satisfyMetaRequirements(profileChangeRequest.getProfileProperties()));
 			projector.setUserDefined(profileChangeRequest.getPropertiesToAdd().containsKey("_internal_user_defined_"));
+			if (isSet(context, INCREMENTAL))
+				projector.setEncodingCache(encodingCache);
 			projector.encode((IInstallableUnit) updatedPlan[0], (IInstallableUnit[]) updatedPlan[1], profile, profileChangeRequest.getAdditions(), sub.newChild(ExpandWork / 4));
 			IStatus s = projector.invokeSolver(sub.newChild(ExpandWork / 4));
 			if (s.getSeverity() == IStatus.CANCEL) {
@@ -379,6 +396,18 @@ public class SimplePlanner implements IPlanner {
 		}
 	}
 
+	private static boolean isSet(ProvisioningContext context, String property) {
+		return context != null && Boolean.TRUE.toString().equalsIgnoreCase(context.getProperty(property));
+	}
+
+	//Carry the properties tuning the resolution over to the contexts created for internal resolutions
+	private static void copyResolutionProperties(ProvisioningContext from, ProvisioningContext to) {
+		if (isSet(from, INCREMENTAL))
+			to.setProperty(INCREMENTAL, Boolean.TRUE.toString());
+		if (isSet(from, PARALLEL_SLICING))
+			to.setProperty(PARALLEL_SLICING, Boolean.TRUE.toString());
+	}
+
 	@Override
 	public IProvisioningPlan getProvisioningPlan(IProfileChangeRequest request, ProvisioningContext context, IProgressMonitor monitor) {
 		ProfileChangeRequest pcr = (ProfileChangeRequest) request;
@@ -591,6 +620,7 @@ public class SimplePlanner implements IPlanner {
 
 		ProvisioningContext agentCtx = new ProvisioningContext(agent);
 		agentCtx.setMetadataRepositories(new URI[0]);
+		copyResolutionProperties(initialContext, agentCtx);
 		ArrayList<IInstallableUnit> extraIUs = new ArrayList<>(unattachedState);
 		agentCtx.setExtraInstallableUnits(extraIUs);
 		Object agentSolution = getSolutionFor(agentRequest, agentCtx, monitor.newChild(3));
@@ -610,7 +640,7 @@ public class SimplePlanner implements IPlanner {
 		agentState.remove(metaRequirementIU); //Remove the fake IU
 		agentState = AttachmentHelper.attachFragments(agentState.iterator(), ((Projector) agentSolution).getFragmentAssociation());
 
-		ProvisioningContext noRepoContext = createNoRepoContext(initialRequest);
+		ProvisioningContext noRepoContext = createNoRepoContext(initialRequest, initialContext);
 		//...This computes the attachment of what is currently in the profile 
 		Object initialSolution = getSolutionFor(new ProfileChangeRequest(new EverythingOptionalProfile(initialRequest.getProfile())), noRepoContext, new NullProgressMonitor());
 		if (initialSolution instanceof IProvisioningPlan) {
@@ -633,7 +663,7 @@ public class SimplePlanner implements IPlanner {
 			newState = newSolution.extractSolution();
 			newState = AttachmentHelper.attachFragments(newState.iterator(), newSolution.getFragmentAssociation());
 		}
-		ProvisioningContext noRepoContext = createNoRepoContext(request);
+		ProvisioningContext noRepoContext = createNoRepoContext(request, context);
 
 		//Compute the attachment of the previous state
 		Object initialSolution = getSolutionFor(new ProfileChangeRequest(new EverythingOptionalProfile(request.getProfile())), noRepoContext, new NullProgressMonitor());
@@ -648,11 +678,12 @@ public class SimplePlanner implements IPlanner {
 		return generateProvisioningPlan(initialState, newState, request, null, context);
 	}
 
-	private ProvisioningContext createNoRepoContext(ProfileChangeRequest request) {
+	private ProvisioningContext createNoRepoContext(ProfileChangeRequest request, ProvisioningContext context) {
 		ProvisioningContext noRepoContext = new ProvisioningContext(agent);
 		noRepoContext.setMetadataRepositories(new URI[0]);
 		noRepoContext.setArtifactRepositories(new URI[0]);
 		noRepoContext.setProperty(INCLUDE_PROFILE_IUS, Boolean.FALSE.toString());
+		copyResolutionProperties(context, noRepoContext);
 		noRepoContext.setExtraInstallableUnits(new ArrayList<>(request.getProfile().query(QueryUtil.createIUAnyQuery(), new NullProgressMonitor()).toUnmodifiableSet()));
 		return noRepoContext;
 	}
@@ -12,6 +12,7 @@
 package org.eclipse.equinox.internal.p2.director;
 
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
@@ -24,6 +25,7 @@ import org.eclipse.osgi.util.NLS;
 
 public class Slicer {
 	private static boolean DEBUG = false;
+	private static final int EXPANSION_THRESHOLD = 8; //Number of IUs below which an expansion task is not split any further
 	private final IQueryable<IInstallableUnit> possibilites;
 	private final boolean considerMetaRequirements;
 	protected final IInstallableUnit selectionContext;
@@ -33,6 +35,7 @@ public class Slicer {
 	private LinkedList<IInstallableUnit> toProcess;
 	private Set<IInstallableUnit> considered; //IUs to add to the slice
 	private Set<IInstallableUnit> nonGreedyIUs = new HashSet<>(); //IUs that are brought in by non greedy dependencies
+	private ForkJoinPool pool; //When set, the requirements are expanded in parallel on this pool
 
 	public Slicer(IQueryable<IInstallableUnit> input, Map<String, String> context, boolean considerMetaRequirements) {
 		this(input, InstallableUnit.contextIU(context), considerMetaRequirements);
@@ -55,14 +58,18 @@ public class Slicer {
 			}
 
 			validateInput(ius);
-			considered = new HashSet<>(Arrays.asList(ius));
-			toProcess = new LinkedList<>(considered);
-			while (!toProcess.isEmpty()) {
-				if (monitor.isCanceled()) {
-					result.merge(Status.CANCEL_STATUS);
-					throw new OperationCanceledException();
+			if (pool != null) {
+				sliceInParallel(ius, monitor);
+			} else {
+				considered = new HashSet<>(Arrays.asList(ius));
+				toProcess = new LinkedList<>(considered);
+				while (!toProcess.isEmpty()) {
+					if (monitor.isCanceled()) {
+						result.merge(Status.CANCEL_STATUS);
+						throw new OperationCanceledException();
+					}
+					processIU(toProcess.removeFirst());
 				}
-				processIU(toProcess.removeFirst());
 			}
 			computeNonGreedyIUs();
 			if (DEBUG) {
@@ -79,6 +86,97 @@ public class Slicer {
 		return new QueryableArray(considered.toArray(new IInstallableUnit[considered.size()]));
 	}
 
+	/**
+	 * Expand the requirements of the IUs in parallel on the given pool, or sequentially when the pool is null.
+	 * The resulting slice and status are the same than the ones produced sequentially, however the queryable
+	 * being sliced must support concurrent queries and {@link #processIU(IInstallableUnit)} is not called.
+	 */
+	public void setParallelism(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	//The IUs are processed level by level. All the IUs of a level are expanded concurrently, and the IUs they
+	//bring in form the next level. Each level is sorted so the status is independent from the scheduling.
+	private void sliceInParallel(IInstallableUnit[] ius, IProgressMonitor monitor) {
+		considered = ConcurrentHashMap.newKeySet();
+		List<IInstallableUnit> level = new ArrayList<>(ius.length);
+		for (int i = 0; i < ius.length; i++) {
+			if (considered.add(ius[i]))
+				level.add(ius[i]);
+		}
+		while (!level.isEmpty()) {
+			if (monitor.isCanceled()) {
+				result.merge(Status.CANCEL_STATUS);
+				throw new OperationCanceledException();
+			}
+			Collections.sort(level);
+			Expansion[] expansions = new Expansion[level.size()];
+			pool.invoke(new ExpansionTask(level, expansions, 0, expansions.length));
+			level = new ArrayList<>();
+			for (int i = 0; i < expansions.length; i++) {
+				level.addAll(expansions[i].newIUs);
+				for (IStatus problem : expansions[i].problems)
+					result.add(problem);
+			}
+		}
+	}
+
+	//Thread safe equivalent of processIU and expandRequirement, recording the newly considered IUs and the problems found
+	Expansion expand(IInstallableUnit iu) {
+		Expansion expansion = new Expansion();
+		iu = iu.unresolved();
+		if (!isApplicable(iu))
+			return expansion;
+		for (IRequirement req : getRequirements(iu)) {
+			if (!isApplicable(req) || !isGreedy(req) || req.getMax() == 0)
+				continue;
+			IQueryResult<IInstallableUnit> matches = possibilites.query(QueryUtil.createMatchQuery(req.getMatches()), null);
+			int validMatches = 0;
+			for (Iterator<IInstallableUnit> iterator = matches.iterator(); iterator.hasNext();) {
+				IInstallableUnit match = iterator.next();
+				if (!isApplicable(match))
+					continue;
+				validMatches++;
+				if (considered.add(match))
+					expansion.newIUs.add(match);
+			}
+			if (validMatches == 0 && req.getMin() != 0)
+				expansion.problems.add(new Status(IStatus.WARNING, DirectorActivator.PI_DIRECTOR, NLS.bind(Messages.Planner_Unsatisfied_dependency, iu, req)));
+		}
+		return expansion;
+	}
+
+	static final class Expansion {
+		final List<IInstallableUnit> newIUs = new ArrayList<>();
+		final List<IStatus> problems = new ArrayList<>(0);
+	}
+
+	final class ExpansionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<IInstallableUnit> ius;
+		private final Expansion[] expansions;
+		private final int from;
+		private final int to;
+
+		ExpansionTask(List<IInstallableUnit> ius, Expansion[] expansions, int from, int to) {
+			this.ius = ius;
+			this.expansions = expansions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= EXPANSION_THRESHOLD) {
+				for (int i = from; i < to; i++)
+					expansions[i] = expand(ius.get(i));
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new ExpansionTask(ius, expansions, from, middle), new ExpansionTask(ius, expansions, middle, to));
+		}
+	}
+
 	private void computeNonGreedyIUs() {
 		IQueryable<IInstallableUnit> queryable = new QueryableArray(considered.toArray(new IInstallableUnit[considered.size()]));
 		Iterator<IInstallableUnit> it = queryable.query(QueryUtil.ALL_UNITS, new NullProgressMonitor()).iterator();
@@ -207,7 +305,7 @@ public class Slicer {
 			toProcess.addLast(match);
 	}
 
-	Set<IInstallableUnit> getNonGreedyIUs() {
+	public Set<IInstallableUnit> getNonGreedyIUs() {
 		return nonGreedyIUs;
 	}
 }
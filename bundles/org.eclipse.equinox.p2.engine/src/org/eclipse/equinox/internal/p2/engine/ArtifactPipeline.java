@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.util.*;
+import java.util.function.Supplier;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
+
+/**
+ * Downloads the artifacts gathered by the collect phase in the background, while the
+ * following phases of a pipelined {@link PhaseSet} run. A phase that needs the artifacts
+ * of an installable unit waits for the requests of that unit only.
+ * <p>
+ * The pipeline is closed by the phase set before it returns, which cancels and waits for
+ * the downloads still running. Nothing downloads anymore while the engine rolls back.
+ * <p>
+ * The downloads report their progress on a monitor of their own. The thread running the
+ * phase set hands it on to the monitor of the phase set with {@link #reportProgress}.
+ */
+public class ArtifactPipeline {
+	private final Map<IInstallableUnit, List<IArtifactRequest>> unitRequests = new HashMap<>();
+	private final Set<IArtifactRequest> pending = new HashSet<>();
+	private final DownloadMonitor downloadMonitor = new DownloadMonitor();
+	private Thread thread;
+	private IStatus result;
+	private boolean closed;
+	private volatile boolean paused;
+	// the progress already handed on, only used by the thread running the phase set
+	private int reported = 0;
+	private String reportedTask;
+
+	/**
+	 * The monitor of the downloads, which records the progress reported from the download
+	 * thread until it is handed on.
+	 */
+	private static class DownloadMonitor extends NullProgressMonitor {
+		private volatile boolean canceled;
+		private double totalWork = 0;
+		private double worked = 0;
+		private String subTask;
+
+		@Override
+		public synchronized void beginTask(String name, int totalWork) {
+			if (this.totalWork == 0 && totalWork > 0)
+				this.totalWork = totalWork;
+			if (name != null && name.length() > 0)
+				subTask = name;
+		}
+
+		@Override
+		public synchronized void internalWorked(double work) {
+			worked += work;
+		}
+
+		@Override
+		public void worked(int work) {
+			internalWorked(work);
+		}
+
+		@Override
+		public synchronized void setTaskName(String name) {
+			subTask = name;
+		}
+
+		@Override
+		public synchronized void subTask(String name) {
+			subTask = name;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled;
+		}
+
+		@Override
+		public void setCanceled(boolean value) {
+			canceled = value;
+		}
+
+		/**
+		 * Returns the share of the downloads done so far, between 0 and 1.
+		 */
+		synchronized double getDone() {
+			if (totalWork <= 0)
+				return 0;
+			return Math.min(1, worked / totalWork);
+		}
+
+		synchronized String getSubTask() {
+			return subTask;
+		}
+	}
+
+	/**
+	 * Records the requests collected for the given unit.
+	 */
+	public synchronized void add(IInstallableUnit unit, IArtifactRequest[] requests) {
+		if (closed || thread != null || requests.length == 0)
+			return;
+		List<IArtifactRequest> list = unitRequests.get(unit);
+		if (list == null) {
+			list = new ArrayList<>();
+			unitRequests.put(unit, list);
+		}
+		list.addAll(Arrays.asList(requests));
+		pending.addAll(Arrays.asList(requests));
+	}
+
+	/**
+	 * Returns a download manager that reports the requests it is done with to this pipeline.
+	 */
+	public DownloadManager createDownloadManager(ProvisioningContext context, IProvisioningAgent agent) {
+		return new DownloadManager(context, agent) {
+			@Override
+			void requestDone(IArtifactRequest request) {
+				done(request);
+			}
+
+			@Override
+			boolean isPaused() {
+				return paused;
+			}
+		};
+	}
+
+	/**
+	 * Returns the monitor to give to the downloads, which is canceled when the pipeline closes.
+	 */
+	public IProgressMonitor getDownloadMonitor() {
+		return downloadMonitor;
+	}
+
+	/**
+	 * Pauses or resumes the downloads. While paused, no further repository is asked for
+	 * artifacts. The transfers already running are paused by the collect phase.
+	 */
+	public void setPaused(boolean paused) {
+		this.paused = paused;
+	}
+
+	/**
+	 * Hands the progress of the downloads made since the last call on to the given monitor,
+	 * on which all the downloads take the given amount of work. Must be called by the thread
+	 * owning the monitor.
+	 */
+	public void reportProgress(IProgressMonitor monitor, int work) {
+		int done = (int) (downloadMonitor.getDone() * work);
+		if (done > reported) {
+			monitor.worked(done - reported);
+			reported = done;
+		}
+		String subTask = downloadMonitor.getSubTask();
+		if (subTask != null && !subTask.equals(reportedTask)) {
+			monitor.subTask(subTask);
+			reportedTask = subTask;
+		}
+	}
+
+	/**
+	 * Runs the downloads in the background. The status they return is the overall result
+	 * of the pipeline.
+	 */
+	public synchronized void start(final Supplier<IStatus> downloads) {
+		if (closed || thread != null)
+			return;
+		thread = new Thread(() -> {
+			IStatus status;
+			try {
+				status = downloads.get();
+			} catch (RuntimeException e) {
+				status = new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e);
+			}
+			finished(status);
+		}, "p2 artifact pipeline"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	synchronized void done(IArtifactRequest request) {
+		pending.remove(request);
+		notifyAll();
+	}
+
+	synchronized void finished(IStatus status) {
+		result = status;
+		pending.clear();
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the requests of the given unit are done. Returns an error if any of
+	 * them could not be fetched.
+	 */
+	public IStatus await(IInstallableUnit unit, IProgressMonitor monitor) {
+		List<IArtifactRequest> requests;
+		synchronized (this) {
+			requests = unitRequests.get(unit);
+			if (requests == null || thread == null)
+				return Status.OK_STATUS;
+			try {
+				while (!Collections.disjoint(pending, requests)) {
+					if (monitor.isCanceled())
+						return Status.CANCEL_STATUS;
+					wait(100);
+				}
+			} catch (InterruptedException e) {
+				return new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e);
+			}
+		}
+		MultiStatus status = new MultiStatus(EngineActivator.ID, IStatus.OK, null, null);
+		for (IArtifactRequest request : requests) {
+			IStatus requestResult = request.getResult();
+			// a request that was never tried is explained by the overall result, if any
+			if (requestResult == null)
+				requestResult = getResult();
+			if (requestResult != null && !requestResult.isOK())
+				status.add(requestResult);
+		}
+		return status;
+	}
+
+	private synchronized IStatus getResult() {
+		return result;
+	}
+
+	/**
+	 * Waits until all the downloads are done and returns their overall result.
+	 */
+	public IStatus join(IProgressMonitor monitor) {
+		return join(monitor, 0);
+	}
+
+	/**
+	 * Waits until all the downloads are done and returns their overall result. The
+	 * progress of the downloads is reported on the given monitor while waiting, as
+	 * with {@link #reportProgress}.
+	 */
+	public IStatus join(IProgressMonitor monitor, int work) {
+		try {
+			for (;;) {
+				reportProgress(monitor, work);
+				synchronized (this) {
+					if (thread == null || result != null)
+						return result != null ? result : Status.OK_STATUS;
+					if (monitor.isCanceled())
+						return Status.CANCEL_STATUS;
+					wait(100);
+				}
+			}
+		} catch (InterruptedException e) {
+			return new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Cancels the downloads still running and waits for them to stop.
+	 */
+	public void close() {
+		Thread downloads;
+		synchronized (this) {
+			closed = true;
+			downloads = thread;
+		}
+		if (downloads == null)
+			return;
+		downloadMonitor.setCanceled(true);
+		try {
+			downloads.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
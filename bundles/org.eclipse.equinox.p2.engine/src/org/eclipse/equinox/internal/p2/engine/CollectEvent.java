@@ -28,6 +28,8 @@ public class CollectEvent extends EventObject {
 	public static final int TYPE_OVERALL_END = 2;
 	/**
 	 * It means the collecting requests related to a special repository are started.
+	 * A repository that became idle can start again with requests that failed on another
+	 * repository.
 	 * See {@link CollectEvent#getRepository()}
 	 */
 	public static final int TYPE_REPOSITORY_START = 3;
@@ -36,6 +38,11 @@ public class CollectEvent extends EventObject {
 	 * See {@link CollectEvent#getRepository()} 
 	 */
 	public static final int TYPE_REPOSITORY_END = 4;
+	/**
+	 * It means a single request was processed by a special repository, successfully or not.
+	 * See {@link CollectEvent#getRepository()} and {@link IArtifactRequest#getResult()}
+	 */
+	public static final int TYPE_REQUEST_END = 5;
 
 	private IArtifactRepository artifactRepo;
 	private IArtifactRequest[] requests;
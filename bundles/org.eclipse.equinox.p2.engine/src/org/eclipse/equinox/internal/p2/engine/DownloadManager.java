@@ -12,6 +12,8 @@
 package org.eclipse.equinox.internal.p2.engine;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.engine.phases.Collect;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
@@ -22,7 +24,28 @@ import org.eclipse.equinox.p2.query.*;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
 
+/**
+ * Downloads artifact requests from the artifact repositories of a provisioning context.
+ * <p>
+ * Each request is given to the first repository, local ones first, that contains its
+ * artifact, and to the next such repository if that fails. The requests of a repository
+ * are handed to it in a single batch, and the batches of several repositories are
+ * downloaded at the same time on a shared, bounded pool of threads. The repositories
+ * limit the concurrent downloads within a batch themselves.
+ */
 public class DownloadManager {
+	/**
+	 * The key for an integer property that sets the number of artifact repositories
+	 * that are downloaded from at the same time.
+	 */
+	public static final String PROP_MAX_REPOSITORIES = "eclipse.p2.max.repositories"; //$NON-NLS-1$
+
+	private static final int DEFAULT_MAX_REPOSITORIES = 4;
+	/**
+	 * The units of work of a request on the monitor of the downloads.
+	 */
+	private static final int REQUEST_WORK = 100;
+
 	private ProvisioningContext provContext = null;
 	ArrayList<IArtifactRequest> requestsToProcess = new ArrayList<>();
 	private IProvisioningAgent agent = null;
@@ -47,6 +70,98 @@ public class DownloadManager {
 		}
 	};
 
+	/**
+	 * The requests waiting to be downloaded from a repository, and the batch that is
+	 * being downloaded from it.
+	 */
+	private static class RepositoryQueue {
+		final IArtifactRepository repository;
+		final int index;
+		final LinkedList<IArtifactRequest> waiting = new LinkedList<>();
+		Batch running;
+
+		RepositoryQueue(IArtifactRepository repository, int index) {
+			this.repository = repository;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * The requests handed to a repository in a single call, and the monitor of that call.
+	 * The repository reports progress from its own threads, the thread that runs the
+	 * download manager hands it on to the monitor of the downloads.
+	 */
+	private static class Batch extends NullProgressMonitor {
+		final RepositoryQueue queue;
+		final IArtifactRequest[] requests;
+		// the requests reported as fetched while the batch was still running
+		final Set<IArtifactRequest> done = new HashSet<>();
+		// the work of the batch already reported on the monitor of the downloads
+		int reported = 0;
+		IStatus status;
+		private final AtomicBoolean canceled;
+		private double totalWork = 0;
+		private double worked = 0;
+		private String subTask;
+
+		Batch(RepositoryQueue queue, IArtifactRequest[] requests, AtomicBoolean canceled) {
+			this.queue = queue;
+			this.requests = requests;
+			this.canceled = canceled;
+		}
+
+		@Override
+		public synchronized void beginTask(String name, int totalWork) {
+			if (this.totalWork == 0 && totalWork > 0)
+				this.totalWork = totalWork;
+			if (name != null && name.length() > 0)
+				subTask = name;
+		}
+
+		@Override
+		public synchronized void internalWorked(double work) {
+			worked += work;
+		}
+
+		@Override
+		public void worked(int work) {
+			internalWorked(work);
+		}
+
+		@Override
+		public synchronized void setTaskName(String name) {
+			subTask = name;
+		}
+
+		@Override
+		public synchronized void subTask(String name) {
+			subTask = name;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled.get();
+		}
+
+		@Override
+		public void setCanceled(boolean value) {
+			canceled.set(value);
+		}
+
+		/**
+		 * Returns the work of the batch done so far, in units of the monitor of the downloads.
+		 */
+		synchronized int getWork() {
+			if (totalWork <= 0)
+				return 0;
+			return (int) (Math.min(1, worked / totalWork) * requests.length * REQUEST_WORK);
+		}
+
+		synchronized String getSubTask() {
+			return subTask;
+		}
+	}
+
 	public DownloadManager(ProvisioningContext context, IProvisioningAgent agent) {
 		provContext = context;
 		this.agent = agent;
@@ -70,10 +185,8 @@ public class DownloadManager {
 
 	private void filterUnfetched() {
 		for (Iterator<IArtifactRequest> iterator = requestsToProcess.iterator(); iterator.hasNext();) {
-			IArtifactRequest request = iterator.next();
-			if (request.getResult() != null && request.getResult().isOK()) {
+			if (isFetched(iterator.next()))
 				iterator.remove();
-			}
 		}
 	}
 
@@ -106,17 +219,185 @@ public class DownloadManager {
 	}
 
 	private void fetch(IArtifactRepository[] repositories, IProgressMonitor mon) {
-		SubMonitor monitor = SubMonitor.convert(mon, requestsToProcess.size());
-		for (int i = 0; i < repositories.length && !requestsToProcess.isEmpty() && !monitor.isCanceled(); i++) {
-			IArtifactRequest[] requests = getRequestsForRepository(repositories[i]);
-			publishDownloadEvent(new CollectEvent(CollectEvent.TYPE_REPOSITORY_START, repositories[i], provContext, requests));
-			IStatus dlStatus = repositories[i].getArtifacts(requests, monitor.newChild(requests.length));
-			publishDownloadEvent(new CollectEvent(CollectEvent.TYPE_REPOSITORY_END, repositories[i], provContext, requests));
-			if (dlStatus.getSeverity() == IStatus.CANCEL)
-				return;
-			filterUnfetched();
-			monitor.setWorkRemaining(requestsToProcess.size());
+		SubMonitor monitor = SubMonitor.convert(mon, requestsToProcess.size() * REQUEST_WORK);
+		RepositoryQueue[] queues = new RepositoryQueue[repositories.length];
+		for (int i = 0; i < repositories.length; i++)
+			queues[i] = new RepositoryQueue(repositories[i], i);
+		for (IArtifactRequest request : requestsToProcess) {
+			if (!enqueue(request, queues, 0)) {
+				monitor.worked(REQUEST_WORK);
+				requestDone(request);
+			}
 		}
+
+		final AtomicBoolean canceled = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(getMaximumRepositories(), runnable -> {
+			Thread thread = new Thread(runnable, "p2 download manager"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<Batch> completion = new ExecutorCompletionService<>(executor);
+		int running = 0;
+		String subTask = null;
+		try {
+			for (;;) {
+				if (monitor.isCanceled())
+					canceled.set(true);
+				// the batches already running are paused by the transport
+				boolean paused = !canceled.get() && isPaused();
+				if (!canceled.get() && !paused)
+					running += dispatch(queues, completion, canceled);
+				if (running == 0 && !paused)
+					break;
+				Future<Batch> future;
+				try {
+					future = completion.poll(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					canceled.set(true);
+					continue;
+				}
+				subTask = progress(queues, subTask, monitor);
+				if (future == null)
+					continue;
+				running--;
+				Batch batch;
+				try {
+					batch = future.get();
+				} catch (InterruptedException | ExecutionException e) {
+					// the batches catch everything, this cannot happen
+					throw new IllegalStateException(e);
+				}
+				completed(batch, queues, canceled, monitor);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		filterUnfetched();
+	}
+
+	/**
+	 * Hands the waiting requests of every idle repository to it in a single batch, and
+	 * returns the number of batches started.
+	 */
+	private int dispatch(RepositoryQueue[] queues, CompletionService<Batch> completion, AtomicBoolean canceled) {
+		int dispatched = 0;
+		for (RepositoryQueue queue : queues) {
+			if (queue.waiting.isEmpty() || queue.running != null)
+				continue;
+			final Batch batch = new Batch(queue, queue.waiting.toArray(new IArtifactRequest[queue.waiting.size()]), canceled);
+			queue.waiting.clear();
+			queue.running = batch;
+			publishDownloadEvent(new CollectEvent(CollectEvent.TYPE_REPOSITORY_START, queue.repository, provContext, batch.requests));
+			completion.submit(() -> {
+				try {
+					batch.status = batch.queue.repository.getArtifacts(batch.requests, batch);
+				} catch (RuntimeException e) {
+					batch.status = new Status(IStatus.ERROR, EngineActivator.ID, e.getMessage(), e);
+				}
+				return batch;
+			});
+			dispatched++;
+		}
+		return dispatched;
+	}
+
+	/**
+	 * Hands the progress of the running batches on to the monitor of the downloads, and
+	 * reports the requests that were fetched while their batch is still running. Returns
+	 * the sub task shown on the monitor.
+	 */
+	private String progress(RepositoryQueue[] queues, String subTask, SubMonitor monitor) {
+		String shown = subTask;
+		for (RepositoryQueue queue : queues) {
+			Batch batch = queue.running;
+			if (batch == null)
+				continue;
+			int work = batch.getWork();
+			if (work > batch.reported) {
+				monitor.worked(work - batch.reported);
+				batch.reported = work;
+			}
+			String batchTask = batch.getSubTask();
+			if (batchTask != null && !batchTask.equals(shown)) {
+				monitor.subTask(batchTask);
+				shown = batchTask;
+			}
+			for (IArtifactRequest request : batch.requests) {
+				if (!batch.done.contains(request) && isFetched(request)) {
+					batch.done.add(request);
+					publishDownloadEvent(new CollectEvent(CollectEvent.TYPE_REQUEST_END, queue.repository, provContext, new IArtifactRequest[] {request}));
+					requestDone(request);
+				}
+			}
+		}
+		return shown;
+	}
+
+	/**
+	 * Handles a finished batch. A request that could not be fetched is given to the
+	 * next repository that contains its artifact.
+	 */
+	private void completed(Batch batch, RepositoryQueue[] queues, AtomicBoolean canceled, SubMonitor monitor) {
+		RepositoryQueue queue = batch.queue;
+		queue.running = null;
+		int work = batch.requests.length * REQUEST_WORK;
+		if (work > batch.reported)
+			monitor.worked(work - batch.reported);
+		if (batch.status.getSeverity() == IStatus.CANCEL)
+			canceled.set(true);
+		for (IArtifactRequest request : batch.requests) {
+			if (batch.done.contains(request))
+				continue;
+			publishDownloadEvent(new CollectEvent(CollectEvent.TYPE_REQUEST_END, queue.repository, provContext, new IArtifactRequest[] {request}));
+			if (isFetched(request) || (!canceled.get() && !enqueue(request, queues, queue.index + 1)))
+				requestDone(request);
+		}
+		publishDownloadEvent(new CollectEvent(CollectEvent.TYPE_REPOSITORY_END, queue.repository, provContext, batch.requests));
+	}
+
+	/**
+	 * Queues the request for the first repository, starting at the given index, that
+	 * contains its artifact. Returns whether there was such a repository.
+	 */
+	private boolean enqueue(IArtifactRequest request, RepositoryQueue[] queues, int from) {
+		for (int i = from; i < queues.length; i++) {
+			if (queues[i].repository.contains(request.getArtifactKey())) {
+				queues[i].waiting.add(request);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called once a request will not be tried on any other repository, whether it was
+	 * fetched or not. Requests left over by a cancellation are not reported.
+	 */
+	void requestDone(IArtifactRequest request) {
+		// nothing to do
+	}
+
+	/**
+	 * Returns whether the downloads are paused. No further batches are started while
+	 * they are.
+	 */
+	boolean isPaused() {
+		return false;
+	}
+
+	private static boolean isFetched(IArtifactRequest request) {
+		return request.getResult() != null && request.getResult().isOK();
+	}
+
+	private static int getMaximumRepositories() {
+		try {
+			String maxRepositories = EngineActivator.getContext().getProperty(PROP_MAX_REPOSITORIES);
+			if (maxRepositories != null)
+				return Math.max(1, Integer.parseInt(maxRepositories));
+		} catch (NumberFormatException e) {
+			// default number of repositories
+		}
+		return DEFAULT_MAX_REPOSITORIES;
 	}
 
 	private void publishDownloadEvent(CollectEvent event) {
@@ -125,15 +406,6 @@ public class DownloadManager {
 			bus.publishEvent(event);
 	}
 
-	private IArtifactRequest[] getRequestsForRepository(IArtifactRepository repository) {
-		ArrayList<IArtifactRequest> applicable = new ArrayList<>();
-		for (IArtifactRequest request : requestsToProcess) {
-			if (repository.contains(request.getArtifactKey()))
-				applicable.add(request);
-		}
-		return applicable.toArray(new IArtifactRequest[applicable.size()]);
-	}
-
 	//	private void notifyFetched() {
 	//		ProvisioningEventBus bus = (ProvisioningEventBus) ServiceHelper.getService(DownloadActivator.context, ProvisioningEventBus.class);
 	//		bus.publishEvent();
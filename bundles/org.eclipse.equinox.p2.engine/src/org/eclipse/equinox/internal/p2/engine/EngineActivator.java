@@ -48,6 +48,13 @@ public class EngineActivator implements BundleActivator {
 	 */
 	public static final String PROFILE_FORMAT_UNCOMPRESSED = "uncompressed"; //$NON-NLS-1$
 
+	/**
+	 * System property enabling the profile journal. When set to "true", the profile registry
+	 * persists a change to a profile as the delta against its previous state, and writes a
+	 * full snapshot of the profile only from time to time.
+	 */
+	public static final String PROP_PROFILE_JOURNAL = "eclipse.p2.profileJournal"; //$NON-NLS-1$
+
 	/**
 	 * System property specifying how the engine should handle unsigned artifacts.
 	 * If this property is undefined, the default value is assumed to be "prompt".
@@ -42,7 +42,8 @@ public class EngineSession {
 	boolean currentPhaseActive;
 
 	private List<ActionsRecord> currentActionRecords;
-	private ActionsRecord currentRecord;
+	// operands of a phase may be performed on several threads, each tracking its own record
+	private final ThreadLocal<ActionsRecord> currentRecord = new ThreadLocal<>();
 
 	private IProfile profile;
 
@@ -54,6 +55,8 @@ public class EngineSession {
 
 	private final IProvisioningAgent agent;
 
+	private ArtifactPipeline artifactPipeline;
+
 	public EngineSession(IProvisioningAgent agent, IProfile profile, ProvisioningContext context) {
 		super();
 		this.agent = agent;
@@ -73,6 +76,18 @@ public class EngineSession {
 		return context;
 	}
 
+	/**
+	 * Returns the pipeline downloading the collected artifacts, or <code>null</code>
+	 * if the phases are not pipelined.
+	 */
+	ArtifactPipeline getArtifactPipeline() {
+		return artifactPipeline;
+	}
+
+	void setArtifactPipeline(ArtifactPipeline artifactPipeline) {
+		this.artifactPipeline = artifactPipeline;
+	}
+
 	public File getProfileDataDirectory() {
 		SimpleProfileRegistry profileRegistry = (SimpleProfileRegistry) agent.getService(IProfileRegistry.SERVICE_NAME);
 		return profileRegistry.getProfileDataDirectory(profile.getProfileId());
@@ -166,7 +181,7 @@ public class EngineSession {
 			}
 			currentPhaseActive = false;
 			currentActionRecords = null;
-			currentRecord = null;
+			currentRecord.remove();
 		}
 		currentPhase = null;
 
@@ -306,24 +321,28 @@ public class EngineSession {
 		if (operand == null)
 			throw new IllegalArgumentException(Messages.null_operand);
 
-		if (currentRecord != null)
+		if (currentRecord.get() != null)
 			throw new IllegalStateException(Messages.operand_started);
 
-		currentRecord = new ActionsRecord(operand);
-		currentActionRecords.add(currentRecord);
+		ActionsRecord record = new ActionsRecord(operand);
+		currentRecord.set(record);
+		synchronized (this) {
+			currentActionRecords.add(record);
+		}
 
 		if (DebugHelper.DEBUG_ENGINE_SESSION)
 			debugOperandStart(operand);
 	}
 
 	void recordOperandEnd(Operand operand) {
-		if (currentRecord == null)
+		ActionsRecord record = currentRecord.get();
+		if (record == null)
 			throw new IllegalStateException(Messages.operand_not_started);
 
-		if (currentRecord.operand != operand)
+		if (record.operand != operand)
 			throw new IllegalArgumentException(Messages.not_current_operand);
 
-		currentRecord = null;
+		currentRecord.remove();
 
 		if (DebugHelper.DEBUG_ENGINE_SESSION)
 			debugOperandEnd(operand);
@@ -333,11 +352,14 @@ public class EngineSession {
 		if (action == null)
 			throw new IllegalArgumentException(Messages.null_action);
 
-		currentRecord.actions.add(action);
+		currentRecord.get().actions.add(action);
 
 		Touchpoint touchpoint = action.getTouchpoint();
-		if (touchpoint != null)
-			touchpoints.add(touchpoint);
+		if (touchpoint != null) {
+			synchronized (this) {
+				touchpoints.add(touchpoint);
+			}
+		}
 
 		if (DebugHelper.DEBUG_ENGINE_SESSION)
 			debugActionExecute(action, parameters);
@@ -363,10 +385,11 @@ public class EngineSession {
 	}
 
 	private Object getCurrentActionId() {
-		if (currentRecord == null || currentRecord.actions.isEmpty())
+		ActionsRecord record = currentRecord.get();
+		if (record == null || record.actions.isEmpty())
 			return EMPTY_STRING;
 
-		Object currentAction = currentRecord.actions.get(currentRecord.actions.size() - 1);
+		Object currentAction = record.actions.get(record.actions.size() - 1);
 		if (currentAction instanceof ParameterizedProvisioningAction) {
 			ParameterizedProvisioningAction parameterizedAction = (ParameterizedProvisioningAction) currentAction;
 			currentAction = parameterizedAction.getAction();
@@ -381,9 +404,10 @@ public class EngineSession {
 	}
 
 	private String getCurrentOperandId() {
-		if (currentRecord == null)
+		ActionsRecord record = currentRecord.get();
+		if (record == null)
 			return EMPTY_STRING;
-		return currentRecord.operand.toString();
+		return record.operand.toString();
 	}
 
 	private static void debugPhaseEnter(Phase phase) {
@@ -12,13 +12,19 @@
 package org.eclipse.equinox.internal.p2.engine;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.metadata.RequiredCapability;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
 import org.eclipse.equinox.p2.engine.spi.Touchpoint;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
 import org.eclipse.osgi.util.NLS;
 
 public abstract class Phase {
@@ -33,19 +39,30 @@ public abstract class Phase {
 	protected static final String PARM_AGENT = "agent"; //$NON-NLS-1$
 	protected static final String PARM_FORCED = "forced"; //$NON-NLS-1$
 	protected static final String PARM_TOUCHPOINT = "touchpoint"; //$NON-NLS-1$
+	/**
+	 * Internal property, set when the phases are pipelined.
+	 */
+	protected static final String PARM_ARTIFACT_PIPELINE = "artifactPipeline"; //$NON-NLS-1$
 	protected static final String LAST_RESULT_INTERNAL_NAME = "_p2_internal_last_result_variable_"; //$NON-NLS-1$ //
 	protected static final String LAST_RESULT_PUBLIC_NAME = "lastResult"; //$NON-NLS-1$
 
+	/**
+	 * The parameters of the operand being performed.
+	 */
+	private static class OperandState {
+		Map<String, Object> parameters;
+		final Map<Touchpoint, Map<String, Object>> touchpointParameters = new HashMap<>();
+	}
+
 	protected final String phaseId;
 	protected final int weight;
 	protected final boolean forced;
 	protected int prePerformWork = 1000;
 	protected int mainPerformWork = 10000;
 	protected int postPerformWork = 1000;
-	private Map<String, Object> operandParameters = null;
+	private final OperandState operandState = new OperandState();
 	private Map<String, Object> phaseParameters = new HashMap<>();
 	private Map<Touchpoint, Map<String, Object>> touchpointToTouchpointPhaseParameters = new HashMap<>();
-	private Map<Touchpoint, Map<String, Object>> touchpointToTouchpointOperandParameters = new HashMap<>();
 	ActionManager actionManager; // injected from phaseset
 	protected boolean isPaused = false;
 
@@ -116,11 +133,14 @@ public abstract class Phase {
 		phaseParameters.put(PARM_PHASE_ID, phaseId);
 		phaseParameters.put(PARM_FORCED, Boolean.toString(forced));
 		phaseParameters.put(PARM_AGENT, session.getAgent());
+		if (session.getArtifactPipeline() != null)
+			phaseParameters.put(PARM_ARTIFACT_PIPELINE, session.getArtifactPipeline());
 		mergeStatus(status, initializePhase(monitor, profile, phaseParameters));
 	}
 
 	private void mainPerform(MultiStatus status, EngineSession session, Operand[] operands, SubMonitor subMonitor) {
 		IProfile profile = session.getProfile();
+		int parallelism = supportsParallelOperands() ? getParallelism(session.getProvisioningContext()) : 1;
 		subMonitor.beginTask(null, operands.length);
 		for (int i = 0; i < operands.length; i++) {
 			subMonitor.setWorkRemaining(operands.length - i);
@@ -140,101 +160,319 @@ public abstract class Phase {
 			if (!isApplicable(operand))
 				continue;
 
-			session.recordOperandStart(operand);
 			List<ProvisioningAction> actions = getActions(operand);
-			operandParameters = new HashMap<>(phaseParameters);
-			operandParameters.put(PARM_OPERAND, operand);
-			mergeStatus(status, initializeOperand(profile, operand, operandParameters, subMonitor));
-			if (status.matches(IStatus.ERROR | IStatus.CANCEL)) {
-				operandParameters = null;
-				return;
-			}
-
-			Touchpoint operandTouchpoint = (Touchpoint) operandParameters.get(PARM_TOUCHPOINT);
-			if (operandTouchpoint != null) {
-				mergeStatus(status, initializeTouchpointParameters(profile, operand, operandTouchpoint, subMonitor));
+			if (parallelism > 1 && isThreadSafe(operand, actions)) {
+				// perform the following operands that are thread safe as well together
+				List<Operand> run = new ArrayList<>();
+				List<List<ProvisioningAction>> runActions = new ArrayList<>();
+				int end = i;
+				for (; end < operands.length; end++) {
+					if (!isApplicable(operands[end]))
+						continue;
+					List<ProvisioningAction> operandActions = end == i ? actions : getActions(operands[end]);
+					if (!isThreadSafe(operands[end], operandActions))
+						break;
+					run.add(operands[end]);
+					runActions.add(operandActions);
+				}
+				mainPerformParallel(status, session, run, runActions, parallelism, subMonitor);
 				if (status.matches(IStatus.ERROR | IStatus.CANCEL))
 					return;
+				if (subMonitor.isCanceled())
+					throw new OperationCanceledException();
+				i = end - 1;
+				continue;
+			}
+
+			mergeStatus(status, awaitArtifacts(session, operand, subMonitor));
+			if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+				return;
+			if (!performOperand(status, session, profile, operand, actions, operandState, subMonitor))
+				return;
+			subMonitor.worked(1);
+		}
+	}
 
-				operandParameters = touchpointToTouchpointOperandParameters.get(operandTouchpoint);
+	/**
+	 * Performs the given thread safe operands on a pool of threads. An operand starts once
+	 * the operands it depends on are done. No more operand starts after one failed. What an
+	 * operand throws is thrown again once the running operands are done, as it would have
+	 * been if the operands were performed one after the other.
+	 */
+	private void mainPerformParallel(MultiStatus status, final EngineSession session, final List<Operand> operands, final List<List<ProvisioningAction>> actions, int parallelism, SubMonitor subMonitor) {
+		final IProfile profile = session.getProfile();
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Throwable> thrown = new AtomicReference<>();
+		final IProgressMonitor operandMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return stop.get();
 			}
+		};
+		final MultiStatus[] results = new MultiStatus[operands.size()];
+		List<List<Integer>> dependents = getDependents(operands);
+		int[] waitingFor = new int[operands.size()];
+		for (List<Integer> operandDependents : dependents) {
+			for (int dependent : operandDependents)
+				waitingFor[dependent]++;
+		}
 
-			if (actions != null) {
-				Object lastResult = null;
-				for (int j = 0; j < actions.size(); j++) {
-					ProvisioningAction action = actions.get(j);
-					Map<String, Object> parameters = operandParameters;
-					Touchpoint touchpoint = action.getTouchpoint();
-					if (touchpoint != null) {
-						mergeStatus(status, initializeTouchpointParameters(profile, operand, touchpoint, subMonitor));
-						if (status.matches(IStatus.ERROR | IStatus.CANCEL))
-							return;
-
-						parameters = touchpointToTouchpointOperandParameters.get(touchpoint);
-					}
-					if (lastResult != null) {
-						parameters = new HashMap<>(parameters);
-						parameters.put(LAST_RESULT_INTERNAL_NAME, lastResult);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, operands.size()), runnable -> {
+			Thread thread = new Thread(runnable, "p2 phase " + phaseId); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+		LinkedList<Integer> ready = new LinkedList<>();
+		for (int i = 0; i < operands.size(); i++) {
+			if (waitingFor[i] == 0)
+				ready.add(i);
+		}
+		int running = 0;
+		try {
+			while (!ready.isEmpty() || running > 0) {
+				if (subMonitor.isCanceled())
+					stop.set(true);
+				while (!ready.isEmpty() && !stop.get() && !isPaused) {
+					final int index = ready.removeFirst();
+					completion.submit(() -> {
+						MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.OK, null, null);
+						results[index] = result;
+						if (stop.get())
+							return index;
+						try {
+							mergeStatus(result, awaitArtifacts(session, operands.get(index), operandMonitor));
+							if (!result.matches(IStatus.ERROR | IStatus.CANCEL))
+								performOperand(result, session, profile, operands.get(index), actions.get(index), new OperandState(), operandMonitor);
+						} catch (RuntimeException | LinkageError e) {
+							// rethrown on the thread performing the phase
+							thrown.compareAndSet(null, e);
+							stop.set(true);
+						}
+						if (result.matches(IStatus.ERROR | IStatus.CANCEL))
+							stop.set(true);
+						return index;
+					});
+					running++;
+				}
+				if (stop.get())
+					ready.clear();
+				if (running == 0) {
+					// paused with nothing running, wait as for the operands performed one after the other
+					if (!ready.isEmpty()) {
+						try {
+							Thread.sleep(1000);
+						} catch (InterruptedException e) {
+							mergeStatus(status, new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.phase_thread_interrupted_error, phaseId), e));
+							stop.set(true);
+						}
 					}
-					parameters = Collections.unmodifiableMap(parameters);
-
-					IStatus actionStatus = null;
-					try {
-						session.recordActionExecute(action, parameters);
-						actionStatus = action.execute(parameters);
-						lastResult = action.getResult();
-					} catch (RuntimeException e) {
-						if (!forced)
-							throw e;
-						// "action.execute" calls user code and might throw an unchecked exception
-						// we catch the error here to gather information on where the problem occurred.
-						actionStatus = new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.forced_action_execute_error, action.getClass().getName()), e);
-					} catch (LinkageError e) {
-						if (!forced)
-							throw e;
-						// Catch linkage errors as these are generally recoverable but let other Errors propagate (see bug 222001)
-						actionStatus = new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.forced_action_execute_error, action.getClass().getName()), e);
+					continue;
+				}
+				Future<Integer> future;
+				try {
+					future = completion.poll(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					mergeStatus(status, new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.phase_thread_interrupted_error, phaseId), e));
+					stop.set(true);
+					continue;
+				}
+				if (future == null)
+					continue;
+				running--;
+				int index;
+				try {
+					index = future.get();
+				} catch (InterruptedException | ExecutionException e) {
+					// the operand tasks catch everything, this cannot happen
+					throw new IllegalStateException(e);
+				}
+				subMonitor.worked(1);
+				for (int dependent : dependents.get(index)) {
+					if (--waitingFor[dependent] == 0)
+						ready.add(dependent);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		for (MultiStatus result : results)
+			mergeStatus(status, result);
+		Throwable e = thrown.get();
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof LinkageError)
+			throw (LinkageError) e;
+	}
+
+	/**
+	 * Returns, for each operand, the following operands whose unit requires its unit.
+	 */
+	private static List<List<Integer>> getDependents(List<Operand> operands) {
+		Map<String, List<Integer>> providers = new HashMap<>();
+		List<List<Integer>> dependents = new ArrayList<>(operands.size());
+		for (int i = 0; i < operands.size(); i++) {
+			dependents.add(new ArrayList<Integer>());
+			IInstallableUnit unit = getUnit(operands.get(i));
+			if (unit == null)
+				continue;
+			for (IProvidedCapability capability : unit.getProvidedCapabilities()) {
+				String key = capability.getNamespace() + '/' + capability.getName();
+				List<Integer> list = providers.get(key);
+				if (list == null) {
+					list = new ArrayList<>();
+					providers.put(key, list);
+				}
+				list.add(i);
+			}
+		}
+		for (int i = 0; i < operands.size(); i++) {
+			IInstallableUnit unit = getUnit(operands.get(i));
+			if (unit == null)
+				continue;
+			Set<Integer> dependencies = new HashSet<>();
+			for (IRequirement requirement : unit.getRequirements()) {
+				IMatchExpression<IInstallableUnit> matches = requirement.getMatches();
+				if (RequiredCapability.isSimpleRequirement(matches)) {
+					List<Integer> candidates = providers.get(RequiredCapability.extractNamespace(matches) + '/' + RequiredCapability.extractName(matches));
+					if (candidates == null)
+						continue;
+					for (int candidate : candidates) {
+						if (candidate < i && requirement.isMatch(getUnit(operands.get(candidate))))
+							dependencies.add(candidate);
 					}
-					if (forced && actionStatus != null && actionStatus.matches(IStatus.ERROR)) {
-						MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, getProblemMessage(), null);
-						result.add(new Status(IStatus.ERROR, EngineActivator.ID, session.getContextString(this, operand, action), null));
-						LogHelper.log(result);
-						actionStatus = Status.OK_STATUS;
+				} else {
+					for (int candidate = 0; candidate < i; candidate++) {
+						IInstallableUnit candidateUnit = getUnit(operands.get(candidate));
+						if (candidateUnit != null && requirement.isMatch(candidateUnit))
+							dependencies.add(candidate);
 					}
-					mergeStatus(status, actionStatus);
-					if (status.matches(IStatus.ERROR | IStatus.CANCEL))
-						return;
 				}
 			}
-			mergeStatus(status, touchpointCompleteOperand(profile, operand, operandParameters, subMonitor));
-			mergeStatus(status, completeOperand(profile, operand, operandParameters, subMonitor));
+			for (int dependency : dependencies)
+				dependents.get(dependency).add(i);
+		}
+		return dependents;
+	}
+
+	private static IInstallableUnit getUnit(Operand operand) {
+		if (!(operand instanceof InstallableUnitOperand))
+			return null;
+		InstallableUnitOperand iuOperand = (InstallableUnitOperand) operand;
+		return iuOperand.second() != null ? iuOperand.second() : iuOperand.first();
+	}
+
+	private IStatus awaitArtifacts(EngineSession session, Operand operand, IProgressMonitor monitor) {
+		ArtifactPipeline pipeline = session.getArtifactPipeline();
+		if (pipeline != null && needsCollectedArtifacts() && operand instanceof InstallableUnitOperand) {
+			IInstallableUnit unit = ((InstallableUnitOperand) operand).second();
+			if (unit != null)
+				return pipeline.await(unit, monitor);
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Performs the actions of an operand. Returns <code>false</code> if the status now
+	 * indicates an error or a cancellation.
+	 */
+	private boolean performOperand(MultiStatus status, EngineSession session, IProfile profile, Operand operand, List<ProvisioningAction> actions, OperandState state, IProgressMonitor monitor) {
+		session.recordOperandStart(operand);
+		state.parameters = new HashMap<>(phaseParameters);
+		state.parameters.put(PARM_OPERAND, operand);
+		mergeStatus(status, initializeOperand(profile, operand, state.parameters, monitor));
+		if (status.matches(IStatus.ERROR | IStatus.CANCEL)) {
+			state.parameters = null;
+			return false;
+		}
+
+		Touchpoint operandTouchpoint = (Touchpoint) state.parameters.get(PARM_TOUCHPOINT);
+		if (operandTouchpoint != null) {
+			mergeStatus(status, initializeTouchpointParameters(profile, operand, operandTouchpoint, state, monitor));
 			if (status.matches(IStatus.ERROR | IStatus.CANCEL))
-				return;
-			operandParameters = null;
-			session.recordOperandEnd(operand);
-			subMonitor.worked(1);
+				return false;
+
+			state.parameters = state.touchpointParameters.get(operandTouchpoint);
+		}
+
+		if (actions != null) {
+			Object lastResult = null;
+			for (int j = 0; j < actions.size(); j++) {
+				ProvisioningAction action = actions.get(j);
+				Map<String, Object> parameters = state.parameters;
+				Touchpoint touchpoint = action.getTouchpoint();
+				if (touchpoint != null) {
+					mergeStatus(status, initializeTouchpointParameters(profile, operand, touchpoint, state, monitor));
+					if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+						return false;
+
+					parameters = state.touchpointParameters.get(touchpoint);
+				}
+				if (lastResult != null) {
+					parameters = new HashMap<>(parameters);
+					parameters.put(LAST_RESULT_INTERNAL_NAME, lastResult);
+				}
+				parameters = Collections.unmodifiableMap(parameters);
+
+				IStatus actionStatus = null;
+				try {
+					session.recordActionExecute(action, parameters);
+					actionStatus = action.execute(parameters);
+					lastResult = action.getResult();
+				} catch (RuntimeException e) {
+					if (!forced)
+						throw e;
+					// "action.execute" calls user code and might throw an unchecked exception
+					// we catch the error here to gather information on where the problem occurred.
+					actionStatus = new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.forced_action_execute_error, action.getClass().getName()), e);
+				} catch (LinkageError e) {
+					if (!forced)
+						throw e;
+					// Catch linkage errors as these are generally recoverable but let other Errors propagate (see bug 222001)
+					actionStatus = new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.forced_action_execute_error, action.getClass().getName()), e);
+				}
+				if (forced && actionStatus != null && actionStatus.matches(IStatus.ERROR)) {
+					MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, getProblemMessage(), null);
+					result.add(new Status(IStatus.ERROR, EngineActivator.ID, session.getContextString(this, operand, action), null));
+					LogHelper.log(result);
+					actionStatus = Status.OK_STATUS;
+				}
+				mergeStatus(status, actionStatus);
+				if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+					return false;
+			}
 		}
+		mergeStatus(status, touchpointCompleteOperand(profile, operand, state, monitor));
+		mergeStatus(status, completeOperand(profile, operand, state.parameters, monitor));
+		if (status.matches(IStatus.ERROR | IStatus.CANCEL))
+			return false;
+		state.parameters = null;
+		session.recordOperandEnd(operand);
+		return true;
 	}
 
-	private IStatus initializeTouchpointParameters(IProfile profile, Operand operand, Touchpoint touchpoint, IProgressMonitor monitor) {
-		if (touchpointToTouchpointOperandParameters.containsKey(touchpoint))
+	private IStatus initializeTouchpointParameters(IProfile profile, Operand operand, Touchpoint touchpoint, OperandState state, IProgressMonitor monitor) {
+		if (state.touchpointParameters.containsKey(touchpoint))
 			return Status.OK_STATUS;
 
-		Map<String, Object> touchpointPhaseParameters = touchpointToTouchpointPhaseParameters.get(touchpoint);
-		if (touchpointPhaseParameters == null) {
-			touchpointPhaseParameters = new HashMap<>(phaseParameters);
-			IStatus status = touchpoint.initializePhase(monitor, profile, phaseId, touchpointPhaseParameters);
-			if (status != null && status.matches(IStatus.ERROR | IStatus.CANCEL))
-				return status;
-			touchpointToTouchpointPhaseParameters.put(touchpoint, touchpointPhaseParameters);
+		Map<String, Object> touchpointPhaseParameters;
+		synchronized (touchpointToTouchpointPhaseParameters) {
+			touchpointPhaseParameters = touchpointToTouchpointPhaseParameters.get(touchpoint);
+			if (touchpointPhaseParameters == null) {
+				touchpointPhaseParameters = new HashMap<>(phaseParameters);
+				IStatus status = touchpoint.initializePhase(monitor, profile, phaseId, touchpointPhaseParameters);
+				if (status != null && status.matches(IStatus.ERROR | IStatus.CANCEL))
+					return status;
+				touchpointToTouchpointPhaseParameters.put(touchpoint, touchpointPhaseParameters);
+			}
 		}
 
 		Map<String, Object> touchpointOperandParameters = new HashMap<>(touchpointPhaseParameters);
-		touchpointOperandParameters.putAll(operandParameters);
+		touchpointOperandParameters.putAll(state.parameters);
 		IStatus status = touchpoint.initializeOperand(profile, touchpointOperandParameters);
 		if (status != null && status.matches(IStatus.ERROR | IStatus.CANCEL))
 			return status;
-		touchpointToTouchpointOperandParameters.put(touchpoint, touchpointOperandParameters);
+		state.touchpointParameters.put(touchpoint, touchpointOperandParameters);
 		return Status.OK_STATUS;
 	}
 
@@ -253,30 +491,31 @@ public abstract class Phase {
 	}
 
 	void undo(MultiStatus status, EngineSession session, IProfile profile, Operand operand, ProvisioningAction[] actions, ProvisioningContext context) {
-		if (operandParameters == null) {
-			operandParameters = new HashMap<>(phaseParameters);
-			operandParameters.put(PARM_OPERAND, operand);
-			mergeStatus(status, initializeOperand(profile, operand, operandParameters, new NullProgressMonitor()));
-			Touchpoint operandTouchpoint = (Touchpoint) operandParameters.get(PARM_TOUCHPOINT);
+		OperandState state = operandState;
+		if (state.parameters == null) {
+			state.parameters = new HashMap<>(phaseParameters);
+			state.parameters.put(PARM_OPERAND, operand);
+			mergeStatus(status, initializeOperand(profile, operand, state.parameters, new NullProgressMonitor()));
+			Touchpoint operandTouchpoint = (Touchpoint) state.parameters.get(PARM_TOUCHPOINT);
 			if (operandTouchpoint != null) {
-				mergeStatus(status, initializeTouchpointParameters(profile, operand, operandTouchpoint, new NullProgressMonitor()));
+				mergeStatus(status, initializeTouchpointParameters(profile, operand, operandTouchpoint, state, new NullProgressMonitor()));
 				if (status.matches(IStatus.ERROR | IStatus.CANCEL))
 					return;
 
-				operandParameters = touchpointToTouchpointOperandParameters.get(operandTouchpoint);
+				state.parameters = state.touchpointParameters.get(operandTouchpoint);
 			}
-			operandParameters = Collections.unmodifiableMap(operandParameters);
+			state.parameters = Collections.unmodifiableMap(state.parameters);
 		}
 		for (int j = 0; j < actions.length; j++) {
 			ProvisioningAction action = actions[j];
-			Map<String, Object> parameters = operandParameters;
+			Map<String, Object> parameters = state.parameters;
 			Touchpoint touchpoint = action.getTouchpoint();
 			if (touchpoint != null) {
-				mergeStatus(status, initializeTouchpointParameters(profile, operand, touchpoint, new NullProgressMonitor()));
+				mergeStatus(status, initializeTouchpointParameters(profile, operand, touchpoint, state, new NullProgressMonitor()));
 				if (status.matches(IStatus.ERROR))
 					return;
 
-				parameters = touchpointToTouchpointOperandParameters.get(touchpoint);
+				parameters = state.touchpointParameters.get(touchpoint);
 			}
 			IStatus actionStatus = null;
 			try {
@@ -296,15 +535,70 @@ public abstract class Phase {
 				result.merge(actionStatus);
 			}
 		}
-		mergeStatus(status, touchpointCompleteOperand(profile, operand, operandParameters, new NullProgressMonitor()));
-		mergeStatus(status, completeOperand(profile, operand, operandParameters, new NullProgressMonitor()));
-		operandParameters = null;
+		mergeStatus(status, touchpointCompleteOperand(profile, operand, state, new NullProgressMonitor()));
+		mergeStatus(status, completeOperand(profile, operand, state.parameters, new NullProgressMonitor()));
+		state.parameters = null;
 	}
 
 	public boolean isApplicable(Operand operand) {
 		return true;
 	}
 
+	/**
+	 * Returns whether this phase works on the collected artifacts of the units it is
+	 * applied to. In a pipelined phase set, such a phase waits for the download of the
+	 * artifacts of each unit before processing its operand.
+	 */
+	protected boolean needsCollectedArtifacts() {
+		return false;
+	}
+
+	/**
+	 * Returns whether the operands of this phase may be performed concurrently when the
+	 * context asks for it. The operand hooks of such a phase must be thread safe.
+	 */
+	protected boolean supportsParallelOperands() {
+		return false;
+	}
+
+	/**
+	 * Returns whether the given action can run concurrently with the actions of other
+	 * operands. By default this is the case for the actions of thread safe touchpoints.
+	 */
+	protected boolean isThreadSafe(ProvisioningAction action) {
+		Touchpoint touchpoint = action.getTouchpoint();
+		return touchpoint != null && touchpoint.isThreadSafe();
+	}
+
+	private boolean isThreadSafe(Operand operand, List<ProvisioningAction> actions) {
+		IInstallableUnit unit = getUnit(operand);
+		if (unit == null)
+			return false;
+		Touchpoint touchpoint = actionManager.getTouchpointPoint(unit.getTouchpointType());
+		if (touchpoint != null && !touchpoint.isThreadSafe())
+			return false;
+		if (actions != null) {
+			for (ProvisioningAction action : actions) {
+				if (!isThreadSafe(action))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private static int getParallelism(ProvisioningContext context) {
+		String parallelism = context != null ? context.getProperty(PhaseSet.PARALLEL_OPERANDS) : null;
+		if (parallelism == null)
+			return 1;
+		if (Boolean.TRUE.toString().equalsIgnoreCase(parallelism))
+			return Runtime.getRuntime().availableProcessors();
+		try {
+			return Math.max(1, Integer.parseInt(parallelism));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
 	protected IStatus initializePhase(IProgressMonitor monitor, IProfile profile, Map<String, Object> parameters) {
 		return Status.OK_STATUS;
 	}
@@ -331,17 +625,17 @@ public abstract class Phase {
 		return Status.OK_STATUS;
 	}
 
-	IStatus touchpointCompleteOperand(IProfile profile, Operand operand, Map<String, Object> parameters, IProgressMonitor monitor) {
-		if (touchpointToTouchpointOperandParameters.isEmpty())
+	private IStatus touchpointCompleteOperand(IProfile profile, Operand operand, OperandState state, IProgressMonitor monitor) {
+		if (state.touchpointParameters.isEmpty())
 			return Status.OK_STATUS;
 
 		MultiStatus status = new MultiStatus(EngineActivator.ID, IStatus.OK, null, null);
-		for (Map.Entry<Touchpoint, Map<String, Object>> entry : touchpointToTouchpointOperandParameters.entrySet()) {
+		for (Map.Entry<Touchpoint, Map<String, Object>> entry : state.touchpointParameters.entrySet()) {
 			Touchpoint touchpoint = entry.getKey();
 			Map<String, Object> touchpointParameters = entry.getValue();
 			mergeStatus(status, touchpoint.completeOperand(profile, touchpointParameters));
 		}
-		touchpointToTouchpointOperandParameters.clear();
+		state.touchpointParameters.clear();
 		return status;
 	}
 
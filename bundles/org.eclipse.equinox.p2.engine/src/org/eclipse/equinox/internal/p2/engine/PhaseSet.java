@@ -17,10 +17,24 @@ import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
 import org.eclipse.osgi.util.NLS;
 
 public class PhaseSet implements IPhaseSet {
+	/**
+	 * Context property indicating that the phases are pipelined. The artifacts gathered by
+	 * the collect phase are downloaded while the following phases run, and a phase that
+	 * works on the artifacts of a unit only waits for the download of these.
+	 */
+	public static final String PIPELINED = "org.eclipse.equinox.p2.engine.pipelined"; //$NON-NLS-1$
+	/**
+	 * Context property giving the number of threads on which the phases that support it
+	 * perform their operands, or <code>true</code> for one thread per processor. Only the
+	 * operands whose touchpoint and actions are thread safe are performed concurrently,
+	 * after the operands of the units they require.
+	 */
+	public static final String PARALLEL_OPERANDS = "org.eclipse.equinox.p2.engine.parallelOperands"; //$NON-NLS-1$
 
 	private final Phase[] phases;
 	private boolean isRunning = false;
 	private boolean isPaused = false;
+	private ArtifactPipeline pipeline;
 
 	public PhaseSet(Phase[] phases) {
 		if (phases == null)
@@ -33,9 +47,18 @@ public class PhaseSet implements IPhaseSet {
 		MultiStatus status = new MultiStatus(EngineActivator.ID, IStatus.OK, null, null);
 		int[] weights = getProgressWeights(operands);
 		int totalWork = getTotalWork(weights);
-		SubMonitor pm = SubMonitor.convert(monitor, totalWork);
+		ArtifactPipeline pipeline = isPipelined(session.getProvisioningContext()) ? new ArtifactPipeline() : null;
+		// the downloads take as much work as the collect phase they are moved out of
+		int downloadWork = pipeline != null ? getCollectWork(weights) : 0;
+		SubMonitor pm = SubMonitor.convert(monitor, totalWork + downloadWork);
 		try {
-			isRunning = true;
+			synchronized (this) {
+				isRunning = true;
+				this.pipeline = pipeline;
+				if (pipeline != null)
+					pipeline.setPaused(isPaused);
+			}
+			session.setArtifactPipeline(pipeline);
 			for (int i = 0; i < phases.length; i++) {
 				if (pm.isCanceled()) {
 					status.add(Status.CANCEL_STATUS);
@@ -58,30 +81,59 @@ public class PhaseSet implements IPhaseSet {
 				} finally {
 					phase.actionManager = null;
 				}
-				if (status.matches(IStatus.CANCEL)) {
-					MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.CANCEL, Messages.Engine_Operation_Canceled_By_User, null);
-					result.merge(status);
-					return result;
-				} else if (status.matches(IStatus.ERROR)) {
-					MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, phase.getProblemMessage(), null);
-					result.add(new Status(IStatus.ERROR, EngineActivator.ID, session.getContextString(), null));
-					result.merge(status);
-					return result;
+				if (status.matches(IStatus.CANCEL | IStatus.ERROR))
+					return getResult(status, session, phase.getProblemMessage());
+				if (pipeline != null)
+					pipeline.reportProgress(pm, downloadWork);
+			}
+			if (pipeline != null) {
+				// artifacts that no phase waited for must still be downloaded
+				IStatus downloadStatus = pipeline.join(pm, downloadWork);
+				if (!downloadStatus.isOK()) {
+					status.add(downloadStatus);
+					return getResult(status, session, Messages.Phase_Collect_Error);
 				}
 			}
 		} finally {
+			if (pipeline != null) {
+				pipeline.close();
+				session.setArtifactPipeline(null);
+			}
 			pm.done();
-			isRunning = false;
+			synchronized (this) {
+				isRunning = false;
+				this.pipeline = null;
+			}
+		}
+		return status;
+	}
+
+	private static MultiStatus getResult(MultiStatus status, EngineSession session, String problemMessage) {
+		if (status.matches(IStatus.CANCEL)) {
+			MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.CANCEL, Messages.Engine_Operation_Canceled_By_User, null);
+			result.merge(status);
+			return result;
+		} else if (status.matches(IStatus.ERROR)) {
+			MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, problemMessage, null);
+			result.add(new Status(IStatus.ERROR, EngineActivator.ID, session.getContextString(), null));
+			result.merge(status);
+			return result;
 		}
 		return status;
 	}
 
+	private static boolean isPipelined(ProvisioningContext context) {
+		return context != null && Boolean.TRUE.toString().equalsIgnoreCase(context.getProperty(PIPELINED));
+	}
+
 	public synchronized boolean pause() {
 		if (isRunning && !isPaused) {
 			isPaused = true;
 			for (Phase phase : phases) {
 				phase.setPaused(isPaused);
 			}
+			if (pipeline != null)
+				pipeline.setPaused(isPaused);
 			return true;
 		}
 		return false;
@@ -93,6 +145,8 @@ public class PhaseSet implements IPhaseSet {
 			for (Phase phase : phases) {
 				phase.setPaused(isPaused);
 			}
+			if (pipeline != null)
+				pipeline.setPaused(isPaused);
 			return true;
 		}
 		return false;
@@ -150,6 +204,14 @@ public class PhaseSet implements IPhaseSet {
 		return sum;
 	}
 
+	private int getCollectWork(int[] weights) {
+		for (int i = 0; i < phases.length; i++) {
+			if (PhaseSetFactory.PHASE_COLLECT.equals(phases[i].phaseId))
+				return weights[i];
+		}
+		return 0;
+	}
+
 	private int[] getProgressWeights(Operand[] operands) {
 		int[] weights = new int[phases.length];
 		for (int i = 0; i < phases.length; i += 1) {
@@ -21,6 +21,7 @@ import org.eclipse.equinox.internal.p2.metadata.index.*;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IProvidedCapability;
 import org.eclipse.equinox.p2.metadata.KeyWithLocale;
 import org.eclipse.equinox.p2.metadata.expression.IEvaluationContext;
 import org.eclipse.equinox.p2.metadata.expression.IExpression;
@@ -53,6 +54,12 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 
 	private IIndex<IInstallableUnit> capabilityIndex;
 
+	/**
+	 * Map of capability name to the unit or the list of units that provide it. It backs the
+	 * capability index, and is kept up to date with the units once the index is built.
+	 */
+	private Map<String, Object> capabilityMap;
+
 	private TranslationSupport translationSupport;
 
 	/**
@@ -66,9 +73,18 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 	private OrderedProperties storage = new OrderedProperties();
 
 	private IUMap ius = new IUMap();
-	final Map<IInstallableUnit, OrderedProperties> iuProperties = new HashMap<>();
+	Map<IInstallableUnit, OrderedProperties> iuProperties = new HashMap<>();
 	private boolean changed = false;
 
+	/**
+	 * Snapshots share the storage, the units, their properties and the indexes with the
+	 * profile they are taken from. Whichever profile changes them first copies them.
+	 */
+	private boolean sharedStorage;
+	private boolean sharedUnits;
+	// the unit properties this profile created since it last shared them, which it may change in place
+	private final Set<OrderedProperties> ownIUProperties = Collections.newSetFromMap(new IdentityHashMap<OrderedProperties, Boolean>());
+
 	private long timestamp;
 	private ISurrogateProfileHandler surrogateProfileHandler;
 
@@ -156,16 +172,102 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 	 * 	Associate the given value with the given key
 	 * 	in the local storage of this profile.
 	 */
-	public void setProperty(String key, String value) {
+	public synchronized void setProperty(String key, String value) {
+		unshareStorage();
 		storage.setProperty(key, value);
 		changed = true;
 	}
 
-	public void removeProperty(String key) {
+	public synchronized void removeProperty(String key) {
+		unshareStorage();
 		storage.remove(key);
 		changed = true;
 	}
 
+	private void unshareStorage() {
+		if (!sharedStorage)
+			return;
+		storage = new OrderedProperties(storage);
+		sharedStorage = false;
+	}
+
+	private synchronized void unshareUnits() {
+		if (!sharedUnits)
+			return;
+		ius = ius.clone();
+		iuProperties = new HashMap<>(iuProperties);
+		if (capabilityMap != null)
+			capabilityMap = copyCapabilityMap(capabilityMap);
+		idIndex = null;
+		capabilityIndex = null;
+		sharedUnits = false;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> copyCapabilityMap(Map<String, Object> map) {
+		Map<String, Object> copy = new HashMap<>(map);
+		for (Entry<String, Object> entry : copy.entrySet()) {
+			if (entry.getValue() instanceof List<?>)
+				entry.setValue(new ArrayList<>((List<IInstallableUnit>) entry.getValue()));
+		}
+		return copy;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addCapabilities(IInstallableUnit iu) {
+		for (IProvidedCapability capability : iu.getProvidedCapabilities()) {
+			String name = capability.getName();
+			Object previous = capabilityMap.put(name, iu);
+			if (previous == null || previous == iu)
+				continue;
+
+			List<IInstallableUnit> list;
+			if (previous instanceof IInstallableUnit) {
+				list = new ArrayList<>();
+				list.add((IInstallableUnit) previous);
+			} else
+				list = (List<IInstallableUnit>) previous;
+			list.add(iu);
+			capabilityMap.put(name, list);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void removeCapabilities(IInstallableUnit iu) {
+		for (IProvidedCapability capability : iu.getProvidedCapabilities()) {
+			String name = capability.getName();
+			Object value = capabilityMap.get(name);
+			if (value instanceof IInstallableUnit) {
+				if (value.equals(iu))
+					capabilityMap.remove(name);
+			} else if (value != null) {
+				List<IInstallableUnit> list = (List<IInstallableUnit>) value;
+				while (list.remove(iu)) {
+					// remove all occurrences
+				}
+				if (list.isEmpty())
+					capabilityMap.remove(name);
+				else if (list.size() == 1)
+					capabilityMap.put(name, list.get(0));
+			}
+		}
+	}
+
+	/**
+	 * Returns the properties of the given unit for changing them, copying them first if
+	 * they may be shared with a snapshot.
+	 */
+	private OrderedProperties getWritableProperties(IInstallableUnit iu) {
+		unshareUnits();
+		OrderedProperties properties = iuProperties.get(iu);
+		if (properties == null || !ownIUProperties.contains(properties)) {
+			properties = properties == null ? new OrderedProperties() : new OrderedProperties(properties);
+			iuProperties.put(iu, properties);
+			ownIUProperties.add(properties);
+		}
+		return properties;
+	}
+
 	@Override
 	public synchronized IIndex<IInstallableUnit> getIndex(String memberName) {
 		if (InstallableUnit.MEMBER_ID.equals(memberName)) {
@@ -175,8 +277,14 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 		}
 
 		if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals(memberName)) {
-			if (capabilityIndex == null)
-				capabilityIndex = new CapabilityIndex(ius.iterator());
+			if (capabilityIndex == null) {
+				if (capabilityMap == null) {
+					capabilityMap = new HashMap<>(300);
+					for (Iterator<IInstallableUnit> iter = ius.iterator(); iter.hasNext();)
+						addCapabilities(iter.next());
+				}
+				capabilityIndex = new CapabilityIndex(capabilityMap);
+			}
 			return capabilityIndex;
 		}
 
@@ -218,7 +326,7 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 	}
 
 	@Override
-	public String getInstallableUnitProperty(IInstallableUnit iu, String key) {
+	public synchronized String getInstallableUnitProperty(IInstallableUnit iu, String key) {
 		OrderedProperties properties = iuProperties.get(iu);
 		if (properties == null)
 			return null;
@@ -226,27 +334,24 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 		return properties.getProperty(key);
 	}
 
-	public String setInstallableUnitProperty(IInstallableUnit iu, String key, String value) {
+	public synchronized String setInstallableUnitProperty(IInstallableUnit iu, String key, String value) {
 		//		String iuKey = createIUKey(iu);
-		OrderedProperties properties = iuProperties.get(iu);
-		if (properties == null) {
-			properties = new OrderedProperties();
-			iuProperties.put(iu, properties);
-		}
-
+		OrderedProperties properties = getWritableProperties(iu);
 		changed = true;
 		return (String) properties.setProperty(key, value);
 	}
 
-	public String removeInstallableUnitProperty(IInstallableUnit iu, String key) {
+	public synchronized String removeInstallableUnitProperty(IInstallableUnit iu, String key) {
 		//		String iuKey = createIUKey(iu);
-		OrderedProperties properties = iuProperties.get(iu);
-		if (properties == null)
+		if (iuProperties.get(iu) == null)
 			return null;
 
+		OrderedProperties properties = getWritableProperties(iu);
 		String oldValue = properties.remove(key);
-		if (properties.isEmpty())
+		if (properties.isEmpty()) {
 			iuProperties.remove(iu);
+			ownIUProperties.remove(properties);
+		}
 
 		changed = true;
 		return oldValue;
@@ -279,28 +384,35 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 	 * 	Add all the properties in the map to the local properties
 	 * 	of the profile.
 	 */
-	public void addProperties(Map<String, String> properties) {
+	public synchronized void addProperties(Map<String, String> properties) {
+		unshareStorage();
 		storage.putAll(properties);
 		changed = true;
 	}
 
-	public void addInstallableUnit(IInstallableUnit iu) {
+	public synchronized void addInstallableUnit(IInstallableUnit iu) {
 		iu = iu.unresolved();
 		if (ius.contains(iu))
 			return;
 
+		unshareUnits();
 		ius.add(iu);
+		if (capabilityMap != null)
+			addCapabilities(iu);
 		changed = true;
 	}
 
-	public void removeInstallableUnit(IInstallableUnit iu) {
+	public synchronized void removeInstallableUnit(IInstallableUnit iu) {
 		iu = iu.unresolved();
+		unshareUnits();
 		ius.remove(iu);
+		if (capabilityMap != null)
+			removeCapabilities(iu);
 		changed = true;
 	}
 
 	@Override
-	public Map<String, String> getInstallableUnitProperties(IInstallableUnit iu) {
+	public synchronized Map<String, String> getInstallableUnitProperties(IInstallableUnit iu) {
 		OrderedProperties properties = iuProperties.get(iu);
 		if (properties == null)
 			properties = new OrderedProperties();
@@ -308,8 +420,9 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 		return OrderedProperties.unmodifiableProperties(properties);
 	}
 
-	public void clearLocalProperties() {
-		storage.clear();
+	public synchronized void clearLocalProperties() {
+		storage = new OrderedProperties();
+		sharedStorage = false;
 		changed = true;
 	}
 
@@ -321,18 +434,28 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 		changed = isChanged;
 	}
 
-	public void clearInstallableUnits() {
-		ius.clear();
-		iuProperties.clear();
+	public synchronized void clearInstallableUnits() {
+		// the cleared collections may be shared, so new ones are started
+		ius = new IUMap();
+		iuProperties = new HashMap<>();
+		ownIUProperties.clear();
+		capabilityMap = null;
+		idIndex = null;
+		capabilityIndex = null;
+		sharedUnits = false;
 		changed = true;
 	}
 
+	/**
+	 * Returns a copy of this profile. The copy shares the units, the properties and the
+	 * indexes with this profile until either of them changes, so taking it is cheap.
+	 */
 	public Profile snapshot() {
 		Profile parentSnapshot = null;
 		if (parentProfile != null)
 			parentSnapshot = parentProfile.snapshot();
 
-		Profile snapshot = new Profile(agent, profileId, parentSnapshot, storage);
+		Profile snapshot = new Profile(agent, profileId, parentSnapshot, null);
 		if (surrogateProfileHandler != null)
 			snapshot.setSurrogateProfileHandler(surrogateProfileHandler);
 		snapshot.setTimestamp(timestamp);
@@ -343,29 +466,37 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 			}
 		}
 
-		for (Iterator<IInstallableUnit> iter = ius.iterator(); iter.hasNext();) {
-			IInstallableUnit iu = iter.next();
-			snapshot.addInstallableUnit(iu);
-			Map<String, String> properties = getInstallableUnitProperties(iu);
-			if (properties != null)
-				snapshot.addInstallableUnitProperties(iu, properties);
+		synchronized (this) {
+			snapshot.storage = storage;
+			snapshot.ius = ius;
+			snapshot.iuProperties = iuProperties;
+			snapshot.capabilityMap = capabilityMap;
+			snapshot.idIndex = idIndex;
+			snapshot.capabilityIndex = capabilityIndex;
+			snapshot.sharedStorage = snapshot.sharedUnits = true;
+			sharedStorage = sharedUnits = true;
+			ownIUProperties.clear();
 		}
 		snapshot.setChanged(false);
 		return snapshot;
 	}
 
-	public void addInstallableUnitProperties(IInstallableUnit iu, Map<String, String> properties) {
-		for (Entry<String, String> entry : properties.entrySet()) {
-			setInstallableUnitProperty(iu, entry.getKey(), entry.getValue());
-		}
+	public synchronized void addInstallableUnitProperties(IInstallableUnit iu, Map<String, String> properties) {
+		if (properties.isEmpty())
+			return;
+		getWritableProperties(iu).putAll(properties);
+		changed = true;
 	}
 
-	public void clearInstallableUnitProperties(IInstallableUnit iu) {
-		iuProperties.remove(iu);
+	public synchronized void clearInstallableUnitProperties(IInstallableUnit iu) {
+		unshareUnits();
+		OrderedProperties properties = iuProperties.remove(iu);
+		if (properties != null)
+			ownIUProperties.remove(properties);
 		changed = true;
 	}
 
-	public void clearOrphanedInstallableUnitProperties() {
+	public synchronized void clearOrphanedInstallableUnitProperties() {
 		Set<IInstallableUnit> keys = iuProperties.keySet();
 		//		Set orphans = new HashSet();
 		Collection<IInstallableUnit> toRemove = new ArrayList<>();
@@ -374,8 +505,10 @@ public class Profile extends IndexProvider<IInstallableUnit> implements IProfile
 				toRemove.add(iu);
 		}
 
+		if (!toRemove.isEmpty())
+			unshareUnits();
 		for (IInstallableUnit iu : toRemove) {
-			iuProperties.remove(iu);
+			ownIUProperties.remove(iuProperties.remove(iu));
 		}
 		//		List iuKeys = new ArrayList();
 		//		for (Iterator it = ius.iterator(); it.hasNext();)
@@ -10,8 +10,7 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.engine;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
 import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataParser;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.Version;
@@ -34,9 +33,11 @@ public abstract class ProfileParser extends MetadataParser implements ProfileXML
 		private String profileId;
 		private String parentId;
 		private String timestamp;
+		private String baseTimestamp;
 		private PropertiesHandler propertiesHandler;
 		private InstallableUnitsHandler unitsHandler;
 		private IUsPropertiesHandler iusPropertiesHandler;
+		private RemovedUnitsHandler removedUnitsHandler;
 
 		public ProfileHandler() {
 			// default
@@ -51,7 +52,7 @@ public abstract class ProfileParser extends MetadataParser implements ProfileXML
 			profileId = parseRequiredAttributes(attributes, required)[0];
 			parentId = parseOptionalAttribute(attributes, PARENT_ID_ATTRIBUTE);
 			timestamp = parseOptionalAttribute(attributes, TIMESTAMP_ATTRIBUTE);
-
+			baseTimestamp = parseOptionalAttribute(attributes, BASE_TIMESTAMP_ATTRIBUTE);
 		}
 
 		@Override
@@ -74,6 +75,12 @@ public abstract class ProfileParser extends MetadataParser implements ProfileXML
 				} else {
 					duplicateElement(this, name, attributes);
 				}
+			} else if (REMOVED_UNITS_ELEMENT.equals(name)) {
+				if (removedUnitsHandler == null) {
+					removedUnitsHandler = new RemovedUnitsHandler(this, attributes);
+				} else {
+					duplicateElement(this, name, attributes);
+				}
 			} else {
 				invalidElement(name, attributes);
 			}
@@ -98,6 +105,29 @@ public abstract class ProfileParser extends MetadataParser implements ProfileXML
 			return 0;
 		}
 
+		/**
+		 * Returns whether the document holds the changes to an earlier state of the
+		 * profile rather than the complete profile.
+		 */
+		public boolean isDelta() {
+			return baseTimestamp != null;
+		}
+
+		/**
+		 * Returns the timestamp of the state the changes of a delta apply to, or -1 if the
+		 * delta does not name a valid one. Such a delta is corrupt and cannot be applied.
+		 */
+		public long getBaseTimestamp() {
+			if (baseTimestamp != null) {
+				try {
+					return Long.parseLong(baseTimestamp);
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+			}
+			return 0;
+		}
+
 		public Map<String, String> getProperties() {
 			if (propertiesHandler == null)
 				return null;
@@ -121,6 +151,24 @@ public abstract class ProfileParser extends MetadataParser implements ProfileXML
 			String iuIdentity = iu.getId() + "_" + iu.getVersion().toString(); //$NON-NLS-1$
 			return iusPropertiesMap.get(iuIdentity);
 		}
+
+		/**
+		 * Returns the properties of the installable units by their identity, or <code>null</code>.
+		 */
+		public Map<String, Map<String, String>> getIUsProperties() {
+			if (iusPropertiesHandler == null)
+				return null;
+			return iusPropertiesHandler.getIUsPropertiesMap();
+		}
+
+		/**
+		 * Returns the identities of the installable units a delta removes, or <code>null</code>.
+		 */
+		public List<String> getRemovedUnits() {
+			if (removedUnitsHandler == null)
+				return null;
+			return removedUnitsHandler.getRemovedUnits();
+		}
 	}
 
 	protected class IUPropertiesHandler extends AbstractHandler {
@@ -182,4 +230,46 @@ public abstract class ProfileParser extends MetadataParser implements ProfileXML
 			}
 		}
 	}
+
+	protected class RemovedUnitsHandler extends AbstractHandler {
+
+		private List<String> removedUnits;
+
+		public RemovedUnitsHandler(AbstractHandler parentHandler, Attributes attributes) {
+			super(parentHandler, REMOVED_UNITS_ELEMENT);
+			String sizeStr = parseOptionalAttribute(attributes, COLLECTION_SIZE_ATTRIBUTE);
+			int size = (sizeStr != null ? Integer.parseInt(sizeStr) : 4);
+			removedUnits = new ArrayList<>(size);
+		}
+
+		public List<String> getRemovedUnits() {
+			return removedUnits;
+		}
+
+		@Override
+		public void startElement(String name, Attributes attributes) {
+			if (name.equals(REMOVED_UNIT_ELEMENT)) {
+				new RemovedUnitHandler(this, attributes, removedUnits);
+			} else {
+				invalidElement(name, attributes);
+			}
+		}
+	}
+
+	protected class RemovedUnitHandler extends AbstractHandler {
+
+		private final String[] required = new String[] {ID_ATTRIBUTE, VERSION_ATTRIBUTE};
+
+		public RemovedUnitHandler(AbstractHandler parentHandler, Attributes attributes, List<String> removedUnits) {
+			super(parentHandler, REMOVED_UNIT_ELEMENT);
+			String values[] = parseRequiredAttributes(attributes, required);
+			Version version = checkVersion(REMOVED_UNIT_ELEMENT, VERSION_ATTRIBUTE, values[1]);
+			removedUnits.add(values[0] + "_" + version.toString()); //$NON-NLS-1$
+		}
+
+		@Override
+		public void startElement(String name, Attributes attributes) {
+			invalidElement(name, attributes);
+		}
+	}
 }
@@ -24,29 +24,83 @@ public class ProfileWriter extends MetadataWriter implements ProfileXMLConstants
 		super(output, processingInstructions);
 	}
 
+	private static final Comparator<IInstallableUnit> IU_ORDER = new Comparator<IInstallableUnit>() {
+		@Override
+		public int compare(IInstallableUnit iu1, IInstallableUnit iu2) {
+			int IdCompare = iu1.getId().compareTo(iu2.getId());
+			if (IdCompare != 0)
+				return IdCompare;
+
+			return iu1.getVersion().compareTo(iu2.getVersion());
+		}
+	};
+
 	public void writeProfile(IProfile profile) {
 		start(PROFILE_ELEMENT);
 		attribute(ID_ATTRIBUTE, profile.getProfileId());
 		attribute(TIMESTAMP_ATTRIBUTE, Long.toString(profile.getTimestamp()));
 		writeProperties(profile.getProperties());
 		ArrayList<IInstallableUnit> ius = new ArrayList<>(profile.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet());
-		Collections.sort(ius, new Comparator<IInstallableUnit>() {
-			@Override
-			public int compare(IInstallableUnit iu1, IInstallableUnit iu2) {
-				int IdCompare = iu1.getId().compareTo(iu2.getId());
-				if (IdCompare != 0)
-					return IdCompare;
-
-				return iu1.getVersion().compareTo(iu2.getVersion());
-			}
-		});
+		Collections.sort(ius, IU_ORDER);
 		writeInstallableUnits(ius.iterator(), ius.size());
-		writeInstallableUnitsProperties(ius.iterator(), ius.size(), profile);
+		writeInstallableUnitsProperties(ius.iterator(), ius.size(), profile, false);
+		end(PROFILE_ELEMENT);
+		flush();
+	}
+
+	/**
+	 * Writes the changes that lead from the base state of a profile to its current state.
+	 * The profile properties are written in full, installable units only when they were
+	 * added or removed, and installable unit properties only for the units whose properties
+	 * changed.
+	 */
+	public void writeProfileDelta(IProfile profile, IProfile base) {
+		start(PROFILE_ELEMENT);
+		attribute(ID_ATTRIBUTE, profile.getProfileId());
+		attribute(TIMESTAMP_ATTRIBUTE, Long.toString(profile.getTimestamp()));
+		attribute(BASE_TIMESTAMP_ATTRIBUTE, Long.toString(base.getTimestamp()));
+		writeProperties(profile.getProperties());
+		Set<IInstallableUnit> ius = profile.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
+		Set<IInstallableUnit> baseIUs = base.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
+		ArrayList<IInstallableUnit> added = new ArrayList<>();
+		ArrayList<IInstallableUnit> changed = new ArrayList<>();
+		for (IInstallableUnit iu : ius) {
+			if (!baseIUs.contains(iu))
+				added.add(iu);
+			if (!profile.getInstallableUnitProperties(iu).equals(base.getInstallableUnitProperties(iu)))
+				changed.add(iu);
+		}
+		ArrayList<IInstallableUnit> removed = new ArrayList<>();
+		for (IInstallableUnit iu : baseIUs) {
+			if (!ius.contains(iu))
+				removed.add(iu);
+		}
+		Collections.sort(added, IU_ORDER);
+		Collections.sort(changed, IU_ORDER);
+		Collections.sort(removed, IU_ORDER);
+		writeInstallableUnits(added.iterator(), added.size());
+		writeRemovedInstallableUnits(removed);
+		writeInstallableUnitsProperties(changed.iterator(), changed.size(), profile, true);
 		end(PROFILE_ELEMENT);
 		flush();
 	}
 
-	private void writeInstallableUnitsProperties(Iterator<IInstallableUnit> it, int size, IProfile profile) {
+	private void writeRemovedInstallableUnits(List<IInstallableUnit> ius) {
+		if (ius.isEmpty())
+			return;
+		start(REMOVED_UNITS_ELEMENT);
+		attribute(COLLECTION_SIZE_ATTRIBUTE, ius.size());
+		for (IInstallableUnit iu : ius) {
+			start(REMOVED_UNIT_ELEMENT);
+			attribute(ID_ATTRIBUTE, iu.getId());
+			attribute(VERSION_ATTRIBUTE, iu.getVersion().toString());
+			end(REMOVED_UNIT_ELEMENT);
+		}
+		end(REMOVED_UNITS_ELEMENT);
+	}
+
+	// empty properties are only written to a delta, where they tell that all properties of the unit were removed
+	private void writeInstallableUnitsProperties(Iterator<IInstallableUnit> it, int size, IProfile profile, boolean writeEmpty) {
 		if (size == 0)
 			return;
 		start(IUS_PROPERTIES_ELEMENT);
@@ -54,13 +108,18 @@ public class ProfileWriter extends MetadataWriter implements ProfileXMLConstants
 		while (it.hasNext()) {
 			IInstallableUnit iu = it.next();
 			Map<String, String> properties = profile.getInstallableUnitProperties(iu);
-			if (properties.isEmpty())
+			if (properties.isEmpty() && !writeEmpty)
 				continue;
 
 			start(IU_PROPERTIES_ELEMENT);
 			attribute(ID_ATTRIBUTE, iu.getId());
 			attribute(VERSION_ATTRIBUTE, iu.getVersion().toString());
-			writeProperties(properties);
+			if (properties.isEmpty()) {
+				start(PROPERTIES_ELEMENT);
+				attribute(COLLECTION_SIZE_ATTRIBUTE, 0);
+				end(PROPERTIES_ELEMENT);
+			} else
+				writeProperties(properties);
 			end(IU_PROPERTIES_ELEMENT);
 		}
 		end(IUS_PROPERTIES_ELEMENT);
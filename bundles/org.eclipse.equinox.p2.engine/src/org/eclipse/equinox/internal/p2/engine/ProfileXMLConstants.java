@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2017 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -30,5 +30,10 @@ public interface ProfileXMLConstants extends XMLConstants {
 	public static final String TIMESTAMP_ATTRIBUTE = "timestamp"; //$NON-NLS-1$
 	public static final String IUS_PROPERTIES_ELEMENT = "iusProperties"; //$NON-NLS-1$
 	public static final String IU_PROPERTIES_ELEMENT = "iuProperties"; //$NON-NLS-1$
+
+	// Constants for the elements of a profile delta
+	public static final String BASE_TIMESTAMP_ATTRIBUTE = "base"; //$NON-NLS-1$
+	public static final String REMOVED_UNITS_ELEMENT = "removedUnits"; //$NON-NLS-1$
+	public static final String REMOVED_UNIT_ELEMENT = "removedUnit"; //$NON-NLS-1$
 	public static final String PROFILE_TARGET = "profile"; //$NON-NLS-1$
 }
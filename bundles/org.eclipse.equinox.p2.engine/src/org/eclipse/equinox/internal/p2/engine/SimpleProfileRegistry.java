@@ -45,9 +45,16 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 
 	private static final String PROFILE_EXT = ".profile"; //$NON-NLS-1$
 	private static final String PROFILE_GZ_EXT = ".profile.gz"; //$NON-NLS-1$
+	private static final String PROFILE_DELTA_EXT = ".profile.delta.gz"; //$NON-NLS-1$
 	public static final String DEFAULT_STORAGE_DIR = "profileRegistry"; //$NON-NLS-1$
 	private static final String DATA_EXT = ".data"; //$NON-NLS-1$
 
+	// The number of deltas in the profile journal after which a full snapshot is written
+	private static final int MAX_JOURNAL_DELTAS = 16;
+
+	// The number of historical profile states kept in the cache
+	private static final int MAX_CACHED_STATES = 32;
+
 	//Internal constant used to keep track of the newly created timestamp
 	private static final String SERVICE_SHARED_INSTALL_NEW_TIMESTAMP = IProfileRegistry.class.getName() + '_' + "NEW_SELF_TIMESTAMP"; //$NON-NLS-1$
 
@@ -71,6 +78,17 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 	private IProvisioningEventBus eventBus;
 	// cache of last accessed profile state properties
 	private ProfileStateProperties lastAccessedProperties;
+	// cache of the timestamps of the profile states, by profile id
+	private final Map<String, ProfileStateIndex> stateIndexes = new HashMap<>();
+	// cache of the historical profile states that were parsed, the least recently used first
+	private final Map<String, SoftReference<Profile>> cachedStates = new LinkedHashMap<String, SoftReference<Profile>>(MAX_CACHED_STATES, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SoftReference<Profile>> eldest) {
+			return size() > MAX_CACHED_STATES;
+		}
+	};
 
 	public SimpleProfileRegistry(IProvisioningAgent agent, File registryDirectory) {
 		this(agent, registryDirectory, new SurrogateProfileHandler(agent), true);
@@ -199,20 +217,32 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		if (!profileDirectory.isDirectory())
 			return null;
 
-		File profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_GZ_EXT);
-		if (!profileFile.exists()) {
-			profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_EXT);
-			if (!profileFile.exists())
-				return null;
-		}
+		String stateKey = getStateKey(id, timestamp);
+		SoftReference<Profile> cachedState = cachedStates.get(stateKey);
+		Profile profile = cachedState != null ? cachedState.get() : null;
+		if (profile != null)
+			return profile.snapshot();
+
+		File profileFile = findProfileFile(profileDirectory, timestamp);
+		if (profileFile == null)
+			return null;
 
 		Parser parser = new Parser(EngineActivator.getContext(), EngineActivator.ID);
 		try {
-			parser.parse(profileFile);
+			parser.parseState(profileFile);
 		} catch (IOException e) {
 			LogHelper.log(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_parsing_profile, profileFile), e));
 		}
-		return parser.getProfileMap().get(id);
+		profile = parser.getProfileMap().get(id);
+		if (profile == null)
+			return null;
+		// states on disk never change, the cache hands out copies so that callers cannot change the cached state
+		cachedStates.put(stateKey, new SoftReference<>(profile));
+		return profile.snapshot();
+	}
+
+	private String getStateKey(String id, long timestamp) {
+		return id + '_' + timestamp;
 	}
 
 	@Override
@@ -227,10 +257,15 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		if (!profileDirectory.isDirectory())
 			return new long[0];
 
+		ProfileStateIndex index = stateIndexes.get(id);
+		if (index != null && index.isCurrent())
+			return index.getTimestamps();
+
+		long listed = System.currentTimeMillis();
 		File[] profileFiles = profileDirectory.listFiles(new FileFilter() {
 			@Override
 			public boolean accept(File pathname) {
-				return (pathname.getName().endsWith(PROFILE_EXT) || pathname.getName().endsWith(PROFILE_GZ_EXT)) && pathname.isFile() && !pathname.getName().startsWith("._"); //$NON-NLS-1$
+				return (pathname.getName().endsWith(PROFILE_EXT) || pathname.getName().endsWith(PROFILE_GZ_EXT) || pathname.getName().endsWith(PROFILE_DELTA_EXT)) && pathname.isFile() && !pathname.getName().startsWith("._"); //$NON-NLS-1$
 			}
 		});
 
@@ -245,7 +280,33 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 			}
 		}
 		Arrays.sort(timestamps);
-		return timestamps;
+		stateIndexes.put(id, new ProfileStateIndex(profileDirectory, listed, timestamps));
+		return timestamps.clone();
+	}
+
+	/**
+	 * Forgets the cached states of the given profile after its directory was changed.
+	 */
+	private void invalidateStates(String id, long timestamp) {
+		stateIndexes.remove(id);
+		if (timestamp != 0)
+			cachedStates.remove(getStateKey(id, timestamp));
+		else
+			cachedStates.keySet().removeIf(key -> key.startsWith(id + '_'));
+	}
+
+	/**
+	 * Returns the file holding the given state of a profile, either a full snapshot or a delta
+	 * of the profile journal, or <code>null</code> if there is no such state.
+	 */
+	private File findProfileFile(File profileDirectory, long timestamp) {
+		String[] extensions = new String[] {PROFILE_GZ_EXT, PROFILE_EXT, PROFILE_DELTA_EXT};
+		for (int i = 0; i < extensions.length; i++) {
+			File profileFile = new File(profileDirectory, Long.toString(timestamp) + extensions[i]);
+			if (profileFile.exists())
+				return profileFile;
+		}
+		return null;
 	}
 
 	/**
@@ -391,6 +452,8 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		ProfileLock lock = profileLocks.get(id);
 		lock.checkLocked();
 
+		// with the journal, only the changes against the state the profile is updated from are persisted
+		Profile base = isJournalEnabled() ? current.snapshot() : null;
 		current.clearLocalProperties();
 		current.clearInstallableUnits();
 
@@ -403,7 +466,7 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 			if (iuProperties != null)
 				current.addInstallableUnitProperties(iu, iuProperties);
 		}
-		saveProfile(current);
+		saveProfile(current, base);
 		profile.clearOrphanedInstallableUnitProperties();
 		profile.setTimestamp(current.getTimestamp());
 		broadcastChangeEvent(id, IProfileEvent.CHANGED);
@@ -493,19 +556,60 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		if (!profileDirectory.isDirectory())
 			return;
 
-		File profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_GZ_EXT);
-		if (!profileFile.exists()) {
-			profileFile = new File(profileDirectory, Long.toString(timestamp) + PROFILE_EXT);
-			if (!profileFile.exists())
-				return;
-		}
+		File profileFile = findProfileFile(profileDirectory, timestamp);
+		if (profileFile == null)
+			return;
+		// a delta of the journal that applies to the removed state must not lose its base
+		writeNextSnapshot(id, profileDirectory, timestamp);
 		FileUtils.deleteAll(profileFile);
+		invalidateStates(id, timestamp);
 		// Ignore the return value here. If there was a problem removing the profile state
 		// properties we don't want to fail the whole operation since the profile state itself 
 		// was removed successfully
 		removeProfileStateProperties(id, timestamp, null);
 	}
 
+	/**
+	 * Replaces the delta that follows the given state in the profile journal with a full
+	 * snapshot of the same state, so that the given state can be removed.
+	 */
+	private void writeNextSnapshot(String id, File profileDirectory, long timestamp) throws ProvisionException {
+		long[] timestamps = listProfileTimestamps(id);
+		int index = Arrays.binarySearch(timestamps, timestamp);
+		if (index < 0 || index + 1 >= timestamps.length)
+			return;
+		File deltaFile = findProfileFile(profileDirectory, timestamps[index + 1]);
+		if (deltaFile == null || !deltaFile.getName().endsWith(PROFILE_DELTA_EXT))
+			return;
+
+		Parser parser = new Parser(EngineActivator.getContext(), EngineActivator.ID);
+		try {
+			parser.parseState(deltaFile);
+		} catch (IOException e) {
+			throw new ProvisionException(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_parsing_profile, deltaFile), e));
+		}
+		Profile profile = parser.getProfileMap().get(id);
+		File snapshotFile = new File(profileDirectory, Long.toString(timestamps[index + 1]) + PROFILE_GZ_EXT);
+		OutputStream os = null;
+		try {
+			os = new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(snapshotFile)));
+			Writer writer = new Writer(os);
+			writer.writeProfile(profile);
+		} catch (IOException e) {
+			snapshotFile.delete();
+			throw new ProvisionException(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_persisting_profile, id), e));
+		} finally {
+			try {
+				if (os != null)
+					os.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		deltaFile.delete();
+		stateIndexes.remove(id);
+	}
+
 	private void broadcastChangeEvent(String profileId, int reason) {
 		if (eventBus != null)
 			eventBus.publishEvent(new ProfileEvent(profileId, reason));
@@ -542,10 +646,14 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 			boolean locked = false;
 			if (lock.processHoldsLock() || (locked = lock.lock())) {
 				try {
-					File profileFile = findLatestProfileFile(profileDirectories[i]);
-					if (profileFile != null) {
+					// a state that cannot be read, such as a delta that lost its base, falls back to an earlier one
+					List<File> profileFiles = findProfileFiles(profileDirectories[i]);
+					for (File profileFile : profileFiles) {
 						try {
-							parser.parse(profileFile);
+							parser.parseState(profileFile);
+							if (profileFile != profileFiles.get(0))
+								LogHelper.log(new Status(IStatus.WARNING, EngineActivator.ID, NLS.bind(Messages.SimpleProfileRegistry_Earlier_State_Restored, profileId, profileFile)));
+							break;
 						} catch (IOException e) {
 							LogHelper.log(new Status(IStatus.ERROR, EngineActivator.ID, NLS.bind(Messages.error_parsing_profile, profileFile), e));
 						}
@@ -562,35 +670,44 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		return parser.getProfileMap();
 	}
 
-	private File findLatestProfileFile(File profileDirectory) {
-		File latest = null;
-		long latestTimestamp = 0;
+	/**
+	 * Returns the files holding the states of a profile, the latest state first.
+	 */
+	private List<File> findProfileFiles(File profileDirectory) {
 		File[] profileFiles = profileDirectory.listFiles(new FileFilter() {
 			@Override
 			public boolean accept(File pathname) {
-				return (pathname.getName().endsWith(PROFILE_GZ_EXT) || pathname.getName().endsWith(PROFILE_EXT)) && !pathname.isDirectory();
+				return (pathname.getName().endsWith(PROFILE_GZ_EXT) || pathname.getName().endsWith(PROFILE_EXT) || pathname.getName().endsWith(PROFILE_DELTA_EXT)) && !pathname.isDirectory();
 			}
 		});
 		// protect against NPE
 		if (profileFiles == null)
-			return null;
+			return Collections.emptyList();
+		TreeMap<Long, File> result = new TreeMap<>(Collections.reverseOrder());
 		for (int i = 0; i < profileFiles.length; i++) {
 			File profileFile = profileFiles[i];
 			String fileName = profileFile.getName();
 			try {
 				long timestamp = Long.parseLong(fileName.substring(0, fileName.indexOf(PROFILE_EXT)));
-				if (timestamp > latestTimestamp) {
-					latestTimestamp = timestamp;
-					latest = profileFile;
-				}
+				if (timestamp > 0)
+					result.put(timestamp, profileFile);
 			} catch (NumberFormatException e) {
 				// ignore
 			}
 		}
-		return latest;
+		return new ArrayList<>(result.values());
 	}
 
 	private void saveProfile(Profile profile) {
+		saveProfile(profile, null);
+	}
+
+	/**
+	 * Persists the profile. When the state the profile was changed from is given, only the
+	 * changes against that state are written to the profile journal, unless it is time for
+	 * a full snapshot.
+	 */
+	private void saveProfile(Profile profile, Profile base) {
 		File profileDirectory = getProfileFolder(profile.getProfileId());
 		profileDirectory.mkdir();
 
@@ -599,7 +716,8 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		if (currentTimestamp <= previousTimestamp)
 			currentTimestamp = previousTimestamp + 1;
 		boolean shouldGzipFile = shouldGzipFile(profile);
-		File profileFile = new File(profileDirectory, Long.toString(currentTimestamp) + (shouldGzipFile ? PROFILE_GZ_EXT : PROFILE_EXT));
+		boolean shouldWriteDelta = base != null && shouldGzipFile && shouldWriteDelta(profile.getProfileId(), profileDirectory, base.getTimestamp());
+		File profileFile = new File(profileDirectory, Long.toString(currentTimestamp) + (shouldWriteDelta ? PROFILE_DELTA_EXT : shouldGzipFile ? PROFILE_GZ_EXT : PROFILE_EXT));
 
 		// Log a stack trace to see who is writing the profile.
 		if (DebugHelper.DEBUG_PROFILE_REGISTRY)
@@ -607,6 +725,7 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 
 		profile.setTimestamp(currentTimestamp);
 		profile.setChanged(false);
+		stateIndexes.remove(profile.getProfileId());
 		OutputStream os = null;
 		try {
 			if (shouldGzipFile)
@@ -614,7 +733,10 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 			else
 				os = new BufferedOutputStream(new FileOutputStream(profileFile));
 			Writer writer = new Writer(os);
-			writer.writeProfile(profile);
+			if (shouldWriteDelta)
+				writer.writeProfileDelta(profile, base);
+			else
+				writer.writeProfile(profile);
 		} catch (IOException e) {
 			profile.setTimestamp(previousTimestamp);
 			profileFile.delete();
@@ -646,9 +768,38 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		return profile.available(QueryUtil.createIUQuery("org.eclipse.equinox.p2.engine", VersionRange.create("[0.0.0, 1.0.101)")), null).isEmpty(); //$NON-NLS-1$//$NON-NLS-2$
 	}
 
+	/**
+	 * Returns whether the profile journal is enabled.
+	 */
+	private boolean isJournalEnabled() {
+		return Boolean.parseBoolean(EngineActivator.getContext().getProperty(EngineActivator.PROP_PROFILE_JOURNAL));
+	}
+
+	/**
+	 * Returns whether a change to the given state of a profile should be written as a delta. A
+	 * delta must follow the latest state on disk, and a full snapshot is written instead once the
+	 * deltas since the last snapshot become too many or too large, which bounds the replay.
+	 */
+	private boolean shouldWriteDelta(String id, File profileDirectory, long baseTimestamp) {
+		long[] timestamps = listProfileTimestamps(id);
+		if (timestamps.length == 0 || timestamps[timestamps.length - 1] != baseTimestamp)
+			return false;
+		long deltaSize = 0;
+		for (int i = timestamps.length - 1, deltas = 0; i >= 0; i--, deltas++) {
+			File profileFile = findProfileFile(profileDirectory, timestamps[i]);
+			if (profileFile == null)
+				return false;
+			if (!profileFile.getName().endsWith(PROFILE_DELTA_EXT))
+				return deltas < MAX_JOURNAL_DELTAS && deltaSize < profileFile.length() / 2;
+			deltaSize += profileFile.length();
+		}
+		return false;
+	}
+
 	private void deleteProfile(String profileId) {
 		File profileDirectory = getProfileFolder(profileId);
 		FileUtils.deleteAll(profileDirectory);
+		invalidateStates(profileId, 0);
 	}
 
 	/**
@@ -726,16 +877,44 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		}
 
 		public void parse(File file) throws IOException {
-			InputStream is;
-			if (file.getName().endsWith(PROFILE_GZ_EXT)) {
-				is = new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)));
-			} else { // backward compatibility. SimpleProfileRegistry doesn't write non-gzipped profiles any more. 
-				is = new BufferedInputStream(new FileInputStream(file));
+			parse(open(file));
+		}
+
+		private InputStream open(File file) throws IOException {
+			if (file.getName().endsWith(PROFILE_GZ_EXT) || file.getName().endsWith(PROFILE_DELTA_EXT))
+				return new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)));
+			// backward compatibility. SimpleProfileRegistry doesn't write non-gzipped profiles any more. 
+			return new BufferedInputStream(new FileInputStream(file));
+		}
+
+		/**
+		 * Parses the profile state held by the given file. A delta of the profile journal is
+		 * applied to the state it is based on, down to the full snapshot the deltas start from.
+		 */
+		public synchronized void parseState(File file) throws IOException {
+			LinkedList<ProfileHandler> chain = new LinkedList<>();
+			File current = file;
+			while (true) {
+				ProfileHandler profileHandler = parseHandler(open(current));
+				chain.addFirst(profileHandler);
+				if (!profileHandler.isDelta())
+					break;
+				long baseTimestamp = profileHandler.getBaseTimestamp();
+				File base = baseTimestamp > 0 && baseTimestamp < profileHandler.getTimestamp() ? findProfileFile(current.getParentFile(), baseTimestamp) : null;
+				if (base == null)
+					throw new IOException(NLS.bind(Messages.SimpleProfileRegistry_Journal_Base_Missing, Long.toString(baseTimestamp), current));
+				current = base;
 			}
-			parse(is);
+			ProfileHandler profileHandler = chain.size() == 1 ? chain.getFirst() : new JournalHandler(chain);
+			profileHandlers.put(profileHandler.getProfileId(), profileHandler);
 		}
 
 		public synchronized void parse(InputStream stream) throws IOException {
+			ProfileHandler profileHandler = parseHandler(stream);
+			profileHandlers.put(profileHandler.getProfileId(), profileHandler);
+		}
+
+		private ProfileHandler parseHandler(InputStream stream) throws IOException {
 			this.status = null;
 			try {
 				// TODO: currently not caching the parser since we make no assumptions
@@ -744,7 +923,7 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 				ProfileHandler profileHandler = new ProfileHandler();
 				xmlReader.setContentHandler(new ProfileDocHandler(PROFILE_ELEMENT, profileHandler));
 				xmlReader.parse(new InputSource(stream));
-				profileHandlers.put(profileHandler.getProfileId(), profileHandler);
+				return profileHandler;
 			} catch (SAXException e) {
 				IOException ioException = new IOException(e.getMessage());
 				ioException.initCause(e);
@@ -807,6 +986,79 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 			profileMap.put(profileId, profile);
 		}
 
+		/**
+		 * The state of a profile obtained by applying the deltas of the profile journal,
+		 * in order, to the full snapshot they start from.
+		 */
+		private final class JournalHandler extends ProfileHandler {
+			private final ProfileHandler latest;
+			private final Map<String, IInstallableUnit> units = new LinkedHashMap<>();
+			private final Map<String, Map<String, String>> iusProperties = new HashMap<>();
+
+			JournalHandler(List<ProfileHandler> chain) {
+				super(chain.get(chain.size() - 1).getProfileId());
+				latest = chain.get(chain.size() - 1);
+				for (ProfileHandler profileHandler : chain) {
+					List<String> removedUnits = profileHandler.getRemovedUnits();
+					if (removedUnits != null) {
+						for (String identity : removedUnits) {
+							units.remove(identity);
+							iusProperties.remove(identity);
+						}
+					}
+					IInstallableUnit[] ius = profileHandler.getInstallableUnits();
+					if (ius != null) {
+						for (int i = 0; i < ius.length; i++)
+							units.put(getIdentity(ius[i]), ius[i]);
+					}
+					Map<String, Map<String, String>> properties = profileHandler.getIUsProperties();
+					if (properties != null) {
+						for (Entry<String, Map<String, String>> entry : properties.entrySet()) {
+							// a delta lists the units whose properties were all removed with empty properties
+							if (entry.getValue().isEmpty())
+								iusProperties.remove(entry.getKey());
+							else
+								iusProperties.put(entry.getKey(), entry.getValue());
+						}
+					}
+				}
+			}
+
+			private String getIdentity(IInstallableUnit iu) {
+				return iu.getId() + "_" + iu.getVersion().toString(); //$NON-NLS-1$
+			}
+
+			@Override
+			public String getParentId() {
+				return latest.getParentId();
+			}
+
+			@Override
+			public long getTimestamp() {
+				return latest.getTimestamp();
+			}
+
+			@Override
+			public Map<String, String> getProperties() {
+				return latest.getProperties();
+			}
+
+			@Override
+			public IInstallableUnit[] getInstallableUnits() {
+				return units.values().toArray(new IInstallableUnit[units.size()]);
+			}
+
+			@Override
+			public Map<String, String> getIUProperties(IInstallableUnit iu) {
+				return iusProperties.get(getIdentity(iu));
+			}
+
+			@Override
+			public Map<String, Map<String, String>> getIUsProperties() {
+				return iusProperties;
+			}
+		}
+
 		private final class ProfileDocHandler extends DocHandler {
 
 			public ProfileDocHandler(String rootName, RootHandler rootHandler) {
@@ -1023,6 +1275,36 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 		}
 	}
 
+	// The timestamps of the states of a profile as listed from its directory. Adding or removing
+	// a state changes the modification time of the directory, which tells when to list it again.
+	static class ProfileStateIndex {
+		// the resolution of file modification times on common file systems
+		private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+		private File directory;
+		private long lastModified;
+		private long listed;
+		private long[] timestamps;
+
+		ProfileStateIndex(File directory, long listed, long[] timestamps) {
+			this.directory = directory;
+			this.lastModified = directory.lastModified();
+			this.listed = listed;
+			this.timestamps = timestamps;
+		}
+
+		// return true if the directory did not change since it was listed. A directory listed
+		// right after a change may change again without a new modification time, so such a
+		// listing is not trusted.
+		boolean isCurrent() {
+			return listed - lastModified > MODIFICATION_TIME_RESOLUTION && directory.lastModified() == lastModified;
+		}
+
+		long[] getTimestamps() {
+			return timestamps.clone();
+		}
+	}
+
 	/*
 	 * Return the folder on disk associated with the profile with the given identifier.
 	 */
@@ -40,6 +40,11 @@ public class CheckTrust extends InstallableUnitPhase {
 		return (op.second() != null);
 	}
 
+	@Override
+	protected boolean needsCollectedArtifacts() {
+		return true;
+	}
+
 	@Override
 	protected IStatus completePhase(IProgressMonitor monitor, IProfile profile, Map<String, Object> parameters) {
 		@SuppressWarnings("unchecked")
@@ -31,6 +31,7 @@ public class Collect extends InstallableUnitPhase {
 	public static final String PARM_ARTIFACT_REQUESTS = "artifactRequests"; //$NON-NLS-1$
 	public static final String NO_ARTIFACT_REPOSITORIES_AVAILABLE = "noArtifactRepositoriesAvailable"; //$NON-NLS-1$
 	private IProvisioningAgent agent = null;
+	private int operandRequestsStart;
 
 	public Collect(int weight) {
 		super(PhaseSetFactory.PHASE_COLLECT, weight);
@@ -94,17 +95,27 @@ public class Collect extends InstallableUnitPhase {
 				return Status.CANCEL_STATUS;
 		}
 
-		List<IArtifactRequest> totalArtifactRequests = new ArrayList<>(artifactRequests.size());
-		DownloadManager dm = new DownloadManager(context, agent);
+		final List<IArtifactRequest> totalArtifactRequests = new ArrayList<>(artifactRequests.size());
+		final ArtifactPipeline pipeline = (ArtifactPipeline) parameters.get(PARM_ARTIFACT_PIPELINE);
+		final DownloadManager dm = pipeline != null ? pipeline.createDownloadManager(context, agent) : new DownloadManager(context, agent);
 		for (IArtifactRequest[] requests : artifactRequests) {
 			for (int i = 0; i < requests.length; i++) {
 				dm.add(requests[i]);
 				totalArtifactRequests.add(requests[i]);
 			}
 		}
-		IProvisioningEventBus bus = (IProvisioningEventBus) agent.getService(IProvisioningEventBus.SERVICE_NAME);
+		final IProvisioningEventBus bus = (IProvisioningEventBus) agent.getService(IProvisioningEventBus.SERVICE_NAME);
 		if (bus != null)
 			bus.publishEvent(new CollectEvent(CollectEvent.TYPE_OVERALL_START, null, context, totalArtifactRequests.toArray(new IArtifactRequest[totalArtifactRequests.size()])));
+		if (pipeline != null) {
+			// the following phases wait for the artifacts they need
+			pipeline.start(() -> download(dm, bus, context, totalArtifactRequests, pipeline.getDownloadMonitor()));
+			return Status.OK_STATUS;
+		}
+		return download(dm, bus, context, totalArtifactRequests, monitor);
+	}
+
+	private IStatus download(DownloadManager dm, IProvisioningEventBus bus, ProvisioningContext context, List<IArtifactRequest> totalArtifactRequests, IProgressMonitor monitor) {
 		IStatus downloadStatus = dm.start(monitor);
 		try {
 			return downloadStatus;
@@ -145,7 +156,23 @@ public class Collect extends InstallableUnitPhase {
 		// defer setting the IU until after the super method to avoid triggering touchpoint initialization
 		IInstallableUnit iu = operand.second();
 		parameters.put(PARM_IU, iu);
+		@SuppressWarnings("unchecked")
+		List<IArtifactRequest[]> artifactRequests = (List<IArtifactRequest[]>) parameters.get(PARM_ARTIFACT_REQUESTS);
+		operandRequestsStart = artifactRequests.size();
 		return status;
 	}
 
+	@Override
+	protected IStatus completeOperand(IProfile profile, InstallableUnitOperand operand, Map<String, Object> parameters, IProgressMonitor monitor) {
+		ArtifactPipeline pipeline = (ArtifactPipeline) parameters.get(PARM_ARTIFACT_PIPELINE);
+		if (pipeline != null) {
+			// the requests added by the actions of this operand are those of its unit
+			@SuppressWarnings("unchecked")
+			List<IArtifactRequest[]> artifactRequests = (List<IArtifactRequest[]>) parameters.get(PARM_ARTIFACT_REQUESTS);
+			for (IArtifactRequest[] requests : artifactRequests.subList(operandRequestsStart, artifactRequests.size()))
+				pipeline.add(operand.second(), requests);
+		}
+		return super.completeOperand(profile, operand, parameters, monitor);
+	}
+
 }
@@ -104,6 +104,17 @@ public class Configure extends InstallableUnitPhase {
 		return actions;
 	}
 
+	@Override
+	protected boolean supportsParallelOperands() {
+		return true;
+	}
+
+	@Override
+	protected boolean isThreadSafe(ProvisioningAction action) {
+		// the event actions only publish events and update the synchronized profile
+		return action instanceof BeforeConfigureEventAction || action instanceof AfterConfigureEventAction || super.isThreadSafe(action);
+	}
+
 	@Override
 	protected String getProblemMessage() {
 		return Messages.Phase_Configure_Error;
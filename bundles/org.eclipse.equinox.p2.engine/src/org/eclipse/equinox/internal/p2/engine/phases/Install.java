@@ -112,6 +112,22 @@ public class Install extends InstallableUnitPhase {
 		return actions;
 	}
 
+	@Override
+	protected boolean needsCollectedArtifacts() {
+		return true;
+	}
+
+	@Override
+	protected boolean supportsParallelOperands() {
+		return true;
+	}
+
+	@Override
+	protected boolean isThreadSafe(ProvisioningAction action) {
+		// the event actions only publish events and update the synchronized profile
+		return action instanceof BeforeInstallEventAction || action instanceof AfterInstallEventAction || super.isThreadSafe(action);
+	}
+
 	@Override
 	protected String getProblemMessage() {
 		return Messages.Phase_Install_Error;
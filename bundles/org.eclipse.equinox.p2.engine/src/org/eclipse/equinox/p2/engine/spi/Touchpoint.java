@@ -170,4 +170,19 @@ public abstract class Touchpoint {
 	public IStatus rollback(IProfile profile) {
 		return Status.OK_STATUS;
 	}
+
+	/**
+	 * Returns whether the operand methods and actions of this touchpoint may be invoked
+	 * for several operands of the same phase at once, on different threads. The engine
+	 * only does so when asked to perform operands in parallel.
+	 * <p>
+	 * Subclasses that synchronize their state should override this method.
+	 * </p>
+	 * 
+	 * @return <code>true</code> if this touchpoint is thread safe, and <code>false</code> otherwise
+	 * @since 2.6
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
 }
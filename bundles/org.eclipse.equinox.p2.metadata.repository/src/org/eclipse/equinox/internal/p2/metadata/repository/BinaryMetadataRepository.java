@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.internal.p2.core.helpers.CollectionUtils;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.TranslationSupport;
+import org.eclipse.equinox.internal.p2.metadata.index.*;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.BinaryMetadataReader;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.metadata.index.IIndex;
+import org.eclipse.equinox.p2.metadata.index.IIndexProvider;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.repository.IRepositoryReference;
+import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository;
+
+/**
+ * A read-only metadata repository backed by a file in the binary metadata format,
+ * see {@link org.eclipse.equinox.internal.p2.metadata.repository.io.BinaryMetadataConstants}.
+ * Installable units are decoded from the mapped file when they are first needed and
+ * the id and capability indexes are answered from the lookup tables of the file.
+ */
+public class BinaryMetadataRepository extends AbstractMetadataRepository implements IIndexProvider<IInstallableUnit> {
+
+	public static final String CONTENT_FILENAME = "content.bin"; //$NON-NLS-1$
+
+	private final BinaryMetadataReader reader;
+	private final AtomicReferenceArray<IInstallableUnit> units;
+	private Collection<IRepositoryReference> references;
+	private IIndex<IInstallableUnit> idIndex;
+	private IIndex<IInstallableUnit> capabilityIndex;
+	private TranslationSupport translationSupport;
+
+	public BinaryMetadataRepository(IProvisioningAgent agent, URI location, BinaryMetadataReader reader) {
+		super(agent);
+		this.reader = reader;
+		this.units = new AtomicReferenceArray<>(reader.getUnitCount());
+		RepositoryState state = reader.readRepositoryState();
+		state.Location = location;
+		initialize(state);
+	}
+
+	@Override
+	public synchronized void initialize(RepositoryState state) {
+		setName(state.Name);
+		// Keep the type of the repository the file was converted from, so that writing it out again yields that type
+		setType(state.Type);
+		setVersion(state.Version == null ? null : state.Version.toString());
+		setProvider(state.Provider);
+		setDescription(state.Description);
+		setLocation(state.Location);
+		setProperties(state.Properties);
+		this.references = CollectionUtils.unmodifiableList(state.Repositories);
+	}
+
+	@Override
+	public Collection<IRepositoryReference> getReferences() {
+		return references;
+	}
+
+	@Override
+	public boolean isModifiable() {
+		return false;
+	}
+
+	IInstallableUnit getUnit(int ordinal) {
+		IInstallableUnit iu = units.get(ordinal);
+		if (iu == null) {
+			iu = reader.readInstallableUnit(ordinal);
+			// Publish the first decoded instance so that all callers see the same unit
+			if (!units.compareAndSet(ordinal, null, iu))
+				iu = units.get(ordinal);
+		}
+		return iu;
+	}
+
+	Collection<IInstallableUnit> getUnits(int[] ordinals) {
+		if (ordinals.length == 1)
+			return Collections.singletonList(getUnit(ordinals[0]));
+		ArrayList<IInstallableUnit> result = new ArrayList<>(ordinals.length);
+		for (int ordinal : ordinals)
+			result.add(getUnit(ordinal));
+		return result;
+	}
+
+	@Override
+	public IQueryResult<IInstallableUnit> query(IQuery<IInstallableUnit> query, IProgressMonitor monitor) {
+		return IndexProvider.query(this, query, monitor);
+	}
+
+	@Override
+	public synchronized IIndex<IInstallableUnit> getIndex(String memberName) {
+		if (InstallableUnit.MEMBER_ID.equals(memberName)) {
+			if (idIndex == null)
+				idIndex = new BinaryIdIndex();
+			return idIndex;
+		}
+
+		if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals(memberName)) {
+			if (capabilityIndex == null)
+				capabilityIndex = new CapabilityIndex(new ProviderMap());
+			return capabilityIndex;
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized Object getManagedProperty(Object client, String memberName, Object key) {
+		if (!(client instanceof IInstallableUnit))
+			return null;
+		IInstallableUnit iu = (IInstallableUnit) client;
+		if (InstallableUnit.MEMBER_TRANSLATED_PROPERTIES.equals(memberName)) {
+			if (translationSupport == null)
+				translationSupport = new TranslationSupport(this);
+			return key instanceof KeyWithLocale ? translationSupport.getIUProperty(iu, (KeyWithLocale) key) : translationSupport.getIUProperty(iu, key.toString());
+		}
+		return null;
+	}
+
+	@Override
+	public Iterator<IInstallableUnit> everything() {
+		return new Iterator<IInstallableUnit>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < units.length();
+			}
+
+			@Override
+			public IInstallableUnit next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return getUnit(next++);
+			}
+		};
+	}
+
+	/**
+	 * An id index that looks the queried ids up in the id table of the file.
+	 */
+	private final class BinaryIdIndex extends Index<IInstallableUnit> {
+		BinaryIdIndex() {
+			// nothing to build, the file is the index
+		}
+
+		@Override
+		public Iterator<IInstallableUnit> getCandidates(IEvaluationContext ctx, IExpression variable, IExpression booleanExpr) {
+			Object queriedKeys = getQueriedIDs(ctx, variable, InstallableUnit.MEMBER_ID, booleanExpr, null);
+			if (queriedKeys == null)
+				return null;
+
+			if (queriedKeys instanceof Collection<?>) {
+				HashSet<IInstallableUnit> collector = new HashSet<>();
+				for (Object key : (Collection<?>) queriedKeys)
+					collector.addAll(getUnits(reader.findUnits((String) key)));
+				return collector.iterator();
+			}
+			return getUnits(reader.findUnits((String) queriedKeys)).iterator();
+		}
+	}
+
+	/**
+	 * A map view on the capability table of the file, in the form expected by
+	 * {@link CapabilityIndex#CapabilityIndex(Map)}.
+	 */
+	private final class ProviderMap extends AbstractMap<String, Object> {
+		ProviderMap() {
+			// lookups go straight to the file
+		}
+
+		@Override
+		public Object get(Object key) {
+			if (!(key instanceof String))
+				return null;
+			int[] ordinals = reader.findProviders((String) key);
+			if (ordinals.length == 0)
+				return null;
+			return ordinals.length == 1 ? getUnit(ordinals[0]) : getUnits(ordinals);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && reader.findProviders((String) key).length > 0;
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			// The capability index only performs lookups, so bulk access simply decodes all units
+			Map<String, Object> all = new HashMap<>();
+			for (Iterator<IInstallableUnit> iter = everything(); iter.hasNext();) {
+				for (IProvidedCapability pc : iter.next().getProvidedCapabilities()) {
+					if (!all.containsKey(pc.getName()))
+						all.put(pc.getName(), get(pc.getName()));
+				}
+			}
+			return Collections.unmodifiableMap(all).entrySet();
+		}
+	}
+}
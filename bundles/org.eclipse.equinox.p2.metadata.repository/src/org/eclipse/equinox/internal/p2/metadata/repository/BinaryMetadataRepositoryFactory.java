@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.util.Map;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.spi.MetadataRepositoryFactory;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Loads read-only metadata repositories from a <code>content.bin</code> file, see
+ * {@link BinaryMetadataRepositoryIO} for how such a file is created.
+ */
+public class BinaryMetadataRepositoryFactory extends MetadataRepositoryFactory {
+	private static final String PROTOCOL_FILE = "file"; //$NON-NLS-1$
+
+	@Override
+	public IMetadataRepository create(URI location, String name, String type, Map<String, String> properties) {
+		// binary repositories are only created by conversion
+		return null;
+	}
+
+	/**
+	 * Returns a file in the local file system that contains the contents of the
+	 * metadata repository at the given location.
+	 */
+	private File getLocalFile(URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
+		File localFile = null;
+		URI binLocation = URIUtil.append(location, BinaryMetadataRepository.CONTENT_FILENAME);
+		// If the repository is local, we can map the repository file directly
+		if (PROTOCOL_FILE.equals(binLocation.getScheme())) {
+			localFile = URIUtil.toFile(binLocation);
+			if (localFile.exists())
+				return localFile;
+			String msg = NLS.bind(Messages.io_failedRead, location);
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, msg, null));
+		}
+		// file is not local, create a cache of the repository metadata
+		CacheManager cache = (CacheManager) getAgent().getService(CacheManager.SERVICE_NAME);
+		if (cache == null)
+			throw new IllegalArgumentException("Cache manager service not available"); //$NON-NLS-1$
+		localFile = cache.createCacheFromFile(binLocation, monitor);
+		if (localFile == null) {
+			// there is no remote file - this should not really happen as createCacheFromFile
+			// should bail out with exception if something is wrong. This is an internal error.
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, Messages.repoMan_internalError, null));
+		}
+		return localFile;
+	}
+
+	@Override
+	public IMetadataRepository load(URI location, int flags, IProgressMonitor monitor) throws ProvisionException {
+		// binary repositories are never modifiable
+		if ((flags & IRepositoryManager.REPOSITORY_HINT_MODIFIABLE) > 0)
+			return null;
+		long time = 0;
+		final String debugMsg = "Validating and loading metadata repository "; //$NON-NLS-1$
+		if (Tracing.DEBUG_METADATA_PARSING) {
+			Tracing.debug(debugMsg + location);
+			time = -System.currentTimeMillis();
+		}
+		SubMonitor sub = SubMonitor.convert(monitor, 400);
+		try {
+			File localFile = getLocalFile(location, sub.newChild(300));
+			IMetadataRepository result = BinaryMetadataRepositoryIO.read(getAgent(), location, localFile);
+			if (Tracing.DEBUG_METADATA_PARSING) {
+				time += System.currentTimeMillis();
+				Tracing.debug(debugMsg + "time (ms): " + time); //$NON-NLS-1$
+			}
+			return result;
+		} catch (FileNotFoundException e) {
+			String msg = NLS.bind(Messages.io_failedRead, location);
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, msg, e));
+		} catch (IOException e) {
+			String msg = NLS.bind(Messages.io_failedRead, location);
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, e));
+		} finally {
+			if (monitor != null)
+				monitor.done();
+		}
+	}
+}
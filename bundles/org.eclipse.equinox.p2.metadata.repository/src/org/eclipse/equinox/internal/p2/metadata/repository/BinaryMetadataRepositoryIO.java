@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.BinaryMetadataReader;
+import org.eclipse.equinox.internal.p2.metadata.repository.io.BinaryMetadataWriter;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+
+/**
+ * Converts metadata repositories to and from the binary metadata format. Any
+ * repository, typically one loaded from <code>content.xml</code>, can be written as a
+ * <code>content.bin</code> file; a binary repository can be written back to XML with
+ * {@link MetadataRepositoryIO} and keeps the type of the repository it was converted from.
+ */
+public class BinaryMetadataRepositoryIO {
+
+	private BinaryMetadataRepositoryIO() {
+		// static helpers only
+	}
+
+	/**
+	 * Writes the given repository to the given file in the binary format. The file is
+	 * written to a temporary location first and then moved into place.
+	 */
+	public static void write(IMetadataRepository repository, File file) throws IOException {
+		File parent = file.getParentFile();
+		if (parent != null && !parent.exists())
+			parent.mkdirs();
+		File tempFile = new File(parent, file.getName() + ".tmp"); //$NON-NLS-1$
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+			new BinaryMetadataWriter().write(repository, output);
+		} catch (IOException e) {
+			tempFile.delete();
+			throw e;
+		}
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			tempFile.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Memory maps the given binary file and returns a repository on top of it.
+	 * @param agent The provisioning agent of the repository
+	 * @param location The location of the repository
+	 * @param file The local binary content file
+	 */
+	public static BinaryMetadataRepository read(IProvisioningAgent agent, URI location, File file) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			return new BinaryMetadataRepository(agent, location, new BinaryMetadataReader(buffer));
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt binary metadata repository: " + file, e); //$NON-NLS-1$
+		}
+	}
+}
@@ -21,6 +21,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryIO;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryState;
+import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
 import org.eclipse.equinox.p2.core.*;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.index.IIndex;
@@ -103,6 +104,10 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 		SubMonitor sub = SubMonitor.convert(monitor, 100 * state.getChildren().length);
 		List<URI> repositoriesToBeRemovedOnFailure = new ArrayList<>();
 		boolean failOnChildFailure = shouldFailOnChildFailure(state);
+		if (manager instanceof AbstractRepositoryManager) {
+			addChildren(state.getChildren(), sub, failOnChildFailure);
+			return;
+		}
 		for (URI child : state.getChildren())
 			addChild(child, false, sub.newChild(100), failOnChildFailure, repositoriesToBeRemovedOnFailure);
 
@@ -186,6 +191,31 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 		}
 	}
 
+	/*
+	 * Adds the children of a repository that is being loaded. The children are loaded in parallel by the
+	 * manager, otherwise this behaves like adding each child in turn.
+	 */
+	private void addChildren(URI[] children, IProgressMonitor monitor, boolean propagateException) throws ProvisionException {
+		List<URI> toLoad = new ArrayList<>(children.length);
+		for (URI childURI : children) {
+			URI absolute = URIUtil.makeAbsolute(childURI, getLocation());
+			if (childrenURIs.contains(childURI) || childrenURIs.contains(absolute))
+				continue;
+			// always add the URI to the list of child URIs (even if we can't load it later)
+			childrenURIs.add(childURI);
+			toLoad.add(absolute);
+		}
+		MultiStatus failures = new MultiStatus(Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.io_failedRead, getLocation()), null);
+		@SuppressWarnings("unchecked")
+		AbstractRepositoryManager<IInstallableUnit> repositoryManager = (AbstractRepositoryManager<IInstallableUnit>) getManager();
+		for (IRepository<IInstallableUnit> child : repositoryManager.loadChildren(toLoad.toArray(new URI[toLoad.size()]), failures, propagateException, monitor)) {
+			IMetadataRepository currentRepo = (IMetadataRepository) child;
+			currentRepo.compress(iuPool); // Share IUs across this CompositeMetadataRepository
+			// we successfully loaded the repo so remember it
+			loadedRepos.add(currentRepo);
+		}
+	}
+
 	@Override
 	public void addChild(URI childURI) {
 		try {
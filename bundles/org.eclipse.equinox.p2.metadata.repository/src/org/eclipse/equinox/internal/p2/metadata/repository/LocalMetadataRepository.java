@@ -53,6 +53,8 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 	private TranslationSupport translationSupport;
 	private boolean snapshotNeeded = false;
 	private boolean disableSave = false;
+	private File indexFile;
+	private byte[] contentDigest;
 
 	private static File getActualLocation(URI location, String extension) {
 		File spec = URIUtil.toFile(location);
@@ -107,6 +109,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		}
 		units.addAll(installableUnits);
 		capabilityIndex = null; // Generated, not backed by units
+		contentDigest = null; // Persisted index no longer matches
 		save();
 	}
 
@@ -134,8 +137,10 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 
 		if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals(memberName)) {
 			snapshotNeeded = true;
-			if (capabilityIndex == null)
-				capabilityIndex = new CapabilityIndex(units.iterator());
+			if (capabilityIndex == null) {
+				Map<String, Object> persisted = indexFile == null ? null : PersistentCapabilityIndex.open(indexFile, contentDigest, units);
+				capabilityIndex = persisted != null ? new CapabilityIndex(persisted) : new CapabilityIndex(units.iterator());
+			}
 			return capabilityIndex;
 		}
 		return null;
@@ -196,6 +201,15 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		setLocation(aLocation);
 	}
 
+	/**
+	 * Sets the capability index file that was written together with the content
+	 * this repository was read from, and the digest of that content.
+	 */
+	synchronized void setPersistedIndex(File file, byte[] digest) {
+		this.indexFile = file;
+		this.contentDigest = digest;
+	}
+
 	@Override
 	public boolean isModifiable() {
 		return true;
@@ -221,6 +235,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		} else
 			units.clear();
 		capabilityIndex = null; // Generated, not backed by units.
+		contentDigest = null; // Persisted index no longer matches
 		save();
 	}
 
@@ -236,6 +251,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 			}
 			units.removeAll(installableUnits);
 			capabilityIndex = null; // Generated, not backed by units.
+			contentDigest = null; // Persisted index no longer matches
 		}
 		if (changed)
 			save();
@@ -280,7 +296,8 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 				((JarOutputStream) output).putNextEntry(jarEntry);
 			}
 			super.setProperty(IRepository.PROP_TIMESTAMP, Long.toString(System.currentTimeMillis()), new NullProgressMonitor());
-			new MetadataRepositoryIO(getProvisioningAgent()).write(this, output);
+			File index = PersistentCapabilityIndex.getIndexFile(file);
+			setPersistedIndex(index, new MetadataRepositoryIO(getProvisioningAgent()).write(this, output, index));
 		} catch (IOException e) {
 			LogHelper.log(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_WRITE, "Error saving metadata repository: " + getLocation(), e)); //$NON-NLS-1$
 		}
@@ -14,9 +14,10 @@ package org.eclipse.equinox.internal.p2.metadata.repository;
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.Iterator;
-import java.util.Set;
+import java.security.*;
+import java.util.*;
 import javax.xml.parsers.ParserConfigurationException;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
@@ -57,6 +58,9 @@ public class MetadataRepositoryIO {
 		try {
 			try {
 				bufferedInput = new BufferedInputStream(input);
+				MessageDigest digest = createDigest();
+				if (digest != null)
+					input = new ContentDigestInputStream(input, digest);
 
 				Parser repositoryParser = new Parser(Activator.getContext(), Activator.ID);
 				repositoryParser.setErrorContext(location.toExternalForm());
@@ -71,7 +75,10 @@ public class MetadataRepositoryIO {
 					case IStatus.INFO :
 						LogHelper.log(result);
 				}
-				return repositoryParser.getRepository();
+				IMetadataRepository repository = repositoryParser.getRepository();
+				if (digest != null)
+					setPersistedIndex(repository, location, digest.digest());
+				return repository;
 			} finally {
 				if (bufferedInput != null)
 					bufferedInput.close();
@@ -86,16 +93,96 @@ public class MetadataRepositoryIO {
 	 *
 	 */
 	public void write(IMetadataRepository repository, OutputStream output) throws IOException {
+		write(repository, output, null);
+	}
+
+	/**
+	 * Writes the given repository to the given stream. When an index file is given,
+	 * a {@link PersistentCapabilityIndex} of the repository is written to it as well.
+	 * The index is tied to the written content through a digest of that content.
+	 * @param repository The repository to write
+	 * @param output The stream to write the content to. It is closed when finished.
+	 * @param indexFile The file to write the index to or <code>null</code>
+	 * @return The digest of the written content, or <code>null</code> if no index was written
+	 */
+	public byte[] write(IMetadataRepository repository, OutputStream output, File indexFile) throws IOException {
 		OutputStream bufferedOutput = null;
+		MessageDigest digest = indexFile == null ? null : createDigest();
 		try {
 			bufferedOutput = new BufferedOutputStream(output);
-			Writer repositoryWriter = new Writer(bufferedOutput, repository.getClass());
+			Writer repositoryWriter = new Writer(digest == null ? bufferedOutput : new DigestOutputStream(bufferedOutput, digest), repository.getClass());
 			repositoryWriter.write(repository);
 		} finally {
 			if (bufferedOutput != null) {
 				bufferedOutput.close();
 			}
 		}
+		if (digest == null)
+			return null;
+		byte[] contentDigest = digest.digest();
+		try {
+			PersistentCapabilityIndex.write(indexFile, contentDigest, repository.query(QueryUtil.createIUAnyQuery(), null).iterator());
+		} catch (IOException e) {
+			// The index is an optimization, the repository can still be used without it
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, ProvisionException.REPOSITORY_FAILED_WRITE, NLS.bind(Messages.io_failedWrite, indexFile), e));
+			return null;
+		}
+		return contentDigest;
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(PersistentCapabilityIndex.DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Tells a repository that was read from the given local file where its persisted
+	 * capability index lives and which content digest the index must match.
+	 */
+	private static void setPersistedIndex(IMetadataRepository repository, URL location, byte[] contentDigest) {
+		if (!"file".equals(location.getProtocol())) //$NON-NLS-1$
+			return;
+		File indexFile;
+		try {
+			indexFile = PersistentCapabilityIndex.getIndexFile(URIUtil.toFile(URIUtil.toURI(location)));
+		} catch (URISyntaxException e) {
+			return;
+		}
+		if (repository instanceof LocalMetadataRepository)
+			((LocalMetadataRepository) repository).setPersistedIndex(indexFile, contentDigest);
+		else if (repository instanceof URLMetadataRepository)
+			((URLMetadataRepository) repository).setPersistedIndex(indexFile, contentDigest);
+	}
+
+	/**
+	 * Updates a digest with all content of a stream. The remainder of the stream is
+	 * consumed on close so that the digest covers the complete content even when the
+	 * parser stops reading early.
+	 */
+	private static final class ContentDigestInputStream extends DigestInputStream {
+		private boolean closed = false;
+
+		ContentDigestInputStream(InputStream stream, MessageDigest digest) {
+			super(stream, digest);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+			byte[] buffer = new byte[8192];
+			try {
+				while (read(buffer, 0, buffer.length) != -1) {
+					// drain
+				}
+			} finally {
+				super.close();
+			}
+		}
 	}
 
 	private interface XMLConstants extends org.eclipse.equinox.internal.p2.metadata.repository.io.XMLConstants {
@@ -142,6 +229,9 @@ public class MetadataRepositoryIO {
 			if (repository instanceof LocalMetadataRepository) {
 				Set<IRepositoryReference> references = ((LocalMetadataRepository) repository).repositories;
 				writeRepositoryReferences(references.iterator(), references.size());
+			} else if (repository instanceof BinaryMetadataRepository) {
+				Collection<IRepositoryReference> references = repository.getReferences();
+				writeRepositoryReferences(references.iterator(), references.size());
 			}
 			// The size attribute is a problematic since it forces the use of a collection.
 			Set<IInstallableUnit> units = repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.IUMap;
+import org.eclipse.equinox.p2.metadata.*;
+
+/**
+ * Reads and writes the capability index file that is kept next to the content file
+ * of a metadata repository. The file records, for every provided capability name,
+ * the units that provide it so that a {@link org.eclipse.equinox.internal.p2.metadata.index.CapabilityIndex}
+ * can be created without iterating over all capabilities of all units.
+ * <p>
+ * The file is memory mapped and decoded on demand. It starts with a header holding a
+ * format version and the digest of the content it was created from. An index file
+ * whose version or digest does not match is ignored.
+ * </p>
+ * <pre>
+ * int    magic
+ * int    format version
+ * int    digest length, followed by the digest bytes
+ * int    unit count
+ * int    name count
+ * int[]  offset of each unit record
+ * int[]  offset of each name record, sorted by the UTF-8 bytes of the name
+ * unit record: id, version
+ * name record: name, int unit count, int[] unit ordinals
+ * </pre>
+ * Strings are stored as an int byte length followed by their UTF-8 bytes.
+ */
+public final class PersistentCapabilityIndex {
+
+	public static final String INDEX_EXTENSION = ".index"; //$NON-NLS-1$
+	public static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+	private static final int MAGIC = 0x50324958; // "P2IX"
+	private static final int FORMAT_VERSION = 1;
+
+	private PersistentCapabilityIndex() {
+		// static helpers only
+	}
+
+	/**
+	 * Returns the index file that belongs to the given repository content file. All
+	 * forms of the content (content.xml, content.jar, content.xml.xz) share one index.
+	 */
+	public static File getIndexFile(File contentFile) {
+		String name = contentFile.getName();
+		int dot = name.indexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return new File(contentFile.getParentFile(), name + INDEX_EXTENSION);
+	}
+
+	/**
+	 * Writes an index of the given units to the given file. The file is written
+	 * to a temporary location first and then moved into place.
+	 * @param file The index file
+	 * @param contentDigest The digest of the content that holds the units
+	 * @param units The units to index
+	 */
+	public static void write(File file, byte[] contentDigest, Iterator<IInstallableUnit> units) throws IOException {
+		List<IInstallableUnit> unitList = new ArrayList<>();
+		Map<String, List<Integer>> providers = new HashMap<>();
+		while (units.hasNext()) {
+			IInstallableUnit iu = units.next();
+			int ordinal = unitList.size();
+			unitList.add(iu);
+			for (IProvidedCapability pc : iu.getProvidedCapabilities()) {
+				List<Integer> list = providers.get(pc.getName());
+				if (list == null) {
+					list = new ArrayList<>(1);
+					providers.put(pc.getName(), list);
+				} else if (list.get(list.size() - 1).intValue() == ordinal)
+					continue;
+				list.add(Integer.valueOf(ordinal));
+			}
+		}
+
+		byte[][] names = new byte[providers.size()][];
+		int idx = 0;
+		for (String name : providers.keySet())
+			names[idx++] = name.getBytes(StandardCharsets.UTF_8);
+		Arrays.sort(names, PersistentCapabilityIndex::compare);
+
+		// Records are written first so that their offsets are known when the tables are written
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream recordOutput = new DataOutputStream(records);
+		int[] unitOffsets = new int[unitList.size()];
+		for (int i = 0; i < unitOffsets.length; i++) {
+			IInstallableUnit iu = unitList.get(i);
+			unitOffsets[i] = recordOutput.size();
+			writeString(recordOutput, iu.getId());
+			writeString(recordOutput, iu.getVersion().toString());
+		}
+		int[] nameOffsets = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			nameOffsets[i] = recordOutput.size();
+			recordOutput.writeInt(names[i].length);
+			recordOutput.write(names[i]);
+			List<Integer> ordinals = providers.get(new String(names[i], StandardCharsets.UTF_8));
+			recordOutput.writeInt(ordinals.size());
+			for (Integer ordinal : ordinals)
+				recordOutput.writeInt(ordinal.intValue());
+		}
+		recordOutput.flush();
+
+		int recordStart = 5 * 4 + contentDigest.length + 4 * (unitOffsets.length + nameOffsets.length);
+		File parent = file.getParentFile();
+		if (parent != null && !parent.exists())
+			parent.mkdirs();
+		File tempFile = new File(parent, file.getName() + ".tmp"); //$NON-NLS-1$
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeInt(contentDigest.length);
+			output.write(contentDigest);
+			output.writeInt(unitOffsets.length);
+			output.writeInt(nameOffsets.length);
+			for (int offset : unitOffsets)
+				output.writeInt(recordStart + offset);
+			for (int offset : nameOffsets)
+				output.writeInt(recordStart + offset);
+			records.writeTo(output);
+		}
+		try {
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// The old index is validated against the content digest, so a failed move never yields a wrong index
+			tempFile.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens the given index file and returns a map from capability name to the
+	 * providing unit or units, as expected by {@link org.eclipse.equinox.internal.p2.metadata.index.CapabilityIndex#CapabilityIndex(Map)}.
+	 * Units are looked up in the given map as they are needed.
+	 * @param file The index file
+	 * @param contentDigest The digest of the content that the index must have been created from
+	 * @param units The units of the repository
+	 * @return The capability map or <code>null</code> when the file is missing, unreadable, or stale
+	 */
+	public static Map<String, Object> open(File file, byte[] contentDigest, IUMap units) {
+		if (contentDigest == null || !file.isFile())
+			return null;
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			return null;
+		}
+		try {
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+				return null;
+			int digestLength = buffer.getInt(8);
+			if (digestLength != contentDigest.length)
+				return null;
+			for (int i = 0; i < digestLength; i++)
+				if (buffer.get(12 + i) != contentDigest[i])
+					return null;
+			return new MappedCapabilityMap(buffer, 12 + digestLength, units);
+		} catch (IndexOutOfBoundsException e) {
+			// Truncated file
+			return null;
+		}
+	}
+
+	static int compare(byte[] a, byte[] b) {
+		int len = Math.min(a.length, b.length);
+		for (int i = 0; i < len; i++) {
+			int diff = (a[i] & 0xff) - (b[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return a.length - b.length;
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * A read-only map view on a mapped index file. Only absolute buffer operations are
+	 * used so the view can be read from several threads.
+	 */
+	private static final class MappedCapabilityMap extends AbstractMap<String, Object> {
+		private final MappedByteBuffer buffer;
+		private final IUMap units;
+		private final int unitCount;
+		private final int nameCount;
+		private final int unitTable;
+		private final int nameTable;
+		private final IInstallableUnit[] resolved;
+		private Set<Map.Entry<String, Object>> entrySet;
+
+		MappedCapabilityMap(MappedByteBuffer buffer, int position, IUMap units) {
+			this.buffer = buffer;
+			this.units = units;
+			this.unitCount = buffer.getInt(position);
+			this.nameCount = buffer.getInt(position + 4);
+			this.unitTable = position + 8;
+			this.nameTable = unitTable + 4 * unitCount;
+			this.resolved = new IInstallableUnit[unitCount];
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && find((String) key) >= 0;
+		}
+
+		@Override
+		public Object get(Object key) {
+			if (!(key instanceof String))
+				return null;
+			int record = find((String) key);
+			return record < 0 ? null : getProviders(record);
+		}
+
+		@Override
+		public int size() {
+			return nameCount;
+		}
+
+		@Override
+		public synchronized Set<Map.Entry<String, Object>> entrySet() {
+			// Only needed for bulk access, which the capability index never does
+			if (entrySet == null) {
+				Map<String, Object> all = new HashMap<>(nameCount);
+				for (int i = 0; i < nameCount; i++) {
+					int record = buffer.getInt(nameTable + 4 * i);
+					all.put(readString(record), getProviders(record));
+				}
+				entrySet = Collections.unmodifiableMap(all).entrySet();
+			}
+			return entrySet;
+		}
+
+		private int find(String name) {
+			byte[] key = name.getBytes(StandardCharsets.UTF_8);
+			int low = 0;
+			int high = nameCount - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int record = buffer.getInt(nameTable + 4 * mid);
+				int cmp = compareName(record, key);
+				if (cmp < 0)
+					low = mid + 1;
+				else if (cmp > 0)
+					high = mid - 1;
+				else
+					return record;
+			}
+			return -1;
+		}
+
+		private int compareName(int record, byte[] key) {
+			int length = buffer.getInt(record);
+			int len = Math.min(length, key.length);
+			for (int i = 0; i < len; i++) {
+				int diff = (buffer.get(record + 4 + i) & 0xff) - (key[i] & 0xff);
+				if (diff != 0)
+					return diff;
+			}
+			return length - key.length;
+		}
+
+		private Object getProviders(int record) {
+			int position = record + 4 + buffer.getInt(record);
+			int count = buffer.getInt(position);
+			if (count == 1)
+				return getUnit(buffer.getInt(position + 4));
+			ArrayList<IInstallableUnit> providers = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				IInstallableUnit iu = getUnit(buffer.getInt(position + 4 + 4 * i));
+				if (iu != null)
+					providers.add(iu);
+			}
+			return providers;
+		}
+
+		private IInstallableUnit getUnit(int ordinal) {
+			IInstallableUnit iu = resolved[ordinal];
+			if (iu == null) {
+				int record = buffer.getInt(unitTable + 4 * ordinal);
+				String id = readString(record);
+				String version = readString(record + 4 + buffer.getInt(record));
+				iu = units.get(id, Version.create(version));
+				resolved[ordinal] = iu;
+			}
+			return iu;
+		}
+
+		private String readString(int position) {
+			byte[] bytes = new byte[buffer.getInt(position)];
+			ByteBuffer view = buffer.duplicate();
+			view.position(position + 4);
+			view.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
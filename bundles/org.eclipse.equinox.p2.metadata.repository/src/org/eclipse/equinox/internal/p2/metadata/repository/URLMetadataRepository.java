@@ -12,6 +12,8 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.metadata.repository;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.util.*;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -45,6 +47,8 @@ public class URLMetadataRepository extends AbstractMetadataRepository implements
 	private IIndex<IInstallableUnit> idIndex;
 	private IIndex<IInstallableUnit> capabilityIndex;
 	private TranslationSupport translationSupport;
+	private File indexFile;
+	private byte[] contentDigest;
 
 	public static URI getActualLocation(URI base) {
 		return getActualLocation(base, XML_EXTENSION);
@@ -89,6 +93,15 @@ public class URLMetadataRepository extends AbstractMetadataRepository implements
 		content = getActualLocation(repoLocation);
 	}
 
+	/**
+	 * Sets the capability index file that belongs to the local copy of the content
+	 * this repository was read from, and the digest of that content.
+	 */
+	synchronized void setPersistedIndex(File file, byte[] digest) {
+		this.indexFile = file;
+		this.contentDigest = digest;
+	}
+
 	@Override
 	public Collection<IRepositoryReference> getReferences() {
 		return references;
@@ -114,12 +127,29 @@ public class URLMetadataRepository extends AbstractMetadataRepository implements
 
 		if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals(memberName)) {
 			if (capabilityIndex == null)
-				capabilityIndex = new CapabilityIndex(units.iterator());
+				capabilityIndex = createCapabilityIndex();
 			return capabilityIndex;
 		}
 		return null;
 	}
 
+	private IIndex<IInstallableUnit> createCapabilityIndex() {
+		if (indexFile == null)
+			return new CapabilityIndex(units.iterator());
+		Map<String, Object> persisted = PersistentCapabilityIndex.open(indexFile, contentDigest, units);
+		if (persisted != null)
+			return new CapabilityIndex(persisted);
+		// Only keep an index next to our own cached copy of a remote repository, never in the repository itself
+		if (!"file".equals(getLocation().getScheme())) { //$NON-NLS-1$
+			try {
+				PersistentCapabilityIndex.write(indexFile, contentDigest, units.iterator());
+			} catch (IOException e) {
+				// ignore, the index is rebuilt in memory
+			}
+		}
+		return new CapabilityIndex(units.iterator());
+	}
+
 	@Override
 	public synchronized Object getManagedProperty(Object client, String memberName, Object key) {
 		if (!(client instanceof IInstallableUnit))
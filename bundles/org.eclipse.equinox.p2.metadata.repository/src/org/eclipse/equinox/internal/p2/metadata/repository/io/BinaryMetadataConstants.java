@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+/**
+ * Constants describing the binary metadata repository format.
+ * <p>
+ * A binary repository file starts with a fixed size header of big-endian ints that
+ * holds the absolute offsets of the sections that follow it:
+ * </p>
+ * <pre>
+ * magic, format version,
+ * string count, string table,
+ * unit count, unit table,
+ * id count, id table,
+ * capability count, capability table,
+ * repository record
+ * </pre>
+ * <p>
+ * Every table is an array of int offsets. The string table points at the interned
+ * strings of the file, each stored as a var-int byte length followed by UTF-8 bytes.
+ * The unit table points at one record per installable unit. The id and capability
+ * tables point at lookup entries sorted by the UTF-8 bytes of their key; an entry is
+ * the key followed by the ordinals of the units that have that id or provide a
+ * capability of that name. All other numbers inside records are var-ints, strings
+ * inside records are references into the string table, and optional strings are
+ * stored as reference + 1 with 0 meaning <code>null</code>.
+ * </p>
+ * <p>
+ * A unit record ends with the members that are decoded on demand: the properties,
+ * prefixed by their length in bytes, followed by the artifacts, touchpoint data,
+ * licenses and copyright.
+ * </p>
+ */
+public interface BinaryMetadataConstants {
+
+	public static final int MAGIC = 0x50324D42; // "P2MB"
+	public static final int FORMAT_VERSION = 2;
+
+	public static final int HEADER_MAGIC = 0;
+	public static final int HEADER_VERSION = 4;
+	public static final int HEADER_STRING_COUNT = 8;
+	public static final int HEADER_STRING_TABLE = 12;
+	public static final int HEADER_UNIT_COUNT = 16;
+	public static final int HEADER_UNIT_TABLE = 20;
+	public static final int HEADER_ID_COUNT = 24;
+	public static final int HEADER_ID_TABLE = 28;
+	public static final int HEADER_CAPABILITY_COUNT = 32;
+	public static final int HEADER_CAPABILITY_TABLE = 36;
+	public static final int HEADER_REPOSITORY = 40;
+	public static final int HEADER_SIZE = 44;
+
+	// Kinds of installable unit records
+	public static final int UNIT_PLAIN = 0;
+	public static final int UNIT_FRAGMENT = 1;
+	public static final int UNIT_PATCH = 2;
+
+	// Forms of requirement and match expression records
+	public static final int MATCH_SIMPLE = 0;
+	public static final int MATCH_EXPRESSION = 1;
+
+	// Types of provided capability attribute values
+	public static final int ATTR_STRING = 0;
+	public static final int ATTR_INTEGER = 1;
+	public static final int ATTR_LONG = 2;
+	public static final int ATTR_FLOAT = 3;
+	public static final int ATTR_DOUBLE = 4;
+	public static final int ATTR_BYTE = 5;
+	public static final int ATTR_SHORT = 6;
+	public static final int ATTR_CHARACTER = 7;
+	public static final int ATTR_BOOLEAN = 8;
+	public static final int ATTR_VERSION = 9;
+	public static final int ATTR_LIST = 10;
+}
@@ -0,0 +1,527 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.LazyInstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.LazyInstallableUnit.MemberLoader;
+import org.eclipse.equinox.internal.p2.metadata.ProvidedCapability;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.*;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.repository.IRepositoryReference;
+import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository.RepositoryState;
+import org.eclipse.equinox.p2.repository.spi.RepositoryReference;
+
+/**
+ * Reads metadata from a buffer in the binary format described by {@link BinaryMetadataConstants},
+ * typically a memory mapped file. Nothing is decoded up front: installable units are
+ * decoded one at a time when they are asked for, and the strings they share are
+ * decoded once and then reused.
+ * <p>
+ * Only absolute buffer operations are used, so a reader may be used from several
+ * threads.
+ * </p>
+ */
+public class BinaryMetadataReader implements BinaryMetadataConstants {
+
+	private static final int[] NO_ORDINALS = new int[0];
+
+	private final ByteBuffer buffer;
+	private final int stringTable;
+	private final int unitCount;
+	private final int unitTable;
+	private final int idCount;
+	private final int idTable;
+	private final int capabilityCount;
+	private final int capabilityTable;
+	private final int repositoryRecord;
+
+	// Decoded strings and versions, indexed like the string table. Both are immutable
+	// so a racy initialization is harmless.
+	private final String[] strings;
+	private final Version[] versions;
+	private final MemberLoader memberLoader = new UnitMemberLoader();
+
+	/**
+	 * Creates a reader for the given buffer.
+	 * @throws IOException if the buffer does not start with a supported binary metadata header
+	 */
+	public BinaryMetadataReader(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(HEADER_MAGIC) != MAGIC)
+			throw new IOException("Not a binary metadata repository"); //$NON-NLS-1$
+		int version = buffer.getInt(HEADER_VERSION);
+		if (version != FORMAT_VERSION)
+			throw new IOException("Unsupported binary metadata repository version: " + version); //$NON-NLS-1$
+		this.buffer = buffer;
+		int stringCount = buffer.getInt(HEADER_STRING_COUNT);
+		this.stringTable = buffer.getInt(HEADER_STRING_TABLE);
+		this.unitCount = buffer.getInt(HEADER_UNIT_COUNT);
+		this.unitTable = buffer.getInt(HEADER_UNIT_TABLE);
+		this.idCount = buffer.getInt(HEADER_ID_COUNT);
+		this.idTable = buffer.getInt(HEADER_ID_TABLE);
+		this.capabilityCount = buffer.getInt(HEADER_CAPABILITY_COUNT);
+		this.capabilityTable = buffer.getInt(HEADER_CAPABILITY_TABLE);
+		this.repositoryRecord = buffer.getInt(HEADER_REPOSITORY);
+		if (capabilityTable + 4 * capabilityCount > buffer.limit())
+			throw new IOException("Truncated binary metadata repository"); //$NON-NLS-1$
+		this.strings = new String[stringCount];
+		this.versions = new Version[stringCount];
+	}
+
+	/**
+	 * Returns the number of installable units in the repository.
+	 */
+	public int getUnitCount() {
+		return unitCount;
+	}
+
+	/**
+	 * Decodes the repository information. The units of the returned state are left
+	 * empty, they are read with {@link #readInstallableUnit(int)}.
+	 */
+	public RepositoryState readRepositoryState() {
+		Cursor in = new Cursor(repositoryRecord);
+		RepositoryState state = new RepositoryState();
+		state.Name = in.readOptionalString();
+		state.Type = in.readOptionalString();
+		String version = in.readOptionalString();
+		state.Version = version == null ? null : Version.create(version);
+		state.Provider = in.readOptionalString();
+		state.Description = in.readOptionalString();
+		state.Properties = in.readProperties();
+		IRepositoryReference[] references = new IRepositoryReference[in.readVarInt()];
+		for (int i = 0; i < references.length; i++) {
+			URI location = URI.create(in.readString());
+			String nickname = in.readOptionalString();
+			int type = in.readVarInt();
+			int options = in.readVarInt();
+			references[i] = new RepositoryReference(location, nickname, type, options);
+		}
+		state.Repositories = references;
+		state.Units = new IInstallableUnit[0];
+		return state;
+	}
+
+	/**
+	 * Returns the ordinals of the units with the given id.
+	 */
+	public int[] findUnits(String id) {
+		return lookup(idTable, idCount, id);
+	}
+
+	/**
+	 * Returns the ordinals of the units that provide a capability with the given name.
+	 */
+	public int[] findProviders(String capabilityName) {
+		return lookup(capabilityTable, capabilityCount, capabilityName);
+	}
+
+	private int[] lookup(int table, int count, String key) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			Cursor in = new Cursor(buffer.getInt(table + 4 * mid));
+			int cmp = compareString(in.readVarInt(), keyBytes);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else {
+				int[] ordinals = new int[in.readVarInt()];
+				for (int i = 0; i < ordinals.length; i++)
+					ordinals[i] = in.readVarInt();
+				return ordinals;
+			}
+		}
+		return NO_ORDINALS;
+	}
+
+	private int compareString(int index, byte[] key) {
+		Cursor in = new Cursor(buffer.getInt(stringTable + 4 * index));
+		int length = in.readVarInt();
+		int start = in.position;
+		int len = Math.min(length, key.length);
+		for (int i = 0; i < len; i++) {
+			int diff = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return length - key.length;
+	}
+
+	String getString(int index) {
+		String value = strings[index];
+		if (value == null) {
+			Cursor in = new Cursor(buffer.getInt(stringTable + 4 * index));
+			byte[] bytes = new byte[in.readVarInt()];
+			for (int i = 0; i < bytes.length; i++)
+				bytes[i] = buffer.get(in.position + i);
+			value = new String(bytes, StandardCharsets.UTF_8);
+			strings[index] = value;
+		}
+		return value;
+	}
+
+	Version getVersion(int index) {
+		Version value = versions[index];
+		if (value == null) {
+			value = Version.create(getString(index));
+			versions[index] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Decodes the installable unit with the given ordinal. Plain units are returned as
+	 * {@link LazyInstallableUnit}s whose properties and content are decoded on first
+	 * access. Fragments and patches are rare and are decoded completely.
+	 */
+	public IInstallableUnit readInstallableUnit(int ordinal) {
+		Cursor in = new Cursor(buffer.getInt(unitTable + 4 * ordinal));
+		int kind = in.readVarInt();
+		if (kind == UNIT_PLAIN)
+			return readLazyInstallableUnit(in);
+
+		InstallableUnitDescription description = kind == UNIT_PATCH ? new InstallableUnitPatchDescription() : new InstallableUnitFragmentDescription();
+		description.setId(in.readString());
+		description.setVersion(in.readVersion());
+		description.setSingleton(in.readBoolean());
+
+		if (kind == UNIT_PATCH) {
+			InstallableUnitPatchDescription patch = (InstallableUnitPatchDescription) description;
+			IRequirement[][] scope = new IRequirement[in.readVarInt()][];
+			for (int i = 0; i < scope.length; i++)
+				scope[i] = in.readRequirements();
+			patch.setApplicabilityScope(scope);
+			IRequirementChange[] changes = new IRequirementChange[in.readVarInt()];
+			for (int i = 0; i < changes.length; i++) {
+				IRequirement from = in.readOptionalRequirement();
+				IRequirement to = in.readOptionalRequirement();
+				changes[i] = MetadataFactory.createRequirementChange(from, to);
+			}
+			patch.setRequirementChanges(changes);
+			IRequirement lifeCycle = in.readOptionalRequirement();
+			if (lifeCycle != null)
+				patch.setLifeCycle(lifeCycle);
+		} else
+			((InstallableUnitFragmentDescription) description).setHost(in.readRequirements());
+
+		description.setUpdateDescriptor(in.readUpdateDescriptor());
+		description.setMetaRequirements(in.readRequirements());
+		description.setCapabilities(in.readProvidedCapabilities());
+		description.setRequirements(in.readRequirements());
+		String filter = in.readOptionalString();
+		if (filter != null)
+			description.setFilter(filter);
+		description.setTouchpointType(in.readTouchpointType());
+
+		in.readVarInt(); // length of the properties
+		for (Map.Entry<String, String> property : in.readProperties().entrySet())
+			description.setProperty(property.getKey(), property.getValue());
+		description.setArtifacts(in.readArtifacts());
+		for (ITouchpointData data : in.readTouchpointData())
+			description.addTouchpointData(data);
+		ILicense[] licenses = in.readLicenses();
+		if (licenses.length > 0)
+			description.setLicenses(licenses);
+		description.setCopyright(in.readCopyright());
+		return MetadataFactory.createInstallableUnit(description);
+	}
+
+	private IInstallableUnit readLazyInstallableUnit(Cursor in) {
+		String id = in.readString();
+		Version version = in.readVersion();
+		boolean singleton = in.readBoolean();
+		IUpdateDescriptor updateDescriptor = in.readUpdateDescriptor();
+		IRequirement[] metaRequirements = in.readRequirements();
+		IProvidedCapability[] capabilities = in.readProvidedCapabilities();
+		IRequirement[] requirements = in.readRequirements();
+		String filter = in.readOptionalString();
+		ITouchpointType touchpointType = in.readTouchpointType();
+		int propertiesLength = in.readVarInt();
+
+		LazyInstallableUnit iu = new LazyInstallableUnit(memberLoader, in.position, in.position + propertiesLength);
+		iu.setId(id);
+		iu.setVersion(version);
+		iu.setSingleton(singleton);
+		iu.setUpdateDescriptor(updateDescriptor);
+		iu.setMetaRequiredCapabilities(metaRequirements);
+		iu.setCapabilities(capabilities);
+		iu.setRequiredCapabilities(requirements);
+		if (filter != null)
+			iu.setFilter(filter);
+		iu.setTouchpointType(touchpointType);
+		return iu;
+	}
+
+	/**
+	 * Decodes the deferred members of the lazy units created by this reader.
+	 */
+	private final class UnitMemberLoader implements MemberLoader {
+		UnitMemberLoader() {
+			// nothing to initialize
+		}
+
+		@Override
+		public void loadProperties(LazyInstallableUnit iu, int position) {
+			for (Map.Entry<String, String> property : new Cursor(position).readProperties().entrySet())
+				iu.setProperty(property.getKey(), property.getValue());
+		}
+
+		@Override
+		public void loadContent(LazyInstallableUnit iu, int position) {
+			Cursor in = new Cursor(position);
+			iu.setArtifacts(in.readArtifacts());
+			for (ITouchpointData data : in.readTouchpointData())
+				iu.addTouchpointData(data);
+			ILicense[] licenses = in.readLicenses();
+			if (licenses.length > 0)
+				iu.setLicenses(licenses);
+			iu.setCopyright(in.readCopyright());
+		}
+	}
+
+	/**
+	 * A read position in the buffer. Decodes the primitives of the binary format.
+	 */
+	private final class Cursor {
+		int position;
+
+		Cursor(int position) {
+			this.position = position;
+		}
+
+		int readByte() {
+			return buffer.get(position++) & 0xff;
+		}
+
+		boolean readBoolean() {
+			return readByte() != 0;
+		}
+
+		int readInt() {
+			int value = buffer.getInt(position);
+			position += 4;
+			return value;
+		}
+
+		long readLong() {
+			long value = buffer.getLong(position);
+			position += 8;
+			return value;
+		}
+
+		int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = readByte();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		String readString() {
+			return getString(readVarInt());
+		}
+
+		String readOptionalString() {
+			int index = readVarInt();
+			return index == 0 ? null : getString(index - 1);
+		}
+
+		Version readVersion() {
+			return getVersion(readVarInt());
+		}
+
+		Map<String, String> readProperties() {
+			int count = readVarInt();
+			OrderedProperties properties = new OrderedProperties(count);
+			for (int i = 0; i < count; i++) {
+				String key = readString();
+				properties.put(key, readString());
+			}
+			return properties;
+		}
+
+		IUpdateDescriptor readUpdateDescriptor() {
+			if (!readBoolean())
+				return null;
+			int severity = readVarInt();
+			String description = readOptionalString();
+			String location = readOptionalString();
+			List<IMatchExpression<IInstallableUnit>> matches = new ArrayList<>();
+			for (int i = readVarInt(); i > 0; i--)
+				matches.add(readMatchExpression());
+			return MetadataFactory.createUpdateDescriptor(matches, severity, description, location == null ? null : URI.create(location));
+		}
+
+		IProvidedCapability[] readProvidedCapabilities() {
+			IProvidedCapability[] capabilities = new IProvidedCapability[readVarInt()];
+			for (int i = 0; i < capabilities.length; i++) {
+				String namespace = readString();
+				String name = readString();
+				Version version = readVersion();
+				int attributeCount = readVarInt();
+				if (attributeCount == 0) {
+					capabilities[i] = MetadataFactory.createProvidedCapability(namespace, name, version);
+					continue;
+				}
+				Map<String, Object> attributes = new HashMap<>();
+				for (int j = 0; j < attributeCount; j++) {
+					String key = readString();
+					attributes.put(key, readAttributeValue());
+				}
+				attributes.put(namespace, name);
+				attributes.put(ProvidedCapability.ATTRIBUTE_VERSION, version);
+				capabilities[i] = MetadataFactory.createProvidedCapability(namespace, attributes);
+			}
+			return capabilities;
+		}
+
+		ITouchpointType readTouchpointType() {
+			String id = readString();
+			return MetadataFactory.createTouchpointType(id, readVersion());
+		}
+
+		IArtifactKey[] readArtifacts() {
+			IArtifactKey[] artifacts = new IArtifactKey[readVarInt()];
+			for (int i = 0; i < artifacts.length; i++) {
+				String classifier = readString();
+				String id = readString();
+				artifacts[i] = new ArtifactKey(classifier, id, readVersion());
+			}
+			return artifacts;
+		}
+
+		ITouchpointData[] readTouchpointData() {
+			ITouchpointData[] touchpointData = new ITouchpointData[readVarInt()];
+			for (int i = 0; i < touchpointData.length; i++) {
+				Map<String, ITouchpointInstruction> instructions = new LinkedHashMap<>();
+				for (int j = readVarInt(); j > 0; j--) {
+					String key = readString();
+					String body = readOptionalString();
+					String importAttribute = readOptionalString();
+					instructions.put(key, MetadataFactory.createTouchpointInstruction(body, importAttribute));
+				}
+				touchpointData[i] = MetadataFactory.createTouchpointData(instructions);
+			}
+			return touchpointData;
+		}
+
+		ILicense[] readLicenses() {
+			ILicense[] licenses = new ILicense[readVarInt()];
+			for (int i = 0; i < licenses.length; i++) {
+				String location = readOptionalString();
+				licenses[i] = MetadataFactory.createLicense(location == null ? null : URI.create(location), readOptionalString());
+			}
+			return licenses;
+		}
+
+		ICopyright readCopyright() {
+			if (!readBoolean())
+				return null;
+			String location = readOptionalString();
+			return MetadataFactory.createCopyright(location == null ? null : URI.create(location), readOptionalString());
+		}
+
+		IRequirement[] readRequirements() {
+			IRequirement[] requirements = new IRequirement[readVarInt()];
+			for (int i = 0; i < requirements.length; i++)
+				requirements[i] = readRequirement();
+			return requirements;
+		}
+
+		IRequirement readOptionalRequirement() {
+			return readBoolean() ? readRequirement() : null;
+		}
+
+		IRequirement readRequirement() {
+			int form = readVarInt();
+			String namespace = null;
+			String name = null;
+			VersionRange range = null;
+			IMatchExpression<IInstallableUnit> match = null;
+			if (form == MATCH_SIMPLE) {
+				namespace = readString();
+				name = readString();
+				range = VersionRange.create(readString());
+			} else
+				match = readExpression();
+			int min = readVarInt();
+			int max = readVarInt();
+			boolean greedy = readBoolean();
+			String filter = readOptionalString();
+			String description = readOptionalString();
+			IMatchExpression<IInstallableUnit> filterExpression = filter == null ? null : InstallableUnit.parseFilter(filter);
+			if (match != null)
+				return MetadataFactory.createRequirement(match, filterExpression, min, max, greedy, description);
+			return MetadataFactory.createRequirement(namespace, name, range, filterExpression, min, max, greedy, description);
+		}
+
+		IMatchExpression<IInstallableUnit> readMatchExpression() {
+			if (readVarInt() != MATCH_SIMPLE)
+				return readExpression();
+			String namespace = readString();
+			String name = readString();
+			VersionRange range = VersionRange.create(readString());
+			return MetadataFactory.createRequirement(namespace, name, range, null, false, false).getMatches();
+		}
+
+		private IMatchExpression<IInstallableUnit> readExpression() {
+			String match = readString();
+			return MetadataParser.createMatchExpression(match, readOptionalString());
+		}
+
+		Object readAttributeValue() {
+			switch (readVarInt()) {
+				case ATTR_LIST :
+					int count = readVarInt();
+					List<Object> list = new ArrayList<>(count);
+					for (int i = 0; i < count; i++)
+						list.add(readAttributeValue());
+					return list;
+				case ATTR_INTEGER :
+					return Integer.valueOf(readInt());
+				case ATTR_LONG :
+					return Long.valueOf(readLong());
+				case ATTR_FLOAT :
+					return Float.valueOf(Float.intBitsToFloat(readInt()));
+				case ATTR_DOUBLE :
+					return Double.valueOf(Double.longBitsToDouble(readLong()));
+				case ATTR_BYTE :
+					return Byte.valueOf((byte) readByte());
+				case ATTR_SHORT :
+					return Short.valueOf((short) readInt());
+				case ATTR_CHARACTER :
+					return Character.valueOf((char) readInt());
+				case ATTR_BOOLEAN :
+					return Boolean.valueOf(readBoolean());
+				case ATTR_VERSION :
+					return readVersion();
+				default :
+					return readString();
+			}
+		}
+	}
+}
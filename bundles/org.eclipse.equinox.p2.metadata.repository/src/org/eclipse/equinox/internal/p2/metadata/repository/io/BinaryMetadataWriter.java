@@ -0,0 +1,418 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository.io;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.equinox.internal.p2.metadata.ProvidedCapability;
+import org.eclipse.equinox.internal.p2.metadata.RequiredCapability;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.IRepositoryReference;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+
+/**
+ * Writes a metadata repository in the binary format described by {@link BinaryMetadataConstants}.
+ * The information written for each installable unit is the same as the information
+ * written by {@link MetadataWriter}, so any repository can be converted to the binary
+ * form and back without loss.
+ */
+public class BinaryMetadataWriter implements BinaryMetadataConstants {
+
+	private final Map<String, Integer> stringIndex = new HashMap<>();
+	private final List<String> strings = new ArrayList<>();
+
+	/**
+	 * Writes the given repository to the given stream. The stream is not closed.
+	 */
+	public void write(IMetadataRepository repository, OutputStream output) throws IOException {
+		List<IInstallableUnit> units = new ArrayList<>(repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet());
+		// Sort to make the output independent of the iteration order of the repository
+		Collections.sort(units);
+
+		RecordOutput records = new RecordOutput();
+		int[] unitOffsets = new int[units.size()];
+		Map<String, List<Integer>> ids = new HashMap<>();
+		Map<String, List<Integer>> capabilities = new HashMap<>();
+		for (int ordinal = 0; ordinal < unitOffsets.length; ordinal++) {
+			IInstallableUnit iu = units.get(ordinal);
+			unitOffsets[ordinal] = records.size();
+			writeInstallableUnit(records, iu);
+			addOrdinal(ids, iu.getId(), ordinal);
+			for (IProvidedCapability capability : iu.getProvidedCapabilities())
+				addOrdinal(capabilities, capability.getName(), ordinal);
+		}
+		int repositoryOffset = records.size();
+		writeRepository(records, repository);
+		int[] idOffsets = writeLookupEntries(records, ids);
+		int[] capabilityOffsets = writeLookupEntries(records, capabilities);
+
+		// All strings are interned now
+		RecordOutput stringData = new RecordOutput();
+		int[] stringOffsets = new int[strings.size()];
+		for (int i = 0; i < stringOffsets.length; i++) {
+			stringOffsets[i] = stringData.size();
+			byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+			stringData.writeVarInt(bytes.length);
+			stringData.write(bytes);
+		}
+
+		int recordStart = HEADER_SIZE;
+		int stringStart = recordStart + records.size();
+		int stringTable = stringStart + stringData.size();
+		int unitTable = stringTable + 4 * stringOffsets.length;
+		int idTable = unitTable + 4 * unitOffsets.length;
+		int capabilityTable = idTable + 4 * idOffsets.length;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(stringOffsets.length);
+		out.writeInt(stringTable);
+		out.writeInt(unitOffsets.length);
+		out.writeInt(unitTable);
+		out.writeInt(idOffsets.length);
+		out.writeInt(idTable);
+		out.writeInt(capabilityOffsets.length);
+		out.writeInt(capabilityTable);
+		out.writeInt(recordStart + repositoryOffset);
+		records.writeTo(out);
+		stringData.writeTo(out);
+		writeTable(out, stringOffsets, stringStart);
+		writeTable(out, unitOffsets, recordStart);
+		writeTable(out, idOffsets, recordStart);
+		writeTable(out, capabilityOffsets, recordStart);
+		out.flush();
+	}
+
+	private static void addOrdinal(Map<String, List<Integer>> lookup, String key, int ordinal) {
+		List<Integer> ordinals = lookup.get(key);
+		if (ordinals == null) {
+			ordinals = new ArrayList<>(1);
+			lookup.put(key, ordinals);
+		} else if (ordinals.get(ordinals.size() - 1).intValue() == ordinal)
+			return;
+		ordinals.add(Integer.valueOf(ordinal));
+	}
+
+	private int[] writeLookupEntries(RecordOutput records, Map<String, List<Integer>> lookup) {
+		List<String> keys = new ArrayList<>(lookup.keySet());
+		final Map<String, byte[]> keyBytes = new HashMap<>();
+		for (String key : keys)
+			keyBytes.put(key, key.getBytes(StandardCharsets.UTF_8));
+		Collections.sort(keys, (a, b) -> compare(keyBytes.get(a), keyBytes.get(b)));
+		int[] offsets = new int[keys.size()];
+		for (int i = 0; i < offsets.length; i++) {
+			String key = keys.get(i);
+			offsets[i] = records.size();
+			writeString(records, key);
+			List<Integer> ordinals = lookup.get(key);
+			records.writeVarInt(ordinals.size());
+			for (Integer ordinal : ordinals)
+				records.writeVarInt(ordinal.intValue());
+		}
+		return offsets;
+	}
+
+	/**
+	 * Compares the UTF-8 bytes of two keys, this is the order of the lookup tables.
+	 */
+	static int compare(byte[] a, byte[] b) {
+		int len = Math.min(a.length, b.length);
+		for (int i = 0; i < len; i++) {
+			int diff = (a[i] & 0xff) - (b[i] & 0xff);
+			if (diff != 0)
+				return diff;
+		}
+		return a.length - b.length;
+	}
+
+	private static void writeTable(DataOutputStream out, int[] offsets, int base) throws IOException {
+		for (int offset : offsets)
+			out.writeInt(base + offset);
+	}
+
+	private void writeRepository(RecordOutput out, IMetadataRepository repository) {
+		writeOptionalString(out, repository.getName());
+		writeOptionalString(out, repository.getType());
+		writeOptionalString(out, repository.getVersion());
+		writeOptionalString(out, repository.getProvider());
+		writeOptionalString(out, repository.getDescription());
+		writeProperties(out, repository.getProperties());
+		Collection<IRepositoryReference> references = repository.getReferences();
+		out.writeVarInt(references.size());
+		for (IRepositoryReference reference : references) {
+			writeString(out, reference.getLocation().toString());
+			writeOptionalString(out, reference.getNickname());
+			out.writeVarInt(reference.getType());
+			out.writeVarInt(reference.getOptions());
+		}
+	}
+
+	protected void writeInstallableUnit(RecordOutput out, IInstallableUnit resolvedIU) {
+		IInstallableUnit iu = resolvedIU.unresolved();
+		if (iu instanceof IInstallableUnitPatch)
+			out.writeVarInt(UNIT_PATCH);
+		else if (iu instanceof IInstallableUnitFragment)
+			out.writeVarInt(UNIT_FRAGMENT);
+		else
+			out.writeVarInt(UNIT_PLAIN);
+		writeString(out, iu.getId());
+		writeString(out, iu.getVersion().toString());
+		out.writeBoolean(iu.isSingleton());
+
+		if (iu instanceof IInstallableUnitPatch) {
+			IInstallableUnitPatch patch = (IInstallableUnitPatch) iu;
+			IRequirement[][] scope = patch.getApplicabilityScope();
+			out.writeVarInt(scope.length);
+			for (IRequirement[] requirements : scope)
+				writeRequirements(out, Arrays.asList(requirements));
+			List<IRequirementChange> changes = patch.getRequirementsChange();
+			out.writeVarInt(changes.size());
+			for (IRequirementChange change : changes) {
+				writeOptionalRequirement(out, change.applyOn());
+				writeOptionalRequirement(out, change.newValue());
+			}
+			writeOptionalRequirement(out, patch.getLifeCycle());
+		} else if (iu instanceof IInstallableUnitFragment)
+			writeRequirements(out, ((IInstallableUnitFragment) iu).getHost());
+
+		writeUpdateDescriptor(out, resolvedIU.getUpdateDescriptor());
+		writeRequirements(out, iu.getMetaRequirements());
+		writeProvidedCapabilities(out, iu.getProvidedCapabilities());
+		writeRequirements(out, iu.getRequirements());
+		writeOptionalString(out, iu.getFilter() == null ? null : iu.getFilter().getParameters()[0].toString());
+		ITouchpointType touchpointType = iu.getTouchpointType();
+		writeString(out, touchpointType.getId());
+		writeString(out, touchpointType.getVersion().toString());
+
+		// The remaining members are decoded on demand. The properties are prefixed by their
+		// length so that the members after them can be found without decoding them.
+		RecordOutput properties = new RecordOutput();
+		writeProperties(properties, iu.getProperties());
+		out.writeVarInt(properties.size());
+		out.write(properties.toByteArray(), 0, properties.size());
+
+		Collection<IArtifactKey> artifacts = iu.getArtifacts();
+		out.writeVarInt(artifacts.size());
+		for (IArtifactKey artifact : artifacts) {
+			writeString(out, artifact.getClassifier());
+			writeString(out, artifact.getId());
+			writeString(out, artifact.getVersion().toString());
+		}
+
+		Collection<ITouchpointData> touchpointData = iu.getTouchpointData();
+		out.writeVarInt(touchpointData.size());
+		for (ITouchpointData data : touchpointData) {
+			Map<String, ITouchpointInstruction> instructions = data.getInstructions();
+			out.writeVarInt(instructions.size());
+			for (Entry<String, ITouchpointInstruction> entry : instructions.entrySet()) {
+				writeString(out, entry.getKey());
+				writeOptionalString(out, entry.getValue().getBody());
+				writeOptionalString(out, entry.getValue().getImportAttribute());
+			}
+		}
+
+		List<ILicense> licenses = new ArrayList<>();
+		for (ILicense license : iu.getLicenses())
+			if (license != null)
+				licenses.add(license);
+		out.writeVarInt(licenses.size());
+		for (ILicense license : licenses) {
+			writeOptionalString(out, license.getLocation() == null ? null : license.getLocation().toString());
+			writeOptionalString(out, license.getBody());
+		}
+
+		ICopyright copyright = iu.getCopyright();
+		out.writeBoolean(copyright != null);
+		if (copyright != null) {
+			writeOptionalString(out, copyright.getLocation() == null ? null : copyright.getLocation().toString());
+			writeOptionalString(out, copyright.getBody());
+		}
+	}
+
+	private void writeUpdateDescriptor(RecordOutput out, IUpdateDescriptor descriptor) {
+		out.writeBoolean(descriptor != null);
+		if (descriptor == null)
+			return;
+		out.writeVarInt(descriptor.getSeverity());
+		writeOptionalString(out, descriptor.getDescription());
+		writeOptionalString(out, descriptor.getLocation() == null ? null : descriptor.getLocation().toString());
+		Collection<IMatchExpression<IInstallableUnit>> matches = descriptor.getIUsBeingUpdated();
+		out.writeVarInt(matches.size());
+		for (IMatchExpression<IInstallableUnit> match : matches)
+			writeMatchExpression(out, match, true);
+	}
+
+	private void writeProperties(RecordOutput out, Map<String, String> properties) {
+		out.writeVarInt(properties.size());
+		for (Entry<String, String> property : properties.entrySet()) {
+			writeString(out, property.getKey());
+			writeString(out, property.getValue());
+		}
+	}
+
+	private void writeProvidedCapabilities(RecordOutput out, Collection<IProvidedCapability> capabilities) {
+		out.writeVarInt(capabilities.size());
+		for (IProvidedCapability capability : capabilities) {
+			writeString(out, capability.getNamespace());
+			writeString(out, capability.getName());
+			writeString(out, capability.getVersion().toString());
+
+			Map<String, Object> attrs = new HashMap<>(capability.getAttributes());
+			attrs.remove(capability.getNamespace());
+			attrs.remove(ProvidedCapability.ATTRIBUTE_VERSION);
+			out.writeVarInt(attrs.size());
+			for (Entry<String, Object> attr : attrs.entrySet()) {
+				writeString(out, attr.getKey());
+				writeAttributeValue(out, attr.getValue());
+			}
+		}
+	}
+
+	private void writeAttributeValue(RecordOutput out, Object value) {
+		if (value instanceof Collection<?>) {
+			Collection<?> list = (Collection<?>) value;
+			out.writeVarInt(ATTR_LIST);
+			out.writeVarInt(list.size());
+			for (Object element : list)
+				writeAttributeValue(out, element);
+		} else if (value instanceof Integer) {
+			out.writeVarInt(ATTR_INTEGER);
+			out.writeInt(((Integer) value).intValue());
+		} else if (value instanceof Long) {
+			out.writeVarInt(ATTR_LONG);
+			out.writeLong(((Long) value).longValue());
+		} else if (value instanceof Float) {
+			out.writeVarInt(ATTR_FLOAT);
+			out.writeInt(Float.floatToIntBits(((Float) value).floatValue()));
+		} else if (value instanceof Double) {
+			out.writeVarInt(ATTR_DOUBLE);
+			out.writeLong(Double.doubleToLongBits(((Double) value).doubleValue()));
+		} else if (value instanceof Byte) {
+			out.writeVarInt(ATTR_BYTE);
+			out.write(((Byte) value).byteValue());
+		} else if (value instanceof Short) {
+			out.writeVarInt(ATTR_SHORT);
+			out.writeInt(((Short) value).shortValue());
+		} else if (value instanceof Character) {
+			out.writeVarInt(ATTR_CHARACTER);
+			out.writeInt(((Character) value).charValue());
+		} else if (value instanceof Boolean) {
+			out.writeVarInt(ATTR_BOOLEAN);
+			out.writeBoolean(((Boolean) value).booleanValue());
+		} else if (value instanceof Version) {
+			out.writeVarInt(ATTR_VERSION);
+			writeString(out, value.toString());
+		} else {
+			// Same as the XML form, unknown types are kept as strings
+			out.writeVarInt(ATTR_STRING);
+			writeString(out, value.toString());
+		}
+	}
+
+	private void writeRequirements(RecordOutput out, Collection<IRequirement> requirements) {
+		out.writeVarInt(requirements.size());
+		for (IRequirement requirement : requirements)
+			writeRequirement(out, requirement);
+	}
+
+	private void writeOptionalRequirement(RecordOutput out, IRequirement requirement) {
+		out.writeBoolean(requirement != null);
+		if (requirement != null)
+			writeRequirement(out, requirement);
+	}
+
+	private void writeRequirement(RecordOutput out, IRequirement requirement) {
+		writeMatchExpression(out, requirement.getMatches(), requirement.getMax() > 0);
+		out.writeVarInt(requirement.getMin());
+		out.writeVarInt(requirement.getMax());
+		out.writeBoolean(requirement.isGreedy());
+		writeOptionalString(out, requirement.getFilter() == null ? null : requirement.getFilter().getParameters()[0].toString());
+		writeOptionalString(out, requirement.getDescription());
+	}
+
+	private void writeMatchExpression(RecordOutput out, IMatchExpression<IInstallableUnit> match, boolean allowSimple) {
+		if (allowSimple && RequiredCapability.isSimpleRequirement(match)) {
+			out.writeVarInt(MATCH_SIMPLE);
+			writeString(out, RequiredCapability.extractNamespace(match));
+			writeString(out, RequiredCapability.extractName(match));
+			writeString(out, RequiredCapability.extractRange(match).toString());
+			return;
+		}
+		out.writeVarInt(MATCH_EXPRESSION);
+		writeString(out, ExpressionUtil.getOperand(match).toString());
+		Object[] params = match.getParameters();
+		String paramString = null;
+		if (params.length > 0) {
+			IExpressionFactory factory = ExpressionUtil.getFactory();
+			IExpression[] constantArray = new IExpression[params.length];
+			for (int idx = 0; idx < params.length; ++idx)
+				constantArray[idx] = factory.constant(params[idx]);
+			paramString = factory.array(constantArray).toString();
+		}
+		writeOptionalString(out, paramString);
+	}
+
+	private int intern(String value) {
+		Integer index = stringIndex.get(value);
+		if (index == null) {
+			index = Integer.valueOf(strings.size());
+			strings.add(value);
+			stringIndex.put(value, index);
+		}
+		return index.intValue();
+	}
+
+	private void writeString(RecordOutput out, String value) {
+		out.writeVarInt(intern(value));
+	}
+
+	private void writeOptionalString(RecordOutput out, String value) {
+		out.writeVarInt(value == null ? 0 : intern(value) + 1);
+	}
+
+	/**
+	 * A growable buffer with the primitive encodings used by the binary format.
+	 */
+	protected static class RecordOutput extends ByteArrayOutputStream {
+		RecordOutput() {
+			super(8192);
+		}
+
+		void writeVarInt(int value) {
+			while ((value & ~0x7F) != 0) {
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		void writeBoolean(boolean value) {
+			write(value ? 1 : 0);
+		}
+
+		void writeInt(int value) {
+			write(value >>> 24);
+			write(value >>> 16);
+			write(value >>> 8);
+			write(value);
+		}
+
+		void writeLong(long value) {
+			writeInt((int) (value >>> 32));
+			writeInt((int) value);
+		}
+	}
+}
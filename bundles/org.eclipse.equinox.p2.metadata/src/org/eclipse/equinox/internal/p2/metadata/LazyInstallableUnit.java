@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata;
+
+import java.util.Collection;
+import java.util.Map;
+import org.eclipse.equinox.p2.metadata.*;
+
+/**
+ * An installable unit that defers decoding of its bulky members until they are first
+ * accessed. The members needed to match and resolve the unit (id, version, capabilities,
+ * requirements, filter, update descriptor and touchpoint type) are set when the unit is
+ * created. Properties, including the translated ones, are decoded on first access, and
+ * so are artifacts, touchpoint data, licenses and copyright.
+ * <p>
+ * The deferred members are decoded by a {@link MemberLoader} from a position in the raw
+ * record the unit was created from. The loader populates the unit through the regular
+ * setters exactly once.
+ * </p>
+ */
+public class LazyInstallableUnit extends InstallableUnit {
+
+	/**
+	 * Decodes the deferred members of lazy units from their raw records.
+	 */
+	public interface MemberLoader {
+		/**
+		 * Sets the properties of the given unit, decoded from the given position.
+		 */
+		void loadProperties(LazyInstallableUnit iu, int position);
+
+		/**
+		 * Sets the artifacts, touchpoint data, licenses and copyright of the given
+		 * unit, decoded from the given position.
+		 */
+		void loadContent(LazyInstallableUnit iu, int position);
+	}
+
+	private final MemberLoader loader;
+	private final int propertiesPosition;
+	private final int contentPosition;
+	private volatile boolean propertiesLoaded;
+	private volatile boolean contentLoaded;
+
+	public LazyInstallableUnit(MemberLoader loader, int propertiesPosition, int contentPosition) {
+		this.loader = loader;
+		this.propertiesPosition = propertiesPosition;
+		this.contentPosition = contentPosition;
+	}
+
+	private void loadProperties() {
+		if (propertiesLoaded)
+			return;
+		synchronized (this) {
+			if (!propertiesLoaded) {
+				loader.loadProperties(this, propertiesPosition);
+				propertiesLoaded = true;
+			}
+		}
+	}
+
+	private void loadContent() {
+		if (contentLoaded)
+			return;
+		synchronized (this) {
+			if (!contentLoaded) {
+				loader.loadContent(this, contentPosition);
+				contentLoaded = true;
+			}
+		}
+	}
+
+	@Override
+	public Map<String, String> getProperties() {
+		loadProperties();
+		return super.getProperties();
+	}
+
+	@Override
+	public String getProperty(String key) {
+		loadProperties();
+		return super.getProperty(key);
+	}
+
+	@Override
+	public Collection<IArtifactKey> getArtifacts() {
+		loadContent();
+		return super.getArtifacts();
+	}
+
+	@Override
+	public Collection<ITouchpointData> getTouchpointData() {
+		loadContent();
+		return super.getTouchpointData();
+	}
+
+	@Override
+	public Collection<ILicense> getLicenses() {
+		loadContent();
+		return super.getLicenses();
+	}
+
+	@Override
+	public ICopyright getCopyright() {
+		loadContent();
+		return super.getCopyright();
+	}
+
+	@Override
+	public Object getMember(String memberName) {
+		// Identity comparisons are fine here for the same reasons as in the super class
+		if (MEMBER_PROPERTIES == memberName)
+			loadProperties();
+		else if (MEMBER_ARTIFACTS == memberName || MEMBER_LICENSES == memberName || MEMBER_COPYRIGHT == memberName || MEMBER_TOUCHPOINT_DATA == memberName)
+			loadContent();
+		return super.getMember(memberName);
+	}
+}
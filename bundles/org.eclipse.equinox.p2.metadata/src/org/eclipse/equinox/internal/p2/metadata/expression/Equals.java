@@ -26,9 +26,10 @@ final class Equals extends Binary {
 
 	@Override
 	public Object evaluate(IEvaluationContext context) {
-		Object lhsVal = lhs.evaluate(context);
-		Object rhsVal = rhs.evaluate(context);
+		return evaluate(lhs.evaluate(context), rhs.evaluate(context));
+	}
 
+	Object evaluate(Object lhsVal, Object rhsVal) {
 		// Handle collections as per the OSGi LDAP spec
 		if (lhsVal instanceof Collection<?>) {
 			for (Object lhsItem : (Collection<?>) lhsVal) {
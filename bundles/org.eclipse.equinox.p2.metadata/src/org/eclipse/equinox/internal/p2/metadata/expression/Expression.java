@@ -23,6 +23,11 @@ public abstract class Expression implements IExpression, Comparable<Expression>,
 
 	static final Expression[] emptyArray = new Expression[0];
 
+	/**
+	 * The compiled form of this expression when used as a predicate, see {@link ExpressionCompiler}.
+	 */
+	transient Object compiled;
+
 	public static void appendOperand(StringBuffer bld, Variable rootVariable, Expression operand, int priority) {
 		if (priority < operand.getPriority()) {
 			bld.append('(');
@@ -0,0 +1,466 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.expression;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.ProvidedCapability;
+import org.eclipse.equinox.p2.metadata.expression.IMemberProvider;
+
+/**
+ * Compiles the predicate of a match expression into a chain of pre-bound evaluators.
+ * The compiled form resolves variables to slots in a small value array and binds the
+ * members, operators and nested lambdas once, so that a match neither walks the
+ * expression tree nor creates an evaluation context.
+ * <p>
+ * Only expressions that can be evaluated without an evaluation context are compiled,
+ * i.e. expressions built from literals, parameters, the 'this' variable, members, boolean
+ * operators, comparisons, matches and <code>exists</code> or <code>all</code> over a
+ * lambda. Everything else yields <code>null</code> and is evaluated by the expression tree.
+ * </p>
+ */
+public final class ExpressionCompiler {
+	/**
+	 * System property that disables compilation when set to <code>false</code>.
+	 */
+	public static final String PROP_COMPILE = "eclipse.p2.expression.compile"; //$NON-NLS-1$
+
+	private static final boolean ENABLED = !"false".equals(System.getProperty(PROP_COMPILE)); //$NON-NLS-1$
+
+	private static final Object NOT_COMPILABLE = new Object();
+
+	/**
+	 * A compiled predicate.
+	 */
+	public static final class CompiledMatch {
+		private final Evaluator evaluator;
+		private final int slotCount;
+
+		CompiledMatch(Evaluator evaluator, int slotCount) {
+			this.evaluator = evaluator;
+			this.slotCount = slotCount;
+		}
+
+		/**
+		 * Evaluates the predicate with <code>candidate</code> as 'this'.
+		 * @param parameters The parameters of the match expression
+		 * @param candidate The object to test
+		 * @return <code>true</code> if the predicate yields <code>true</code>
+		 */
+		public boolean isMatch(Object[] parameters, Object candidate) {
+			Object[] slots = new Object[slotCount];
+			slots[0] = candidate;
+			return evaluator.evaluate(parameters, slots) == Boolean.TRUE;
+		}
+	}
+
+	/**
+	 * The compiled form of an expression node. Each evaluator is specialized for one kind
+	 * of node and immutable, so compiled predicates can be shared between threads.
+	 */
+	static abstract class Evaluator {
+		abstract Object evaluate(Object[] parameters, Object[] slots);
+	}
+
+	static final class Constant extends Evaluator {
+		final Object value;
+
+		Constant(Object value) {
+			this.value = value;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			return value;
+		}
+	}
+
+	static final class ParameterValue extends Evaluator {
+		final int position;
+
+		ParameterValue(int position) {
+			this.position = position;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			return parameters[position];
+		}
+	}
+
+	static final class SlotValue extends Evaluator {
+		final int slot;
+
+		SlotValue(int slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			return slots[slot];
+		}
+	}
+
+	/**
+	 * A member of a variable, fused into one step since that is by far the most common use of members.
+	 * The members of provided capabilities are resolved to their getters up front.
+	 */
+	static final class SlotMember extends Evaluator {
+		private static final int CAPABILITY_NONE = 0;
+		private static final int CAPABILITY_NAMESPACE = 1;
+		private static final int CAPABILITY_NAME = 2;
+		private static final int CAPABILITY_VERSION = 3;
+
+		final int slot;
+		final String name;
+		final Member.DynamicMember member;
+		final int capabilityMember;
+
+		SlotMember(int slot, Member.DynamicMember member) {
+			this.slot = slot;
+			this.name = member.name;
+			this.member = member;
+			if (ProvidedCapability.MEMBER_NAMESPACE.equals(name))
+				capabilityMember = CAPABILITY_NAMESPACE;
+			else if (ProvidedCapability.MEMBER_NAME.equals(name))
+				capabilityMember = CAPABILITY_NAME;
+			else if (ProvidedCapability.MEMBER_VERSION.equals(name))
+				capabilityMember = CAPABILITY_VERSION;
+			else
+				capabilityMember = CAPABILITY_NONE;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			Object self = slots[slot];
+			if (capabilityMember != CAPABILITY_NONE && self != null && self.getClass() == ProvidedCapability.class) {
+				ProvidedCapability capability = (ProvidedCapability) self;
+				switch (capabilityMember) {
+					case CAPABILITY_NAMESPACE :
+						return capability.getNamespace();
+					case CAPABILITY_NAME :
+						return capability.getName();
+					default :
+						return capability.getVersion();
+				}
+			}
+			return self instanceof IMemberProvider ? ((IMemberProvider) self).getMember(name) : member.invoke(self);
+		}
+	}
+
+	static final class DynamicMemberValue extends Evaluator {
+		final Evaluator operand;
+		final String name;
+		final Member.DynamicMember member;
+
+		DynamicMemberValue(Evaluator operand, Member.DynamicMember member) {
+			this.operand = operand;
+			this.name = member.name;
+			this.member = member;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			Object self = operand.evaluate(parameters, slots);
+			return self instanceof IMemberProvider ? ((IMemberProvider) self).getMember(name) : member.invoke(self);
+		}
+	}
+
+	static final class LengthValue extends Evaluator {
+		final Evaluator operand;
+		final Member.LengthMember member;
+
+		LengthValue(Evaluator operand, Member.LengthMember member) {
+			this.operand = operand;
+			this.member = member;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			Object val = operand.evaluate(parameters, slots);
+			if (member instanceof Member.EmptyMember)
+				return Boolean.valueOf((val instanceof Iterator<?>) ? !((Iterator<?>) val).hasNext() : member.getLength(val) == 0);
+			return Integer.valueOf(member.getLength(val));
+		}
+	}
+
+	static final class AndValue extends Evaluator {
+		final Evaluator[] operands;
+
+		AndValue(Evaluator[] operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			for (int idx = 0; idx < operands.length; ++idx)
+				if (operands[idx].evaluate(parameters, slots) != Boolean.TRUE)
+					return Boolean.FALSE;
+			return Boolean.TRUE;
+		}
+	}
+
+	static final class OrValue extends Evaluator {
+		final Evaluator[] operands;
+
+		OrValue(Evaluator[] operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			for (int idx = 0; idx < operands.length; ++idx)
+				if (operands[idx].evaluate(parameters, slots) == Boolean.TRUE)
+					return Boolean.TRUE;
+			return Boolean.FALSE;
+		}
+	}
+
+	static final class NotValue extends Evaluator {
+		final Evaluator operand;
+
+		NotValue(Evaluator operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			return Boolean.valueOf(operand.evaluate(parameters, slots) != Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * The base for equals, compare and matches. The right hand side is nearly always a
+	 * parameter or a literal and is then resolved without a call.
+	 */
+	static abstract class BinaryValue extends Evaluator {
+		final Evaluator lhs;
+		final Evaluator rhs;
+		final int rhsParameter;
+		final Object rhsConstant;
+
+		BinaryValue(Evaluator lhs, Evaluator rhs) {
+			this.lhs = lhs;
+			this.rhs = rhs;
+			this.rhsParameter = rhs instanceof ParameterValue ? ((ParameterValue) rhs).position : -1;
+			this.rhsConstant = rhs instanceof Constant ? ((Constant) rhs).value : null;
+		}
+
+		final Object evaluateRHS(Object[] parameters, Object[] slots) {
+			if (rhsParameter >= 0)
+				return parameters[rhsParameter];
+			return rhsConstant != null ? rhsConstant : rhs.evaluate(parameters, slots);
+		}
+	}
+
+	static final class EqualsValue extends BinaryValue {
+		final Equals equals;
+
+		EqualsValue(Equals equals, Evaluator lhs, Evaluator rhs) {
+			super(lhs, rhs);
+			this.equals = equals;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			return equals.evaluate(lhs.evaluate(parameters, slots), evaluateRHS(parameters, slots));
+		}
+	}
+
+	static final class CompareValue extends BinaryValue {
+		final Compare compare;
+
+		CompareValue(Compare compare, Evaluator lhs, Evaluator rhs) {
+			super(lhs, rhs);
+			this.compare = compare;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			return compare.evaluate(lhs.evaluate(parameters, slots), evaluateRHS(parameters, slots));
+		}
+	}
+
+	static final class MatchesValue extends BinaryValue {
+		final Matches matches;
+
+		MatchesValue(Matches matches, Evaluator lhs, Evaluator rhs) {
+			super(lhs, rhs);
+			this.matches = matches;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			return Boolean.valueOf(matches.match(lhs.evaluate(parameters, slots), evaluateRHS(parameters, slots)));
+		}
+	}
+
+	/**
+	 * Exists and all. The item variable of the lambda is kept in its own slot.
+	 */
+	static final class CollectionFilterValue extends Evaluator {
+		final Evaluator collection;
+		final Evaluator body;
+		final int slot;
+		final boolean exists;
+
+		CollectionFilterValue(Evaluator collection, Evaluator body, int slot, boolean exists) {
+			this.collection = collection;
+			this.body = body;
+			this.slot = slot;
+			this.exists = exists;
+		}
+
+		@Override
+		Object evaluate(Object[] parameters, Object[] slots) {
+			Object value = collection.evaluate(parameters, slots);
+			if (value instanceof Object[]) {
+				// Members such as the capabilities and requirements of a unit are arrays, avoid the iterators
+				Object[] array = (Object[]) value;
+				for (int idx = 0; idx < array.length; ++idx) {
+					slots[slot] = array[idx];
+					if ((body.evaluate(parameters, slots) == Boolean.TRUE) == exists)
+						return Boolean.valueOf(exists);
+				}
+				return Boolean.valueOf(!exists);
+			}
+
+			Iterator<?> itor = iterator(value);
+			while (itor.hasNext()) {
+				slots[slot] = itor.next();
+				if ((body.evaluate(parameters, slots) == Boolean.TRUE) == exists)
+					return Boolean.valueOf(exists);
+			}
+			return Boolean.valueOf(!exists);
+		}
+	}
+
+	/**
+	 * Returns the compiled form of <code>predicate</code>. The compiled form is cached in the
+	 * predicate so that all match expressions sharing a predicate share its compiled form.
+	 * @param predicate The predicate to compile
+	 * @return The compiled predicate or <code>null</code> if it cannot be compiled or
+	 * compilation has been disabled.
+	 */
+	public static CompiledMatch compile(Expression predicate) {
+		if (!ENABLED)
+			return null;
+		Object compiled = predicate.compiled;
+		if (compiled == null) {
+			// Compiling twice in a race is harmless, the compiled form is immutable
+			ExpressionCompiler compiler = new ExpressionCompiler();
+			Evaluator evaluator = compiler.compileExpression(predicate);
+			compiled = evaluator == null ? NOT_COMPILABLE : new CompiledMatch(evaluator, compiler.slotCount);
+			predicate.compiled = compiled;
+		}
+		return compiled == NOT_COMPILABLE ? null : (CompiledMatch) compiled;
+	}
+
+	// Slot 0 is 'this', the variables of nested lambdas follow
+	private final List<Variable> variables = new ArrayList<>();
+	private int slotCount = 1;
+
+	private ExpressionCompiler() {
+		variables.add(ExpressionFactory.THIS);
+	}
+
+	private Evaluator compileExpression(Expression expr) {
+		if (expr instanceof Literal)
+			return new Constant(((Literal) expr).value);
+
+		if (expr instanceof Parameter)
+			return new ParameterValue(((Parameter) expr).position);
+
+		if (expr instanceof Variable) {
+			int slot = variables.lastIndexOf(expr);
+			return slot < 0 ? null : new SlotValue(slot);
+		}
+
+		if (expr instanceof Member)
+			return compileMember((Member) expr);
+
+		if (expr instanceof And || expr instanceof Or) {
+			Expression[] operands = ((NAry) expr).operands;
+			Evaluator[] evaluators = new Evaluator[operands.length];
+			for (int idx = 0; idx < operands.length; ++idx)
+				if ((evaluators[idx] = compileExpression(operands[idx])) == null)
+					return null;
+			return expr instanceof And ? new AndValue(evaluators) : new OrValue(evaluators);
+		}
+
+		if (expr instanceof Not) {
+			Evaluator operand = compileExpression(((Not) expr).operand);
+			return operand == null ? null : new NotValue(operand);
+		}
+
+		if (expr instanceof Equals || expr instanceof Compare || expr instanceof Matches) {
+			Binary binary = (Binary) expr;
+			Evaluator lhs = compileExpression(binary.lhs);
+			Evaluator rhs = compileExpression(binary.rhs);
+			if (lhs == null || rhs == null)
+				return null;
+			if (expr instanceof Equals)
+				return new EqualsValue((Equals) expr, lhs, rhs);
+			if (expr instanceof Compare)
+				return new CompareValue((Compare) expr, lhs, rhs);
+			return new MatchesValue((Matches) expr, lhs, rhs);
+		}
+
+		if (expr instanceof Exists || expr instanceof All)
+			return compileCollectionFilter((CollectionFilter) expr);
+
+		return null;
+	}
+
+	private Evaluator compileMember(Member member) {
+		if (member.argExpressions.length > 0)
+			return null;
+
+		Evaluator operand = compileExpression(member.operand);
+		if (operand == null)
+			return null;
+
+		if (member instanceof Member.LengthMember)
+			return new LengthValue(operand, (Member.LengthMember) member);
+
+		if (member instanceof Member.DynamicMember) {
+			Member.DynamicMember dynamic = (Member.DynamicMember) member;
+			return operand instanceof SlotValue ? new SlotMember(((SlotValue) operand).slot, dynamic) : new DynamicMemberValue(operand, dynamic);
+		}
+		return null;
+	}
+
+	private Evaluator compileCollectionFilter(CollectionFilter filter) {
+		// Curried lambdas introduce additional variables that need an evaluation context
+		if (filter.lambda.getClass() != LambdaExpression.class)
+			return null;
+
+		Evaluator collection = compileExpression(filter.operand);
+		if (collection == null)
+			return null;
+
+		int slot = variables.size();
+		variables.add(filter.lambda.getItemVariable());
+		if (variables.size() > slotCount)
+			slotCount = variables.size();
+		Evaluator body = compileExpression(filter.lambda.operand);
+		variables.remove(slot);
+		return body == null ? null : new CollectionFilterValue(collection, body, slot, filter instanceof Exists);
+	}
+
+	static Iterator<?> iterator(Object collection) {
+		// Plain collections are iterated directly, there is no need for a repeatable copy
+		if (collection instanceof Collection<?>)
+			return ((Collection<?>) collection).iterator();
+		if (collection instanceof IRepeatableIterator<?>)
+			return ((IRepeatableIterator<?>) collection).getCopy();
+		return RepeatableIterator.create(collection);
+	}
+}
@@ -87,9 +87,14 @@ public class MatchExpression<T> extends Unary implements IMatchExpression<T> {
 		return Boolean.TRUE == operand.evaluate(context);
 	}
 
+	/**
+	 * Evaluates the compiled form of the predicate when there is one. Otherwise a
+	 * context is created and the expression tree is evaluated.
+	 */
 	@Override
 	public boolean isMatch(T value) {
-		return isMatch(createContext(), value);
+		ExpressionCompiler.CompiledMatch compiled = ExpressionCompiler.compile(operand);
+		return compiled != null ? compiled.isMatch(parameters, value) : isMatch(createContext(), value);
 	}
 
 	@Override
@@ -48,6 +48,16 @@ public class CapabilityIndex extends Index<IInstallableUnit> {
 		this.capabilityMap = index;
 	}
 
+	/**
+	 * Creates an index that is backed by an existing map of capability names. Each
+	 * value in the map must be either an {@link IInstallableUnit} or a collection of
+	 * them. The map is never modified by the index.
+	 * @param capabilityMap The map from capability name to the units that provide it
+	 */
+	public CapabilityIndex(Map<String, Object> capabilityMap) {
+		this.capabilityMap = capabilityMap;
+	}
+
 	private Object getRequirementIDs(IEvaluationContext ctx, IExpression requirement, Object queriedKeys) {
 		switch (requirement.getExpressionType()) {
 			case IExpression.TYPE_AND :
@@ -23,23 +23,109 @@ public class CompoundIndex<T> implements IIndex<T> {
 		this.indexes = indexes;
 	}
 
+	/**
+	 * Returns the candidates of all indexes, or <code>null</code> if one of the indexes
+	 * cannot provide candidates. The indexes are read one at a time as the returned
+	 * iterator is consumed, and candidates found in more than one index are returned once.
+	 * 
+	 * The candidates of an index are copied when the iteration reaches that index, so an
+	 * index may change while the candidates of another one are being returned. The
+	 * candidates of an index reflect its content at the time it is reached.
+	 */
 	@Override
 	public Iterator<T> getCandidates(IEvaluationContext ctx, IExpression variable, IExpression booleanExpr) {
-		Set<T> result = null;
+		List<IIndex<T>> sources = new ArrayList<>(indexes.size());
+		List<Iterator<T>> results = new ArrayList<>(indexes.size());
 		for (IIndex<T> index : indexes) {
 			Iterator<T> indexResult = index.getCandidates(ctx, variable, booleanExpr);
 			if (indexResult == null)
 				return null;
 			if (indexResult.hasNext()) {
+				sources.add(index);
+				results.add(indexResult);
+			}
+		}
+		if (results.isEmpty())
+			return Collections.<T> emptySet().iterator();
+		return new CandidateIterator(sources, results, ctx, variable, booleanExpr);
+	}
+
+	/**
+	 * Returns the candidates of a list of indexes, copying the candidates of each index
+	 * when it is reached.
+	 */
+	private class CandidateIterator implements Iterator<T> {
+		private final List<IIndex<T>> sources;
+		private final List<Iterator<T>> results;
+		private final IEvaluationContext ctx;
+		private final IExpression variable;
+		private final IExpression booleanExpr;
+		private final Set<T> returned;
+		private int nextSource;
+		private Iterator<T> current = Collections.<T> emptySet().iterator();
+		private T next;
+		private boolean hasNext;
+
+		CandidateIterator(List<IIndex<T>> sources, List<Iterator<T>> results, IEvaluationContext ctx, IExpression variable, IExpression booleanExpr) {
+			this.sources = sources;
+			this.results = results;
+			this.ctx = ctx;
+			this.variable = variable;
+			this.booleanExpr = booleanExpr;
+			this.returned = sources.size() > 1 ? new HashSet<T>() : null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!hasNext) {
+				if (current.hasNext()) {
+					T candidate = current.next();
+					if (returned == null || returned.add(candidate)) {
+						next = candidate;
+						hasNext = true;
+					}
+				} else if (nextSource < sources.size()) {
+					current = copyCandidates(nextSource++);
+				} else {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			hasNext = false;
+			T result = next;
+			next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private Iterator<T> copyCandidates(int source) {
+			Iterator<T> result = results.set(source, null);
+			try {
+				return copy(result);
+			} catch (ConcurrentModificationException e) {
+				// the index changed since its candidates were requested, request them again
+				result = sources.get(source).getCandidates(ctx, variable, booleanExpr);
 				if (result == null)
-					result = new HashSet<>();
-				do {
-					result.add(indexResult.next());
-				} while (indexResult.hasNext());
+					throw e;
+				return copy(result);
 			}
 		}
-		if (result == null)
-			result = Collections.emptySet();
-		return result.iterator();
+
+		private Iterator<T> copy(Iterator<T> candidates) {
+			List<T> copy = new ArrayList<>();
+			while (candidates.hasNext())
+				copy.add(candidates.next());
+			return copy.iterator();
+		}
 	}
 }
@@ -48,20 +48,42 @@ public class ExpressionMatchQuery<T> implements IMatchQuery<T>, IQueryWithIndex<
 	public IQueryResult<T> perform(IIndexProvider<T> indexProvider) {
 		if (((MatchExpression<T>) expression).operand == ExpressionUtil.TRUE_EXPRESSION)
 			return new QueryResult<>(RepeatableIterator.create(indexProvider));
-		Iterator<T> iterator = null;
+		Iterator<T> iterator = getCandidates(indexProvider);
+		context.setIndexProvider(indexProvider);
+		return perform(iterator);
+	}
+
+	/**
+	 * Returns an iterator that matches the candidates of the given index provider
+	 * as it is consumed.
+	 * @see QueryUtil#iterator(IQueryable, IQuery, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	Iterator<T> iterator(IIndexProvider<T> indexProvider) {
+		if (((MatchExpression<T>) expression).operand == ExpressionUtil.TRUE_EXPRESSION)
+			return indexProvider.everything();
+		Iterator<T> iterator = getCandidates(indexProvider);
+		context.setIndexProvider(indexProvider);
+		return new MatchIteratorFilter<T>(iterator) {
+			private final Set<T> matched = new HashSet<>();
+
+			@Override
+			protected boolean isMatch(T val) {
+				return ExpressionMatchQuery.this.isMatch(val) && matched.add(val);
+			}
+		};
+	}
+
+	private Iterator<T> getCandidates(IIndexProvider<T> indexProvider) {
 		int top = indexedMembers.size();
 		for (int idx = 0; idx < top; ++idx) {
 			IIndex<T> index = indexProvider.getIndex(indexedMembers.get(idx));
 			if (index != null) {
-				iterator = index.getCandidates(context, ExpressionFactory.THIS, expression);
+				Iterator<T> iterator = index.getCandidates(context, ExpressionFactory.THIS, expression);
 				if (iterator != null)
-					break;
+					return iterator;
 			}
 		}
-		if (iterator == null)
-			iterator = RepeatableIterator.create(indexProvider);
-		context.setIndexProvider(indexProvider);
-		return perform(iterator);
+		return RepeatableIterator.create(indexProvider);
 	}
 
 	@Override
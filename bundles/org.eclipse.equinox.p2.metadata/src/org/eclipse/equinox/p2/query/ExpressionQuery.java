@@ -42,6 +42,15 @@ public class ExpressionQuery<T> implements IQueryWithIndex<T> {
 		return new QueryResult<>(expression.iterator(expression.createContext(elementClass, indexProvider)));
 	}
 
+	/**
+	 * Returns an iterator that evaluates this query over the given index provider
+	 * as it is consumed.
+	 * @see QueryUtil#iterator(IQueryable, IQuery, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	Iterator<T> iterator(IIndexProvider<T> indexProvider) {
+		return expression.iterator(expression.createContext(elementClass, indexProvider));
+	}
+
 	@Override
 	public IQueryResult<T> perform(Iterator<T> iterator) {
 		return new QueryResult<>(expression.iterator(expression.createContext(elementClass, iterator)));
@@ -11,14 +11,15 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.query;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.internal.p2.metadata.expression.ContextExpression;
 import org.eclipse.equinox.internal.p2.metadata.expression.Expression.VariableFinder;
 import org.eclipse.equinox.internal.p2.metadata.expression.ExpressionFactory;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.metadata.index.IIndexProvider;
 
 /**
  * Helper class for query related tasks.
@@ -72,6 +73,37 @@ public class QueryUtil {
 		return new CompoundQueryable<T>(new IQueryable[] {query1, query2});
 	}
 
+	/**
+	 * Performs the given query on the given queryable and returns an iterator over the result.
+	 * Unlike {@link IQueryable#query(IQuery, IProgressMonitor)}, the result is not collected
+	 * up front when the queryable is an {@link IIndexProvider} and the query is created by
+	 * this class. Elements are then matched as the iterator is consumed, pulling candidates
+	 * from the queryable, or from each queryable of a compound queryable, one at a time. A
+	 * client that stops after the first match, or that iterates a limit query, only evaluates
+	 * the candidates it needs.
+	 * <p>
+	 * The returned iterator must be consumed before the query is performed again.
+	 * </p>
+	 * 
+	 * @param queryable The queryable to perform the query on
+	 * @param query The query to perform
+	 * @param monitor a progress monitor for queries that cannot be evaluated lazily, or
+	 *    <code>null</code> if progress reporting is not desired
+	 * @return An iterator over the elements that satisfy the query
+	 * @since 2.4
+	 */
+	public static <T> Iterator<T> iterator(IQueryable<T> queryable, IQuery<T> query, IProgressMonitor monitor) {
+		if (queryable instanceof IIndexProvider<?>) {
+			@SuppressWarnings("unchecked")
+			IIndexProvider<T> indexProvider = (IIndexProvider<T>) queryable;
+			if (query instanceof ExpressionMatchQuery<?>)
+				return ((ExpressionMatchQuery<T>) query).iterator(indexProvider);
+			if (query instanceof ExpressionQuery<?>)
+				return ((ExpressionQuery<T>) query).iterator(indexProvider);
+		}
+		return queryable.query(query, monitor).iterator();
+	}
+
 	/**
 	 * Creates a compound query that combines the given queries. If all queries
 	 * are candidate match queries, then the queries will be concatenated as a
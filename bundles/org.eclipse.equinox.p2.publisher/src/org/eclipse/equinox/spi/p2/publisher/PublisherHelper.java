@@ -113,9 +113,8 @@ public class PublisherHelper {
 				descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, Long.toString(pathOnDisk.length()));
 				if (info == null || (info.getArtifactOptions() & IPublisherInfo.A_NO_MD5) == 0) {
 					try {
-						String md5 = ChecksumProducer.computeMD5(pathOnDisk);
-						if (md5 != null)
-							descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_MD5, md5);
+						Map<String, String> checksums = ChecksumProducer.computeChecksums(pathOnDisk, ChecksumProducer.DEFAULT_ALGORITHMS);
+						ChecksumProducer.setChecksums(descriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM, checksums);
 					} catch (IOException e) {
 						// don't care if failed to compute checksum
 						// TODO provide message?
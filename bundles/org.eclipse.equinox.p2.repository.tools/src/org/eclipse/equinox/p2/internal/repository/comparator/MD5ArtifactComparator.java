@@ -11,8 +11,11 @@
 
 package org.eclipse.equinox.p2.internal.repository.comparator;
 
+import java.util.Map;
+import java.util.Map.Entry;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumProducer;
 import org.eclipse.equinox.p2.internal.repository.tools.Messages;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
@@ -20,8 +23,9 @@ import org.eclipse.equinox.p2.repository.tools.comparator.IArtifactComparator;
 import org.eclipse.osgi.util.NLS;
 
 /**
- * A comparator that compares two artifacts by checking the MD5 checksum
- * recorded in the artifact descriptor. This comparator doesn't actually compute MD5
+ * A comparator that compares two artifacts by checking the download checksums
+ * recorded in the artifact descriptors, MD5 as well as any other algorithm both
+ * descriptors have a checksum for. This comparator doesn't actually compute
  * checksums directly.
  */
 public class MD5ArtifactComparator implements IArtifactComparator {
@@ -30,21 +34,31 @@ public class MD5ArtifactComparator implements IArtifactComparator {
 
 	@Override
 	public IStatus compare(IArtifactRepository source, IArtifactDescriptor sourceDescriptor, IArtifactRepository destination, IArtifactDescriptor destDescriptor) {
-		String sourceMD5 = sourceDescriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5);
-		String destMD5 = destDescriptor.getProperty(IArtifactDescriptor.DOWNLOAD_MD5);
+		Map<String, String> sourceChecksums = ChecksumProducer.getChecksums(sourceDescriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM);
+		Map<String, String> destChecksums = ChecksumProducer.getChecksums(destDescriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM);
 
-		if (sourceMD5 == null && destMD5 == null)
+		if (sourceChecksums.isEmpty() && destChecksums.isEmpty())
 			return new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.info_noMD5Infomation, sourceDescriptor));
 
-		if (sourceMD5 == null)
+		if (sourceChecksums.isEmpty())
 			return new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.info_noMD5InRepository, source, sourceDescriptor));
 
-		if (destMD5 == null)
+		if (destChecksums.isEmpty())
 			return new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.info_noMD5InRepository, destination, destDescriptor));
 
-		if (sourceMD5.equals(destMD5))
-			return Status.OK_STATUS;
-
-		return new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.warning_differentMD5, new Object[] {URIUtil.toUnencodedString(sourceDescriptor.getRepository().getLocation()), URIUtil.toUnencodedString(destDescriptor.getRepository().getLocation()), sourceDescriptor}));
+		String sourceLocation = URIUtil.toUnencodedString(sourceDescriptor.getRepository().getLocation());
+		String destLocation = URIUtil.toUnencodedString(destDescriptor.getRepository().getLocation());
+		boolean compared = false;
+		for (Entry<String, String> checksum : sourceChecksums.entrySet()) {
+			String destChecksum = destChecksums.get(checksum.getKey());
+			if (destChecksum == null)
+				continue;
+			if (!checksum.getValue().equalsIgnoreCase(destChecksum))
+				return new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.warning_differentMD5, new Object[] {sourceLocation, destLocation, sourceDescriptor}));
+			compared = true;
+		}
+		if (!compared)
+			return new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.info_noCommonChecksum, new Object[] {sourceLocation, destLocation, sourceDescriptor}));
+		return Status.OK_STATUS;
 	}
 }
@@ -12,7 +12,10 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.internal.repository.mirroring;
 
+import java.net.URI;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
 import org.eclipse.equinox.internal.p2.artifact.repository.RawMirrorRequest;
@@ -48,6 +51,9 @@ public class Mirroring {
 	private Transport transport;
 	private boolean includePacked = true;
 	private boolean mirrorProperties = false;
+	private int threads = 1;
+	private int maxConnectionsPerHost = 0;
+	private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
 
 	private IArtifactComparator getComparator() {
 		if (comparator == null)
@@ -85,6 +91,23 @@ public class Mirroring {
 		this.mirrorProperties = properties;
 	}
 
+	/**
+	 * Sets the number of artifacts that are mirrored at the same time. The default
+	 * of 1 mirrors the artifacts one after the other on the calling thread.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Limits the number of concurrent downloads from a single host when mirroring
+	 * with more than one thread. A value of 0 or less leaves the downloads bounded
+	 * by the number of threads only.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
 	public MultiStatus run(boolean failOnError, boolean verbose) {
 		if (!destination.isModifiable())
 			throw new IllegalStateException(NLS.bind(Messages.exception_destinationNotModifiable, destination.getLocation()));
@@ -104,17 +127,21 @@ public class Mirroring {
 			compareExclusions = exclusions.toUnmodifiableSet();
 		}
 
-		while (keys.hasNext()) {
-			IArtifactKey key = keys.next();
-			IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(key);
-			for (int j = 0; j < descriptors.length; j++) {
-				IStatus result = mirror(descriptors[j], verbose);
-				//Only log INFO and WARNING if we want verbose logging. Always log ERRORs
-				if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
-					multiStatus.add(result);
-				//stop mirroring as soon as we have an error
-				if (failOnError && multiStatus.getSeverity() == IStatus.ERROR)
-					return multiStatus;
+		if (threads > 1) {
+			List<IArtifactDescriptor> descriptors = new ArrayList<>();
+			while (keys.hasNext())
+				descriptors.addAll(Arrays.asList(source.getArtifactDescriptors(keys.next())));
+			if (!mirrorConcurrently(descriptors, multiStatus, failOnError, verbose))
+				return multiStatus;
+		} else {
+			while (keys.hasNext()) {
+				IArtifactKey key = keys.next();
+				IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(key);
+				for (int j = 0; j < descriptors.length; j++) {
+					IStatus result = mirror(descriptors[j], verbose, comparatorLog);
+					if (!addResult(multiStatus, result, failOnError, verbose))
+						return multiStatus;
+				}
 			}
 		}
 
@@ -143,7 +170,94 @@ public class Mirroring {
 		return multiStatus;
 	}
 
-	private IStatus mirror(IArtifactDescriptor sourceDescriptor, boolean verbose) {
+	/*
+	 * Adds the result of mirroring one descriptor and answers whether mirroring should go on.
+	 */
+	private boolean addResult(MultiStatus multiStatus, IStatus result, boolean failOnError, boolean verbose) {
+		//Only log INFO and WARNING if we want verbose logging. Always log ERRORs
+		if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
+			multiStatus.add(result);
+		//stop mirroring as soon as we have an error
+		return !failOnError || multiStatus.getSeverity() != IStatus.ERROR;
+	}
+
+	/*
+	 * Mirrors the descriptors on a pool of worker threads. The results and the comparator log
+	 * entries are collected per descriptor and handed on in the order of the descriptors on
+	 * the calling thread, so the outcome reads the same as a sequential run and the logs are
+	 * never used by more than one thread. Answers whether mirroring should go on.
+	 */
+	private boolean mirrorConcurrently(List<IArtifactDescriptor> descriptors, MultiStatus multiStatus, final boolean failOnError, final boolean verbose) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, descriptors.size())), new ThreadFactory() {
+			private int count = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "p2 mirroring " + ++count); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final AtomicBoolean failed = new AtomicBoolean();
+		List<Future<IStatus>> results = new ArrayList<>(descriptors.size());
+		List<BufferedMirrorLog> logs = new ArrayList<>(descriptors.size());
+		try {
+			for (final IArtifactDescriptor descriptor : descriptors) {
+				final BufferedMirrorLog log = comparatorLog != null ? new BufferedMirrorLog() : null;
+				logs.add(log);
+				results.add(executor.submit(() -> {
+					//do not start new work once an error ends the mirroring
+					if (failOnError && failed.get())
+						return null;
+					try {
+						IStatus result = mirror(descriptor, verbose, log);
+						if (result.getSeverity() == IStatus.ERROR)
+							failed.set(true);
+						return result;
+					} catch (RuntimeException e) {
+						failed.set(true);
+						throw e;
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				IStatus result;
+				try {
+					result = results.get(i).get();
+				} catch (ExecutionException e) {
+					result = new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.Mirroring_failed, descriptors.get(i)), e.getCause());
+				}
+				//skipped because a descriptor further on failed, keep going until that failure is reported
+				if (result == null)
+					continue;
+				if (logs.get(i) != null)
+					logs.get(i).replay(comparatorLog);
+				if (!addResult(multiStatus, result, failOnError, verbose))
+					return false;
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failed.set(true);
+			multiStatus.add(new Status(IStatus.CANCEL, Activator.ID, Messages.Mirroring_interrupted, e));
+			return false;
+		} finally {
+			//let the running downloads complete so that nothing is written to the destination after we return
+			executor.shutdown();
+			boolean interrupted = false;
+			while (!executor.isTerminated()) {
+				try {
+					executor.awaitTermination(1, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private IStatus mirror(IArtifactDescriptor sourceDescriptor, boolean verbose, IArtifactMirrorLog log) {
 		if (!includePacked && IArtifactDescriptor.FORMAT_PACKED.equals(sourceDescriptor.getProperty(IArtifactDescriptor.FORMAT)))
 			return Status.OK_STATUS;
 
@@ -158,14 +272,14 @@ public class Mirroring {
 		if (comparing) {
 			if (baselineDescriptor != null) {
 				//compare source & baseline
-				compareStatus.add(compare(baseline, baselineDescriptor, source, sourceDescriptor));
+				compareStatus.add(compare(baseline, baselineDescriptor, source, sourceDescriptor, log));
 				//compare baseline & destination
 				if (destination.contains(baselineDescriptor)) {
-					compareStatus.add(compareToDestination(baselineDescriptor));
+					compareStatus.add(compareToDestination(baselineDescriptor, log));
 					return compareStatus;
 				}
 			} else if (destination.contains(targetDescriptor)) {
-				compareStatus.add(compareToDestination(sourceDescriptor));
+				compareStatus.add(compareToDestination(sourceDescriptor, log));
 				return compareStatus;
 			}
 		}
@@ -196,9 +310,10 @@ public class Mirroring {
 	 * 
 	 * Callers should verify the ProvisionException was thrown due to the artifact existing in the destination before invoking this method.
 	 * @param descriptor
+	 * @param log the log for the comparison result, may be <code>null</code>
 	 * @return the status of the compare
 	 */
-	private IStatus compareToDestination(IArtifactDescriptor descriptor) {
+	private IStatus compareToDestination(IArtifactDescriptor descriptor, IArtifactMirrorLog log) {
 		IArtifactDescriptor[] destDescriptors = destination.getArtifactDescriptors(descriptor.getArtifactKey());
 		IArtifactDescriptor destDescriptor = null;
 		for (int i = 0; destDescriptor == null && i < destDescriptors.length; i++) {
@@ -207,13 +322,13 @@ public class Mirroring {
 		}
 		if (destDescriptor == null)
 			return new Status(IStatus.INFO, Activator.ID, ProvisionException.ARTIFACT_EXISTS, Messages.Mirroring_noMatchingDescriptor, null);
-		return compare(source, descriptor, destination, destDescriptor);
+		return compare(source, descriptor, destination, destDescriptor, log);
 	}
 
-	private IStatus compare(IArtifactRepository sourceRepository, IArtifactDescriptor sourceDescriptor, IArtifactRepository destRepository, IArtifactDescriptor destDescriptor) {
+	private IStatus compare(IArtifactRepository sourceRepository, IArtifactDescriptor sourceDescriptor, IArtifactRepository destRepository, IArtifactDescriptor destDescriptor, IArtifactMirrorLog log) {
 		IStatus comparison = getComparator().compare(sourceRepository, sourceDescriptor, destRepository, destDescriptor);
-		if (comparatorLog != null && !comparison.isOK())
-			comparatorLog.log(sourceDescriptor, comparison);
+		if (log != null && !comparison.isOK())
+			log.log(sourceDescriptor, comparison);
 		return comparison;
 	}
 
@@ -221,10 +336,32 @@ public class Mirroring {
 	 * Create, and execute a MirrorRequest for a given descriptor.
 	 */
 	private IStatus downloadArtifact(IArtifactRepository sourceRepo, IArtifactDescriptor destDescriptor, IArtifactDescriptor srcDescriptor) {
-		RawMirrorRequest request = new RawMirrorRequest(srcDescriptor, destDescriptor, destination, transport);
-		request.perform(sourceRepo, new NullProgressMonitor());
+		Semaphore permits = getHostPermits(srcDescriptor.getRepository() != null ? srcDescriptor.getRepository() : sourceRepo);
+		if (permits != null)
+			permits.acquireUninterruptibly();
+		try {
+			RawMirrorRequest request = new RawMirrorRequest(srcDescriptor, destDescriptor, destination, transport);
+			request.perform(sourceRepo, new NullProgressMonitor());
+
+			return request.getResult();
+		} finally {
+			if (permits != null)
+				permits.release();
+		}
+	}
 
-		return request.getResult();
+	/*
+	 * Answers the permits for connections to the host of the given repository, or null
+	 * when the connections are not limited.
+	 */
+	private Semaphore getHostPermits(IArtifactRepository repository) {
+		if (threads <= 1 || maxConnectionsPerHost <= 0 || maxConnectionsPerHost >= threads)
+			return null;
+		URI location = repository.getLocation();
+		String host = location != null ? location.getHost() : null;
+		if (host == null)
+			return null;
+		return hostPermits.computeIfAbsent(host.toLowerCase() + ':' + location.getPort(), key -> new Semaphore(maxConnectionsPerHost));
 	}
 
 	public void setArtifactKeys(IArtifactKey[] keys) {
@@ -318,6 +455,40 @@ public class Mirroring {
 		return status;
 	}
 
+	/*
+	 * Collects the entries logged while mirroring one descriptor on a worker thread,
+	 * to be handed on to the actual log in order.
+	 */
+	private static class BufferedMirrorLog implements IArtifactMirrorLog {
+		private final List<IArtifactDescriptor> descriptors = new ArrayList<>(1);
+		private final List<IStatus> statuses = new ArrayList<>(1);
+
+		@Override
+		public void log(IArtifactDescriptor descriptor, IStatus status) {
+			descriptors.add(descriptor);
+			statuses.add(status);
+		}
+
+		@Override
+		public void log(IStatus status) {
+			log(null, status);
+		}
+
+		@Override
+		public void close() {
+			// nothing to release
+		}
+
+		void replay(IArtifactMirrorLog log) {
+			for (int i = 0; i < statuses.size(); i++) {
+				if (descriptors.get(i) != null)
+					log.log(descriptors.get(i), statuses.get(i));
+				else
+					log.log(statuses.get(i));
+			}
+		}
+	}
+
 	// Simple comparator for ArtifactDescriptors
 	protected class ArtifactDescriptorComparator implements Comparator<IArtifactDescriptor> {
 
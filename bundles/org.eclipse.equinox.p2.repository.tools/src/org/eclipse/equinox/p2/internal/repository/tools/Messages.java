@@ -61,10 +61,13 @@ public class Messages extends NLS {
 	public static String Mirroring_ValidationError;
 	public static String Mirroring_missingDescriptor;
 	public static String Mirroring_differentDescriptorProperty;
+	public static String Mirroring_failed;
+	public static String Mirroring_interrupted;
 
 	public static String invalidComparatorId;
 	public static String info_noMD5Infomation;
 	public static String info_noMD5InRepository;
+	public static String info_noCommonChecksum;
 	public static String warning_differentMD5;
 
 	static {
@@ -53,6 +53,8 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 	private String[] rootIUs = null;
 	private boolean includePacked = true;
 	private boolean mirrorProperties = false;
+	private int threads = 1;
+	private int maxConnectionsPerHost = 0;
 
 	private File mirrorLogFile; // file to log mirror output to (optional)
 	private File comparatorLogFile; // file to comparator output to (optional)
@@ -161,6 +163,10 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 				rootIUs = getArrayArgsFromString(arg, ","); //$NON-NLS-1$
 			} else if (args[i - 1].equalsIgnoreCase("-references")) {//$NON-NLS-1$
 				mirrorReferences = Boolean.parseBoolean(args[i]);
+			} else if (args[i - 1].equalsIgnoreCase("-threads")) { //$NON-NLS-1$
+				threads = Integer.parseInt(arg);
+			} else if (args[i - 1].equalsIgnoreCase("-maxConnectionsPerHost")) { //$NON-NLS-1$
+				maxConnectionsPerHost = Integer.parseInt(arg);
 			} else {
 				try {
 					if (args[i - 1].equalsIgnoreCase("-source")) { //$NON-NLS-1$
@@ -242,6 +248,8 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 		mirror.setTransport((Transport) agent.getService(Transport.SERVICE_NAME));
 		mirror.setIncludePacked(includePacked);
 		mirror.setMirrorProperties(mirrorProperties);
+		mirror.setThreads(threads);
+		mirror.setMaxConnectionsPerHost(maxConnectionsPerHost);
 
 		// If IUs have been specified then only they should be mirrored, otherwise mirror everything.
 		if (iusSpecified)
@@ -477,4 +485,18 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 	public void setMirrorProperties(boolean mirrorProperties) {
 		this.mirrorProperties = mirrorProperties;
 	}
+
+	/*
+	 * Set the number of artifacts that are mirrored concurrently
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/*
+	 * Set the maximum number of concurrent downloads from a single host
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
 }
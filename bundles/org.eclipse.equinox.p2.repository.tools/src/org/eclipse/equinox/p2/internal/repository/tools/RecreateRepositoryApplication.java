@@ -122,9 +122,8 @@ public class RecreateRepositoryApplication extends AbstractApplication {
 				newDescriptor.setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, size);
 
 				try {
-					String md5 = ChecksumProducer.computeMD5(artifactFile);
-					if (md5 != null)
-						newDescriptor.setProperty(IArtifactDescriptor.DOWNLOAD_MD5, md5);
+					Map<String, String> checksums = ChecksumProducer.computeChecksums(artifactFile, ChecksumProducer.DEFAULT_ALGORITHMS);
+					ChecksumProducer.setChecksums(newDescriptor, IArtifactDescriptor.DOWNLOAD_CHECKSUM, checksums);
 				} catch (IOException e) {
 					// don't care if failed to compute checksum
 					// TODO provide message?
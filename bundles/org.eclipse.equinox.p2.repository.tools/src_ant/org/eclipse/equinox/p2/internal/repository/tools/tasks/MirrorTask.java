@@ -146,4 +146,18 @@ public class MirrorTask extends AbstractRepositoryTask {
 	public void setMirrorProperties(boolean value) {
 		((MirrorApplication) application).setMirrorProperties(value);
 	}
+
+	/*
+	 * Set the number of artifacts that are mirrored concurrently.
+	 */
+	public void setThreads(int value) {
+		((MirrorApplication) application).setThreads(value);
+	}
+
+	/*
+	 * Set the maximum number of concurrent downloads from a single host.
+	 */
+	public void setMaxConnectionsPerHost(int value) {
+		((MirrorApplication) application).setMaxConnectionsPerHost(value);
+	}
 }
@@ -67,12 +67,18 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 	}
 
 	private synchronized static SAXParserFactory acquireXMLParsing(BundleContext context) {
-		if (xmlTracker == null) {
-			xmlTracker = new ServiceTracker<SAXParserFactory, SAXParserFactory>(context, SAXParserFactory.class, null);
-			xmlTracker.open();
+		SAXParserFactory factory;
+		if (context == null) {
+			// Not running in a framework, e.g. when benchmarked, so use the default factory of the platform
+			factory = SAXParserFactory.newInstance();
+		} else {
+			if (xmlTracker == null) {
+				xmlTracker = new ServiceTracker<SAXParserFactory, SAXParserFactory>(context, SAXParserFactory.class, null);
+				xmlTracker.open();
+			}
+			factory = xmlTracker.getService();
 		}
 		// FEATURE_SECURE_PROCESSING is documented as must be supported by all implementations
-		SAXParserFactory factory = xmlTracker.getService();
 		try {
 			factory.setFeature(javax.xml.XMLConstants.FEATURE_SECURE_PROCESSING, true);
 		} catch (ParserConfigurationException | SAXNotRecognizedException | SAXNotSupportedException e) {
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository;
+
+import ie.wombat.jbdiff.JBPatch;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Applies JBDiff deltas to cache files. This class is only loaded when delta refresh
+ * is enabled, so that the cache manager works without the optional JBDiff bundle.
+ */
+class CacheDeltaPatcher {
+
+	private CacheDeltaPatcher() {
+		// static helper
+	}
+
+	/**
+	 * Returns the result of applying the given delta to the base file.
+	 */
+	static byte[] patch(File base, byte[] delta) throws IOException {
+		byte[] baseBytes = Files.readAllBytes(base.toPath());
+		return JBPatch.bspatch(baseBytes, baseBytes.length, delta);
+	}
+}
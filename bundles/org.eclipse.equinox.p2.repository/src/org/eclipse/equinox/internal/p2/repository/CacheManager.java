@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2017 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,11 @@ package org.eclipse.equinox.internal.p2.repository;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.EventObject;
 import java.util.HashSet;
 import org.eclipse.core.runtime.*;
@@ -34,6 +39,14 @@ import org.eclipse.osgi.util.NLS;
  * Using the bus listeners will allow the manager to listen for repository
  * events. When a repository is removed, it will remove the cache file if one
  * was created for the repository.
+ * 
+ * A stale cache file is refreshed with a conditional download, using the entity tag
+ * the server reported for the cached copy, so that unchanged content is not transferred
+ * again. When {@link #PROP_DELTA_REFRESH} is set, a stale cache file is first refreshed
+ * from a JBDiff delta that the repository may publish for the cached version, see
+ * {@link #updateCache(File, URI, long, SubMonitor)}. The result of a delta must match
+ * the MD5 digest the repository publishes for the current version of the file, otherwise
+ * the file is downloaded in full.
  */
 public class CacheManager {
 	/**
@@ -41,6 +54,11 @@ public class CacheManager {
 	 */
 	public static final String SERVICE_NAME = CacheManager.class.getName();
 
+	/**
+	 * Property that enables refreshing stale cache files from published deltas.
+	 */
+	public static final String PROP_DELTA_REFRESH = "eclipse.p2.cache.deltaRefresh"; //$NON-NLS-1$
+
 	private final IAgentLocation agentLocation;
 
 	private final Transport transport;
@@ -76,6 +94,10 @@ public class CacheManager {
 	private static final String DOWNLOADING = "downloading"; //$NON-NLS-1$
 	private static final String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
 	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	private static final String ENTITY_TAG_EXTENSION = ".etag"; //$NON-NLS-1$
+	private static final String DELTA_FOLDER_SUFFIX = ".delta"; //$NON-NLS-1$
+	private static final String DELTA_EXTENSION = ".jbdiff"; //$NON-NLS-1$
+	private static final String DIGEST_EXTENSION = ".md5"; //$NON-NLS-1$
 
 	private final HashSet<String> knownPrefixes = new HashSet<String>(5);
 
@@ -273,6 +295,8 @@ public class CacheManager {
 			for (int i = 0; i < cacheFiles.length; i++) {
 				// delete the cache file if it exists
 				safeDelete(cacheFiles[i]);
+				safeDelete(getEntityTagFile(cacheFiles[i]));
+				safeDelete(getDigestFile(cacheFiles[i]));
 				// delete a resumable download if it exists
 				safeDelete(new File(new File(cacheFiles[i].getParentFile(), DOWNLOADING), cacheFiles[i].getName()));
 			}
@@ -321,6 +345,145 @@ public class CacheManager {
 		return new File(dataAreaFile, Integer.toString(hashCode));
 	}
 
+	private static File getEntityTagFile(File cacheFile) {
+		return new File(cacheFile.getParentFile(), cacheFile.getName() + ENTITY_TAG_EXTENSION);
+	}
+
+	/**
+	 * Returns the content of a file that records the entity tag or the digest of a cache
+	 * file, or <code>null</code> if there is none.
+	 */
+	private static String readSideFile(File sideFile) {
+		if (!sideFile.exists())
+			return null;
+		try {
+			return new String(Files.readAllBytes(sideFile.toPath()), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			// a missing entity tag or digest just means the file is downloaded unconditionally
+			return null;
+		}
+	}
+
+	private void writeSideFile(File sideFile, String content) {
+		if (content == null) {
+			safeDelete(sideFile);
+			return;
+		}
+		try {
+			Files.write(sideFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			safeDelete(sideFile);
+		}
+	}
+
+	private static boolean isDeltaRefreshEnabled() {
+		return Activator.getContext() != null && Boolean.parseBoolean(Activator.getContext().getProperty(PROP_DELTA_REFRESH));
+	}
+
+	private static File getDigestFile(File cacheFile) {
+		return new File(cacheFile.getParentFile(), cacheFile.getName() + DIGEST_EXTENSION);
+	}
+
+	private static MessageDigest createDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance("MD5"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	private static String toHexString(byte[] digest) {
+		StringBuilder result = new StringBuilder(digest.length * 2);
+		for (byte b : digest)
+			result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return result.toString();
+	}
+
+	/**
+	 * Returns the MD5 digest of the given cache file. The digest is recorded when the
+	 * cache file is written, so the file is only read if it was written before delta
+	 * refresh was enabled.
+	 */
+	private String getCachedDigest(File cacheFile) throws IOException {
+		File digestFile = getDigestFile(cacheFile);
+		String digest = readSideFile(digestFile);
+		if (digest != null)
+			return digest;
+		MessageDigest md5 = createDigest();
+		try (InputStream input = new BufferedInputStream(new FileInputStream(cacheFile))) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1)
+				md5.update(buffer, 0, read);
+		}
+		digest = toHexString(md5.digest());
+		writeSideFile(digestFile, digest);
+		return digest;
+	}
+
+	/**
+	 * Returns the MD5 digest the repository publishes for the current version of the remote
+	 * file, in a file next to it, i.e. <code>content.jar.md5</code>, or <code>null</code>
+	 * if there is none.
+	 */
+	private String getPublishedDigest(URI remoteFile, IProgressMonitor monitor) {
+		ByteArrayOutputStream digest = new ByteArrayOutputStream();
+		if (!transport.download(URI.create(remoteFile.toString() + DIGEST_EXTENSION), digest, monitor).isOK())
+			return null;
+		// accept the output of md5sum, which is followed by the file name
+		String[] tokens = new String(digest.toByteArray(), StandardCharsets.US_ASCII).trim().split("\\s+"); //$NON-NLS-1$
+		return tokens[0].length() == 32 ? tokens[0].toLowerCase() : null;
+	}
+
+	/**
+	 * Attempts to bring the given cache file up to date by applying a delta published for it.
+	 * Deltas are published in a folder next to the remote file, named after the MD5 digest of
+	 * the version they apply to, i.e. <code>content.jar.delta/&lt;md5&gt;.jbdiff</code>.
+	 * @return <code>true</code> if the cache file was updated, <code>false</code> if it
+	 * has to be downloaded in full.
+	 */
+	private boolean updateCacheFromDelta(File cacheFile, File tempFile, URI remoteFile, long lastModifiedRemote, IProgressMonitor monitor) {
+		SubMonitor sub = SubMonitor.convert(monitor, 2);
+		String expected;
+		try {
+			// most repositories publish no digest or delta, so a failure is not reported
+			expected = getPublishedDigest(remoteFile, sub.newChild(1));
+			if (expected == null)
+				return false;
+			String current = getCachedDigest(cacheFile);
+			if (!expected.equals(current)) {
+				ByteArrayOutputStream delta = new ByteArrayOutputStream();
+				URI deltaLocation = URI.create(remoteFile.toString() + DELTA_FOLDER_SUFFIX + '/' + current + DELTA_EXTENSION);
+				if (!transport.download(deltaLocation, delta, sub.newChild(1)).isOK())
+					return false;
+				byte[] patched = CacheDeltaPatcher.patch(cacheFile, delta.toByteArray());
+				if (!expected.equals(toHexString(createDigest().digest(patched)))) {
+					LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "The delta for " + remoteFile + " does not produce the published content")); //$NON-NLS-1$ //$NON-NLS-2$
+					return false;
+				}
+				Files.write(tempFile.toPath(), patched);
+			}
+		} catch (IOException | RuntimeException | LinkageError e) {
+			// a corrupt delta, or no JBDiff to apply it with
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to apply delta for " + remoteFile, e)); //$NON-NLS-1$
+			safeDelete(tempFile);
+			return false;
+		}
+		if (tempFile.exists()) {
+			safeDelete(cacheFile);
+			if (!tempFile.renameTo(cacheFile)) {
+				safeDelete(tempFile);
+				return false;
+			}
+			writeSideFile(getDigestFile(cacheFile), expected);
+			// the entity tag of the new content is not known, deltas keep refreshing it
+			writeSideFile(getEntityTagFile(cacheFile), null);
+		}
+		if (lastModifiedRemote != -1 && lastModifiedRemote != 0)
+			cacheFile.setLastModified(lastModifiedRemote);
+		return true;
+	}
+
 	private static boolean isURL(URI location) {
 		try {
 			new URL(location.toASCIIString());
@@ -378,6 +541,15 @@ public class CacheManager {
 			bus.removeListener(busListener);
 	}
 
+	private static boolean isNotModified(IStatus result) {
+		return result instanceof DownloadStatus && ((DownloadStatus) result).isNotModified();
+	}
+
+	/**
+	 * Updates the given cache file from the remote file. The cache file is refreshed from a
+	 * published delta if {@link #PROP_DELTA_REFRESH} is set, and otherwise downloaded unless
+	 * the server reports that the entity tag of the cached copy is still current.
+	 */
 	protected void updateCache(File cacheFile, URI remoteFile, long lastModifiedRemote, SubMonitor submonitor) throws FileNotFoundException, IOException, ProvisionException {
 		cacheFile.getParentFile().mkdirs();
 		File downloadDir = new File(cacheFile.getParentFile(), DOWNLOADING);
@@ -388,28 +560,43 @@ public class CacheManager {
 		if (tempFile.exists())
 			safeDelete(tempFile);
 
+		submonitor.setWorkRemaining(1100);
+		if (cacheFile.exists() && isDeltaRefreshEnabled() && updateCacheFromDelta(cacheFile, tempFile, remoteFile, lastModifiedRemote, submonitor.newChild(100)))
+			return;
+		File entityTagFile = getEntityTagFile(cacheFile);
+		String entityTag = cacheFile.exists() ? readSideFile(entityTagFile) : null;
+
 		tempFile.createNewFile();
 
+		// record the digest of the new content while downloading it, for the next delta refresh
+		MessageDigest md5 = isDeltaRefreshEnabled() ? createDigest() : null;
 		StatefulStream stream = null;
 		try {
-			stream = new StatefulStream(new FileOutputStream(tempFile));
+			OutputStream output = new FileOutputStream(tempFile);
+			stream = new StatefulStream(md5 != null ? new DigestOutputStream(output, md5) : output);
 		} catch (Exception e) {
 			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e));
 		}
 		IStatus result = null;
 		try {
 			submonitor.setWorkRemaining(1000);
-			result = transport.download(remoteFile, stream, submonitor.newChild(1000));
+			result = transport.downloadIfChanged(remoteFile, stream, entityTag, submonitor.newChild(1000));
 		} catch (OperationCanceledException e) {
 			// need to pick up the status - a new operation canceled exception is thrown at the end
 			// as status will be CANCEL.
 			result = stream.getStatus();
 		} finally {
 			stream.close();
-			// If there was any problem fetching the file, delete the temp file
-			if (result == null || !result.isOK())
+			// If there was any problem fetching the file, or it was not fetched, delete the temp file
+			if (result == null || !result.isOK() || isNotModified(result))
 				safeDelete(tempFile);
 		}
+		if (isNotModified(result)) {
+			// the cached copy is current, only its time stamp needs to follow the server's file
+			if (lastModifiedRemote != -1 && lastModifiedRemote != 0)
+				cacheFile.setLastModified(lastModifiedRemote);
+			return;
+		}
 		if (result.isOK()) {
 			if (cacheFile.exists())
 				safeDelete(cacheFile);
@@ -418,6 +605,8 @@ public class CacheManager {
 					//local cache file should have the same lastModified as the server's file. bug 324200
 					cacheFile.setLastModified(lastModifiedRemote);
 				}
+				writeSideFile(entityTagFile, result instanceof DownloadStatus ? ((DownloadStatus) result).getEntityTag() : null);
+				writeSideFile(getDigestFile(cacheFile), md5 != null ? toHexString(md5.digest()) : null);
 				return;
 			}
 			result = new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.CacheManage_ErrorRenamingCache, new Object[] {remoteFile.toString(), tempFile.getAbsolutePath(), cacheFile.getAbsolutePath()}));
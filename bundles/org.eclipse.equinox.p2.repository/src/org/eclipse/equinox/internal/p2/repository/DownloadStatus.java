@@ -19,10 +19,23 @@ import org.eclipse.core.runtime.Status;
 public class DownloadStatus extends Status {
 	public static final long UNKNOWN_RATE = -1;
 	public static final long UNKNOWN_SIZE = -1;
+	/**
+	 * The code of a successful status for a conditional download where the
+	 * remote file was not modified, and nothing was downloaded.
+	 * @see Transport#downloadIfChanged(java.net.URI, java.io.OutputStream, String, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public static final int CODE_NOT_MODIFIED = 304;
+	/**
+	 * The code of an error status for a range download that the transport or the
+	 * server cannot serve as a range.
+	 * @see Transport#download(java.net.URI, java.io.OutputStream, long, long, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public static final int CODE_RANGE_NOT_SUPPORTED = 416;
 
 	private long speed = UNKNOWN_RATE;
 	private long fileSize = UNKNOWN_SIZE;
 	private long lastModified = 0;
+	private String entityTag;
 
 	/**
 	 * Constructs a new DownloadStatus with the given attributes.
@@ -75,6 +88,31 @@ public class DownloadStatus extends Status {
 		return lastModified;
 	}
 
+	/**
+	 * Sets the entity tag of the downloaded file.
+	 * @param entityTag the entity tag, or <code>null</code> if unknown
+	 */
+	public void setEntityTag(String entityTag) {
+		this.entityTag = entityTag;
+	}
+
+	/**
+	 * Returns the entity tag of the downloaded file. The entity tag can be passed
+	 * to a later conditional download of the same file.
+	 * @return the entity tag, or <code>null</code> if unknown
+	 */
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	/**
+	 * Returns whether this is the status of a conditional download that found
+	 * the remote file unchanged.
+	 */
+	public boolean isNotModified() {
+		return isOK() && getCode() == CODE_NOT_MODIFIED;
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer(super.toString());
@@ -36,6 +36,8 @@ public class FileInfo {
 
 	private long averageSpeed = UNKNOWN_RATE;
 
+	private String entityTag;
+
 	public FileInfo() {
 		contentType = ""; //$NON-NLS-1$
 		name = ""; //$NON-NLS-1$
@@ -104,6 +106,7 @@ public class FileInfo {
 		setContentType(info.getContentType());
 		setSize(info.getSize());
 		setLastModified(info.getLastModified());
+		setEntityTag(info.getEntityTag());
 	}
 
 	public void reset() {
@@ -111,6 +114,7 @@ public class FileInfo {
 		contentType = null;
 		size = -1;
 		lastModified = 0;
+		entityTag = null;
 	}
 
 	public final void setContentType(String contentType) {
@@ -129,6 +133,22 @@ public class FileInfo {
 		this.size = size;
 	}
 
+	/**
+	 * Returns the entity tag the server reported for the file.
+	 * @return the entity tag, or <code>null</code> if unknown
+	 */
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	/**
+	 * Set the entity tag the server reported for the file.
+	 * @param entityTag the entity tag, or <code>null</code> if unknown
+	 */
+	public void setEntityTag(String entityTag) {
+		this.entityTag = entityTag;
+	}
+
 	/**
 	 * Set the average transfer rate measured in bytes/second
 	 * @param averageSpeed rate in bytes/second, or {@link #UNKNOWN_RATE}
@@ -87,6 +87,11 @@ public class Messages extends NLS {
 
 	public static String RepositoryTransport_failedReadRepo;
 
+	public static String Transport_RangeNotSupported_0;
+	public static String SegmentedDownload_ChecksumMismatch_0;
+	public static String SegmentedDownload_Downloading_0;
+	public static String SegmentedDownload_Changed_0;
+
 	static {
 		// initialize resource bundles
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
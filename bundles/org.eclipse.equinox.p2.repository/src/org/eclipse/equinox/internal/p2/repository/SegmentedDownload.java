@@ -0,0 +1,515 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumProducer;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Downloads a large file as several byte ranges that are fetched concurrently, each over
+ * its own connection. Every range is written to a partial file, so a download that failed
+ * or was canceled continues where it stopped the next time instead of starting over.
+ * Once all ranges are complete, the content is verified against the expected checksums,
+ * if there are any, and copied to the target.
+ * <p>
+ * The partial files are locked while they are in use, a second download of the same file
+ * streams it instead. They are kept together with the entity tag and the modification time
+ * the server reported, and discarded when the server reports that the file has changed.
+ * </p><p>
+ * When the transport or the server cannot serve ranges, the file is downloaded as a single
+ * stream.
+ */
+public class SegmentedDownload {
+	private static final String PARTIAL_EXTENSION = ".part"; //$NON-NLS-1$
+	private static final String LOCK_EXTENSION = ".lock"; //$NON-NLS-1$
+	private static final String VALIDATOR_EXTENSION = ".validator"; //$NON-NLS-1$
+	/**
+	 * Number of attempts per segment, each attempt resumes from what was received before.
+	 */
+	private static final int SEGMENT_ATTEMPTS = 3;
+
+	private final Transport transport;
+	private final URI location;
+	private final long size;
+	private final File partialFolder;
+	private int segments = 4;
+	private final Map<String, String> checksums = new HashMap<>();
+
+	/**
+	 * Thrown into the transport when a server ignores the requested range and sends more
+	 * than the range holds.
+	 */
+	static class RangeExceededException extends IOException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Appends the bytes of one range to its partial file, and refuses anything beyond the range.
+	 */
+	private static class SegmentStream extends BufferedOutputStream implements IStateful {
+		private final AtomicLong progress;
+		private long remaining;
+		boolean exceeded;
+		private IStatus status;
+
+		SegmentStream(File part, long remaining, AtomicLong progress) throws FileNotFoundException {
+			super(new FileOutputStream(part, true));
+			this.remaining = remaining;
+			this.progress = progress;
+		}
+
+		@Override
+		public synchronized void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException {
+			if (len > remaining) {
+				exceeded = true;
+				throw new RangeExceededException();
+			}
+			super.write(b, off, len);
+			remaining -= len;
+			progress.addAndGet(len);
+		}
+
+		@Override
+		public IStatus getStatus() {
+			return status;
+		}
+
+		@Override
+		public void setStatus(IStatus status) {
+			this.status = status;
+		}
+	}
+
+	/**
+	 * The entity tag and the modification time of the file that the partial files hold ranges
+	 * of, as far as the server reported them. Ranges of different versions of a file must not
+	 * be put together.
+	 */
+	private static class Validator {
+		private final File file;
+		private String entityTag;
+		private long lastModified;
+		private boolean changed;
+
+		Validator(File file) {
+			this.file = file;
+		}
+
+		/**
+		 * Reads the recorded validator and answers whether there was one.
+		 */
+		boolean read() {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+				String tag = reader.readLine();
+				String modified = reader.readLine();
+				entityTag = tag == null || tag.length() == 0 ? null : tag;
+				lastModified = modified == null || modified.length() == 0 ? 0 : Long.parseLong(modified);
+				return true;
+			} catch (IOException | NumberFormatException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Forgets the validator, for partial files that are started over.
+		 */
+		synchronized void reset() throws IOException {
+			entityTag = null;
+			lastModified = 0;
+			changed = false;
+			write();
+		}
+
+		/**
+		 * Checks the validator of a response against the one of the ranges received so far
+		 * and records it if it was not known yet. Answers <code>false</code> if the file has
+		 * changed in between.
+		 */
+		synchronized boolean accept(IStatus status) {
+			if (!(status instanceof DownloadStatus))
+				return !changed;
+			String tag = ((DownloadStatus) status).getEntityTag();
+			long modified = ((DownloadStatus) status).getLastModified();
+			if ((tag != null && entityTag != null && !tag.equals(entityTag)) || (modified > 0 && lastModified > 0 && modified != lastModified))
+				changed = true;
+			if (changed)
+				return false;
+			if ((tag != null && entityTag == null) || (modified > 0 && lastModified == 0)) {
+				if (tag != null)
+					entityTag = tag;
+				if (modified > 0)
+					lastModified = modified;
+				try {
+					write();
+				} catch (IOException e) {
+					// without a validator the partial files are discarded the next time
+					file.delete();
+				}
+			}
+			return true;
+		}
+
+		synchronized boolean isChanged() {
+			return changed;
+		}
+
+		private void write() throws IOException {
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+				writer.write(entityTag == null ? "" : entityTag); //$NON-NLS-1$
+				writer.write('\n');
+				writer.write(lastModified == 0 ? "" : Long.toString(lastModified)); //$NON-NLS-1$
+				writer.write('\n');
+			}
+		}
+
+		void delete() {
+			file.delete();
+		}
+	}
+
+	/**
+	 * A monitor for the segment downloads that reports the cancellation of the whole download.
+	 */
+	private static class SegmentMonitor extends NullProgressMonitor {
+		private final AtomicBoolean canceled;
+
+		SegmentMonitor(AtomicBoolean canceled) {
+			this.canceled = canceled;
+		}
+
+		@Override
+		public boolean isCanceled() {
+			return canceled.get();
+		}
+
+		@Override
+		public void setCanceled(boolean value) {
+			canceled.set(value);
+		}
+	}
+
+	/**
+	 * @param transport the transport to download the ranges with
+	 * @param location the file to download
+	 * @param size the size of the file
+	 * @param partialFolder the folder that keeps the ranges of unfinished downloads
+	 */
+	public SegmentedDownload(Transport transport, URI location, long size, File partialFolder) {
+		this.transport = transport;
+		this.location = location;
+		this.size = size;
+		this.partialFolder = partialFolder;
+	}
+
+	/**
+	 * Sets the number of ranges that are downloaded concurrently.
+	 */
+	public void setSegments(int segments) {
+		this.segments = Math.max(1, segments);
+	}
+
+	/**
+	 * Sets the checksums that the downloaded content must have, by algorithm.
+	 */
+	public void setChecksums(Map<String, String> checksums) {
+		this.checksums.clear();
+		this.checksums.putAll(checksums);
+	}
+
+	/**
+	 * Performs the download, writing into the target output stream. If the <code>target</code>
+	 * is an instance of {@link IStateful} the resulting status is also set on the target.
+	 *
+	 * @returns IStatus, that is a {@link DownloadStatus} on success.
+	 */
+	public IStatus download(OutputStream target, IProgressMonitor monitor) {
+		String key = getKey();
+		if (size <= 0 || key == null)
+			return transport.download(location, target, monitor);
+		SubMonitor subMonitor = SubMonitor.convert(monitor, NLS.bind(Messages.SegmentedDownload_Downloading_0, location), 1000);
+		File lockFile = new File(partialFolder, key + LOCK_EXTENSION);
+		FileLock lock = null;
+		try {
+			long segmentSize = (size + segments - 1) / segments;
+			int count = (int) ((size + segmentSize - 1) / segmentSize);
+			File[] parts = new File[count];
+			for (int i = 0; i < count; i++)
+				parts[i] = new File(partialFolder, key + '_' + i + '_' + count + PARTIAL_EXTENSION);
+			partialFolder.mkdirs();
+			lock = lock(lockFile);
+			if (lock == null)
+				// another download of the same file is using the partial files
+				return transport.download(location, target, subMonitor.newChild(1000));
+
+			Validator validator = new Validator(new File(partialFolder, key + VALIDATOR_EXTENSION));
+			if (!validator.read()) {
+				// there is no telling which version of the file the ranges belong to
+				deleteParts(parts);
+				validator.reset();
+			}
+			long start = System.currentTimeMillis();
+			IStatus result = downloadSegments(parts, segmentSize, validator, subMonitor.newChild(900));
+			if (validator.isChanged()) {
+				// the file has changed on the server, start over once with the new version
+				deleteParts(parts);
+				validator.reset();
+				subMonitor.setWorkRemaining(1000);
+				result = downloadSegments(parts, segmentSize, validator, subMonitor.newChild(900));
+				if (validator.isChanged()) {
+					deleteParts(parts);
+					validator.delete();
+					return statusOn(target, new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.SegmentedDownload_Changed_0, location), null));
+				}
+			}
+			if (result.getCode() == DownloadStatus.CODE_RANGE_NOT_SUPPORTED) {
+				deleteParts(parts);
+				validator.delete();
+				return transport.download(location, target, subMonitor.newChild(100));
+			}
+			if (!result.isOK())
+				return statusOn(target, result);
+
+			Map<String, MessageDigest> digests = new HashMap<>();
+			for (String algorithm : checksums.keySet()) {
+				MessageDigest digest = ChecksumProducer.getMessageDigest(algorithm);
+				if (digest != null)
+					digests.put(algorithm, digest);
+			}
+			// all the checksums are computed in a single pass, before anything reaches the target
+			if (!digests.isEmpty()) {
+				for (File part : parts)
+					copy(part, null, digests.values());
+			}
+			for (Entry<String, MessageDigest> digest : digests.entrySet()) {
+				if (!ChecksumProducer.toHexString(digest.getValue().digest()).equalsIgnoreCase(checksums.get(digest.getKey()))) {
+					// there is no telling which range is broken, start over the next time
+					deleteParts(parts);
+					validator.delete();
+					return statusOn(target, new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.ARTIFACT_MD5_NOT_MATCH, NLS.bind(Messages.SegmentedDownload_ChecksumMismatch_0, location), null));
+				}
+			}
+			for (File part : parts)
+				copy(part, target, Collections.<MessageDigest> emptyList());
+			long end = System.currentTimeMillis();
+			deleteParts(parts);
+			validator.delete();
+
+			DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID, Status.OK_STATUS.getMessage());
+			status.setFileSize(size);
+			status.setTransferRate(size * 1000 / Math.max(end - start, 1));
+			return statusOn(target, status);
+		} catch (IOException e) {
+			return statusOn(target, new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.io_failedRead, location), e));
+		} finally {
+			if (lock != null)
+				release(lock, lockFile);
+			subMonitor.done();
+		}
+	}
+
+	/*
+	 * Answers the name the partial files of this download start with, a digest of the location
+	 * so that the files of different locations never mix, or null if there is no digest.
+	 */
+	private String getKey() {
+		MessageDigest digest = ChecksumProducer.getMessageDigest(ChecksumProducer.SHA_256);
+		if (digest == null)
+			return null;
+		return ChecksumProducer.toHexString(digest.digest(location.toString().getBytes(StandardCharsets.UTF_8))) + '_' + size;
+	}
+
+	/*
+	 * Locks the partial files against other downloads of the same file, in this or in another
+	 * process. Answers null if they are locked already.
+	 */
+	private static FileLock lock(File lockFile) throws IOException {
+		FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		FileLock lock = null;
+		try {
+			lock = channel.tryLock();
+		} catch (OverlappingFileLockException e) {
+			// locked by another download in this process
+		}
+		// a lock file deleted by its previous owner in between no longer guards anything
+		if (lock != null && lockFile.exists())
+			return lock;
+		channel.close();
+		return null;
+	}
+
+	private static void release(FileLock lock, File lockFile) {
+		// delete while still holding the lock, others fail to lock it rather than taking it over
+		lockFile.delete();
+		try {
+			lock.channel().close();
+		} catch (IOException e) {
+			// the lock is released with the channel anyway
+		}
+	}
+
+	private IStatus downloadSegments(final File[] parts, final long segmentSize, final Validator validator, SubMonitor monitor) {
+		// bytes received by this download, in addition to those kept from earlier attempts
+		final AtomicLong progress = new AtomicLong();
+		long resumed = 0;
+		for (int i = 0; i < parts.length; i++) {
+			long length = Math.min(size, (i + 1) * segmentSize) - i * segmentSize;
+			if (parts[i].length() > length)
+				parts[i].delete();
+			resumed += parts[i].length();
+		}
+		final AtomicBoolean canceled = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(parts.length, runnable -> {
+			Thread thread = new Thread(runnable, "p2 segmented download"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<IStatus>> results = new ArrayList<>(parts.length);
+			for (int i = 0; i < parts.length; i++) {
+				final File part = parts[i];
+				final long first = i * segmentSize;
+				final long last = Math.min(size, first + segmentSize) - 1;
+				results.add(executor.submit(() -> downloadSegment(part, first, last, validator, progress, new SegmentMonitor(canceled))));
+			}
+
+			// report the progress of all segments from this thread, monitors are not thread safe
+			long reported = 0;
+			IStatus result = Status.OK_STATUS;
+			for (Future<IStatus> future : results) {
+				IStatus status = null;
+				while (status == null) {
+					if (monitor.isCanceled())
+						canceled.set(true);
+					try {
+						status = future.get(100, TimeUnit.MILLISECONDS);
+					} catch (TimeoutException e) {
+						// report progress and check for cancellation
+					} catch (ExecutionException e) {
+						status = new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.io_failedRead, location), e.getCause());
+					} catch (InterruptedException e) {
+						canceled.set(true);
+						status = Status.CANCEL_STATUS;
+					}
+					long received = (resumed + progress.get()) * 1000 / size;
+					monitor.worked((int) (received - reported));
+					reported = received;
+				}
+				if (status.getCode() == DownloadStatus.CODE_RANGE_NOT_SUPPORTED) {
+					// no point in waiting for the others
+					canceled.set(true);
+					return status;
+				}
+				if (result.isOK() && !status.isOK())
+					result = status;
+			}
+			if (canceled.get())
+				return Status.CANCEL_STATUS;
+			if (!result.isOK() && progress.get() == 0) {
+				// servers that refuse ranges do not necessarily say so, try without ranges
+				return new DownloadStatus(IStatus.ERROR, Activator.ID, DownloadStatus.CODE_RANGE_NOT_SUPPORTED, NLS.bind(Messages.Transport_RangeNotSupported_0, location), null);
+			}
+			return result;
+		} finally {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				// the segments end on their own once canceled
+			}
+		}
+	}
+
+	private IStatus downloadSegment(File part, long first, long last, Validator validator, AtomicLong progress, IProgressMonitor monitor) {
+		long length = last - first + 1;
+		IStatus result = Status.OK_STATUS;
+		for (int attempt = 0; attempt < SEGMENT_ATTEMPTS; attempt++) {
+			long received = part.length();
+			if (received == length)
+				return Status.OK_STATUS;
+			if (monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+			SegmentStream stream = null;
+			try {
+				stream = new SegmentStream(part, length - received, progress);
+				try {
+					result = transport.download(location, stream, first + received, last, monitor);
+				} finally {
+					stream.close();
+				}
+			} catch (OperationCanceledException e) {
+				return Status.CANCEL_STATUS;
+			} catch (IOException e) {
+				result = new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.io_failedRead, location), e);
+			}
+			if (!validator.accept(result)) {
+				// the ranges belong to different versions of the file, stop all of them
+				monitor.setCanceled(true);
+				return Status.CANCEL_STATUS;
+			}
+			if (stream != null && stream.exceeded) {
+				// the range was ignored and the partial file holds content from elsewhere
+				part.delete();
+				return new DownloadStatus(IStatus.ERROR, Activator.ID, DownloadStatus.CODE_RANGE_NOT_SUPPORTED, NLS.bind(Messages.Transport_RangeNotSupported_0, location), null);
+			}
+			if (result.getCode() == DownloadStatus.CODE_RANGE_NOT_SUPPORTED || result.getSeverity() == IStatus.CANCEL)
+				return result;
+		}
+		if (part.length() == length)
+			return Status.OK_STATUS;
+		// keep the partial file, the next download continues from there
+		if (result.isOK())
+			result = new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.io_failedRead, location), null);
+		return result;
+	}
+
+	private static void copy(File part, OutputStream target, Collection<MessageDigest> digests) throws IOException {
+		byte[] buffer = new byte[16 * 1024];
+		try (InputStream in = new FileInputStream(part)) {
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				for (MessageDigest digest : digests)
+					digest.update(buffer, 0, len);
+				if (target != null)
+					target.write(buffer, 0, len);
+			}
+		}
+	}
+
+	private static void deleteParts(File[] parts) {
+		for (File part : parts)
+			part.delete();
+	}
+
+	private static IStatus statusOn(OutputStream target, IStatus status) {
+		if (target instanceof IStateful)
+			((IStateful) target).setStatus(status);
+		return status;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2017 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import java.io.*;
 import java.net.URI;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
+import org.eclipse.osgi.util.NLS;
 
 public abstract class Transport {
 
@@ -48,6 +49,61 @@ public abstract class Transport {
 	 */
 	public abstract IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor);
 
+	/**
+	 * Perform a download of the bytes from <code>startPos</code> up to and including
+	 * <code>endPos</code>, writing into the target output stream. Progress is reported on the
+	 * monitor. If the <code>target</code> is an instance of {@link IStateful} the resulting status
+	 * is also set on the target.
+	 * <p>
+	 * A server may ignore the requested range and send more than was asked for, callers that
+	 * depend on the range should stop reading when they got the expected number of bytes.
+	 * </p><p>
+	 * The default implementation does not support ranges with an end and returns an error
+	 * with the code {@link DownloadStatus#CODE_RANGE_NOT_SUPPORTED}.
+	 * </p>
+	 * 
+	 * @returns IStatus, that is a {@link DownloadStatus} on success.
+	 * @param toDownload URI of file to download
+	 * @param target OutputStream where result is written
+	 * @param startPos the starting position of the download
+	 * @param endPos the last position of the download, or -1 for to the end
+	 * @param monitor where progress should be reported
+	 * @throws OperationCanceledException if the operation was canceled.
+	 * @see SegmentedDownload
+	 */
+	public IStatus download(URI toDownload, OutputStream target, long startPos, long endPos, IProgressMonitor monitor) {
+		if (endPos == -1)
+			return download(toDownload, target, startPos, monitor);
+		DownloadStatus status = new DownloadStatus(IStatus.ERROR, Activator.ID, DownloadStatus.CODE_RANGE_NOT_SUPPORTED, NLS.bind(Messages.Transport_RangeNotSupported_0, toDownload), null);
+		if (target instanceof IStateful)
+			((IStateful) target).setStatus(status);
+		return status;
+	}
+
+	/**
+	 * Perform a conditional download, writing into the target output stream only if the remote
+	 * file no longer has the given entity tag. Progress is reported on the monitor. If the
+	 * <code>target</code> is an instance of {@link IStateful} the resulting status is also set
+	 * on the target.
+	 * <p>
+	 * When the file is unchanged, nothing is written and the returned {@link DownloadStatus}
+	 * reports {@link DownloadStatus#isNotModified()}. Otherwise the file is downloaded, and the
+	 * returned status carries the new entity tag if the server reported one.
+	 * </p><p>
+	 * The default implementation ignores the entity tag and always downloads the file.
+	 * </p>
+	 * 
+	 * @returns IStatus, that is a {@link DownloadStatus} on success.
+	 * @param toDownload URI of file to download
+	 * @param target OutputStream where result is written
+	 * @param entityTag the entity tag of the locally available copy, or <code>null</code>
+	 * @param monitor where progress should be reported
+	 * @throws OperationCanceledException if the operation was canceled.
+	 */
+	public IStatus downloadIfChanged(URI toDownload, OutputStream target, String entityTag, IProgressMonitor monitor) {
+		return download(toDownload, target, monitor);
+	}
+
 	/**
 	 * Perform a stream download, writing into an InputStream that is returned. Performs authentication if needed.
 	 * 
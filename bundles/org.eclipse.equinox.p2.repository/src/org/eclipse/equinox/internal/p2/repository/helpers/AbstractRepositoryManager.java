@@ -18,6 +18,7 @@ import java.io.*;
 import java.lang.ref.SoftReference;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.preferences.IPreferencesService;
 import org.eclipse.equinox.internal.p2.core.helpers.*;
@@ -55,6 +56,48 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		}
 	}
 
+	/**
+	 * Identifies a task that loads repositories on behalf of another thread or task,
+	 * see {@link AbstractRepositoryManager#loadRepositories(URI[], int, MultiStatus, IProgressMonitor)}.
+	 * A task may enter the load locks held by the thread or task it loads for, just like
+	 * a thread may enter the load locks it holds itself.
+	 */
+	private static final class LoadOwner {
+		final Object parent;
+
+		LoadOwner(Object parent) {
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * The exclusive right to load a repository at a location, see {@link AbstractRepositoryManager#enterLoad(URI, IProgressMonitor)}.
+	 */
+	private static final class LoadLock {
+		final Object holder;
+		int depth = 1;
+		/**
+		 * Whether the repository is being read, as opposed to only being locked.
+		 */
+		volatile boolean loading;
+
+		LoadLock(Object holder) {
+			this.holder = holder;
+		}
+	}
+
+	private static final String PROP_LOAD_THREADS = "eclipse.p2.repository.loadThreads"; //$NON-NLS-1$
+	/**
+	 * The maximum number of repositories loaded in parallel by {@link #loadRepositories(URI[], int, MultiStatus, IProgressMonitor)}.
+	 */
+	private static final int LOAD_THREADS = getLoadThreads();
+	/**
+	 * The loader threads shared by all the managers. Nested bulk loads do not add
+	 * threads, the threads that wait for them run the loads no loader thread has
+	 * picked up yet instead.
+	 */
+	private static final ThreadPoolExecutor LOAD_EXECUTOR = createLoadExecutor();
+
 	public static final String ATTR_SUFFIX = "suffix"; //$NON-NLS-1$
 	public static final String EL_FACTORY = "factory"; //$NON-NLS-1$
 	public static final String EL_FILTER = "filter"; //$NON-NLS-1$
@@ -91,7 +134,16 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	/**
 	 * Set used to manage exclusive load locks on repository locations.
 	 */
-	private final Map<URI, Thread> loadLocks = new HashMap<URI, Thread>();
+	private final Map<URI, LoadLock> loadLocks = new HashMap<URI, LoadLock>();
+	/**
+	 * The location each waiting load owner waits for, guarded by {@link #loadLocks}.
+	 */
+	private final Map<Object, URI> loadWaits = new HashMap<Object, URI>();
+	/**
+	 * The owner of the loads of the current thread while it loads on behalf of
+	 * another thread. Other threads own their loads themselves.
+	 */
+	private final ThreadLocal<LoadOwner> loadOwner = new ThreadLocal<LoadOwner>();
 	private final IAgentLocation agentLocation;
 	protected final IProvisioningEventBus eventBus;
 	protected final IProvisioningAgent agent;
@@ -266,8 +318,8 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		Assert.isNotNull(name);
 		Assert.isNotNull(type);
 		IRepository<T> result = null;
+		enterLoad(location, new NullProgressMonitor());
 		try {
-			enterLoad(location, new NullProgressMonitor());
 			boolean loaded = false;
 			try {
 				//repository should not already exist
@@ -323,28 +375,108 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 * if another thread is currently loading at that location. Invocation of this
 	 * method must be followed by a subsequent call to {@link #exitLoad(URI)}.
 	 * 
+	 * A thread re-enters the locations it holds, and a task loading on behalf of
+	 * another thread or task re-enters the locations held by it. When the holder of
+	 * the location waits for a location held by the caller, the two loads refer to
+	 * each other and the load fails instead of waiting forever.
+	 * 
 	 * To avoid deadlock between the loadLock and repositoryLock, this method
 	 * must not be called when repositoryLock is held.
 	 * 
 	 * @param location The location to lock
+	 * @return The lock of the location
 	 */
-	private void enterLoad(URI location, IProgressMonitor monitor) {
-		Thread current = Thread.currentThread();
+	private LoadLock enterLoad(URI location, IProgressMonitor monitor) throws ProvisionException {
+		Object current = getLoadOwner();
 		synchronized (loadLocks) {
-			while (true) {
-				Thread owner = loadLocks.get(location);
-				if (owner == null || current.equals(owner))
-					break;
-				if (monitor.isCanceled())
-					throw new OperationCanceledException();
-				try {
-					loadLocks.wait(1000);
-				} catch (InterruptedException e) {
-					//keep trying
+			try {
+				while (true) {
+					LoadLock lock = loadLocks.get(location);
+					if (lock == null) {
+						lock = new LoadLock(current);
+						loadLocks.put(location, lock);
+						return lock;
+					}
+					if (isOwnedBy(current, lock.holder)) {
+						lock.depth++;
+						return lock;
+					}
+					// The holder waits, directly or through its loading tasks, for a location we hold
+					if (waitsFor(lock.holder, current, new HashSet<Object>()))
+						fail(location, ProvisionException.REPOSITORY_FAILED_READ, Messages.repoMan_cyclicLoad);
+					if (monitor.isCanceled())
+						throw new OperationCanceledException();
+					loadWaits.put(current, location);
+					try {
+						loadLocks.wait(1000);
+					} catch (InterruptedException e) {
+						//keep trying
+					}
 				}
+			} finally {
+				loadWaits.remove(current);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the given load owner, or one of the tasks loading on its behalf,
+	 * waits for a location held by the given waiter or one of its parents. Must be
+	 * called while holding the load locks.
+	 */
+	private boolean waitsFor(Object owner, Object waiter, Set<Object> visited) {
+		if (!visited.add(owner))
+			return false;
+		for (Map.Entry<Object, URI> wait : loadWaits.entrySet()) {
+			if (!isOwnedBy(wait.getKey(), owner))
+				continue;
+			LoadLock lock = loadLocks.get(wait.getValue());
+			if (lock == null)
+				continue;
+			if (isOwnedBy(waiter, lock.holder) || waitsFor(lock.holder, waiter, visited))
+				return true;
+		}
+		return false;
+	}
+
+	private Object getLoadOwner() {
+		LoadOwner owner = loadOwner.get();
+		return owner != null ? owner : Thread.currentThread();
+	}
+
+	/**
+	 * Returns whether the given load owner is, or loads on behalf of, the given lock holder.
+	 */
+	private static boolean isOwnedBy(Object owner, Object lockHolder) {
+		for (Object current = owner; current != null; current = current instanceof LoadOwner ? ((LoadOwner) current).parent : null)
+			if (current == lockHolder)
+				return true;
+		return false;
+	}
+
+	private static ThreadPoolExecutor createLoadExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(LOAD_THREADS, LOAD_THREADS, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Repository loader"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static int getLoadThreads() {
+		String value = Activator.getContext() == null ? null : Activator.getContext().getProperty(PROP_LOAD_THREADS);
+		if (value != null) {
+			try {
+				return Math.max(1, Integer.parseInt(value));
+			} catch (NumberFormatException e) {
+				// use the default
 			}
-			loadLocks.put(location, current);
 		}
+		return 4;
 	}
 
 	/**
@@ -354,7 +486,9 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 */
 	private void exitLoad(URI location) {
 		synchronized (loadLocks) {
-			loadLocks.remove(location);
+			LoadLock lock = loadLocks.get(location);
+			if (lock != null && --lock.depth == 0)
+				loadLocks.remove(location);
 			loadLocks.notifyAll();
 		}
 	}
@@ -371,6 +505,10 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 */
 	protected abstract IRepository<T> factoryLoad(URI location, IExtension extension, int flags, SubMonitor monitor) throws ProvisionException;
 
+	private void fail(URI location, int code, String message) throws ProvisionException {
+		throw new ProvisionException(new Status(IStatus.ERROR, getBundleId(), code, NLS.bind(message, location), null));
+	}
+
 	private void fail(URI location, int code) throws ProvisionException {
 		String msg = null;
 		switch (code) {
@@ -644,11 +782,16 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		boolean added = false;
 		IRepository<T> result = null;
 
+		LoadLock lock = enterLoad(location, sub.newChild(5));
+		boolean loading = false;
 		try {
-			enterLoad(location, sub.newChild(5));
 			result = basicGetRepository(location);
 			if (result != null)
 				return result;
+			//the repository refers to itself through the repositories it loads
+			if (lock.loading)
+				fail(location, ProvisionException.REPOSITORY_FAILED_READ, Messages.repoMan_cyclicLoad);
+			lock.loading = loading = true;
 			if (checkNotFound(location))
 				fail(location, ProvisionException.REPOSITORY_NOT_FOUND);
 			//add the repository first so that it will be enabled, but don't send add event until after the load
@@ -692,6 +835,8 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 				fail(location, ProvisionException.REPOSITORY_NOT_FOUND);
 			}
 		} finally {
+			if (loading)
+				lock.loading = false;
 			exitLoad(location);
 		}
 		//broadcast the add event after releasing lock
@@ -700,6 +845,176 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		return result;
 	}
 
+	/**
+	 * Loads the repositories at the given locations. The locations are loaded in parallel by
+	 * the calling thread and up to {@link #LOAD_THREADS} loader threads shared by all bulk
+	 * loads. Progress of all loads is reported to the given monitor.
+	 * 
+	 * @param locations The locations of the repositories to load
+	 * @param flags The flags for each load, see {@link IRepositoryManager#REPOSITORY_HINT_MODIFIABLE}
+	 * @param failures If not <code>null</code>, receives the status of every load that failed
+	 * @param monitor The progress monitor, or <code>null</code>
+	 * @return The loaded repositories, in the order of the given locations. The entry of a
+	 * location that could not be loaded is <code>null</code>.
+	 * @throws OperationCanceledException if the monitor was canceled
+	 */
+	public List<IRepository<T>> loadRepositories(URI[] locations, int flags, MultiStatus failures, IProgressMonitor monitor) {
+		SubMonitor sub = SubMonitor.convert(monitor, locations.length * 100);
+		Object[] results = new Object[locations.length];
+		try {
+			if (LOAD_THREADS <= 1 || locations.length <= 1) {
+				for (int i = 0; i < locations.length; i++)
+					results[i] = loadAndCatch(locations[i], flags, sub.newChild(100));
+			} else {
+				loadInParallel(locations, flags, results, sub);
+			}
+		} finally {
+			sub.done();
+		}
+		List<IRepository<T>> repositories = new ArrayList<IRepository<T>>(locations.length);
+		for (Object result : results) {
+			if (result instanceof IStatus) {
+				if (failures != null)
+					failures.add((IStatus) result);
+				repositories.add(null);
+			} else {
+				@SuppressWarnings("unchecked")
+				IRepository<T> repository = (IRepository<T>) result;
+				repositories.add(repository);
+			}
+		}
+		return repositories;
+	}
+
+	/**
+	 * Loads the children of a composite repository that is being loaded, like
+	 * {@link #loadRepositories(URI[], int, MultiStatus, IProgressMonitor)}. Children that this
+	 * manager did not know before are disabled and marked as system repositories. Failures
+	 * are logged and added to the given status.
+	 * 
+	 * @param locations The absolute locations of the children
+	 * @param failures Receives the status of every child that could not be loaded
+	 * @param failOnChildFailure If <code>true</code>, a failure removes the children added
+	 * by this call again and is thrown
+	 * @param monitor The progress monitor, or <code>null</code>
+	 * @return The children that could be loaded, in the order of the given locations
+	 * @throws ProvisionException with the given failures, if a child could not be loaded
+	 * and <code>failOnChildFailure</code> is set
+	 */
+	public List<IRepository<T>> loadChildren(URI[] locations, MultiStatus failures, boolean failOnChildFailure, IProgressMonitor monitor) throws ProvisionException {
+		boolean[] known = new boolean[locations.length];
+		for (int i = 0; i < locations.length; i++)
+			known[i] = contains(locations[i]);
+
+		List<IRepository<T>> repositories = loadRepositories(locations, 0, failures, monitor);
+		List<IRepository<T>> children = new ArrayList<IRepository<T>>(locations.length);
+		List<URI> added = new ArrayList<URI>();
+		for (int i = 0; i < locations.length; i++) {
+			IRepository<T> repository = repositories.get(i);
+			if (repository == null)
+				continue;
+			if (!known[i]) {
+				//set enabled to false so repositories do not get polled twice
+				setEnabled(locations[i], false);
+				//set repository to system to hide from users
+				setRepositoryProperty(locations[i], IRepository.PROP_SYSTEM, String.valueOf(true));
+				added.add(locations[i]);
+			}
+			children.add(repository);
+		}
+
+		if (failures.isOK())
+			return children;
+		for (IStatus failure : failures.getChildren())
+			LogHelper.log(failure);
+		if (failOnChildFailure) {
+			for (URI location : added)
+				removeRepository(location);
+			throw new ProvisionException(failures);
+		}
+		return children;
+	}
+
+	/**
+	 * Loads the repository at the given location and returns it, or the status of the
+	 * failure if it could not be loaded.
+	 */
+	private Object loadAndCatch(URI location, int flags, IProgressMonitor monitor) {
+		try {
+			return loadRepository(location, monitor, null, flags);
+		} catch (ProvisionException e) {
+			return e.getStatus();
+		}
+	}
+
+	private void loadInParallel(final URI[] locations, final int flags, final Object[] results, final SubMonitor sub) {
+		final Object owner = getLoadOwner();
+		// Only the calling thread reports progress, the loading threads just follow cancelation
+		final IProgressMonitor loadMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return sub.isCanceled();
+			}
+		};
+		List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(locations.length);
+		for (int i = 0; i < locations.length; i++) {
+			final int index = i;
+			FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+				@Override
+				public Object call() {
+					LoadOwner previous = loadOwner.get();
+					loadOwner.set(new LoadOwner(owner));
+					try {
+						return loadAndCatch(locations[index], flags, loadMonitor);
+					} finally {
+						if (previous == null)
+							loadOwner.remove();
+						else
+							loadOwner.set(previous);
+					}
+				}
+			});
+			tasks.add(task);
+			LOAD_EXECUTOR.execute(task);
+		}
+		// Run the loads that no loader thread has started on this thread, a task that
+		// has already run or is running elsewhere returns immediately
+		for (FutureTask<Object> task : tasks) {
+			if (sub.isCanceled())
+				break;
+			task.run();
+		}
+		boolean canceled = false;
+		try {
+			for (int i = 0; i < locations.length; i++) {
+				try {
+					results[i] = tasks.get(i).get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof OperationCanceledException)
+						canceled = true;
+					else
+						log("Unexpected failure loading repositories", e.getCause()); //$NON-NLS-1$
+				} catch (CancellationException e) {
+					canceled = true;
+				}
+				sub.worked(100);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			canceled = true;
+		} finally {
+			if (canceled || sub.isCanceled())
+				for (FutureTask<Object> task : tasks)
+					task.cancel(true);
+		}
+		// Loads that did not complete normally have no result, report them as failed
+		for (int i = 0; i < locations.length; i++)
+			if (results[i] == null)
+				results[i] = new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.repoMan_failedRead, locations[i]), null);
+		if (canceled || sub.isCanceled())
+			throw new OperationCanceledException();
+	}
+
 	/**
 	 * Fetches the p2.index file from the server. If the file could not be fetched
 	 * a NullSafe version is returned.
@@ -15,8 +15,24 @@ package org.eclipse.equinox.internal.p2.repository.helpers;
 import java.io.*;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.Map.Entry;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 
 public class ChecksumProducer {
+	/**
+	 * The name of the MD5 algorithm in checksum properties.
+	 */
+	public static final String MD5 = "md5"; //$NON-NLS-1$
+	/**
+	 * The name of the SHA-256 algorithm in checksum properties.
+	 */
+	public static final String SHA_256 = "sha-256"; //$NON-NLS-1$
+	/**
+	 * The algorithms of the checksums that publishers record.
+	 */
+	public static final String[] DEFAULT_ALGORITHMS = {MD5, SHA_256};
 
 	/**
 	 * @param file should not be <code>null</code>
@@ -24,34 +40,96 @@ public class ChecksumProducer {
 	 * @throws IOException
 	 */
 	public static String computeMD5(File file) throws IOException {
-		InputStream fis = null;
-		try {
-			MessageDigest md5Checker = MessageDigest.getInstance("MD5"); //$NON-NLS-1$
-			fis = new BufferedInputStream(new FileInputStream(file));
+		return computeChecksums(file, MD5).get(MD5);
+	}
+
+	/**
+	 * Computes the checksums of the file in a single pass over its content.
+	 * @param file should not be <code>null</code>
+	 * @param algorithms the names of the message digest algorithms to use
+	 * @return the checksums by algorithm, without the algorithms that are not available
+	 * @throws IOException
+	 */
+	public static Map<String, String> computeChecksums(File file, String... algorithms) throws IOException {
+		Map<String, MessageDigest> digests = new LinkedHashMap<>();
+		for (String algorithm : algorithms) {
+			MessageDigest digest = getMessageDigest(algorithm);
+			if (digest != null)
+				digests.put(algorithm, digest);
+		}
+		Map<String, String> result = new LinkedHashMap<>();
+		if (digests.isEmpty())
+			return result;
+		try (InputStream fis = new BufferedInputStream(new FileInputStream(file))) {
 			int read = -1;
 			final int bufferSize = 4 * 1024;
 			byte[] buffer = new byte[bufferSize];
 			while ((read = fis.read(buffer, 0, bufferSize)) != -1) {
-				md5Checker.update(buffer, 0, read);
-			}
-			byte[] digest = md5Checker.digest();
-			StringBuffer buf = new StringBuffer();
-			for (int i = 0; i < digest.length; i++) {
-				if ((digest[i] & 0xFF) < 0x10)
-					buf.append('0');
-				buf.append(Integer.toHexString(digest[i] & 0xFF));
+				for (MessageDigest digest : digests.values())
+					digest.update(buffer, 0, read);
 			}
-			return buf.toString();
+		}
+		for (Entry<String, MessageDigest> entry : digests.entrySet())
+			result.put(entry.getKey(), toHexString(entry.getValue().digest()));
+		return result;
+	}
+
+	/**
+	 * Returns a message digest for the given algorithm, or <code>null</code> if no security
+	 * provider implements it.
+	 */
+	public static MessageDigest getMessageDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm.toUpperCase(Locale.ENGLISH));
 		} catch (NoSuchAlgorithmException e) {
 			return null;
-		} finally {
-			if (fis != null)
-				try {
-					fis.close();
-				} catch (IOException e) {
-					// ignore
-				}
 		}
 	}
 
+	public static String toHexString(byte[] digest) {
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < digest.length; i++) {
+			if ((digest[i] & 0xFF) < 0x10)
+				buf.append('0');
+			buf.append(Integer.toHexString(digest[i] & 0xFF));
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the checksums the descriptor holds for the downloaded or for the
+	 * processed bytes, including the MD5 checksum of the legacy property.
+	 * @param descriptor the artifact descriptor
+	 * @param prefix {@link IArtifactDescriptor#DOWNLOAD_CHECKSUM} or {@link IArtifactDescriptor#ARTIFACT_CHECKSUM}
+	 * @return the checksums by lower case algorithm name
+	 */
+	public static Map<String, String> getChecksums(IArtifactDescriptor descriptor, String prefix) {
+		Map<String, String> result = new LinkedHashMap<>();
+		String md5 = descriptor.getProperty(IArtifactDescriptor.DOWNLOAD_CHECKSUM.equals(prefix) ? IArtifactDescriptor.DOWNLOAD_MD5 : IArtifactDescriptor.ARTIFACT_MD5);
+		if (md5 != null)
+			result.put(MD5, md5);
+		String propertyPrefix = prefix + '.';
+		for (Entry<String, String> property : descriptor.getProperties().entrySet()) {
+			if (property.getKey().startsWith(propertyPrefix) && property.getValue() != null)
+				result.put(property.getKey().substring(propertyPrefix.length()).toLowerCase(Locale.ENGLISH), property.getValue());
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the given checksums on the descriptor. The MD5 checksum goes to the legacy
+	 * property, which clients that only know MD5 read.
+	 * @param descriptor the descriptor to update
+	 * @param prefix {@link IArtifactDescriptor#DOWNLOAD_CHECKSUM} or {@link IArtifactDescriptor#ARTIFACT_CHECKSUM}
+	 * @param checksums the checksums by algorithm
+	 */
+	public static void setChecksums(ArtifactDescriptor descriptor, String prefix, Map<String, String> checksums) {
+		for (Entry<String, String> checksum : checksums.entrySet()) {
+			String algorithm = checksum.getKey().toLowerCase(Locale.ENGLISH);
+			if (MD5.equals(algorithm))
+				descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_CHECKSUM.equals(prefix) ? IArtifactDescriptor.DOWNLOAD_MD5 : IArtifactDescriptor.ARTIFACT_MD5, checksum.getValue());
+			else
+				descriptor.setProperty(prefix + '.' + algorithm, checksum.getValue());
+		}
+	}
 }
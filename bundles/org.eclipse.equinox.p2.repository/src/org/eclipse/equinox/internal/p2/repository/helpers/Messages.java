@@ -26,6 +26,7 @@ class Messages extends NLS {
 	}
 
 	public static String repoMan_adding;
+	public static String repoMan_cyclicLoad;
 	public static String repoMan_exists;
 	public static String repoMan_failedRead;
 	public static String repoMan_internalError;
@@ -56,6 +56,22 @@ public interface IArtifactDescriptor {
 	 * been applied).
 	 */
 	public static final String ARTIFACT_MD5 = "artifact.md5"; //$NON-NLS-1$
+	/**
+	 * The prefix (value "download.checksum") of the artifact descriptor properties holding
+	 * checksums of the artifact bytes that are transferred. The full property name appends
+	 * a dot and the lower case name of the message digest algorithm, for example
+	 * "download.checksum.sha-256". The MD5 checksum remains in {@link #DOWNLOAD_MD5}.
+	 * @since 2.4
+	 */
+	public static final String DOWNLOAD_CHECKSUM = "download.checksum"; //$NON-NLS-1$
+	/**
+	 * The prefix (value "artifact.checksum") of the artifact descriptor properties holding
+	 * checksums of the artifact bytes in its native format (after processing steps have
+	 * been applied), named like the {@link #DOWNLOAD_CHECKSUM} properties. The MD5 checksum
+	 * remains in {@link #ARTIFACT_MD5}.
+	 * @since 2.4
+	 */
+	public static final String ARTIFACT_CHECKSUM = "artifact.checksum"; //$NON-NLS-1$
 
 	/**
 	 * An artifact descriptor property (value "format") indicating the storage format
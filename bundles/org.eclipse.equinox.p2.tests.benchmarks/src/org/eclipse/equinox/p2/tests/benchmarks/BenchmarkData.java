@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.benchmarks;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.core.ProvisioningAgent;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryIO;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * The workloads shared by the benchmarks. The <code>galileo</code> data set is the
+ * repository snapshot checked in with the p2 tests, the <code>synthetic</code> data
+ * set is generated from a fixed seed so that every run sees the same units.
+ */
+public final class BenchmarkData {
+	/**
+	 * System property naming the repository snapshot, either a content.xml or a
+	 * content.jar. Defaults to the galileoM7 snapshot of the p2 tests.
+	 */
+	public static final String PROP_REPOSITORY = "p2.benchmark.repository"; //$NON-NLS-1$
+
+	public static final String GALILEO = "galileo"; //$NON-NLS-1$
+	public static final String SYNTHETIC = "synthetic"; //$NON-NLS-1$
+
+	private static final String DEFAULT_REPOSITORY = "../org.eclipse.equinox.p2.tests/testData/galileoM7/content.jar"; //$NON-NLS-1$
+	private static final String LOCATION = "http://benchmark.invalid/content.xml"; //$NON-NLS-1$
+	private static final String GALILEO_ROOT = "org.eclipse.sdk.feature.group"; //$NON-NLS-1$
+	private static final String GALILEO_ROOT_VERSION = "3.5.0.v20090423-7Q7bA7DPR-wM38__Q4iRsmx9z0KOjbpx3AbyvXd-Uq7J2"; //$NON-NLS-1$
+
+	private static final long SEED = 0x70325eedL;
+	private static final int SYNTHETIC_UNITS = 5000;
+	private static final int SYNTHETIC_ROOTS = 100;
+	private static final int SYNTHETIC_REQUIREMENTS = 8;
+	private static final String SYNTHETIC_PREFIX = "synthetic.unit"; //$NON-NLS-1$
+
+	public final String name;
+	public final IInstallableUnit[] units;
+	public final IInstallableUnit[] roots;
+	public final Map<String, String> environment;
+
+	private BenchmarkData(String name, IInstallableUnit[] units, IInstallableUnit[] roots) {
+		this.name = name;
+		this.units = units;
+		this.roots = roots;
+		this.environment = new HashMap<>();
+		environment.put("osgi.os", "linux"); //$NON-NLS-1$ //$NON-NLS-2$
+		environment.put("osgi.ws", "gtk"); //$NON-NLS-1$ //$NON-NLS-2$
+		environment.put("osgi.arch", "x86"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public static BenchmarkData load(String dataSet) throws IOException, ProvisionException {
+		if (GALILEO.equals(dataSet))
+			return loadSnapshot();
+		if (SYNTHETIC.equals(dataSet))
+			return generate();
+		throw new IllegalArgumentException(NLS.bind("Unknown data set {0}", dataSet)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns the raw content.xml of the repository snapshot.
+	 */
+	public static byte[] readSnapshotContent() throws IOException {
+		File file = new File(System.getProperty(PROP_REPOSITORY, DEFAULT_REPOSITORY));
+		if (!file.isFile())
+			throw new FileNotFoundException(NLS.bind("Repository snapshot {0} not found, set {1}", file.getAbsolutePath(), PROP_REPOSITORY)); //$NON-NLS-1$
+		try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+			if (!file.getName().endsWith(".jar")) //$NON-NLS-1$
+				return readFully(input);
+			ZipInputStream zip = new ZipInputStream(input);
+			for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry())
+				if (entry.getName().endsWith(".xml")) //$NON-NLS-1$
+					return readFully(zip);
+		}
+		throw new IOException(NLS.bind("No content.xml in {0}", file.getAbsolutePath())); //$NON-NLS-1$
+	}
+
+	/**
+	 * Parses content.xml bytes into a repository. The repository only lives in memory.
+	 */
+	public static IMetadataRepository parse(byte[] content) throws IOException, ProvisionException {
+		ProvisioningAgent agent = new ProvisioningAgent();
+		try {
+			// not a file location, so that no persisted index is attached to the repository
+			return new MetadataRepositoryIO(agent).read(new URL(LOCATION), new ByteArrayInputStream(content), new NullProgressMonitor());
+		} finally {
+			agent.stop();
+		}
+	}
+
+	private static BenchmarkData loadSnapshot() throws IOException, ProvisionException {
+		IMetadataRepository repository = parse(readSnapshotContent());
+		Set<IInstallableUnit> all = repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
+		IInstallableUnit[] units = all.toArray(new IInstallableUnit[all.size()]);
+		IRequirement root = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, GALILEO_ROOT, new VersionRange(Version.create(GALILEO_ROOT_VERSION), true, Version.create(GALILEO_ROOT_VERSION), true), null, false, false);
+		return new BenchmarkData(GALILEO, units, new IInstallableUnit[] {createRoot(Collections.singletonList(root))});
+	}
+
+	/**
+	 * Generates units in layers so that every requirement points to units generated
+	 * before it. Each unit provides its identity and a java package, and requires
+	 * packages and units with version ranges. Some requirements are optional, greedy
+	 * or filtered on the environment to exercise all the branches of the encoding.
+	 */
+	private static BenchmarkData generate() {
+		Random random = new Random(SEED);
+		IInstallableUnit[] units = new IInstallableUnit[SYNTHETIC_UNITS];
+		for (int i = 0; i < SYNTHETIC_UNITS; i++) {
+			InstallableUnitDescription iud = new InstallableUnitDescription();
+			String id = SYNTHETIC_PREFIX + (i / 4);
+			Version version = Version.createOSGi(1, i % 4, random.nextInt(10));
+			iud.setId(id);
+			iud.setVersion(version);
+			iud.setCapabilities(new IProvidedCapability[] {MetadataFactory.createProvidedCapability(IInstallableUnit.NAMESPACE_IU_ID, id, version), MetadataFactory.createProvidedCapability("java.package", "synthetic.pkg" + (i % 1000), version)}); //$NON-NLS-1$ //$NON-NLS-2$
+			if (i >= 4) {
+				List<IRequirement> requirements = new ArrayList<>();
+				int count = random.nextInt(SYNTHETIC_REQUIREMENTS);
+				for (int j = 0; j < count; j++) {
+					int target = random.nextInt(i);
+					VersionRange range = new VersionRange(Version.createOSGi(1, target % 4, 0), true, Version.createOSGi(2, 0, 0), false);
+					boolean optional = random.nextInt(10) == 0;
+					boolean greedy = !optional || random.nextBoolean();
+					String filter = random.nextInt(20) == 0 ? (random.nextBoolean() ? "(osgi.os=linux)" : "(osgi.os=win32)") : null; //$NON-NLS-1$ //$NON-NLS-2$
+					if (random.nextBoolean())
+						requirements.add(MetadataFactory.createRequirement("java.package", "synthetic.pkg" + (target % 1000), range, filter, optional, false, greedy)); //$NON-NLS-1$ //$NON-NLS-2$
+					else
+						requirements.add(MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, SYNTHETIC_PREFIX + (target / 4), range, filter, optional, false, greedy));
+				}
+				iud.setRequirements(requirements.toArray(new IRequirement[requirements.size()]));
+			}
+			units[i] = MetadataFactory.createInstallableUnit(iud);
+		}
+		List<IRequirement> rootRequirements = new ArrayList<>();
+		for (int i = SYNTHETIC_UNITS - SYNTHETIC_ROOTS; i < SYNTHETIC_UNITS; i++)
+			rootRequirements.add(MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, units[i].getId(), new VersionRange(units[i].getVersion(), true, units[i].getVersion(), true), null, false, false));
+		return new BenchmarkData(SYNTHETIC, units, new IInstallableUnit[] {createRoot(rootRequirements)});
+	}
+
+	/**
+	 * Creates the unit representing the profile, the same way the planner does.
+	 */
+	private static IInstallableUnit createRoot(List<IRequirement> requirements) {
+		InstallableUnitDescription iud = new InstallableUnitDescription();
+		iud.setId("benchmark.root"); //$NON-NLS-1$
+		iud.setVersion(Version.createOSGi(0, 0, 0, "benchmark")); //$NON-NLS-1$
+		iud.setRequirements(requirements.toArray(new IRequirement[requirements.size()]));
+		return MetadataFactory.createInstallableUnit(iud);
+	}
+
+	private static byte[] readFully(InputStream input) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		for (int read = input.read(buffer); read != -1; read = input.read(buffer))
+			output.write(buffer, 0, read);
+		return output.toByteArray();
+	}
+}
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.internal.p2.metadata.index.CapabilityIndex;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.query.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures building the capability index over all units and answering the
+ * requirements of all units through it, as the slicer and the projector do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CapabilityIndexBenchmark {
+	@Param({BenchmarkData.GALILEO, BenchmarkData.SYNTHETIC})
+	public String dataSet;
+
+	private BenchmarkData data;
+	private QueryableArray queryable;
+	private IRequirement[] requirements;
+
+	@Setup
+	public void setUp() throws Exception {
+		data = BenchmarkData.load(dataSet);
+		queryable = new QueryableArray(data.units);
+		requirements = Arrays.stream(data.units).flatMap(iu -> iu.getRequirements().stream()).toArray(IRequirement[]::new);
+	}
+
+	@Benchmark
+	public CapabilityIndex build() {
+		return new CapabilityIndex(Arrays.asList(data.units).iterator());
+	}
+
+	@Benchmark
+	public void queryRequirements(Blackhole blackhole) {
+		for (IRequirement requirement : requirements) {
+			IQueryResult<IInstallableUnit> result = queryable.query(QueryUtil.createMatchQuery(requirement.getMatches()), null);
+			blackhole.consume(result.toUnmodifiableSet());
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures parsing the content.xml of the repository snapshot into units, which
+ * goes through the MetadataParser handlers for every element.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class MetadataParserBenchmark {
+	private byte[] content;
+
+	@Setup
+	public void setUp() throws Exception {
+		content = BenchmarkData.readSnapshotContent();
+	}
+
+	@Benchmark
+	public IMetadataRepository parse() throws Exception {
+		return BenchmarkData.parse(content);
+	}
+}
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.benchmarks;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.director.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures encoding the slice into a SAT problem, and encoding followed by solving
+ * it, for a fresh install of the roots.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class ProjectorBenchmark {
+	@Param({BenchmarkData.GALILEO, BenchmarkData.SYNTHETIC})
+	public String dataSet;
+
+	private BenchmarkData data;
+	private IQueryable<IInstallableUnit> slice;
+	private Set<IInstallableUnit> nonGreedyIUs;
+	private IInstallableUnit entryPoint;
+	private Collection<IInstallableUnit> newRoots;
+
+	@Setup
+	public void setUp() throws Exception {
+		data = BenchmarkData.load(dataSet);
+		Slicer slicer = new Slicer(new QueryableArray(data.units), data.environment, false);
+		slice = slicer.slice(data.roots, new NullProgressMonitor());
+		if (slice == null)
+			throw new IllegalStateException(slicer.getStatus().toString());
+		nonGreedyIUs = slicer.getNonGreedyIUs();
+		entryPoint = data.roots[0];
+		newRoots = Collections.singleton(entryPoint);
+	}
+
+	private Projector encode() {
+		Projector projector = new Projector(slice, data.environment, nonGreedyIUs, false);
+		projector.encode(entryPoint, new IInstallableUnit[0], new QueryableArray(new IInstallableUnit[0]), newRoots, new NullProgressMonitor());
+		return projector;
+	}
+
+	@Benchmark
+	public Projector encodeOnly() {
+		return encode();
+	}
+
+	@Benchmark
+	public Collection<IInstallableUnit> encodeAndSolve() {
+		Projector projector = encode();
+		IStatus status = projector.invokeSolver(new NullProgressMonitor());
+		if (status.getSeverity() == IStatus.ERROR)
+			throw new IllegalStateException(status.toString());
+		return projector.extractSolution();
+	}
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.benchmarks;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.equinox.internal.p2.metadata.IRequiredCapability;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.IEvaluationContext;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures matching requirements against the units that provide a capability with
+ * the required namespace and name, which are the candidates the capability index
+ * hands to the match expressions. The compiled and the interpreted evaluation of the
+ * same pairs are measured separately, as is the version range check on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RequirementMatchBenchmark {
+	@Param({BenchmarkData.GALILEO, BenchmarkData.SYNTHETIC})
+	public String dataSet;
+
+	private IMatchExpression<IInstallableUnit>[] matches;
+	private IInstallableUnit[] candidates;
+	private VersionRange[] ranges;
+	private Version[] versions;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+		BenchmarkData data = BenchmarkData.load(dataSet);
+		Map<String, List<IInstallableUnit>> providers = new HashMap<>();
+		for (IInstallableUnit unit : data.units)
+			for (IProvidedCapability capability : unit.getProvidedCapabilities())
+				providers.computeIfAbsent(capability.getNamespace() + '/' + capability.getName(), key -> new ArrayList<>()).add(unit);
+
+		List<IMatchExpression<IInstallableUnit>> matchList = new ArrayList<>();
+		List<IInstallableUnit> candidateList = new ArrayList<>();
+		List<VersionRange> rangeList = new ArrayList<>();
+		List<Version> versionList = new ArrayList<>();
+		for (IInstallableUnit unit : data.units)
+			for (IRequirement requirement : unit.getRequirements()) {
+				if (!(requirement instanceof IRequiredCapability))
+					continue;
+				IRequiredCapability required = (IRequiredCapability) requirement;
+				List<IInstallableUnit> provided = providers.get(required.getNamespace() + '/' + required.getName());
+				if (provided == null)
+					continue;
+				for (IInstallableUnit candidate : provided) {
+					matchList.add(requirement.getMatches());
+					candidateList.add(candidate);
+					for (IProvidedCapability capability : candidate.getProvidedCapabilities())
+						if (capability.getName().equals(required.getName()) && capability.getNamespace().equals(required.getNamespace())) {
+							rangeList.add(required.getRange());
+							versionList.add(capability.getVersion());
+						}
+				}
+			}
+		matches = matchList.toArray(new IMatchExpression[matchList.size()]);
+		candidates = candidateList.toArray(new IInstallableUnit[candidateList.size()]);
+		ranges = rangeList.toArray(new VersionRange[rangeList.size()]);
+		versions = versionList.toArray(new Version[versionList.size()]);
+	}
+
+	@Benchmark
+	public int matchCompiled() {
+		int count = 0;
+		for (int i = 0; i < matches.length; i++)
+			if (matches[i].isMatch(candidates[i]))
+				count++;
+		return count;
+	}
+
+	@Benchmark
+	public int matchInterpreted() {
+		int count = 0;
+		for (int i = 0; i < matches.length; i++) {
+			IEvaluationContext context = matches[i].createContext();
+			if (matches[i].isMatch(context, candidates[i]))
+				count++;
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int versionRangeIsIncluded() {
+		int count = 0;
+		for (int i = 0; i < ranges.length; i++)
+			if (ranges[i].isIncluded(versions[i]))
+				count++;
+		return count;
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.benchmarks;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.internal.p2.director.Slicer;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures slicing the units reachable from the roots, including the construction of
+ * the capability index the slicer queries through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class SlicerBenchmark {
+	@Param({BenchmarkData.GALILEO, BenchmarkData.SYNTHETIC})
+	public String dataSet;
+
+	private BenchmarkData data;
+
+	@Setup
+	public void setUp() throws Exception {
+		data = BenchmarkData.load(dataSet);
+	}
+
+	@Benchmark
+	public IQueryable<IInstallableUnit> slice() {
+		Slicer slicer = new Slicer(new QueryableArray(data.units), data.environment, false);
+		IQueryable<IInstallableUnit> slice = slicer.slice(data.roots, new NullProgressMonitor());
+		if (slice == null)
+			throw new IllegalStateException(slicer.getStatus().toString());
+		return slice;
+	}
+}
@@ -22,6 +22,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(JBPatchStepTest.class);
 		suite.addTestSuite(JBPatchZipStepTest.class);
 		suite.addTestSuite(JarDeltaProcessorTest.class);
+		suite.addTestSuite(DeltaMirrorTest.class);
 		return suite;
 	}
 
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.processors;
+
+import java.io.*;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.repository.MirrorRequest;
+import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.*;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.spi.ProcessingStepDescriptor;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.AbstractWrappedArtifactRepository;
+import org.eclipse.equinox.p2.tests.optimizers.TestData;
+
+/**
+ * Tests that mirroring an artifact from a remote repository picks a delta against a
+ * locally available predecessor, and falls back to the full artifact otherwise.
+ */
+public class DeltaMirrorTest extends AbstractProvisioningTest {
+	private static final String JBPATCH_STEP_ID = "org.eclipse.equinox.p2.processing.JBPatchStep";
+
+	private final IArtifactKey predecessorKey = new ArtifactKey("binary", "eclipse.exe", Version.create("3.2.0"));
+	private final IArtifactKey key = new ArtifactKey("binary", "eclipse.exe", Version.create("3.3.0"));
+
+	private URI localLocation;
+	private URI serverLocation;
+	private URI targetLocation;
+	private IArtifactRepository server;
+	private IArtifactRepository target;
+
+	/**
+	 * A repository that claims to be remote and remembers the descriptors that are downloaded.
+	 */
+	class RemoteRepository extends AbstractWrappedArtifactRepository {
+		final List<IArtifactDescriptor> downloaded = new ArrayList<IArtifactDescriptor>();
+
+		RemoteRepository(IArtifactRepository repository) {
+			super(repository);
+		}
+
+		@Override
+		public URI getLocation() {
+			return URI.create("http://delta.invalid/");
+		}
+
+		@Override
+		public IStatus getArtifact(IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
+			downloaded.add(descriptor);
+			return super.getArtifact(descriptor, destination, monitor);
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		localLocation = new File(getTempFolder(), "local").toURI();
+		serverLocation = new File(getTempFolder(), "server").toURI();
+		targetLocation = new File(getTempFolder(), "target").toURI();
+		IArtifactRepositoryManager manager = getArtifactRepositoryManager();
+
+		IArtifactRepository local = manager.createRepository(localLocation, "local", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		add(local, new ArtifactDescriptor(predecessorKey), "eclipse-3.2.exe");
+
+		server = manager.createRepository(serverLocation, "server", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		add(server, new ArtifactDescriptor(key), "eclipse-3.3.exe");
+		ArtifactDescriptor delta = new ArtifactDescriptor(key);
+		delta.setProcessingSteps(new IProcessingStepDescriptor[] {new ProcessingStepDescriptor(JBPATCH_STEP_ID, predecessorKey.toExternalForm(), true)});
+		delta.setProperty(IArtifactDescriptor.FORMAT, JBPATCH_STEP_ID);
+		add(server, delta, "eclipse-3.2-3.3.jbdiff");
+
+		target = manager.createRepository(targetLocation, "target", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		IArtifactRepositoryManager manager = getArtifactRepositoryManager();
+		manager.removeRepository(localLocation);
+		manager.removeRepository(serverLocation);
+		manager.removeRepository(targetLocation);
+		super.tearDown();
+	}
+
+	private void add(IArtifactRepository repository, IArtifactDescriptor descriptor, String testData) throws Exception {
+		OutputStream destination = repository.getOutputStream(descriptor);
+		FileUtils.copyStream(TestData.get("optimizers", testData), true, destination, true);
+	}
+
+	private void assertMirrored() throws Exception {
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		assertOK("mirrored content", target.getArtifact(new ArtifactDescriptor(key), actual, new NullProgressMonitor()));
+		TestData.assertEquals(TestData.get("optimizers", "eclipse-3.3.exe"), new ByteArrayInputStream(actual.toByteArray()));
+	}
+
+	public void testDeltaAgainstLocalPredecessor() throws Exception {
+		RemoteRepository source = new RemoteRepository(server);
+		MirrorRequest request = new MirrorRequest(key, target, null, null, getTransport());
+		request.perform(source, new NullProgressMonitor());
+
+		assertOK("1.0", request.getResult());
+		assertEquals("1.1", 1, source.downloaded.size());
+		assertEquals("1.2", JBPATCH_STEP_ID, source.downloaded.get(0).getProperty(IArtifactDescriptor.FORMAT));
+		assertMirrored();
+	}
+
+	public void testFullDownloadWithoutPredecessor() throws Exception {
+		getArtifactRepositoryManager().removeRepository(localLocation);
+		RemoteRepository source = new RemoteRepository(server);
+		MirrorRequest request = new MirrorRequest(key, target, null, null, getTransport());
+		request.perform(source, new NullProgressMonitor());
+
+		assertOK("1.0", request.getResult());
+		assertEquals("1.1", 1, source.downloaded.size());
+		assertNull("1.2", source.downloaded.get(0).getProperty(IArtifactDescriptor.FORMAT));
+		assertMirrored();
+	}
+}
@@ -19,6 +19,7 @@ public class AllTests extends TestCase {
 
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
+		suite.addTestSuite(ChecksumVerifierTest.class);
 		suite.addTestSuite(Pack200ProcessorTest.class);
 		suite.addTestSuite(ZipVerifierProcessorTest.class);
 		return suite;
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.processors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.artifact.processors.checksum.ChecksumVerifier;
+import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.ProcessingStep;
+import org.eclipse.equinox.p2.core.ProvisionException;
+
+public class ChecksumVerifierTest extends TestCase {
+	private static final byte[] DATA = "abc".getBytes();
+	private static final String MD5 = "900150983cd24fb0d6963f7d28e17f72";
+	private static final String SHA_256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+	private IStatus verify(Map<String, String> checksums) throws IOException {
+		ProcessingStep step = new ChecksumVerifier(checksums);
+		ByteArrayOutputStream destination = new ByteArrayOutputStream();
+		step.link(destination, new NullProgressMonitor());
+		step.write(DATA, 0, 1);
+		step.write(DATA[1]);
+		step.write(DATA, 2, 1);
+		step.close();
+		assertEquals("abc", destination.toString());
+		return step.getStatus();
+	}
+
+	public void testAllMatch() throws IOException {
+		Map<String, String> checksums = new HashMap<>();
+		checksums.put("md5", MD5);
+		checksums.put("sha-256", SHA_256.toUpperCase());
+		assertTrue(verify(checksums).isOK());
+	}
+
+	public void testOneMismatch() throws IOException {
+		Map<String, String> checksums = new HashMap<>();
+		checksums.put("md5", MD5);
+		checksums.put("sha-256", SHA_256.replace('a', 'b'));
+		IStatus status = verify(checksums);
+		assertEquals(IStatus.ERROR, status.getSeverity());
+		assertEquals(ProvisionException.ARTIFACT_MD5_NOT_MATCH, status.getCode());
+	}
+
+	public void testUnknownAlgorithmSkipped() throws IOException {
+		Map<String, String> checksums = new HashMap<>();
+		checksums.put("sha-256", SHA_256);
+		checksums.put("no-such-algorithm", "00");
+		assertEquals(IStatus.INFO, verify(checksums).getSeverity());
+	}
+
+	public void testNoUsableChecksum() throws IOException {
+		Map<String, String> checksums = new HashMap<>();
+		checksums.put("no-such-algorithm", "00");
+		// the content is passed through unverified
+		assertEquals(IStatus.INFO, verify(checksums).getSeverity());
+	}
+}
@@ -68,6 +68,27 @@ public class Pack200ProcessorTest extends AbstractProvisioningTest {
 		assertFalse(step.getStatus().isOK());
 	}
 
+	public void testUnpackInProcess() throws IOException {
+		// Setup the processor
+		ProcessingStep step = new Pack200ProcessorStep();
+		assertTrue(step.getStatus().isOK());
+
+		File destinationFile = new File(tempFolder, "testUnpackInProcess.jar");
+		try (OutputStream destination = new BufferedOutputStream(new FileOutputStream(destinationFile))) {
+			step.link(destination, new NullProgressMonitor());
+
+			// drive the source data through the step
+			Bundle bundle = TestActivator.getContext().getBundle();
+			InputStream inputStream = bundle.getEntry("testData/optimizers/bug387557.bundle_1.0.0.201208200951.jar.pack.gz").openStream();
+			FileUtils.copyStream(inputStream, true, step, true);
+		}
+		assertTrue(step.getStatus().isOK());
+
+		// Compare with the result of the unpack200 executable
+		File expected = getTestData("Missing test data", "testData/optimizers/bug387557.bundle_1.0.0.201208200951.jar");
+		assertEqualJars(expected, destinationFile);
+	}
+
 	private File tempFolder;
 
 	@Override
@@ -29,6 +29,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(Bug265577.class);
 		suite.addTestSuite(Bug351944.class);
 		suite.addTestSuite(CompositeArtifactRepositoryTest.class);
+		suite.addTestSuite(ContentAddressedArtifactRepositoryTest.class);
 		suite.addTestSuite(CorruptedJar.class);
 		suite.addTestSuite(FoldersRepositoryTest.class);
 		suite.addTestSuite(JarURLArtifactRepositoryTest.class);
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.*;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests a simple artifact repository that stores its artifacts by content hash.
+ */
+public class ContentAddressedArtifactRepositoryTest extends AbstractProvisioningTest {
+	private File repositoryFile;
+	private URI repositoryURI;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		repositoryFile = getTestFolder("ContentAddressedArtifactRepositoryTest");
+		repositoryURI = repositoryFile.toURI();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		getArtifactRepositoryManager().removeRepository(repositoryURI);
+		delete(repositoryFile);
+		super.tearDown();
+	}
+
+	private SimpleArtifactRepository createRepository() throws Exception {
+		Map<String, String> properties = new HashMap<>();
+		properties.put(SimpleArtifactRepository.PROP_CONTENT_ADDRESSED, Boolean.TRUE.toString());
+		return (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "content addressed", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+	}
+
+	private IArtifactDescriptor write(IArtifactRepository repo, String id, String content) throws Exception {
+		IArtifactDescriptor descriptor = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", id, Version.create("1.0.0")));
+		try (OutputStream stream = repo.getOutputStream(descriptor)) {
+			stream.write(content.getBytes());
+		}
+		return descriptor;
+	}
+
+	private String read(IArtifactRepository repo, IArtifactDescriptor descriptor) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertOK("read " + descriptor, repo.getArtifact(descriptor, out, getMonitor()));
+		return out.toString();
+	}
+
+	public void testIdenticalContentIsStoredOnce() throws Exception {
+		SimpleArtifactRepository repo = createRepository();
+		IArtifactDescriptor a = write(repo, "a", "same bytes");
+		IArtifactDescriptor b = write(repo, "b", "same bytes");
+		IArtifactDescriptor c = write(repo, "c", "other bytes");
+
+		File fileA = repo.getArtifactFile(a);
+		assertTrue("1.0", fileA.isFile());
+		assertEquals("1.1", fileA, repo.getArtifactFile(b));
+		assertFalse("1.2", fileA.equals(repo.getArtifactFile(c)));
+		assertFalse("1.3", new File(repositoryFile, "plugins").exists());
+		assertEquals("1.4", "same bytes", read(repo, b));
+		assertEquals("1.5", "other bytes", read(repo, c));
+
+		// the mapping survives a reload
+		getArtifactRepositoryManager().removeRepository(repositoryURI);
+		IArtifactRepository reloaded = getArtifactRepositoryManager().loadRepository(repositoryURI, getMonitor());
+		assertEquals("2.0", "same bytes", read(reloaded, a));
+		assertEquals("2.1", fileA, ((IFileArtifactRepository) reloaded).getArtifactFile(b));
+	}
+
+	public void testSharedContentIsDeletedWithLastDescriptor() throws Exception {
+		SimpleArtifactRepository repo = createRepository();
+		IArtifactDescriptor a = write(repo, "a", "same bytes");
+		IArtifactDescriptor b = write(repo, "b", "same bytes");
+		File file = repo.getArtifactFile(a);
+
+		repo.removeDescriptor(a, getMonitor());
+		assertFalse("1.0", repo.contains(a));
+		assertTrue("1.1", file.isFile());
+		assertEquals("1.2", "same bytes", read(repo, b));
+
+		repo.removeDescriptor(b, getMonitor());
+		assertFalse("2.0", file.exists());
+	}
+
+	public void testSharedStoreAcrossRepositories() throws Exception {
+		File storeFolder = getTestFolder("ContentAddressedArtifactRepositoryTest_store");
+		File otherFolder = getTestFolder("ContentAddressedArtifactRepositoryTest_other");
+		try {
+			Map<String, String> properties = new HashMap<>();
+			properties.put(SimpleArtifactRepository.PROP_CONTENT_ADDRESSED, Boolean.TRUE.toString());
+			properties.put(SimpleArtifactRepository.PROP_CONTENT_STORE_LOCATION, storeFolder.toURI().toString());
+			SimpleArtifactRepository repo = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(repositoryURI, "one", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+			SimpleArtifactRepository other = (SimpleArtifactRepository) getArtifactRepositoryManager().createRepository(otherFolder.toURI(), "two", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+
+			IArtifactDescriptor a = write(repo, "a", "shared bytes");
+			IArtifactDescriptor b = write(other, "b", "shared bytes");
+			File file = repo.getArtifactFile(a);
+			assertEquals("1.0", file, other.getArtifactFile(b));
+			assertTrue("1.1", file.getAbsolutePath().startsWith(storeFolder.getAbsolutePath()));
+
+			// content in a shared store outlives the descriptors of one repository
+			repo.removeDescriptor(a, getMonitor());
+			assertTrue("2.0", file.isFile());
+			assertEquals("2.1", "shared bytes", read(other, b));
+		} finally {
+			getArtifactRepositoryManager().removeRepository(otherFolder.toURI());
+			delete(otherFolder);
+			delete(storeFolder);
+		}
+	}
+}
@@ -11,15 +11,59 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.artifact.repository;
 
+import java.io.*;
+import java.lang.reflect.Field;
+import java.net.URI;
 import java.util.*;
 import junit.framework.TestCase;
+import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.MirrorSelector;
 import org.eclipse.equinox.internal.p2.artifact.repository.MirrorSelector.MirrorInfo;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
+import org.eclipse.equinox.internal.p2.core.ProvisioningAgent;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.tests.TestArtifactRepository;
 
 public class MirrorSelectorTest extends TestCase {
+	private static final URI BASE = URI.create("http://download.invalid/repo/");
+	private static final String[] MIRROR_URLS = {"http://one.invalid/repo/", "http://two.invalid/repo/", "http://three.invalid/repo/", "http://four.invalid/repo/"};
 
 	private List<MirrorInfo> originals;
 
+	/**
+	 * Serves a mirrors document listing {@link MirrorSelectorTest#MIRROR_URLS}.
+	 */
+	static class MirrorsTransport extends Transport {
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+			throw new IllegalStateException("Method should not be called");
+		}
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+			throw new IllegalStateException("Method should not be called");
+		}
+
+		@Override
+		public InputStream stream(URI toDownload, IProgressMonitor monitor) {
+			StringBuffer document = new StringBuffer("<mirrors>");
+			for (String url : MIRROR_URLS)
+				document.append("<mirror url=\"").append(url).append("\"/>");
+			document.append("</mirrors>");
+			return new ByteArrayInputStream(document.toString().getBytes());
+		}
+
+		@Override
+		public long getLastModified(URI toDownload, IProgressMonitor monitor) {
+			return 0;
+		}
+	}
+
 	@Override
 	protected void setUp() throws Exception {
 		super.setUp();
@@ -301,6 +345,128 @@ public class MirrorSelectorTest extends TestCase {
 
 	}
 
+	private MirrorSelector createSelector() {
+		TestArtifactRepository repository = new TestArtifactRepository(null, BASE) {
+			@Override
+			public Map<String, String> getProperties() {
+				return Collections.singletonMap(IRepository.PROP_MIRRORS_URL, "http://download.invalid/mirrors.xml");
+			}
+		};
+		return new MirrorSelector(repository, new MirrorsTransport());
+	}
+
+	private static DownloadStatus createResult(long size, long rate) {
+		DownloadStatus result = new DownloadStatus(IStatus.OK, "test", "");
+		result.setFileSize(size);
+		result.setTransferRate(rate);
+		return result;
+	}
+
+	private static String getMirror(URI location) {
+		for (String url : MIRROR_URLS)
+			if (location.toString().startsWith(url))
+				return url;
+		return location.toString();
+	}
+
+	public void testConcurrentRequestsAreSpread() {
+		MirrorSelector selector = createSelector();
+		Set<String> used = new HashSet<>();
+		for (int i = 0; i < 3; i++)
+			used.add(getMirror(selector.getMirrorLocation(URIUtil.append(BASE, "plugins/bundle" + i + ".jar"), new NullProgressMonitor())));
+		// none of the requests was reported yet, each went to another of the best mirrors
+		assertEquals(used.toString(), 3, used.size());
+	}
+
+	public void testSameArtifactRequestedConcurrently() {
+		MirrorSelector selector = createSelector();
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		URI artifact = URIUtil.append(BASE, "plugins/bundle.jar");
+		Map<String, Integer> load = new HashMap<>();
+		for (int i = 0; i < 6; i++) {
+			String mirror = getMirror(selector.getMirrorLocation(artifact, monitor));
+			load.put(mirror, load.containsKey(mirror) ? load.get(mirror) + 1 : 1);
+		}
+		// every request counts, also those for a location that is already pending
+		assertEquals(load.toString(), 3, load.size());
+		for (Integer count : load.values())
+			assertEquals(load.toString(), 2, count.intValue());
+	}
+
+	public void testCanceledRequestIsNotPending() {
+		MirrorSelector selector = createSelector();
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		URI location = selector.getMirrorLocation(URIUtil.append(BASE, "plugins/bundle.jar"), monitor);
+		assertEquals("1.0", 1, selector.getLoad(location));
+		selector.reportResult(location.toString(), Status.CANCEL_STATUS);
+		assertEquals("1.1", 0, selector.getLoad(location));
+	}
+
+	public void testCanceledDownloadIsNotPending() throws Exception {
+		ProvisioningAgent agent = new ProvisioningAgent();
+		// the transport throws when the download is canceled
+		agent.registerService(Transport.SERVICE_NAME, new MirrorsTransport() {
+			@Override
+			public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+				throw new OperationCanceledException();
+			}
+		});
+		try {
+			SimpleArtifactRepository repository = new SimpleArtifactRepository(agent, "test", BASE, Collections.singletonMap(IRepository.PROP_MIRRORS_URL, "http://download.invalid/mirrors.xml"));
+			ArtifactDescriptor descriptor = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "bundle", Version.parseVersion("1.0.0")));
+			try {
+				repository.getRawArtifact(descriptor, new ByteArrayOutputStream(), new NullProgressMonitor());
+				fail("1.0");
+			} catch (OperationCanceledException e) {
+				// expected
+			}
+			Field field = SimpleArtifactRepository.class.getDeclaredField("mirrors");
+			field.setAccessible(true);
+			MirrorSelector selector = (MirrorSelector) field.get(repository);
+			assertNotNull("1.1", selector);
+			for (String url : MIRROR_URLS)
+				assertEquals("1.2 " + url, 0, selector.getLoad(URI.create(url)));
+		} finally {
+			agent.stop();
+		}
+	}
+
+	public void testFastestMirrorIsPreferred() {
+		MirrorSelector selector = createSelector();
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		URI fast = null;
+		for (int i = 0; i < 3; i++) {
+			URI location = selector.getMirrorLocation(URIUtil.append(BASE, "plugins/bundle" + i + ".jar"), monitor);
+			if (i == 1)
+				fast = location;
+			selector.reportResult(location.toString(), createResult(100000, i == 1 ? 1000000 : 100000));
+		}
+		for (int i = 0; i < 5; i++) {
+			URI location = selector.getMirrorLocation(URIUtil.append(BASE, "features/feature" + i + ".jar"), monitor);
+			assertEquals("1." + i, getMirror(fast), getMirror(location));
+			selector.reportResult(location.toString(), createResult(100000, 1000000));
+		}
+	}
+
+	public void testHedgeDelay() {
+		MirrorSelector selector = createSelector();
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		URI artifact = URIUtil.append(BASE, "plugins/bundle.jar");
+		URI location = selector.getMirrorLocation(artifact, monitor);
+		// nothing measured yet
+		assertEquals("1.0", -1, selector.getHedgeDelay(location, 1000000));
+		selector.reportResult(location.toString(), createResult(100000, 100000));
+		long small = selector.getHedgeDelay(location, 100000);
+		long large = selector.getHedgeDelay(location, 100000000);
+		assertTrue("1.1 " + small, small >= 2000);
+		assertTrue("1.2 " + large, large >= 3 * 1000 * 1000);
+
+		URI alternative = selector.getAlternativeLocation(artifact, location, monitor);
+		assertNotNull("2.0", alternative);
+		assertFalse("2.1", getMirror(location).equals(getMirror(alternative)));
+		assertTrue("2.2", alternative.toString().endsWith("/plugins/bundle.jar"));
+	}
+
 	/**
 	 * @param originallist
 	 * @param mirrors
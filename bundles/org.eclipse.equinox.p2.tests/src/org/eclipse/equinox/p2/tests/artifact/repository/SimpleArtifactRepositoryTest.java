@@ -18,6 +18,7 @@ import java.lang.reflect.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepositoryFactory;
@@ -433,6 +434,57 @@ public class SimpleArtifactRepositoryTest extends AbstractProvisioningTest {
 		assertEquals(d3.getArtifactKey(), resultDescriptor.getArtifactKey());
 	}
 
+	/*
+	 * Reads are not serialized with changes, make sure they still see consistent tables
+	 */
+	public void testConcurrentReadsDuringChanges() throws Exception {
+		File folder = getTestFolder("ArtifactRepository_testConcurrentReads");
+		repositoryURI = folder.toURI();
+
+		final IArtifactRepository repo = getArtifactRepositoryManager().createRepository(repositoryURI, "test", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap<>());
+		final int count = 200;
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread[] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread(() -> {
+				try {
+					while (!done.get()) {
+						for (int j = 0; j < count; j += 7) {
+							IArtifactKey key = new ArtifactKey("osgi.bundle", "a" + j, Version.create("1.0.0"));
+							IArtifactDescriptor[] descriptors = repo.getArtifactDescriptors(key);
+							for (IArtifactDescriptor descriptor : descriptors)
+								assertEquals(key, descriptor.getArtifactKey());
+							repo.contains(key);
+						}
+						queryResultSize(repo.query(new ArtifactKeyQuery("osgi.bundle", "a5", null), null));
+						queryResultSize(repo.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null));
+					}
+				} catch (Throwable t) {
+					failures.add(t);
+				}
+			});
+			readers[i].start();
+		}
+		try {
+			IProgressMonitor monitor = new NullProgressMonitor();
+			for (int i = 0; i < count; i++) {
+				ArtifactDescriptor d = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "a" + i, Version.create("1.0.0")));
+				repo.addDescriptor(d, monitor);
+				if (i % 3 == 0)
+					repo.removeDescriptor(d, monitor);
+			}
+		} finally {
+			done.set(true);
+			for (Thread reader : readers)
+				reader.join();
+		}
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals(count - (count + 2) / 3, queryResultSize(repo.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null)));
+		assertEquals(1, repo.getArtifactDescriptors(new ArtifactKey("osgi.bundle", "a1", Version.create("1.0.0"))).length);
+		assertFalse(repo.contains(new ArtifactKey("osgi.bundle", "a3", Version.create("1.0.0"))));
+	}
+
 	/*
 	 * Tests the number of threads allowed
 	 */
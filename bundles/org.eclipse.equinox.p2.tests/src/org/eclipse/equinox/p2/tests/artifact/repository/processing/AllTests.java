@@ -21,6 +21,7 @@ public class AllTests extends TestCase {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		suite.addTestSuite(ProcessingStepHandlerTest.class);
 		suite.addTestSuite(ProcessingStepTest.class);
+		suite.addTestSuite(SpoolOutputStreamTest.class);
 		return suite;
 	}
 
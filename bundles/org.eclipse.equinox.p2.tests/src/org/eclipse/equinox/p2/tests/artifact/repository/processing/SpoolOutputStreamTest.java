@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.artifact.repository.processing;
+
+import java.io.*;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.eclipse.equinox.internal.p2.artifact.processing.BufferPool;
+import org.eclipse.equinox.internal.p2.artifact.processing.SpoolOutputStream;
+import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
+
+public class SpoolOutputStreamTest extends TestCase {
+
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (byte) (i * 31);
+		return data;
+	}
+
+	private static byte[] read(SpoolOutputStream spool) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		FileUtils.copyStream(spool.getInputStream(), true, result, true);
+		return result.toByteArray();
+	}
+
+	public void testHeldInMemory() throws IOException {
+		byte[] data = createData(3 * BufferPool.BUFFER_SIZE + 17);
+		SpoolOutputStream spool = new SpoolOutputStream("spool", ".test");
+		try {
+			spool.write(data[0]);
+			spool.write(data, 1, data.length - 1);
+			spool.close();
+			assertEquals(data.length, spool.size());
+			assertTrue(Arrays.equals(data, read(spool)));
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			spool.writeTo(written);
+			assertTrue(Arrays.equals(data, written.toByteArray()));
+		} finally {
+			spool.dispose();
+		}
+	}
+
+	public void testSpillsToDisk() throws IOException {
+		byte[] data = createData(2 * BufferPool.BUFFER_SIZE);
+		SpoolOutputStream spool = new SpoolOutputStream("spool", ".test", BufferPool.BUFFER_SIZE + 5);
+		File file = null;
+		try {
+			spool.write(data, 0, 10);
+			spool.write(data, 10, data.length - 10);
+			spool.close();
+			file = spool.toFile();
+			assertEquals(data.length, file.length());
+			assertTrue(Arrays.equals(data, read(spool)));
+		} finally {
+			spool.dispose();
+		}
+		assertFalse(file.exists());
+	}
+
+	public void testToFile() throws IOException {
+		byte[] data = createData(1000);
+		SpoolOutputStream spool = new SpoolOutputStream("spool", ".test");
+		File file = null;
+		try {
+			spool.write(data);
+			spool.close();
+			file = spool.toFile();
+			assertTrue(file.getName().endsWith(".test"));
+			assertEquals(data.length, file.length());
+			assertTrue(Arrays.equals(data, read(spool)));
+		} finally {
+			spool.dispose();
+		}
+		assertFalse(file.exists());
+	}
+}
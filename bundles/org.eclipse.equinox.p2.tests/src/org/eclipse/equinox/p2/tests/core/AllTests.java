@@ -26,6 +26,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(FileUtilsTest.class);
 		suite.addTestSuite(OrderedPropertiesTest.class);
 		suite.addTestSuite(ProvisioningAgentTest.class);
+		suite.addTestSuite(QueryIteratorTest.class);
 		suite.addTestSuite(QueryTest.class);
 		suite.addTestSuite(URLUtilTest.class);
 		return suite;
@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.core;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.index.CompoundIndex;
+import org.eclipse.equinox.internal.p2.metadata.index.IdIndex;
+import org.eclipse.equinox.internal.p2.metadata.index.IndexProvider;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.expression.IEvaluationContext;
+import org.eclipse.equinox.p2.metadata.expression.IExpression;
+import org.eclipse.equinox.p2.metadata.index.IIndex;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests for {@link QueryUtil#iterator(IQueryable, IQuery, org.eclipse.core.runtime.IProgressMonitor)}.
+ */
+public class QueryIteratorTest extends AbstractProvisioningTest {
+
+	/**
+	 * A queryable that counts the units pulled from it.
+	 */
+	static class CountingQueryable extends IndexProvider<IInstallableUnit> {
+		private final List<IInstallableUnit> units;
+		private final boolean indexed;
+		int pulled;
+
+		CountingQueryable(List<IInstallableUnit> units, boolean indexed) {
+			this.units = units;
+			this.indexed = indexed;
+		}
+
+		@Override
+		public Iterator<IInstallableUnit> everything() {
+			final Iterator<IInstallableUnit> iterator = units.iterator();
+			return new Iterator<IInstallableUnit>() {
+				@Override
+				public boolean hasNext() {
+					return iterator.hasNext();
+				}
+
+				@Override
+				public IInstallableUnit next() {
+					pulled++;
+					return iterator.next();
+				}
+			};
+		}
+
+		@Override
+		public IIndex<IInstallableUnit> getIndex(String memberName) {
+			return indexed && InstallableUnit.MEMBER_ID.equals(memberName) ? new IdIndex(units.iterator()) : null;
+		}
+
+		@Override
+		public Object getManagedProperty(Object client, String memberName, Object key) {
+			return null;
+		}
+	}
+
+	private static List<IInstallableUnit> createUnits(String prefix, int count) {
+		List<IInstallableUnit> units = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			units.add(createIU(prefix + i, Version.createOSGi(1, 0, i)));
+		return units;
+	}
+
+	public void testFirstMatchStopsEarly() {
+		CountingQueryable first = new CountingQueryable(createUnits("a", 1000), false);
+		CountingQueryable second = new CountingQueryable(createUnits("b", 1000), false);
+		IQueryable<IInstallableUnit> compound = QueryUtil.compoundQueryable(first, second);
+
+		Iterator<IInstallableUnit> iterator = QueryUtil.iterator(compound, QueryUtil.createIUQuery("a5"), null);
+		assertTrue(iterator.hasNext());
+		assertEquals("a5", iterator.next().getId());
+		assertEquals(6, first.pulled);
+		assertEquals(0, second.pulled);
+	}
+
+	public void testLimitQuery() {
+		CountingQueryable first = new CountingQueryable(createUnits("a", 1000), false);
+		CountingQueryable second = new CountingQueryable(createUnits("b", 1000), false);
+		IQueryable<IInstallableUnit> compound = QueryUtil.compoundQueryable(first, second);
+
+		IQuery<IInstallableUnit> query = QueryUtil.createLimitQuery(QueryUtil.createMatchQuery("version >= $0", Version.createOSGi(1, 0, 998)), 3);
+		List<String> ids = new ArrayList<>();
+		for (Iterator<IInstallableUnit> iterator = QueryUtil.iterator(compound, query, null); iterator.hasNext();)
+			ids.add(iterator.next().getId());
+		assertEquals(Arrays.asList("a998", "a999", "b998"), ids);
+		assertEquals(1000, first.pulled);
+		assertTrue("Only the candidates up to the limit should be evaluated", second.pulled < 1000);
+	}
+
+	public void testSameResultAsQuery() {
+		List<IInstallableUnit> shared = createUnits("a", 20);
+		CountingQueryable first = new CountingQueryable(shared, false);
+		CountingQueryable second = new CountingQueryable(shared.subList(10, 20), false);
+		IQueryable<IInstallableUnit> compound = QueryUtil.compoundQueryable(first, second);
+
+		IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery("version >= $0", Version.createOSGi(1, 0, 5));
+		Set<IInstallableUnit> expected = compound.query(query, null).toUnmodifiableSet();
+		List<IInstallableUnit> actual = new ArrayList<>();
+		for (Iterator<IInstallableUnit> iterator = QueryUtil.iterator(compound, query, null); iterator.hasNext();)
+			actual.add(iterator.next());
+		assertEquals("Units found in several queryables should be returned once", expected.size(), actual.size());
+		assertEquals(expected, new HashSet<>(actual));
+	}
+
+	public void testIndexedCompound() {
+		List<IInstallableUnit> shared = createUnits("a", 10);
+		CountingQueryable first = new CountingQueryable(shared, true);
+		CountingQueryable second = new CountingQueryable(shared, true);
+		IQueryable<IInstallableUnit> compound = QueryUtil.compoundQueryable(first, second);
+
+		Iterator<IInstallableUnit> iterator = QueryUtil.iterator(compound, QueryUtil.createIUQuery("a3"), null);
+		assertTrue(iterator.hasNext());
+		assertEquals("a3", iterator.next().getId());
+		assertFalse(iterator.hasNext());
+		assertEquals("Indexed candidates should not require a scan", 0, first.pulled + second.pulled);
+	}
+
+	/**
+	 * An index that returns its live list of units as candidates.
+	 */
+	static class ListIndex implements IIndex<IInstallableUnit> {
+		final List<IInstallableUnit> units;
+
+		ListIndex(List<IInstallableUnit> units) {
+			this.units = units;
+		}
+
+		@Override
+		public Iterator<IInstallableUnit> getCandidates(IEvaluationContext ctx, IExpression variable, IExpression booleanExpr) {
+			return units.iterator();
+		}
+	}
+
+	public void testCompoundIndexMemberChanges() {
+		ListIndex first = new ListIndex(createUnits("a", 3));
+		ListIndex second = new ListIndex(createUnits("b", 3));
+		List<IIndex<IInstallableUnit>> indexes = new ArrayList<>();
+		indexes.add(first);
+		indexes.add(second);
+		Iterator<IInstallableUnit> candidates = new CompoundIndex<>(indexes).getCandidates(null, null, null);
+
+		assertEquals("a0", candidates.next().getId());
+		// change the index being returned and the one not reached yet
+		first.units.add(createIU("a3", Version.createOSGi(1, 0, 3)));
+		second.units.add(createIU("b3", Version.createOSGi(1, 0, 3)));
+		List<String> ids = new ArrayList<>();
+		while (candidates.hasNext())
+			ids.add(candidates.next().getId());
+		assertEquals(Arrays.asList("a1", "a2", "b0", "b1", "b2", "b3"), ids);
+	}
+
+	public void testNotIndexProvider() {
+		Collector<IInstallableUnit> collector = new Collector<>();
+		collector.addAll(new CollectionResult<>(createUnits("a", 10)));
+		Iterator<IInstallableUnit> iterator = QueryUtil.iterator(collector, QueryUtil.createIUQuery("a3"), null);
+		assertTrue(iterator.hasNext());
+		assertEquals("a3", iterator.next().getId());
+		assertFalse(iterator.hasNext());
+	}
+}
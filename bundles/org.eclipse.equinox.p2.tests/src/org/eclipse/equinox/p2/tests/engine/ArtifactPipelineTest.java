@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.engine;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.engine.ArtifactPipeline;
+import org.eclipse.equinox.internal.p2.engine.DownloadManager;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.query.CollectionResult;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.TestArtifactRepository;
+
+/**
+ * Tests for {@link ArtifactPipeline}.
+ */
+public class ArtifactPipelineTest extends AbstractProvisioningTest {
+
+	/**
+	 * A request that succeeds unless it is marked as failing.
+	 */
+	static class Request implements IArtifactRequest {
+		final IArtifactKey key;
+		final boolean fails;
+		volatile IStatus result;
+
+		Request(String id, boolean fails) {
+			this.key = new ArtifactKey("osgi.bundle", id, Version.parseVersion("1.0.0"));
+			this.fails = fails;
+		}
+
+		@Override
+		public IArtifactKey getArtifactKey() {
+			return key;
+		}
+
+		@Override
+		public void perform(IArtifactRepository sourceRepository, IProgressMonitor monitor) {
+			result = fails ? new Status(IStatus.ERROR, "test", "failed") : Status.OK_STATUS;
+		}
+
+		@Override
+		public IStatus getResult() {
+			return result;
+		}
+	}
+
+	/**
+	 * A repository holding back the download of the blocked keys until released or canceled.
+	 */
+	class Repository extends TestArtifactRepository {
+		final Set<IArtifactKey> keys = new HashSet<>();
+		final Set<IArtifactKey> blocked = new HashSet<>();
+		final CountDownLatch release = new CountDownLatch(1);
+
+		Repository() {
+			super(getAgent(), URI.create("http://pipeline.invalid/"));
+		}
+
+		@Override
+		public boolean contains(IArtifactKey key) {
+			return keys.contains(key);
+		}
+
+		@Override
+		public IStatus getArtifacts(IArtifactRequest[] requests, IProgressMonitor monitor) {
+			for (IArtifactRequest request : requests) {
+				if (blocked.contains(request.getArtifactKey())) {
+					try {
+						while (release.getCount() > 0) {
+							if (monitor.isCanceled())
+								return Status.CANCEL_STATUS;
+							Thread.sleep(10);
+						}
+					} catch (InterruptedException e) {
+						return Status.CANCEL_STATUS;
+					}
+				}
+				request.perform(this, monitor);
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	private void start(ArtifactPipeline pipeline, Repository repository, Request... requests) {
+		ProvisioningContext context = new ProvisioningContext(getAgent()) {
+			@Override
+			public IQueryable<IArtifactRepository> getArtifactRepositories(IProgressMonitor monitor) {
+				return new CollectionResult<>(Collections.<IArtifactRepository> singleton(repository));
+			}
+		};
+		DownloadManager manager = pipeline.createDownloadManager(context, getAgent());
+		manager.add(requests);
+		pipeline.start(() -> manager.start(pipeline.getDownloadMonitor()));
+	}
+
+	public void testUnitDoesNotWaitForOthers() {
+		Repository repository = new Repository();
+		Request fast = new Request("fast", false);
+		Request slow = new Request("slow", false);
+		repository.keys.add(fast.key);
+		repository.keys.add(slow.key);
+		repository.blocked.add(slow.key);
+		IInstallableUnit fastUnit = createIU("fast");
+		IInstallableUnit slowUnit = createIU("slow");
+
+		ArtifactPipeline pipeline = new ArtifactPipeline();
+		pipeline.add(fastUnit, new IArtifactRequest[] {fast});
+		pipeline.add(slowUnit, new IArtifactRequest[] {slow});
+		start(pipeline, repository, fast, slow);
+		try {
+			assertOK("1.0", pipeline.await(fastUnit, new NullProgressMonitor()));
+			assertNull("1.1", slow.getResult());
+			repository.release.countDown();
+			assertOK("1.2", pipeline.await(slowUnit, new NullProgressMonitor()));
+			assertOK("1.3", pipeline.join(new NullProgressMonitor()));
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	public void testFailedRequestFailsItsUnit() {
+		Repository repository = new Repository();
+		Request good = new Request("good", false);
+		Request bad = new Request("bad", true);
+		repository.keys.add(good.key);
+		repository.keys.add(bad.key);
+		IInstallableUnit goodUnit = createIU("good");
+		IInstallableUnit badUnit = createIU("bad");
+
+		ArtifactPipeline pipeline = new ArtifactPipeline();
+		pipeline.add(goodUnit, new IArtifactRequest[] {good});
+		pipeline.add(badUnit, new IArtifactRequest[] {bad});
+		start(pipeline, repository, good, bad);
+		try {
+			assertOK("1.0", pipeline.await(goodUnit, new NullProgressMonitor()));
+			assertTrue("1.1", pipeline.await(badUnit, new NullProgressMonitor()).matches(IStatus.ERROR));
+			assertTrue("1.2", pipeline.join(new NullProgressMonitor()).matches(IStatus.ERROR));
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	public void testPauseHoldsBackDownloads() throws InterruptedException {
+		Repository repository = new Repository();
+		Request request = new Request("paused", false);
+		repository.keys.add(request.key);
+		IInstallableUnit unit = createIU("paused");
+
+		ArtifactPipeline pipeline = new ArtifactPipeline();
+		pipeline.add(unit, new IArtifactRequest[] {request});
+		pipeline.setPaused(true);
+		start(pipeline, repository, request);
+		try {
+			Thread.sleep(300);
+			assertNull("1.0", request.getResult());
+			pipeline.setPaused(false);
+			assertOK("1.1", pipeline.await(unit, new NullProgressMonitor()));
+			assertOK("1.2", pipeline.join(new NullProgressMonitor()));
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	public void testProgressIsReported() {
+		Repository repository = new Repository();
+		Request request = new Request("progress", false);
+		repository.keys.add(request.key);
+		IInstallableUnit unit = createIU("progress");
+		final int[] worked = new int[1];
+		IProgressMonitor monitor = new NullProgressMonitor() {
+			@Override
+			public void worked(int work) {
+				worked[0] += work;
+			}
+		};
+
+		ArtifactPipeline pipeline = new ArtifactPipeline();
+		pipeline.add(unit, new IArtifactRequest[] {request});
+		start(pipeline, repository, request);
+		try {
+			assertOK("1.0", pipeline.join(monitor, 100));
+			assertEquals("1.1", 100, worked[0]);
+		} finally {
+			pipeline.close();
+		}
+	}
+
+	public void testCloseCancelsDownloads() {
+		Repository repository = new Repository();
+		Request request = new Request("blocked", false);
+		repository.keys.add(request.key);
+		repository.blocked.add(request.key);
+		IInstallableUnit unit = createIU("blocked");
+
+		ArtifactPipeline pipeline = new ArtifactPipeline();
+		pipeline.add(unit, new IArtifactRequest[] {request});
+		start(pipeline, repository, request);
+		pipeline.close();
+		assertNull("1.0", request.getResult());
+		assertFalse("1.1", pipeline.join(new NullProgressMonitor()).isOK());
+	}
+}
@@ -12,15 +12,22 @@ package org.eclipse.equinox.p2.tests.engine;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.engine.DownloadManager;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.query.*;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRequest;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.TestArtifactRepository;
 
 /**
  * Simple tests of {@link DownloadManager} API.
@@ -230,6 +237,180 @@ public class DownloadManagerTest extends AbstractProvisioningTest {
 
 	}
 
+	/**
+	 * A request that is fetched by the repositories listed as good.
+	 */
+	static class FakeRequest implements IArtifactRequest {
+		final IArtifactKey key;
+		final Set<IArtifactRepository> goodRepositories = new HashSet<>();
+		final List<IArtifactRepository> tried = Collections.synchronizedList(new ArrayList<IArtifactRepository>());
+		volatile IStatus result;
+
+		FakeRequest(String id) {
+			key = new ArtifactKey("osgi.bundle", id, Version.parseVersion("1.0.0"));
+		}
+
+		@Override
+		public IArtifactKey getArtifactKey() {
+			return key;
+		}
+
+		@Override
+		public void perform(IArtifactRepository sourceRepository, IProgressMonitor monitor) {
+			tried.add(sourceRepository);
+			result = goodRepositories.contains(sourceRepository) ? Status.OK_STATUS : new Status(IStatus.ERROR, "test", "failed");
+		}
+
+		@Override
+		public IStatus getResult() {
+			return result;
+		}
+	}
+
+	/**
+	 * A repository that contains the given keys and counts its concurrent downloads.
+	 */
+	class FakeRepository extends TestArtifactRepository {
+		final Set<IArtifactKey> keys = new HashSet<>();
+		final Map<String, String> properties = new HashMap<>();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final List<IArtifactRequest[]> batches = Collections.synchronizedList(new ArrayList<IArtifactRequest[]>());
+		CyclicBarrier barrier;
+
+		FakeRepository(String location) {
+			super(getAgent(), URI.create(location));
+		}
+
+		@Override
+		public boolean contains(IArtifactKey key) {
+			return keys.contains(key);
+		}
+
+		@Override
+		public Map<String, String> getProperties() {
+			return properties;
+		}
+
+		@Override
+		public IStatus getArtifacts(IArtifactRequest[] requests, IProgressMonitor monitor) {
+			batches.add(requests);
+			int now = running.incrementAndGet();
+			synchronized (maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), now));
+			}
+			try {
+				if (barrier != null)
+					barrier.await(10, TimeUnit.SECONDS);
+				else
+					Thread.sleep(20);
+			} catch (Exception e) {
+				return new Status(IStatus.ERROR, "test", "not concurrent", e);
+			} finally {
+				running.decrementAndGet();
+			}
+			SubMonitor subMonitor = SubMonitor.convert(monitor, requests.length);
+			for (IArtifactRequest request : requests) {
+				subMonitor.subTask(request.getArtifactKey().getId());
+				request.perform(this, subMonitor.newChild(1));
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	private ProvisioningContext createContext(final IArtifactRepository... repositories) {
+		return new ProvisioningContext(getAgent()) {
+			@Override
+			public IQueryable<IArtifactRepository> getArtifactRepositories(IProgressMonitor monitor) {
+				return new CollectionResult<>(Arrays.asList(repositories));
+			}
+		};
+	}
+
+	public void testRepositoriesDownloadConcurrently() {
+		FakeRepository first = new FakeRepository("http://first.invalid/");
+		FakeRepository second = new FakeRepository("http://second.invalid/");
+		// each download only completes while a download from the other repository is in flight
+		first.barrier = second.barrier = new CyclicBarrier(2);
+		FakeRequest one = new FakeRequest("one");
+		FakeRequest two = new FakeRequest("two");
+		first.keys.add(one.key);
+		second.keys.add(two.key);
+		one.goodRepositories.add(first);
+		two.goodRepositories.add(second);
+
+		DownloadManager manager = createDownloadManager(createContext(first, second));
+		manager.add(new IArtifactRequest[] {one, two});
+		assertOK("1.0", manager.start(new NullProgressMonitor()));
+		assertOK("1.1", one.getResult());
+		assertOK("1.2", two.getResult());
+	}
+
+	public void testFailedRequestMovesToNextRepository() {
+		FakeRepository first = new FakeRepository("http://first.invalid/");
+		FakeRepository second = new FakeRepository("http://second.invalid/");
+		FakeRequest request = new FakeRequest("one");
+		first.keys.add(request.key);
+		second.keys.add(request.key);
+		request.goodRepositories.add(second);
+
+		DownloadManager manager = createDownloadManager(createContext(first, second));
+		manager.add(request);
+		assertOK("1.0", manager.start(new NullProgressMonitor()));
+		assertEquals("1.1", Arrays.asList(first, second), request.tried);
+	}
+
+	public void testRequestsBatchedPerRepository() {
+		FakeRepository repository = new FakeRepository("http://first.invalid/");
+		DownloadManager manager = createDownloadManager(createContext(repository));
+		for (int i = 0; i < 8; i++) {
+			FakeRequest request = new FakeRequest("request" + i);
+			repository.keys.add(request.key);
+			request.goodRepositories.add(repository);
+			manager.add(request);
+		}
+		assertOK("1.0", manager.start(new NullProgressMonitor()));
+		assertEquals("1.1", 1, repository.batches.size());
+		assertEquals("1.2", 8, repository.batches.get(0).length);
+	}
+
+	public void testProgressIsReported() {
+		FakeRepository repository = new FakeRepository("http://first.invalid/");
+		FakeRequest request = new FakeRequest("one");
+		repository.keys.add(request.key);
+		request.goodRepositories.add(repository);
+		final List<String> subTasks = new ArrayList<>();
+		final double[] worked = new double[1];
+		final int[] total = new int[1];
+		IProgressMonitor monitor = new NullProgressMonitor() {
+			@Override
+			public void beginTask(String name, int totalWork) {
+				total[0] = totalWork;
+			}
+
+			@Override
+			public void internalWorked(double work) {
+				worked[0] += work;
+			}
+
+			@Override
+			public void worked(int work) {
+				internalWorked(work);
+			}
+
+			@Override
+			public void subTask(String name) {
+				subTasks.add(name);
+			}
+		};
+
+		DownloadManager manager = createDownloadManager(createContext(repository));
+		manager.add(request);
+		assertOK("1.0", manager.start(monitor));
+		assertTrue("1.1 " + subTasks, subTasks.contains("one"));
+		assertEquals("1.2", total[0], worked[0], 1);
+	}
+
 	private DownloadManager createDownloadManager(ProvisioningContext context) {
 		return new DownloadManager(context, getAgent());
 	}
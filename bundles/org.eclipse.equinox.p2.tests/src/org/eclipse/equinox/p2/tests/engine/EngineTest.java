@@ -435,6 +435,60 @@ public class EngineTest extends AbstractProvisioningTest {
 		assertFalse(ius.hasNext());
 	}
 
+	public void testPerformRollbackPipelined() {
+
+		Map<String, String> properties = new HashMap<>();
+		properties.put(IProfile.PROP_INSTALL_FOLDER, testProvisioning.getAbsolutePath());
+		IProfile profile = createProfile("testPerformRollbackPipelined", properties);
+
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setProperty(PhaseSet.PIPELINED, Boolean.TRUE.toString());
+		IProvisioningPlan plan = engine.createPlan(profile, context);
+		plan.addInstallableUnit(createOSGiIU());
+		plan.addInstallableUnit(createBadIU());
+		IStatus result = engine.perform(plan, new NullProgressMonitor());
+		assertFalse(result.isOK());
+
+		Iterator<IInstallableUnit> ius = getInstallableUnits(profile);
+		assertFalse(ius.hasNext());
+
+		plan = engine.createPlan(profile, context);
+		plan.addInstallableUnit(createOSGiIU());
+		result = engine.perform(plan, new NullProgressMonitor());
+		assertTrue(result.isOK());
+		ius = getInstallableUnits(profile);
+		assertTrue(ius.hasNext());
+	}
+
+	public void testPerformParallelOperands() {
+
+		Map<String, String> properties = new HashMap<>();
+		properties.put(IProfile.PROP_INSTALL_FOLDER, testProvisioning.getAbsolutePath());
+		IProfile profile = createProfile("testPerformParallelOperands", properties);
+
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setProperty(PhaseSet.PARALLEL_OPERANDS, "4");
+		IInstallableUnit[] units = new IInstallableUnit[8];
+		units[0] = createIU("parallel.base");
+		for (int i = 1; i < units.length; i++)
+			units[i] = createIU("parallel." + i, createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, units[i - 1].getId()));
+
+		IProvisioningPlan plan = engine.createPlan(profile, context);
+		for (IInstallableUnit unit : units)
+			plan.addInstallableUnit(unit);
+		plan.addInstallableUnit(createBadIU());
+		IStatus result = engine.perform(plan, new NullProgressMonitor());
+		assertFalse(result.isOK());
+		assertFalse(getInstallableUnits(profile).hasNext());
+
+		plan = engine.createPlan(profile, context);
+		for (IInstallableUnit unit : units)
+			plan.addInstallableUnit(unit);
+		result = engine.perform(plan, new NullProgressMonitor());
+		assertTrue(result.isOK());
+		assertEquals(units.length, profile.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet().size());
+	}
+
 	// removing validate from engine api
 	//	public void testValidateMissingAction() {
 	//
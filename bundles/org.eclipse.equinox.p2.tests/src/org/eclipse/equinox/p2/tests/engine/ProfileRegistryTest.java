@@ -680,6 +680,112 @@ public class ProfileRegistryTest extends AbstractProvisioningTest {
 		assertEquals(1, fail);
 	}
 
+	public void testHistoricalStates() throws ProvisionException {
+		assertNull(registry.getProfile(PROFILE_NAME));
+		Profile profile = (Profile) registry.addProfile(PROFILE_NAME);
+		long oldTimestamp = profile.getTimestamp();
+		profile.addInstallableUnit(createIU("test"));
+		saveProfile(registry, profile);
+		assertEquals("1.0", 2, registry.listProfileTimestamps(PROFILE_NAME).length);
+
+		// changing a historical state that was handed out does not change the state
+		Profile oldProfile = (Profile) registry.getProfile(PROFILE_NAME, oldTimestamp);
+		assertTrue("2.0", oldProfile.query(QueryUtil.createIUAnyQuery(), null).isEmpty());
+		oldProfile.addInstallableUnit(createIU("other"));
+		oldProfile = (Profile) registry.getProfile(PROFILE_NAME, oldTimestamp);
+		assertTrue("2.1", oldProfile.query(QueryUtil.createIUAnyQuery(), null).isEmpty());
+
+		registry.removeProfile(PROFILE_NAME, oldTimestamp);
+		assertNull("3.0", registry.getProfile(PROFILE_NAME, oldTimestamp));
+		assertEquals("3.1", 1, registry.listProfileTimestamps(PROFILE_NAME).length);
+		profile.removeInstallableUnit(createIU("test"));
+		saveProfile(registry, profile);
+		assertEquals("3.2", 2, registry.listProfileTimestamps(PROFILE_NAME).length);
+	}
+
+	public void testProfileJournal() throws ProvisionException {
+		System.getProperties().put(EngineActivator.PROP_PROFILE_JOURNAL, "true");
+		try {
+			File folder = getTempFolder();
+			folder.mkdirs();
+			SimpleProfileRegistry simpleRegistry = new SimpleProfileRegistry(getAgent(), folder, null, false);
+			Profile profile = (Profile) simpleRegistry.addProfile(getName());
+			IInstallableUnit a = createIU("a");
+			IInstallableUnit b = createIU("b");
+			profile.addInstallableUnit(a);
+			profile.setInstallableUnitProperty(a, "key", "value");
+			saveProfile(simpleRegistry, profile);
+			long withA = profile.getTimestamp();
+			profile.addInstallableUnit(b);
+			profile.removeInstallableUnitProperty(a, "key");
+			profile.setProperty("test", "test");
+			saveProfile(simpleRegistry, profile);
+			long withB = profile.getTimestamp();
+			profile.removeInstallableUnit(a);
+			saveProfile(simpleRegistry, profile);
+
+			File profileFolder = new File(folder, getName() + ".profile");
+			File[] filesFound = profileFolder.listFiles((FileFilter) pathname -> pathname.getName().endsWith(".profile.delta.gz"));
+			assertEquals("1.0", 3, filesFound.length);
+			assertEquals("1.1", 4, simpleRegistry.listProfileTimestamps(getName()).length);
+
+			// the journal is replayed when the registry is restored
+			simpleRegistry = new SimpleProfileRegistry(getAgent(), folder, null, false);
+			IProfile restored = simpleRegistry.getProfile(getName());
+			assertEquals("2.0", profile.getTimestamp(), restored.getTimestamp());
+			assertEquals("2.1", 1, queryResultSize(restored.query(QueryUtil.createIUAnyQuery(), null)));
+			assertEquals("2.2", 1, queryResultSize(restored.query(QueryUtil.createIUQuery(b), null)));
+			assertEquals("2.3", "test", restored.getProperty("test"));
+
+			IProfile old = simpleRegistry.getProfile(getName(), withA);
+			assertEquals("3.0", 1, queryResultSize(old.query(QueryUtil.createIUAnyQuery(), null)));
+			assertEquals("3.1", "value", old.getInstallableUnitProperty(a, "key"));
+			assertNull("3.2", old.getProperty("test"));
+			old = simpleRegistry.getProfile(getName(), withB);
+			assertEquals("3.3", 2, queryResultSize(old.query(QueryUtil.createIUAnyQuery(), null)));
+			assertNull("3.4", old.getInstallableUnitProperty(a, "key"));
+
+			// removing a state keeps the states that are based on it
+			simpleRegistry.removeProfile(getName(), withA);
+			assertNull("4.0", simpleRegistry.getProfile(getName(), withA));
+			old = simpleRegistry.getProfile(getName(), withB);
+			assertEquals("4.1", 2, queryResultSize(old.query(QueryUtil.createIUAnyQuery(), null)));
+			restored = new SimpleProfileRegistry(getAgent(), folder, null, false).getProfile(getName());
+			assertEquals("4.2", 1, queryResultSize(restored.query(QueryUtil.createIUQuery(b), null)));
+		} finally {
+			System.getProperties().remove(EngineActivator.PROP_PROFILE_JOURNAL);
+		}
+	}
+
+	public void testProfileJournalMissingBase() throws ProvisionException {
+		System.getProperties().put(EngineActivator.PROP_PROFILE_JOURNAL, "true");
+		try {
+			File folder = getTempFolder();
+			folder.mkdirs();
+			SimpleProfileRegistry simpleRegistry = new SimpleProfileRegistry(getAgent(), folder, null, false);
+			Profile profile = (Profile) simpleRegistry.addProfile(getName());
+			long snapshot = simpleRegistry.listProfileTimestamps(getName())[0];
+			profile.addInstallableUnit(createIU("a"));
+			saveProfile(simpleRegistry, profile);
+			long withA = profile.getTimestamp();
+			profile.addInstallableUnit(createIU("b"));
+			saveProfile(simpleRegistry, profile);
+
+			File profileFolder = new File(folder, getName() + ".profile");
+			File delta = new File(profileFolder, withA + ".profile.delta.gz");
+			assertTrue("1.0", delta.exists());
+			assertTrue("1.1", delta.delete());
+
+			// the latest state cannot be replayed, the profile is restored from the snapshot
+			IProfile restored = new SimpleProfileRegistry(getAgent(), folder, null, false).getProfile(getName());
+			assertNotNull("2.0", restored);
+			assertEquals("2.1", snapshot, restored.getTimestamp());
+			assertTrue("2.2", restored.query(QueryUtil.createIUAnyQuery(), null).isEmpty());
+		} finally {
+			System.getProperties().remove(EngineActivator.PROP_PROFILE_JOURNAL);
+		}
+	}
+
 	public void testSetProfileStateProperties() throws ProvisionException {
 		assertNull(registry.getProfile(PROFILE_NAME));
 		Profile profile = (Profile) registry.addProfile(PROFILE_NAME);
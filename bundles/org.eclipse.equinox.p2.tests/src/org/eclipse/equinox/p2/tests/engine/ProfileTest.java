@@ -122,6 +122,41 @@ public class ProfileTest extends AbstractProvisioningTest {
 		assertNull(registry.getProfile(PROFILE_NAME));
 	}
 
+	public void testSnapshotIsIndependent() {
+		IInstallableUnit a = createIU("a");
+		IInstallableUnit b = createIU("b");
+		IQuery<IInstallableUnit> providesB = QueryUtil.createMatchQuery("providedCapabilities.exists(pc | pc.namespace == $0 && pc.name == $1)", IInstallableUnit.NAMESPACE_IU_ID, "b");
+		Profile profile = new Profile(getAgent(), PROFILE_NAME, null, null);
+		profile.setProperty("key", "value");
+		profile.addInstallableUnit(a);
+		profile.setInstallableUnitProperty(a, "key", "value");
+		// build the indexes before taking the snapshot
+		assertEquals(1, queryResultSize(profile.query(QueryUtil.createIUQuery("a"), null)));
+		assertTrue(profile.query(providesB, null).isEmpty());
+
+		Profile snapshot = profile.snapshot();
+		profile.setProperty("key", "changed");
+		profile.addInstallableUnit(b);
+		profile.setInstallableUnitProperty(a, "key", "changed");
+		assertEquals("1.0", "value", snapshot.getProperty("key"));
+		assertEquals("1.1", "value", snapshot.getInstallableUnitProperty(a, "key"));
+		assertTrue("1.2", snapshot.query(QueryUtil.createIUQuery("b"), null).isEmpty());
+		assertTrue("1.3", snapshot.query(providesB, null).isEmpty());
+		assertEquals("1.4", 1, queryResultSize(profile.query(QueryUtil.createIUQuery("b"), null)));
+		assertEquals("1.5", 1, queryResultSize(profile.query(providesB, null)));
+
+		snapshot.removeInstallableUnit(a);
+		snapshot.removeInstallableUnitProperty(a, "key");
+		snapshot.removeProperty("key");
+		assertEquals("2.0", "changed", profile.getProperty("key"));
+		assertEquals("2.1", "changed", profile.getInstallableUnitProperty(a, "key"));
+		assertEquals("2.2", 1, queryResultSize(profile.query(QueryUtil.createIUQuery("a"), null)));
+		assertTrue("2.3", snapshot.query(QueryUtil.createIUQuery("a"), null).isEmpty());
+
+		profile.removeInstallableUnit(b);
+		assertTrue("3.0", profile.query(providesB, null).isEmpty());
+	}
+
 	public void testAvailable() throws ProvisionException {
 		IProfileRegistry registry = getProfileRegistry();
 		assertNull(registry.getProfile(PROFILE_NAME));
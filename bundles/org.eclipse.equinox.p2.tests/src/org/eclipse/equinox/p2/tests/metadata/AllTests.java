@@ -26,6 +26,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(InstallableUnitTest.class);
 		suite.addTestSuite(IUPersistenceTest.class);
 		suite.addTestSuite(LatestIUTest.class);
+		suite.addTestSuite(LazyInstallableUnitTest.class);
 		suite.addTestSuite(LicenseTest.class);
 		suite.addTestSuite(MultipleIUAndFragmentTest.class);
 		suite.addTestSuite(PersistNegation.class);
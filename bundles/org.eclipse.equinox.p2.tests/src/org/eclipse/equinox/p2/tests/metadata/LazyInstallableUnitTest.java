@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.metadata;
+
+import java.util.Collections;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.metadata.LazyInstallableUnit;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests that {@link LazyInstallableUnit} decodes its deferred members on first access only.
+ */
+public class LazyInstallableUnitTest extends AbstractProvisioningTest {
+
+	static class CountingLoader implements LazyInstallableUnit.MemberLoader {
+		int propertyLoads;
+		int contentLoads;
+
+		@Override
+		public void loadProperties(LazyInstallableUnit iu, int position) {
+			propertyLoads++;
+			assertEquals(1, position);
+			iu.setProperty(IInstallableUnit.PROP_NAME, "Lazy");
+		}
+
+		@Override
+		public void loadContent(LazyInstallableUnit iu, int position) {
+			contentLoads++;
+			assertEquals(2, position);
+			iu.setArtifacts(new IArtifactKey[] {new ArtifactKey("osgi.bundle", "lazy", Version.create("1.0.0"))});
+			iu.addTouchpointData(MetadataFactory.createTouchpointData(Collections.singletonMap("install", "installBundle(bundle:${artifact})")));
+			iu.setCopyright(MetadataFactory.createCopyright(null, "Copyright"));
+		}
+	}
+
+	private CountingLoader loader;
+	private LazyInstallableUnit iu;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		loader = new CountingLoader();
+		iu = new LazyInstallableUnit(loader, 1, 2);
+		iu.setId("lazy");
+		iu.setVersion(Version.create("1.0.0"));
+		iu.setCapabilities(new IProvidedCapability[] {MetadataFactory.createProvidedCapability(IInstallableUnit.NAMESPACE_IU_ID, "lazy", Version.create("1.0.0"))});
+	}
+
+	private boolean matches(IQuery<IInstallableUnit> query) {
+		return !query.perform(Collections.<IInstallableUnit> singleton(iu).iterator()).isEmpty();
+	}
+
+	public void testMatchingDoesNotLoad() {
+		assertTrue(matches(QueryUtil.createIUQuery("lazy")));
+		assertTrue(iu.satisfies(MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "lazy", VersionRange.emptyRange, null, false, false)));
+		assertEquals(0, loader.propertyLoads);
+		assertEquals(0, loader.contentLoads);
+	}
+
+	public void testPropertiesLoadedOnce() {
+		assertEquals("Lazy", iu.getProperty(IInstallableUnit.PROP_NAME));
+		assertEquals(1, iu.getProperties().size());
+		assertEquals(1, loader.propertyLoads);
+		assertEquals(0, loader.contentLoads);
+	}
+
+	public void testContentLoadedOnce() {
+		assertEquals(1, iu.getArtifacts().size());
+		assertEquals(1, iu.getTouchpointData().size());
+		assertEquals("Copyright", iu.getCopyright().getBody());
+		assertTrue(iu.getLicenses().isEmpty());
+		assertEquals(0, loader.propertyLoads);
+		assertEquals(1, loader.contentLoads);
+	}
+
+	public void testExpressionsLoadMembers() {
+		assertTrue(matches(QueryUtil.createMatchQuery("properties[$0] == $1", IInstallableUnit.PROP_NAME, "Lazy")));
+		assertTrue(matches(QueryUtil.createMatchQuery("artifacts.exists(a | a.id == $0)", "lazy")));
+		assertEquals(1, loader.propertyLoads);
+		assertEquals(1, loader.contentLoads);
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.metadata.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.LazyInstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.repository.*;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.equinox.p2.repository.spi.RepositoryReference;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests conversion of metadata repositories to and from the binary format.
+ */
+public class BinaryMetadataRepositoryTest extends AbstractProvisioningTest {
+	private File xmlLocation;
+	private File binaryLocation;
+	private File roundTripLocation;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		File root = getTempFolder();
+		xmlLocation = new File(root, "xml");
+		binaryLocation = new File(root, "binary");
+		roundTripLocation = new File(root, "roundTrip");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		manager.removeRepository(xmlLocation.toURI());
+		manager.removeRepository(binaryLocation.toURI());
+		manager.removeRepository(roundTripLocation.toURI());
+		super.tearDown();
+	}
+
+	private IMetadataRepository createXMLRepository() throws ProvisionException {
+		IMetadataRepository repo = getMetadataRepositoryManager().createRepository(xmlLocation.toURI(), "Binary \u00e9 test", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, Collections.singletonMap("repoKey", "repoValue"));
+		repo.addReferences(Collections.singletonList(new RepositoryReference(URI.create("http://example.com/updates"), "nick", IRepository.TYPE_METADATA, IRepository.ENABLED)));
+
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId("binary.host");
+		description.setVersion(Version.create("1.2.3.qualifier"));
+		description.setSingleton(true);
+		description.setProperty(IInstallableUnit.PROP_NAME, "%name");
+		description.setProperty("df_LT.name", "Host \u00fc");
+		description.setFilter("(osgi.os=linux)");
+		Map<String, Object> attributes = new HashMap<>();
+		attributes.put("osgi.ee", "JavaSE");
+		attributes.put("version", Version.create("1.8"));
+		attributes.put("count", Long.valueOf(42));
+		attributes.put("flag", Boolean.TRUE);
+		attributes.put("list", Arrays.asList("a", "b"));
+		description.setCapabilities(new IProvidedCapability[] {MetadataFactory.createProvidedCapability(IInstallableUnit.NAMESPACE_IU_ID, "binary.host", description.getVersion()), MetadataFactory.createProvidedCapability("osgi.ee", attributes), MetadataFactory.createProvidedCapability("java.package", "org.example", Version.create("2.0"))});
+		IMatchExpression<IInstallableUnit> matches = ExpressionUtil.getFactory().matchExpression(ExpressionUtil.parse("providedCapabilities.exists(pc | pc.namespace == $0 && pc.name == $1)"), "java.package", "org.example");
+		description.setRequirements(new IRequirement[] {MetadataFactory.createRequirement("java.package", "org.other", new VersionRange("[1.0,2.0)"), InstallableUnit.parseFilter("(osgi.ws=gtk)"), 0, 1, true, "simple requirement"), MetadataFactory.createRequirement(matches, null, 0, 1, true, "expression requirement")});
+		description.setMetaRequirements(createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "meta"));
+		description.setArtifacts(new IArtifactKey[] {new ArtifactKey("osgi.bundle", "binary.host", description.getVersion())});
+		description.setTouchpointType(MetadataFactory.createTouchpointType("org.eclipse.equinox.p2.osgi", Version.create("1.0.0")));
+		Map<String, Object> instructions = new LinkedHashMap<>();
+		instructions.put("install", MetadataFactory.createTouchpointInstruction("installBundle(bundle:${artifact})", "org.eclipse.equinox.p2.touchpoint.eclipse.installBundle"));
+		instructions.put("configure", "setStartLevel(startLevel:4);");
+		description.addTouchpointData(MetadataFactory.createTouchpointData(instructions));
+		description.setUpdateDescriptor(MetadataFactory.createUpdateDescriptor("binary.host", new VersionRange("[0.0.0,1.2.3)"), IUpdateDescriptor.HIGH, "update", URI.create("http://example.com/update")));
+		description.setLicenses(new ILicense[] {MetadataFactory.createLicense(URI.create("http://example.com/license"), "License body")});
+		description.setCopyright(MetadataFactory.createCopyright(null, "Copyright body"));
+		IInstallableUnit host = MetadataFactory.createInstallableUnit(description);
+
+		IInstallableUnit fragment = createIUFragment(host, "binary.fragment", Version.create("1.0.0"));
+		IRequirement[][] scope = new IRequirement[][] {createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "binary.host")};
+		IRequirementChange change = MetadataFactory.createRequirementChange(MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "a", VersionRange.emptyRange, null, false, false), MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "a", new VersionRange("[2.0,3.0)"), null, false, false));
+		IInstallableUnit patch = createIUPatch("binary.patch", Version.create("1.0.0"), false, new IRequirementChange[] {change}, scope, createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "binary.host")[0]);
+		repo.addInstallableUnits(Arrays.asList(host, fragment, patch, createIU("binary.host", Version.create("2.0.0")), createIU("binary.other")));
+		return repo;
+	}
+
+	public void testRoundTrip() throws Exception {
+		IMetadataRepository xmlRepo = createXMLRepository();
+		BinaryMetadataRepositoryIO.write(xmlRepo, new File(binaryLocation, BinaryMetadataRepository.CONTENT_FILENAME));
+
+		IMetadataRepository binaryRepo = getMetadataRepositoryManager().loadRepository(binaryLocation.toURI(), null);
+		assertTrue(binaryRepo instanceof BinaryMetadataRepository);
+		assertFalse(binaryRepo.isModifiable());
+		assertEquals(xmlRepo.getName(), binaryRepo.getName());
+		assertEquals(xmlRepo.getType(), binaryRepo.getType());
+		assertEquals(xmlRepo.getProperties().get("repoKey"), binaryRepo.getProperties().get("repoKey"));
+		assertEquals(1, binaryRepo.getReferences().size());
+		assertEquals(xmlRepo.getReferences().iterator().next().getLocation(), binaryRepo.getReferences().iterator().next().getLocation());
+		assertRepositoryEquals(xmlRepo, binaryRepo);
+
+		// translated properties are served by the binary repository too
+		IInstallableUnit host = binaryRepo.query(QueryUtil.createIUQuery("binary.host", Version.create("1.2.3.qualifier")), null).iterator().next();
+		assertEquals("Host \u00fc", host.getProperty(IInstallableUnit.PROP_NAME, "lt"));
+		// plain units are decoded lazily, fragments and patches completely
+		assertTrue(host instanceof LazyInstallableUnit);
+		assertFalse(binaryRepo.query(QueryUtil.createIUQuery("binary.fragment"), null).iterator().next() instanceof LazyInstallableUnit);
+
+		// writing the binary repository as XML yields the original repository
+		roundTripLocation.mkdirs();
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(new File(roundTripLocation, "content.xml")))) {
+			new MetadataRepositoryIO(getAgent()).write(binaryRepo, output);
+		}
+		IMetadataRepository roundTripRepo = getMetadataRepositoryManager().loadRepository(roundTripLocation.toURI(), null);
+		assertEquals(xmlRepo.getType(), roundTripRepo.getType());
+		assertEquals(1, roundTripRepo.getReferences().size());
+		assertRepositoryEquals(xmlRepo, roundTripRepo);
+	}
+
+	public void testIndexedQueries() throws Exception {
+		IMetadataRepository xmlRepo = createXMLRepository();
+		BinaryMetadataRepositoryIO.write(xmlRepo, new File(binaryLocation, BinaryMetadataRepository.CONTENT_FILENAME));
+		IMetadataRepository binaryRepo = getMetadataRepositoryManager().loadRepository(binaryLocation.toURI(), null);
+
+		assertEquals(2, queryResultSize(binaryRepo.query(QueryUtil.createIUQuery("binary.host"), null)));
+		assertEquals(0, queryResultSize(binaryRepo.query(QueryUtil.createIUQuery("binary.missing"), null)));
+		IRequirement req = MetadataFactory.createRequirement("java.package", "org.example", VersionRange.emptyRange, null, false, false);
+		assertContains(binaryRepo.query(QueryUtil.createMatchQuery(req.getMatches()), null), xmlRepo.query(QueryUtil.createIUQuery("binary.host", Version.create("1.2.3.qualifier")), null));
+		req = MetadataFactory.createRequirement("osgi.ee", "JavaSE", new VersionRange("[1.8,1.8]"), null, false, false);
+		assertEquals(1, queryResultSize(binaryRepo.query(QueryUtil.createMatchQuery(req.getMatches()), null)));
+		assertEquals(5, queryResultSize(binaryRepo.query(QueryUtil.createIUAnyQuery(), null)));
+	}
+
+	public void testNotModifiable() throws Exception {
+		BinaryMetadataRepositoryIO.write(createXMLRepository(), new File(binaryLocation, BinaryMetadataRepository.CONTENT_FILENAME));
+		try {
+			getMetadataRepositoryManager().loadRepository(binaryLocation.toURI(), IRepositoryManager.REPOSITORY_HINT_MODIFIABLE, null);
+			fail("Binary repositories cannot be modified");
+		} catch (ProvisionException e) {
+			// expected
+		}
+	}
+
+	public void testCorruptFile() throws Exception {
+		binaryLocation.mkdirs();
+		try (OutputStream output = new FileOutputStream(new File(binaryLocation, BinaryMetadataRepository.CONTENT_FILENAME))) {
+			output.write("not a binary repository".getBytes("UTF-8"));
+		}
+		try {
+			getMetadataRepositoryManager().loadRepository(binaryLocation.toURI(), null);
+			fail("Corrupt file should not load");
+		} catch (ProvisionException e) {
+			assertEquals(ProvisionException.REPOSITORY_FAILED_READ, e.getStatus().getCode());
+		}
+	}
+
+	private void assertRepositoryEquals(IMetadataRepository expected, IMetadataRepository actual) {
+		Set<IInstallableUnit> expectedUnits = expected.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
+		assertEquals(expectedUnits.size(), queryResultSize(actual.query(QueryUtil.createIUAnyQuery(), null)));
+		for (IInstallableUnit iu : expectedUnits) {
+			IQueryResult<IInstallableUnit> result = actual.query(QueryUtil.createIUQuery(iu.getId(), iu.getVersion()), null);
+			assertEquals(1, queryResultSize(result));
+			IInstallableUnit actualIU = result.iterator().next();
+			assertEquals(iu.toString(), iu, actualIU);
+			assertEquals(iu.toString(), iu.getMetaRequirements(), actualIU.getMetaRequirements());
+			if (iu instanceof IInstallableUnitPatch) {
+				IInstallableUnitPatch patch = (IInstallableUnitPatch) iu;
+				IInstallableUnitPatch actualPatch = (IInstallableUnitPatch) actualIU;
+				assertEquals(patch.getLifeCycle(), actualPatch.getLifeCycle());
+				assertEquals(patch.getRequirementsChange(), actualPatch.getRequirementsChange());
+				assertEquals(patch.getApplicabilityScope().length, actualPatch.getApplicabilityScope().length);
+				assertEquals(patch.getApplicabilityScope()[0], actualPatch.getApplicabilityScope()[0]);
+			}
+		}
+	}
+}
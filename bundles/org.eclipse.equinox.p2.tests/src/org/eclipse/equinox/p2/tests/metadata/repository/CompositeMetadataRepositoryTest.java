@@ -710,6 +710,80 @@ public class CompositeMetadataRepositoryTest extends AbstractProvisioningTest {
 
 	}
 
+	public void testLoadManyChildren() throws ProvisionException {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		CompositeMetadataRepository compRepo = createRepo(false);
+		List<URI> children = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			URI childLocation = new File(repoLocation, "child" + i).toURI();
+			IMetadataRepository child = manager.createRepository(childLocation, "child" + i, IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+			child.addInstallableUnits(Collections.singletonList(createIU("iu" + i, Version.createOSGi(1, 0, i))));
+			compRepo.addChild(childLocation);
+			children.add(childLocation);
+		}
+		for (URI child : children)
+			manager.removeRepository(child);
+		manager.removeRepository(repoLocation.toURI());
+
+		IMetadataRepository repo = manager.loadRepository(repoLocation.toURI(), getMonitor());
+		assertEquals("1.0", 12, repo.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet().size());
+		for (int i = 0; i < children.size(); i++) {
+			URI child = children.get(i);
+			assertEquals("1.1." + i, 1, queryResultSize(repo.query(QueryUtil.createIUQuery("iu" + i), null)));
+			assertTrue("1.2." + i, manager.contains(child));
+			assertFalse("1.3." + i, manager.isEnabled(child));
+			assertEquals("1.4." + i, "true", manager.getRepositoryProperty(child, IRepository.PROP_SYSTEM));
+		}
+		for (URI child : children)
+			manager.removeRepository(child);
+	}
+
+	public void testLoadSiblingsReferringToEachOther() throws Exception {
+		final IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		CompositeMetadataRepository compRepo = createRepo(false);
+		List<URI> locations = new ArrayList<>();
+		CompositeMetadataRepository[] siblings = new CompositeMetadataRepository[2];
+		for (int i = 0; i < siblings.length; i++) {
+			URI leafLocation = new File(repoLocation, "leaf" + i).toURI();
+			IMetadataRepository leaf = manager.createRepository(leafLocation, "leaf" + i, IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+			leaf.addInstallableUnits(Collections.singletonList(createIU("iu" + i, Version.createOSGi(1, 0, 0))));
+			URI siblingLocation = new File(repoLocation, "sibling" + i).toURI();
+			siblings[i] = (CompositeMetadataRepository) manager.createRepository(siblingLocation, "sibling" + i, IMetadataRepositoryManager.TYPE_COMPOSITE_REPOSITORY, null);
+			siblings[i].addChild(leafLocation);
+			locations.add(leafLocation);
+			locations.add(siblingLocation);
+		}
+		siblings[0].addChild(siblings[1].getLocation());
+		siblings[1].addChild(siblings[0].getLocation());
+		compRepo.addChild(siblings[0].getLocation());
+		compRepo.addChild(siblings[1].getLocation());
+		for (URI location : locations)
+			manager.removeRepository(location);
+		manager.removeRepository(repoLocation.toURI());
+
+		//the siblings are loaded in parallel and each waits for the other
+		final IMetadataRepository[] loaded = new IMetadataRepository[1];
+		Thread loader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					loaded[0] = manager.loadRepository(repoLocation.toURI(), null);
+				} catch (ProvisionException e) {
+					//reported below
+				}
+			}
+		};
+		loader.setDaemon(true);
+		loader.start();
+		loader.join(60000);
+		assertFalse("1.0", loader.isAlive());
+		assertNotNull("1.1", loaded[0]);
+		assertEquals("1.2", 1, queryResultSize(loaded[0].query(QueryUtil.createIUQuery("iu0"), null)));
+		assertEquals("1.3", 1, queryResultSize(loaded[0].query(QueryUtil.createIUQuery("iu1"), null)));
+		for (URI location : locations)
+			manager.removeRepository(location);
+	}
+
 	public void testFailingChildLoadsCompleteRepository() {
 		boolean exception = false;
 		IMetadataRepository repo = null;
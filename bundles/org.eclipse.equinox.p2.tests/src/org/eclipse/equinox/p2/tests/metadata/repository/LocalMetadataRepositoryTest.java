@@ -12,7 +12,10 @@
 package org.eclipse.equinox.p2.tests.metadata.repository;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
@@ -21,6 +24,7 @@ import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepository;
@@ -256,6 +260,33 @@ public class LocalMetadataRepositoryTest extends AbstractProvisioningTest {
 		}
 	}
 
+	public void testPersistentCapabilityIndex() throws ProvisionException, IOException {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		IProvidedCapability[] provides = new IProvidedCapability[] {MetadataFactory.createProvidedCapability("test.namespace", "shared", Version.createOSGi(1, 0, 0))};
+		IInstallableUnit foo = createIU("foo", provides);
+		repo.addInstallableUnits(Arrays.asList(foo, createIU("bar", provides), createIU("baz")));
+		File indexFile = new File(repoLocation, "content.index");
+		assertTrue("1.0", indexFile.exists());
+
+		IQuery<IInstallableUnit> sharedQuery = QueryUtil.createMatchQuery(createRequiredCapabilities("test.namespace", "shared")[0].getMatches());
+		IQuery<IInstallableUnit> bazQuery = QueryUtil.createMatchQuery(createRequiredCapabilities(IInstallableUnit.NAMESPACE_IU_ID, "baz")[0].getMatches());
+		manager.removeRepository(repoLocation.toURI());
+		repo = manager.loadRepository(repoLocation.toURI(), null);
+		assertEquals("1.1", 2, queryResultSize(repo.query(sharedQuery, getMonitor())));
+		assertEquals("1.2", 1, queryResultSize(repo.query(bazQuery, getMonitor())));
+
+		// an index that does not match the content must be ignored
+		File staleIndex = new File(repoLocation, "stale.index");
+		Files.copy(indexFile.toPath(), staleIndex.toPath());
+		repo.removeInstallableUnits(Arrays.asList(foo));
+		Files.copy(staleIndex.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		manager.removeRepository(repoLocation.toURI());
+		repo = manager.loadRepository(repoLocation.toURI(), null);
+		assertEquals("2.0", 1, queryResultSize(repo.query(sharedQuery, getMonitor())));
+		assertEquals("2.1", 1, queryResultSize(repo.query(bazQuery, getMonitor())));
+	}
+
 	public void testUniqueURIs() throws ProvisionException, OperationCanceledException {
 		// The test data bug 278668 has multiple installable units with the same license uri
 		IMetadataRepository repo = getMetadataRepositoryManager().loadRepository(getTestData("test data bug 278668", "testData/bug278668").toURI(), null);
@@ -256,6 +256,26 @@ public class MetadataRepositoryManagerTest extends AbstractProvisioningTest {
 			fail("1.0", failures.iterator().next());
 	}
 
+	/**
+	 * Tests loading several repositories at once, with one of them missing.
+	 */
+	public void testLoadRepositories() throws IOException {
+		File missing = File.createTempFile("testLoadRepositories", null);
+		missing.delete();
+		URI[] locations = new URI[] {getTestData("1", "/testData/metadataRepo/good/").toURI(), missing.toURI(), getTestData("2", "/testData/mirror/mirrorSourceRepo2").toURI()};
+		MultiStatus failures = new MultiStatus(TestActivator.PI_PROV_TESTS, 0, "", null);
+		List<IRepository<IInstallableUnit>> repositories = ((AbstractRepositoryManager<IInstallableUnit>) manager).loadRepositories(locations, 0, failures, getMonitor());
+		assertEquals("1.0", 3, repositories.size());
+		assertEquals("1.1", locations[0], repositories.get(0).getLocation());
+		assertNull("1.2", repositories.get(1));
+		assertEquals("1.3", locations[2], repositories.get(2).getLocation());
+		assertTrue("1.4", manager.contains(locations[0]));
+		assertTrue("1.5", manager.contains(locations[2]));
+
+		assertEquals("2.0", 1, failures.getChildren().length);
+		assertEquals("2.1", ProvisionException.REPOSITORY_NOT_FOUND, failures.getChildren()[0].getCode());
+	}
+
 	/**
 	 * Tests loading a repository that does not exist throws an appropriate exception.
 	 */
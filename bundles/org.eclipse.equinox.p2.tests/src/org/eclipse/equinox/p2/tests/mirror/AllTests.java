@@ -23,6 +23,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(MetadataMirrorApplicationTest.class);
 		suite.addTestSuite(ArtifactRepositoryCleanupTest.class);
 		suite.addTestSuite(MetadataRepositoryCleanupTest.class);
+		suite.addTestSuite(ConcurrentMirroringTest.class);
 		suite.addTest(new JUnit4TestAdapter(NewMirrorApplicationArtifactTest.class));
 		suite.addTestSuite(NewMirrorApplicationMetadataTest.class);
 		suite.addTest(new JUnit4TestAdapter(MirrorApplicationTest.class));
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ *  Copyright (c) 2017 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *      IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.mirror;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.internal.repository.mirroring.Mirroring;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.tests.*;
+
+/**
+ * Tests mirroring artifacts on more than one thread.
+ */
+public class ConcurrentMirroringTest extends AbstractProvisioningTest {
+	private static final int ARTIFACT_COUNT = 8;
+
+	private File destinationLocation;
+	private IArtifactRepository destination;
+	private IArtifactKey[] keys;
+	private SlowArtifactRepository source;
+
+	/*
+	 * A source on a single remote host that serves every artifact slowly and remembers how
+	 * many artifacts were served at the same time.
+	 */
+	static class SlowArtifactRepository extends TestArtifactRepository {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		IArtifactKey failing;
+
+		SlowArtifactRepository(URI location) {
+			super(getAgent(), location);
+		}
+
+		@Override
+		public IStatus getRawArtifact(IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
+			int now = running.incrementAndGet();
+			try {
+				int max;
+				while ((max = maxRunning.get()) < now && !maxRunning.compareAndSet(max, now)) {
+					//retry
+				}
+				Thread.sleep(100);
+				if (descriptor.getArtifactKey().equals(failing))
+					return new Status(IStatus.ERROR, TestActivator.PI_PROV_TESTS, "Failed to serve " + failing);
+				return super.getRawArtifact(descriptor, destination, monitor);
+			} catch (InterruptedException e) {
+				return Status.CANCEL_STATUS;
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		source = new SlowArtifactRepository(new URI("http://mirror.invalid/repository/"));
+		keys = new IArtifactKey[ARTIFACT_COUNT];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new ArtifactKey("osgi.bundle", "artifact" + i, Version.createOSGi(1, 0, 0));
+			source.addArtifact(keys[i], new byte[] {(byte) i});
+		}
+		destinationLocation = getTempFolder();
+		destination = createArtifactRepository(destinationLocation.toURI(), null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		getArtifactRepositoryManager().removeRepository(destinationLocation.toURI());
+		delete(destinationLocation);
+		super.tearDown();
+	}
+
+	private MultiStatus mirror(int threads, int maxConnectionsPerHost, boolean failOnError) {
+		Mirroring mirroring = new Mirroring(source, destination, true);
+		mirroring.setArtifactKeys(keys);
+		mirroring.setThreads(threads);
+		mirroring.setMaxConnectionsPerHost(maxConnectionsPerHost);
+		return mirroring.run(failOnError, false);
+	}
+
+	public void testMirrorsConcurrently() {
+		MultiStatus status = mirror(4, 0, true);
+		assertTrue("1.0", status.isOK());
+		assertTrue("1.1", source.maxRunning.get() > 1);
+		assertTrue("1.2", source.maxRunning.get() <= 4);
+		for (int i = 0; i < keys.length; i++)
+			assertTrue("1.3." + i, destination.contains(keys[i]));
+	}
+
+	public void testConnectionsPerHostLimit() {
+		MultiStatus status = mirror(4, 2, true);
+		assertTrue("1.0", status.isOK());
+		assertEquals("1.1", 2, source.maxRunning.get());
+		for (int i = 0; i < keys.length; i++)
+			assertTrue("1.2." + i, destination.contains(keys[i]));
+	}
+
+	public void testFailOnErrorReportsFailure() {
+		source.failing = keys[1];
+		MultiStatus status = mirror(4, 0, true);
+		assertEquals("1.0", IStatus.ERROR, status.getSeverity());
+		assertTrue("1.1", reports(status, keys[1]));
+		assertFalse("1.2", destination.contains(keys[1]));
+	}
+
+	private static boolean reports(IStatus status, IArtifactKey key) {
+		if (status.getSeverity() == IStatus.ERROR && status.getMessage().indexOf(key.toString()) != -1)
+			return true;
+		for (IStatus child : status.getChildren())
+			if (reports(child, key))
+				return true;
+		return false;
+	}
+
+	public void testContinuesAfterErrorWithoutFailOnError() {
+		source.failing = keys[1];
+		MultiStatus status = mirror(4, 0, false);
+		assertEquals("1.0", IStatus.ERROR, status.getSeverity());
+		for (int i = 0; i < keys.length; i++)
+			assertEquals("1.1." + i, i != 1, destination.contains(keys[i]));
+	}
+}
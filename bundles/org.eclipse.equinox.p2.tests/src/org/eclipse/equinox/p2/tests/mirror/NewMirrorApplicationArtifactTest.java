@@ -1484,4 +1484,33 @@ public class NewMirrorApplicationArtifactTest extends AbstractProvisioningTest {
 			fail("Error mirroring", e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Test mirroring a composite source with several threads and a per host connection limit
+	 */
+	@Test
+	public void testArtifactMirrorWithThreads() {
+		File repoLocation = new File(getTempFolder(), "ConcurrentArtifactMirrorTest");
+		AbstractProvisioningTest.delete(repoLocation);
+		try {
+			CompositeArtifactRepository repo = (CompositeArtifactRepository) getArtifactRepositoryManager().createRepository(repoLocation.toURI(), "artifact name", IArtifactRepositoryManager.TYPE_COMPOSITE_REPOSITORY, null);
+			repo.addChild(sourceRepoLocation.toURI());
+			repo.addChild(sourceRepo2Location.toURI());
+
+			MirrorApplication app = new MirrorApplication();
+			app.addSource(createRepositoryDescriptor(repoLocation.toURI(), null, null, null));
+			app.addDestination(createRepositoryDescriptor(destRepoLocation.toURI(), null, null, null));
+			app.setThreads(4);
+			app.setMaxConnectionsPerHost(2);
+			assertTrue("1.0", app.run(null).isOK());
+
+			assertContentEquals("2.0", repo, getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+			assertEquals("2.1", getArtifactKeyCount(sourceRepoLocation.toURI()) + getArtifactKeyCount(sourceRepo2Location.toURI()), getArtifactKeyCount(destRepoLocation.toURI()));
+		} catch (Exception e) {
+			fail("Error mirroring", e);
+		} finally {
+			getArtifactRepositoryManager().removeRepository(repoLocation.toURI());
+			AbstractProvisioningTest.delete(repoLocation);
+		}
+	}
+}
@@ -76,6 +76,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(FindRootsAfterUpdate.class);
 		suite.addTestSuite(FromStrictToOptional.class);
 		suite.addTestSuite(GreedyRequirement.class);
+		suite.addTestSuite(IncrementalPlanningTest.class);
 		suite.addTestSuite(InclusionRuleTest.class);
 		suite.addTestSuite(InclusionRuleTest2.class);
 		suite.addTestSuite(IUProperties.class);
@@ -135,6 +136,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(PatchTestUpdate5.class);
 		suite.addTestSuite(PatchTestUsingNegativeRequirement.class);
 		suite.addTestSuite(PermissiveSlicerTest.class);
+		suite.addTestSuite(ParallelSlicingTest.class);
 		suite.addTestSuite(PP2ShouldFailToInstall.class);
 		suite.addTestSuite(ResolvedIUInPCR.class);
 		//		suite.addTestSuite(ProvisioningPlanQueryTest.class); disabled, see bug 313812 
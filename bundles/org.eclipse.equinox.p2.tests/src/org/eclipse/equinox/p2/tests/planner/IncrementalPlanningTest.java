@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
+import org.eclipse.equinox.internal.p2.director.SimplePlanner;
+import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class IncrementalPlanningTest extends AbstractProvisioningTest {
+	private IInstallableUnit a1;
+	private IInstallableUnit b1;
+	private IInstallableUnit b2;
+	private IInstallableUnit x1;
+	private IProfile profile;
+	private IPlanner planner;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		IRequirement reqB = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "B", VersionRange.emptyRange, null, false, false, true);
+		a1 = createIU("A", Version.create("1.0.0"), new IRequirement[] {reqB});
+		b1 = createIU("B", Version.create("1.0.0"), true);
+		b2 = createIU("B", Version.create("2.0.0"), true);
+
+		IRequirement reqMissing = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "Missing", VersionRange.emptyRange, null, false, false, true);
+		x1 = createIU("X", Version.create("1.0.0"), new IRequirement[] {reqMissing});
+
+		createTestMetdataRepository(new IInstallableUnit[] {a1, b1, b2, x1});
+
+		profile = createProfile("TestProfile." + getName());
+		planner = createPlanner();
+	}
+
+	private ProvisioningContext createIncrementalContext() {
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setProperty(SimplePlanner.INCREMENTAL, Boolean.TRUE.toString());
+		return context;
+	}
+
+	public void testRepeatedPlanning() {
+		//The two requests produce the same slice, the second one reuses the encoding of the first
+		ProfileChangeRequest req1 = new ProfileChangeRequest(profile);
+		req1.addInstallableUnits(new IInstallableUnit[] {a1});
+		IProvisioningPlan plan1 = planner.getProvisioningPlan(req1, createIncrementalContext(), null);
+		assertEquals(IStatus.OK, plan1.getStatus().getSeverity());
+		assertInstallOperand(plan1, a1);
+		assertInstallOperand(plan1, b2);
+
+		ProfileChangeRequest req2 = new ProfileChangeRequest(profile);
+		req2.addInstallableUnits(new IInstallableUnit[] {a1, b1});
+		IProvisioningPlan plan2 = planner.getProvisioningPlan(req2, createIncrementalContext(), null);
+		assertEquals(IStatus.OK, plan2.getStatus().getSeverity());
+		assertInstallOperand(plan2, a1);
+		assertInstallOperand(plan2, b1);
+		assertNoOperand(plan2, b2);
+
+		ProfileChangeRequest req3 = new ProfileChangeRequest(profile);
+		req3.addInstallableUnits(new IInstallableUnit[] {a1});
+		IProvisioningPlan plan3 = planner.getProvisioningPlan(req3, createIncrementalContext(), null);
+		assertEquals(IStatus.OK, plan3.getStatus().getSeverity());
+		assertInstallOperand(plan3, a1);
+		assertInstallOperand(plan3, b2);
+		assertNoOperand(plan3, b1);
+	}
+
+	public void testRepeatedFailure() {
+		for (int i = 0; i < 2; i++) {
+			ProfileChangeRequest req = new ProfileChangeRequest(profile);
+			req.addInstallableUnits(new IInstallableUnit[] {x1});
+			IProvisioningPlan plan = planner.getProvisioningPlan(req, createIncrementalContext(), null);
+			assertEquals(IStatus.ERROR, plan.getStatus().getSeverity());
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others. All rights reserved. This
+ * program and the accompanying materials are made available under the terms of
+ * the Eclipse Public License v1.0 which accompanies this distribution, and is
+ * available at http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors: IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
+import org.eclipse.equinox.internal.p2.director.SimplePlanner;
+import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class ParallelSlicingTest extends AbstractProvisioningTest {
+	private IInstallableUnit a1;
+	private IInstallableUnit b1;
+	private IInstallableUnit c1;
+	private IInstallableUnit c2;
+	private IInstallableUnit d1;
+	private IInstallableUnit x1;
+	private IProfile profile;
+	private IPlanner planner;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		//A needs B and C, B and C both need D, so D is reached twice on the same level
+		IRequirement reqB = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "B", VersionRange.emptyRange, null, false, false, true);
+		IRequirement reqC = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "C", VersionRange.emptyRange, null, false, false, true);
+		IRequirement reqD = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "D", VersionRange.emptyRange, null, false, false, true);
+		a1 = createIU("A", Version.create("1.0.0"), new IRequirement[] {reqB, reqC});
+		b1 = createIU("B", Version.create("1.0.0"), new IRequirement[] {reqD});
+		c1 = createIU("C", Version.create("1.0.0"), new IRequirement[] {reqD});
+		c2 = createIU("C", Version.create("2.0.0"), new IRequirement[] {reqD});
+		d1 = createIU("D", Version.create("1.0.0"), true);
+
+		IRequirement reqMissing = MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, "Missing", VersionRange.emptyRange, null, false, false, true);
+		x1 = createIU("X", Version.create("1.0.0"), new IRequirement[] {reqB, reqMissing});
+
+		createTestMetdataRepository(new IInstallableUnit[] {a1, b1, c1, c2, d1, x1});
+
+		profile = createProfile("TestProfile." + getName());
+		planner = createPlanner();
+	}
+
+	private IProvisioningPlan plan(IInstallableUnit iu, boolean parallel) {
+		ProfileChangeRequest req = new ProfileChangeRequest(profile);
+		req.addInstallableUnits(new IInstallableUnit[] {iu});
+		req.setParallelSlicing(parallel);
+		return planner.getProvisioningPlan(req, null, null);
+	}
+
+	public void testParallelPlanMatchesSequential() {
+		IProvisioningPlan sequential = plan(a1, false);
+		IProvisioningPlan parallel = plan(a1, true);
+		assertEquals(IStatus.OK, parallel.getStatus().getSeverity());
+		assertInstallOperand(parallel, a1);
+		assertInstallOperand(parallel, b1);
+		assertInstallOperand(parallel, c2);
+		assertInstallOperand(parallel, d1);
+		assertNoOperand(parallel, c1);
+		assertEquals(sequential.getAdditions().query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet(), parallel.getAdditions().query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet());
+	}
+
+	public void testParallelSlicingContextProperty() {
+		ProfileChangeRequest req = new ProfileChangeRequest(profile);
+		req.addInstallableUnits(new IInstallableUnit[] {a1});
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		context.setProperty(SimplePlanner.PARALLEL_SLICING, Boolean.TRUE.toString());
+		IProvisioningPlan plan = planner.getProvisioningPlan(req, context, null);
+		assertEquals(IStatus.OK, plan.getStatus().getSeverity());
+		assertInstallOperand(plan, a1);
+		assertInstallOperand(plan, d1);
+	}
+
+	public void testParallelFailureMatchesSequential() {
+		IProvisioningPlan sequential = plan(x1, false);
+		IProvisioningPlan parallel = plan(x1, true);
+		assertEquals(IStatus.ERROR, parallel.getStatus().getSeverity());
+		assertEquals(sequential.getStatus().getSeverity(), parallel.getStatus().getSeverity());
+		assertEquals(sequential.getStatus().getChildren().length, parallel.getStatus().getChildren().length);
+	}
+}
@@ -12,6 +12,7 @@ package org.eclipse.equinox.p2.tests.planner;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.equinox.internal.p2.director.PermissiveSlicer;
 import org.eclipse.equinox.p2.metadata.*;
@@ -153,6 +154,26 @@ public class PermissiveSlicerTest extends AbstractProvisioningTest {
 		assertEquals(3, queryResultSize(resultCollector));
 	}
 
+	public void testParallelSlice() {
+		IQueryResult<IInstallableUnit> c = repo.query(QueryUtil.createIUQuery("org.eclipse.rcp.feature.group"), new NullProgressMonitor());
+		IInstallableUnit iu = c.iterator().next();
+		PermissiveSlicer slicer = new PermissiveSlicer(repo, Collections.<String, String> emptyMap(), true, false, true, false, false);
+		Set<IInstallableUnit> expected = slicer.slice(new IInstallableUnit[] {iu}, new NullProgressMonitor()).query(QueryUtil.createIUAnyQuery(), new NullProgressMonitor()).toUnmodifiableSet();
+
+		PermissiveSlicer parallelSlicer = new PermissiveSlicer(repo, Collections.<String, String> emptyMap(), true, false, true, false, false);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			parallelSlicer.setParallelism(pool);
+			IQueryable<IInstallableUnit> result = parallelSlicer.slice(new IInstallableUnit[] {iu}, new NullProgressMonitor());
+			assertNotNull(result);
+			assertEquals(66, queryResultSize(result.query(QueryUtil.createIUAnyQuery(), new NullProgressMonitor())));
+			assertEquals(expected, result.query(QueryUtil.createIUAnyQuery(), new NullProgressMonitor()).toUnmodifiableSet());
+			assertEquals(slicer.getStatus().getChildren().length, parallelSlicer.getStatus().getChildren().length);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
 	public void testExtractOnlyPlatformSpecific() {
 		PermissiveSlicer slicer = new PermissiveSlicer(repo, Collections.<String, String> emptyMap(), true, false, true, false, true);
 		IQueryResult<IInstallableUnit> c = repo.query(QueryUtil.createIUQuery("org.eclipse.rcp.feature.group"), new NullProgressMonitor());
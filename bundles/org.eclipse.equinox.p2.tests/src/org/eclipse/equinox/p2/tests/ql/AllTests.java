@@ -19,6 +19,7 @@ public class AllTests extends TestCase {
 
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
+		suite.addTestSuite(CompiledExpressionTest.class);
 		suite.addTestSuite(EvaluatorTest.class);
 		suite.addTestSuite(PerformanceTest.class);
 		suite.addTestSuite(TestQueryReimplementation.class);
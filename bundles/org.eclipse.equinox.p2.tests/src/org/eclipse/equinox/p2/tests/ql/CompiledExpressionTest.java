@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.ql;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.expression.Expression;
+import org.eclipse.equinox.internal.p2.metadata.expression.ExpressionCompiler;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.expression.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Verifies that compiled match expressions yield the same results as the
+ * evaluation of the expression tree.
+ */
+public class CompiledExpressionTest extends AbstractProvisioningTest {
+	private static final IExpressionParser parser = ExpressionUtil.getParser();
+	private static final IExpressionFactory factory = ExpressionUtil.getFactory();
+
+	private List<IInstallableUnit> createUnits() {
+		List<IInstallableUnit> units = new ArrayList<>();
+		for (int idx = 0; idx < 10; ++idx) {
+			IProvidedCapability[] provides = new IProvidedCapability[] {MetadataFactory.createProvidedCapability("org.eclipse.equinox.p2.iu", "cap" + (idx % 3), Version.createOSGi(1, idx, 0)), MetadataFactory.createProvidedCapability("java.package", "pkg" + idx, Version.createOSGi(idx, 0, 0))};
+			units.add(createIU("unit" + idx, Version.createOSGi(1, idx, 0), provides));
+		}
+		return units;
+	}
+
+	private void assertSameMatches(IMatchExpression<IInstallableUnit> expression, List<IInstallableUnit> units) {
+		assertNotNull(expression.toString(), ExpressionCompiler.compile((Expression) ExpressionUtil.getOperand(expression)));
+		IEvaluationContext context = expression.createContext();
+		for (IInstallableUnit unit : units)
+			assertEquals(expression + " on " + unit, expression.isMatch(context, unit), expression.isMatch(unit));
+	}
+
+	public void testRequirements() {
+		List<IInstallableUnit> units = createUnits();
+		VersionRange[] ranges = new VersionRange[] {null, new VersionRange("[1.2.0,1.2.0]"), new VersionRange("1.4.0"), new VersionRange("(1.4.0,2.0.0)"), new VersionRange("[1.0.0,1.5.0]"), new VersionRange("(1.1.0,1.7.0]"), new VersionRange("[1.3.0,1.6.0)")};
+		for (VersionRange range : ranges)
+			for (int idx = 0; idx < 3; ++idx) {
+				IRequirement requirement = MetadataFactory.createRequirement("org.eclipse.equinox.p2.iu", "cap" + idx, range, null, false, false);
+				assertSameMatches(requirement.getMatches(), units);
+			}
+	}
+
+	public void testParsedExpressions() {
+		List<IInstallableUnit> units = createUnits();
+		String[] expressions = new String[] {//
+		"id == $0", //
+				"id ~= /unit[1-3]/", //
+				"version >= $1 && version < $2", //
+				"!(version > $1) || id == 'unit7'", //
+				"providedCapabilities.exists(p | p.namespace == 'java.package' && p.version > $1)", //
+				"providedCapabilities.all(p | p.version >= $1)", //
+				"providedCapabilities.exists(p | providedCapabilities.exists(q | p.name == q.name && p.namespace != q.namespace))", //
+				"requirements.empty && providedCapabilities.length == 3", //
+				"this ~= $3"};
+		for (String expression : expressions) {
+			IMatchExpression<IInstallableUnit> match = factory.matchExpression(parser.parse(expression), "unit4", Version.createOSGi(1, 3, 0), Version.createOSGi(1, 8, 0), IInstallableUnit.class);
+			assertSameMatches(match, units);
+		}
+	}
+
+	public void testUncompilable() {
+		// Functions are not compiled, expressions that use them are left to the expression tree
+		IMatchExpression<IInstallableUnit> match = factory.matchExpression(parser.parse("providedCapabilities.exists(p | p.version == version($0))"), "1.4.0");
+		assertNull(ExpressionCompiler.compile((Expression) ExpressionUtil.getOperand(match)));
+		match = factory.matchExpression(parser.parse("version == version($0)"), "1.4.0");
+		assertNull(ExpressionCompiler.compile((Expression) ExpressionUtil.getOperand(match)));
+		assertTrue(match.isMatch(createIU("unit4", Version.createOSGi(1, 4, 0))));
+	}
+}
@@ -18,8 +18,7 @@ import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.internal.p2.metadata.expression.MatchIteratorFilter;
 import org.eclipse.equinox.internal.p2.metadata.repository.CompositeMetadataRepository;
 import org.eclipse.equinox.p2.metadata.*;
-import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
-import org.eclipse.equinox.p2.metadata.expression.IExpressionParser;
+import org.eclipse.equinox.p2.metadata.expression.*;
 import org.eclipse.equinox.p2.query.*;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
@@ -358,6 +357,42 @@ public class PerformanceTest extends AbstractProvisioningTest {
 		System.out.println();
 	}
 
+	public void testCompiledVersusInterpretedMatchPerformance() throws Exception {
+		IMetadataRepository repo = getMDR("/testData/galileoM7");
+		IInstallableUnit[] ius = gatherAvailableInstallableUnits(repo);
+
+		List<IMatchExpression<IInstallableUnit>> requirements = new ArrayList<>();
+		for (int idx = 0; idx < ius.length && requirements.size() < 200; idx += 10)
+			for (IRequirement requirement : ius[idx].getRequirements())
+				requirements.add(requirement.getMatches());
+
+		long compiledMS = 0;
+		long interpretedMS = 0;
+		int compiledMatches = 0;
+		int interpretedMatches = 0;
+		for (int i = 0; i < 5; ++i) {
+			long start = System.currentTimeMillis();
+			for (IMatchExpression<IInstallableUnit> requirement : requirements)
+				for (IInstallableUnit iu : ius)
+					if (requirement.isMatch(iu))
+						++compiledMatches;
+			compiledMS += (System.currentTimeMillis() - start);
+
+			start = System.currentTimeMillis();
+			for (IMatchExpression<IInstallableUnit> requirement : requirements) {
+				IEvaluationContext context = requirement.createContext();
+				for (IInstallableUnit iu : ius)
+					if (requirement.isMatch(context, iu))
+						++interpretedMatches;
+			}
+			interpretedMS += (System.currentTimeMillis() - start);
+		}
+		assertEquals(interpretedMatches, compiledMatches);
+		System.out.println("5 * " + requirements.size() + " compiled requirements on " + ius.length + " IUs took: " + compiledMS + " milliseconds");
+		System.out.println("5 * " + requirements.size() + " interpreted requirements on " + ius.length + " IUs took: " + interpretedMS + " milliseconds");
+		System.out.println();
+	}
+
 	private IMetadataRepository getMDR(String uri) throws Exception {
 		URI metadataRepo = getTestData("1.1", uri).toURI();
 
@@ -21,6 +21,7 @@ public class AllTests extends TestCase {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		suite.addTestSuite(CacheManagerTest.class);
 		suite.addTestSuite(RepositoryHelperTest.class);
+		suite.addTestSuite(SegmentedDownloadTest.class);
 		suite.addTestSuite(RepositoryExtensionPointTest.class);
 		suite.addTestSuite(FileReaderTest2.class);
 		return suite;
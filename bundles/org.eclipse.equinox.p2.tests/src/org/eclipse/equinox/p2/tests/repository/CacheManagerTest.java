@@ -7,13 +7,16 @@
  ******************************************************************************/
 package org.eclipse.equinox.p2.tests.repository;
 
-import java.io.File;
-import java.io.IOException;
+import ie.wombat.jbdiff.JBDiff;
+import java.io.*;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import junit.framework.TestCase;
 import org.eclipse.core.runtime.*;
-import org.eclipse.equinox.internal.p2.repository.CacheManager;
-import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.repository.*;
 import org.eclipse.equinox.p2.core.*;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -83,6 +86,154 @@ public class CacheManagerTest extends TestCase {
 				lastModifiedInitial == cache2.lastModified());
 	}
 
+	public void testConditionalRefresh() throws ProvisionException, IOException {
+		write(contentXmlFile, "first");
+		// a server that reports no modification time makes every cache stale
+		CountingTransport transport = new CountingTransport(0);
+		CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+
+		File cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(1, transport.downloads);
+		cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals("Unchanged content should not be downloaded again", 1, transport.downloads); //$NON-NLS-1$
+		assertEquals("first", read(cache)); //$NON-NLS-1$
+
+		write(contentXmlFile, "second");
+		cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(2, transport.downloads);
+		assertEquals("second", read(cache)); //$NON-NLS-1$
+	}
+
+	public void testDeltaRefresh() throws ProvisionException, IOException, NoSuchAlgorithmException {
+		write(contentXmlFile, "<repository name='first'>first content</repository>"); //$NON-NLS-1$
+		CountingTransport transport = new CountingTransport(-1);
+		CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+		File cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(1, transport.downloads);
+
+		byte[] oldContent = Files.readAllBytes(contentXmlFile.toPath());
+		write(contentXmlFile, "<repository name='second'>second content</repository>"); //$NON-NLS-1$
+		byte[] newContent = Files.readAllBytes(contentXmlFile.toPath());
+		File deltaFolder = new File(contentXmlFile.getParentFile(), "content.xml.delta"); //$NON-NLS-1$
+		assertTrue(deltaFolder.mkdirs());
+		Files.write(new File(deltaFolder, md5(oldContent) + ".jbdiff").toPath(), JBDiff.bsdiff(oldContent, oldContent.length, newContent, newContent.length)); //$NON-NLS-1$
+		write(new File(contentXmlFile.getParentFile(), "content.xml.md5"), md5(newContent) + "  content.xml\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		contentXmlFile.setLastModified(contentXmlFile.lastModified() + ONE_HOUR);
+
+		System.setProperty(CacheManager.PROP_DELTA_REFRESH, "true"); //$NON-NLS-1$
+		try {
+			cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		} finally {
+			System.clearProperty(CacheManager.PROP_DELTA_REFRESH);
+		}
+		assertEquals("The cache should be refreshed from the delta", 1, transport.downloads); //$NON-NLS-1$
+		assertEquals(new String(newContent, StandardCharsets.UTF_8), read(cache));
+		assertEquals(contentXmlFile.lastModified(), cache.lastModified());
+	}
+
+	public void testMismatchedDeltaRefresh() throws ProvisionException, IOException, NoSuchAlgorithmException {
+		write(contentXmlFile, "<repository name='first'>first content</repository>"); //$NON-NLS-1$
+		CountingTransport transport = new CountingTransport(-1);
+		CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+		File cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(1, transport.downloads);
+
+		byte[] oldContent = Files.readAllBytes(contentXmlFile.toPath());
+		// the delta produces other content than the one that is published
+		byte[] otherContent = "<repository name='other'>other content</repository>".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+		write(contentXmlFile, "<repository name='second'>second content</repository>"); //$NON-NLS-1$
+		byte[] newContent = Files.readAllBytes(contentXmlFile.toPath());
+		File deltaFolder = new File(contentXmlFile.getParentFile(), "content.xml.delta"); //$NON-NLS-1$
+		assertTrue(deltaFolder.mkdirs());
+		Files.write(new File(deltaFolder, md5(oldContent) + ".jbdiff").toPath(), JBDiff.bsdiff(oldContent, oldContent.length, otherContent, otherContent.length)); //$NON-NLS-1$
+		write(new File(contentXmlFile.getParentFile(), "content.xml.md5"), md5(newContent)); //$NON-NLS-1$
+		contentXmlFile.setLastModified(contentXmlFile.lastModified() + ONE_HOUR);
+
+		System.setProperty(CacheManager.PROP_DELTA_REFRESH, "true"); //$NON-NLS-1$
+		try {
+			cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		} finally {
+			System.clearProperty(CacheManager.PROP_DELTA_REFRESH);
+		}
+		assertEquals("A mismatched delta should fall back to a full download", 2, transport.downloads); //$NON-NLS-1$
+		assertEquals(new String(newContent, StandardCharsets.UTF_8), read(cache));
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static String md5(byte[] content) throws NoSuchAlgorithmException {
+		StringBuilder result = new StringBuilder();
+		for (byte b : MessageDigest.getInstance("MD5").digest(content)) //$NON-NLS-1$
+			result.append(String.format("%02x", b)); //$NON-NLS-1$
+		return result.toString();
+	}
+
+	/**
+	 * A transport for local files that supports conditional downloads. The entity tag of a
+	 * file is its content, and only downloads of repository content, not of deltas or
+	 * digests, are counted.
+	 */
+	private static class CountingTransport extends Transport {
+		private final long reportedLastModified;
+		int downloads;
+
+		/**
+		 * @param reportedLastModified the modification time to report, or -1 to report the actual one
+		 */
+		CountingTransport(long reportedLastModified) {
+			this.reportedLastModified = reportedLastModified;
+		}
+
+		@Override
+		public IStatus downloadIfChanged(URI toDownload, OutputStream target, String entityTag, IProgressMonitor monitor) {
+			File file = URIUtil.toFile(toDownload);
+			if (!file.isFile())
+				return new DownloadStatus(IStatus.ERROR, "test", ProvisionException.ARTIFACT_NOT_FOUND, toDownload.toString(), null); //$NON-NLS-1$
+			try {
+				String content = read(file);
+				if (content.equals(entityTag))
+					return new DownloadStatus(IStatus.OK, "test", DownloadStatus.CODE_NOT_MODIFIED, "", null); //$NON-NLS-1$ //$NON-NLS-2$
+				if (!toDownload.toString().contains(".delta/") && !toDownload.toString().endsWith(".md5")) //$NON-NLS-1$ //$NON-NLS-2$
+					downloads++;
+				target.write(Files.readAllBytes(file.toPath()));
+				DownloadStatus status = new DownloadStatus(IStatus.OK, "test", ""); //$NON-NLS-1$ //$NON-NLS-2$
+				status.setEntityTag(content);
+				return status;
+			} catch (IOException e) {
+				return new DownloadStatus(IStatus.ERROR, "test", e.getMessage(), e); //$NON-NLS-1$
+			}
+		}
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+			return downloadIfChanged(toDownload, target, null, monitor);
+		}
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+			return downloadIfChanged(toDownload, target, null, monitor);
+		}
+
+		@Override
+		public InputStream stream(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			return new FileInputStream(URIUtil.toFile(toDownload));
+		}
+
+		@Override
+		public long getLastModified(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			File file = URIUtil.toFile(toDownload);
+			if (!file.exists())
+				throw new FileNotFoundException(toDownload.toString());
+			return reportedLastModified == -1 ? file.lastModified() : reportedLastModified;
+		}
+	}
+
 	private URI createRepistory() throws IOException {
 		File repository = File.createTempFile("remoteFile", ""); //$NON-NLS-1$//$NON-NLS-2$
 		repository.deleteOnExit();
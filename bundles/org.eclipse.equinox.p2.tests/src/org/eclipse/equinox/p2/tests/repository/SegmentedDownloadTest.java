@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (c) 2017 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.*;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumProducer;
+
+public class SegmentedDownloadTest extends TestCase {
+	private static final URI LOCATION = URI.create("http://download.invalid/large.jar");
+
+	private byte[] content;
+	private File partialFolder;
+
+	/**
+	 * Serves the content from memory, optionally dropping the connection of a range request
+	 * after some bytes, or ignoring the requested range altogether.
+	 */
+	class MemoryTransport extends Transport {
+		final AtomicLong served = new AtomicLong();
+		final AtomicInteger requests = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		boolean ranges = true;
+		boolean ignoreRanges = false;
+		String entityTag;
+		final AtomicReference<Runnable> onRange = new AtomicReference<>();
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, long startPos, long endPos, IProgressMonitor monitor) {
+			if (!ranges)
+				return super.download(toDownload, target, startPos, endPos, monitor);
+			requests.incrementAndGet();
+			Runnable nested = onRange.getAndSet(null);
+			if (nested != null)
+				nested.run();
+			long first = ignoreRanges ? 0 : startPos;
+			long last = ignoreRanges || endPos == -1 ? content.length - 1 : endPos;
+			long length = last - first + 1;
+			boolean fail = failures.get() > 0 && failures.decrementAndGet() >= 0;
+			if (fail)
+				length = length / 2;
+			try {
+				target.write(content, (int) first, (int) length);
+				served.addAndGet(length);
+			} catch (IOException e) {
+				return new DownloadStatus(IStatus.ERROR, "test", 0, e.getMessage(), e);
+			}
+			DownloadStatus status = fail ? new DownloadStatus(IStatus.ERROR, "test", 0, "connection dropped", new IOException()) : new DownloadStatus(IStatus.OK, "test", "");
+			status.setEntityTag(entityTag);
+			return status;
+		}
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+			requests.incrementAndGet();
+			try {
+				target.write(content, (int) Math.max(startPos, 0), content.length - (int) Math.max(startPos, 0));
+			} catch (IOException e) {
+				return new DownloadStatus(IStatus.ERROR, "test", 0, e.getMessage(), e);
+			}
+			served.addAndGet(content.length);
+			return new DownloadStatus(IStatus.OK, "test", "");
+		}
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+			return download(toDownload, target, -1, monitor);
+		}
+
+		@Override
+		public InputStream stream(URI toDownload, IProgressMonitor monitor) {
+			return new ByteArrayInputStream(content);
+		}
+
+		@Override
+		public long getLastModified(URI toDownload, IProgressMonitor monitor) {
+			return 0;
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		content = new byte[100003];
+		new Random(17).nextBytes(content);
+		partialFolder = Files.createTempDirectory("SegmentedDownloadTest").toFile();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = partialFolder.listFiles();
+		if (files != null)
+			for (File file : files)
+				file.delete();
+		partialFolder.delete();
+		super.tearDown();
+	}
+
+	private SegmentedDownload createDownload(Transport transport) throws Exception {
+		SegmentedDownload download = new SegmentedDownload(transport, LOCATION, content.length, partialFolder);
+		download.setSegments(4);
+		StringBuffer md5 = new StringBuffer();
+		for (byte b : MessageDigest.getInstance("MD5").digest(content))
+			md5.append(String.format("%02x", b & 0xFF));
+		download.setChecksums(Collections.singletonMap(ChecksumProducer.MD5, md5.toString()));
+		return download;
+	}
+
+	private static void assertOK(String message, IStatus status) {
+		assertTrue(message + ' ' + status, status.isOK());
+	}
+
+	private void assertNoPartialFiles() {
+		String[] files = partialFolder.list();
+		assertTrue(Arrays.toString(files), files == null || files.length == 0);
+	}
+
+	public void testSegments() throws Exception {
+		MemoryTransport transport = new MemoryTransport();
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		IStatus status = createDownload(transport).download(target, new NullProgressMonitor());
+		assertOK("1.0", status);
+		assertTrue("1.1", Arrays.equals(content, target.toByteArray()));
+		assertEquals("1.2", 4, transport.requests.get());
+		assertEquals("1.3", content.length, transport.served.get());
+		assertNoPartialFiles();
+	}
+
+	public void testDroppedConnectionResumes() throws Exception {
+		MemoryTransport transport = new MemoryTransport();
+		transport.failures.set(2);
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertOK("1.0", createDownload(transport).download(target, new NullProgressMonitor()));
+		assertTrue("1.1", Arrays.equals(content, target.toByteArray()));
+		// the dropped ranges were continued, not requested again from their start
+		assertEquals("1.2", content.length, transport.served.get());
+		assertEquals("1.3", 6, transport.requests.get());
+		assertNoPartialFiles();
+	}
+
+	public void testFailedDownloadContinuesLater() throws Exception {
+		MemoryTransport transport = new MemoryTransport();
+		// more failures than attempts, the download fails but keeps what it got
+		transport.failures.set(100);
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		IStatus status = createDownload(transport).download(target, new NullProgressMonitor());
+		assertFalse("1.0", status.isOK());
+		assertEquals("1.1", 0, target.size());
+		long received = transport.served.get();
+		assertTrue("1.2", received > 0 && received < content.length);
+
+		transport = new MemoryTransport();
+		assertOK("2.0", createDownload(transport).download(target, new NullProgressMonitor()));
+		assertTrue("2.1", Arrays.equals(content, target.toByteArray()));
+		assertEquals("2.2", content.length - received, transport.served.get());
+		assertNoPartialFiles();
+	}
+
+	public void testTransportWithoutRanges() throws Exception {
+		MemoryTransport transport = new MemoryTransport();
+		transport.ranges = false;
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertOK("1.0", createDownload(transport).download(target, new NullProgressMonitor()));
+		assertTrue("1.1", Arrays.equals(content, target.toByteArray()));
+		assertEquals("1.2", 1, transport.requests.get());
+		assertNoPartialFiles();
+	}
+
+	public void testServerIgnoringRanges() throws Exception {
+		MemoryTransport transport = new MemoryTransport();
+		transport.ignoreRanges = true;
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertOK("1.0", createDownload(transport).download(target, new NullProgressMonitor()));
+		assertTrue("1.1", Arrays.equals(content, target.toByteArray()));
+		assertNoPartialFiles();
+	}
+
+	public void testChecksumMismatch() throws Exception {
+		MemoryTransport transport = new MemoryTransport();
+		SegmentedDownload download = createDownload(transport);
+		download.setChecksums(Collections.singletonMap(ChecksumProducer.MD5, "00000000000000000000000000000000"));
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		IStatus status = download.download(target, new NullProgressMonitor());
+		assertEquals("1.0", IStatus.ERROR, status.getSeverity());
+		assertEquals("1.1", 0, target.size());
+		assertNoPartialFiles();
+	}
+
+	public void testChangedFileStartsOver() throws Exception {
+		MemoryTransport transport = new MemoryTransport();
+		transport.entityTag = "\"1\"";
+		transport.failures.set(100);
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertFalse("1.0", createDownload(transport).download(target, new NullProgressMonitor()).isOK());
+
+		// the file changes on the server, the ranges kept from the first version must not be used
+		new Random(18).nextBytes(content);
+		transport = new MemoryTransport();
+		transport.entityTag = "\"2\"";
+		assertOK("2.0", createDownload(transport).download(target, new NullProgressMonitor()));
+		assertTrue("2.1", Arrays.equals(content, target.toByteArray()));
+		assertNoPartialFiles();
+	}
+
+	public void testConcurrentDownloadOfSameFile() throws Exception {
+		final MemoryTransport transport = new MemoryTransport();
+		final MemoryTransport other = new MemoryTransport();
+		final ByteArrayOutputStream otherTarget = new ByteArrayOutputStream();
+		final IStatus[] otherStatus = new IStatus[1];
+		// the partial files are in use by the first download, the second one streams the file
+		transport.onRange.set(() -> {
+			try {
+				otherStatus[0] = createDownload(other).download(otherTarget, new NullProgressMonitor());
+			} catch (Exception e) {
+				otherStatus[0] = new Status(IStatus.ERROR, "test", e.getMessage(), e);
+			}
+		});
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertOK("1.0", createDownload(transport).download(target, new NullProgressMonitor()));
+		assertTrue("1.1", Arrays.equals(content, target.toByteArray()));
+		assertOK("2.0", otherStatus[0]);
+		assertTrue("2.1", Arrays.equals(content, otherTarget.toByteArray()));
+		assertEquals("2.2", 1, other.requests.get());
+		assertNoPartialFiles();
+	}
+}
@@ -15,7 +15,7 @@ import java.io.IOException;
 
 /**
  * LazyBackupStore is a BackupStore that only instantiates a real backup store
- * when needed.
+ * when needed. It is safe to use from several threads.
  */
 public class LazyBackupStore implements IBackupStore {
 	private BackupStore delegate;
@@ -30,57 +30,57 @@ public class LazyBackupStore implements IBackupStore {
 	}
 
 	@Override
-	public boolean backup(File file) throws IOException {
+	public synchronized boolean backup(File file) throws IOException {
 		loadDelegate();
 		return delegate.backup(file);
 	}
 
 	@Override
-	public boolean backupDirectory(File file) throws IOException {
+	public synchronized boolean backupDirectory(File file) throws IOException {
 		loadDelegate();
 		return delegate.backupDirectory(file);
 	}
 
 	@Override
-	public void discard() {
+	public synchronized void discard() {
 		if (delegate == null)
 			return;
 		delegate.discard();
 	}
 
 	@Override
-	public void restore() throws IOException {
+	public synchronized void restore() throws IOException {
 		if (delegate == null)
 			return;
 		delegate.restore();
 	}
 
-	private void loadDelegate() {
+	private synchronized void loadDelegate() {
 		if (delegate != null)
 			return;
 		delegate = new BackupStore(null, prefix);
 	}
 
 	@Override
-	public String getBackupName() {
+	public synchronized String getBackupName() {
 		loadDelegate();
 		return delegate.getBackupName();
 	}
 
 	@Override
-	public boolean backupCopy(File file) throws IOException {
+	public synchronized boolean backupCopy(File file) throws IOException {
 		loadDelegate();
 		return delegate.backupCopy(file);
 	}
 
 	@Override
-	public void backupCopyAll(File file) throws IOException {
+	public synchronized void backupCopyAll(File file) throws IOException {
 		loadDelegate();
 		delegate.backupCopyAll(file);
 	}
 
 	@Override
-	public void backupAll(File file) throws IOException {
+	public synchronized void backupAll(File file) throws IOException {
 		loadDelegate();
 		delegate.backupAll(file);
 	}
@@ -35,11 +35,11 @@ public class NativeTouchpoint extends Touchpoint {
 
 	private static Map<IProfile, IBackupStore> backups = new WeakHashMap<>();
 
-	private List<NativePackageEntry> packagesToInstall = new ArrayList<>();
+	private List<NativePackageEntry> packagesToInstall = Collections.synchronizedList(new ArrayList<NativePackageEntry>());
 	private Properties installCommandsProperties = new Properties();
 
-	private IProvisioningAgent agent;
-	private String distro;
+	private volatile IProvisioningAgent agent;
+	private volatile String distro;
 
 	@Override
 	public IStatus initializeOperand(IProfile profile, Map<String, Object> parameters) {
@@ -64,6 +64,12 @@ public class NativeTouchpoint extends Touchpoint {
 		return null;
 	}
 
+	@Override
+	public boolean isThreadSafe() {
+		// the backup store and the packages to install are synchronized, the actions keep no state
+		return true;
+	}
+
 	@Override
 	public String qualifyAction(String actionId) {
 		return Activator.ID + "." + actionId; //$NON-NLS-1$
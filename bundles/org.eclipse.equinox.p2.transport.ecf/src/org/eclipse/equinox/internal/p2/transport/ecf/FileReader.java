@@ -113,6 +113,8 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 	private boolean isPause = false;
 	private boolean hasPaused = false;
 	private IFileTransferPausable pasuable = null;
+	private String requestEntityTag;
+	private boolean notModified;
 
 	/**
 	 * Create a new FileReader that will retry failed connection attempts and sleep some amount of time between each
@@ -193,6 +195,7 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 					fi.setLastModified(lastModified.getTime());
 				fi.setName(source.getRemoteFileName());
 				fi.setSize(source.getFileLength());
+				fi.setEntityTag(getEntityTag(((IIncomingFileTransferReceiveStartEvent) event).getResponseHeaders()));
 				fileInfo = fi;
 
 				((IIncomingFileTransferReceiveStartEvent) event).receive(theOutputStream, this);
@@ -262,6 +265,24 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 		}
 	}
 
+	private static String getEntityTag(Map<?, ?> responseHeaders) {
+		if (responseHeaders == null)
+			return null;
+		for (Map.Entry<?, ?> header : responseHeaders.entrySet()) {
+			if ("ETag".equalsIgnoreCase(String.valueOf(header.getKey())) && header.getValue() != null) //$NON-NLS-1$
+				return header.getValue().toString();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether the last conditional read found the remote file unchanged, in which
+	 * case nothing was read.
+	 */
+	public boolean isNotModified() {
+		return notModified;
+	}
+
 	private synchronized void pauseIfPossible(IIncomingFileTransfer source) {
 		if (isPaused() && !hasPaused) {
 			pasuable = source.getAdapter(IFileTransferPausable.class);
@@ -369,10 +390,33 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 
 	public void readInto(URI uri, OutputStream anOutputStream, long startPos, IProgressMonitor monitor) //
 			throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
+		readInto(uri, anOutputStream, startPos, null, monitor);
+	}
+
+	/**
+	 * Reads the given location into the given stream, unless the remote file still has the given entity tag.
+	 * @see #isNotModified()
+	 */
+	public void readInto(URI uri, OutputStream anOutputStream, long startPos, String entityTag, IProgressMonitor monitor) //
+			throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
+		readInto(uri, anOutputStream, startPos, -1, entityTag, monitor);
+	}
+
+	/**
+	 * Reads the bytes from <code>startPos</code> up to and including <code>endPos</code> of the given
+	 * location into the given stream, unless the remote file still has the given entity tag.
+	 * @see #isNotModified()
+	 */
+	public void readInto(URI uri, OutputStream anOutputStream, long startPos, long endPos, String entityTag, IProgressMonitor monitor) //
+			throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
+		requestEntityTag = entityTag;
 		if (monitor == null)
 			monitor = new NullProgressMonitor();
 		try {
-			sendRetrieveRequest(uri, anOutputStream, (startPos != -1 ? new DownloadRange(startPos) : null), false, monitor);
+			DownloadRange range = null;
+			if (startPos != -1 || endPos != -1)
+				range = new DownloadRange(Math.max(startPos, 0), endPos);
+			sendRetrieveRequest(uri, anOutputStream, range, false, monitor);
 			Job.getJobManager().join(this, new SuppressBlockedMonitor(monitor, 0));
 			waitPaused(uri, anOutputStream, startPos, monitor);
 			if (monitor.isCanceled() && connectEvent != null)
@@ -429,6 +473,7 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 		this.monitorStarted = false;
 		this.theOutputStream = outputStream;
 		this.requestUri = uri;
+		this.notModified = false;
 
 		for (int retryCount = 0;; retryCount++) {
 			if (monitor != null && monitor.isCanceled())
@@ -436,7 +481,7 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 
 			try {
 				IFileID fileID = FileIDFactory.getDefault().createFileID(adapter.getRetrieveNamespace(), uri.toString());
-				adapter.sendRetrieveRequest(fileID, range, this, options);
+				adapter.sendRetrieveRequest(fileID, range, this, getOptions());
 			} catch (IncomingFileTransferException e) {
 				exception = e;
 			} catch (FileCreateException e) {
@@ -450,6 +495,16 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 		}
 	}
 
+	private Map<String, Map<String, String>> getOptions() {
+		if (requestEntityTag == null)
+			return options;
+		Map<String, String> requestHeaders = new HashMap<>(options.get(IRetrieveFileTransferOptions.REQUEST_HEADERS));
+		requestHeaders.put("If-None-Match", requestEntityTag); //$NON-NLS-1$
+		Map<String, Map<String, String>> conditionalOptions = new HashMap<>(options);
+		conditionalOptions.put(IRetrieveFileTransferOptions.REQUEST_HEADERS, requestHeaders);
+		return conditionalOptions;
+	}
+
 	public synchronized boolean pause() {
 		this.isPause = true;
 		return true;
@@ -480,6 +535,14 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 	 */
 	private boolean checkException(URI uri, int attemptCounter) throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
 		// note that 'exception' could have been captured in a callback
+		if (exception != null && requestEntityTag != null) {
+			// a conditional request for an unchanged file is answered with 304 and no content
+			Throwable t = RepositoryStatusHelper.unwind(exception);
+			if (t instanceof IncomingFileTransferException && ((IncomingFileTransferException) t).getErrorCode() == 304) {
+				exception = null;
+				notModified = true;
+			}
+		}
 		if (exception != null) {
 			// check if HTTP client needs to be changed
 			RepositoryStatusHelper.checkJREHttpClientRequired(exception);
@@ -542,14 +605,16 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 	private static class DownloadRange implements IFileRangeSpecification {
 
 		private long startPosition;
+		private long endPosition;
 
-		public DownloadRange(long startPos) {
+		public DownloadRange(long startPos, long endPos) {
 			startPosition = startPos;
+			endPosition = endPos;
 		}
 
 		@Override
 		public long getEndPosition() {
-			return -1;
+			return endPosition;
 		}
 
 		@Override
@@ -69,7 +69,20 @@ public class RepositoryTransport extends Transport {
 
 	@Override
 	public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+		return download(toDownload, target, startPos, -1, null, monitor);
+	}
 
+	@Override
+	public IStatus download(URI toDownload, OutputStream target, long startPos, long endPos, IProgressMonitor monitor) {
+		return download(toDownload, target, startPos, endPos, null, monitor);
+	}
+
+	@Override
+	public IStatus downloadIfChanged(URI toDownload, OutputStream target, String entityTag, IProgressMonitor monitor) {
+		return download(toDownload, target, -1, -1, entityTag, monitor);
+	}
+
+	private IStatus download(URI toDownload, OutputStream target, long startPos, long endPos, String entityTag, IProgressMonitor monitor) {
 		boolean promptUser = false;
 		boolean useJREHttp = false;
 		AuthenticationInfo loginDetails = null;
@@ -99,13 +112,19 @@ public class RepositoryTransport extends Transport {
 							eventBus.addListener(listener);
 						}
 					}
-					reader.readInto(toDownload, target, startPos, monitor);
+					reader.readInto(toDownload, target, startPos, endPos, entityTag, monitor);
 				} finally {
 					if (eventBus != null) {
 						eventBus.removeListener(listener);
 					}
 				}
 
+				if (reader.isNotModified()) {
+					DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID, DownloadStatus.CODE_NOT_MODIFIED, Status.OK_STATUS.getMessage(), null);
+					status.setEntityTag(entityTag);
+					return statusOn(target, status, null);
+				}
+
 				// check that job ended ok - throw exceptions otherwise
 				IStatus result = reader.getResult();
 				if (result == null) {
@@ -212,6 +231,7 @@ public class RepositoryTransport extends Transport {
 				status.setFileSize(fi.getSize());
 				status.setLastModified(fi.getLastModified());
 				status.setTransferRate(fi.getAverageSpeed());
+				status.setEntityTag(fi.getEntityTag());
 			}
 		}
 		if (target instanceof IStateful)